@@ -0,0 +1,130 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.message.Trace;
+import org.h2.util.Cache;
+import org.h2.util.CacheLRU;
+import org.h2.util.CacheObject;
+import org.h2.util.CacheWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the page cache. The keys are distributed over twice the number of
+ * entries that fit in the cache; if an entry is not found, it is added, as
+ * the page store does when reading a page. The cache type can be changed
+ * using the parameter "type".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheBenchmark implements CacheWriter {
+
+    private static final int CACHE_SIZE_KB = 16 * 1024;
+    private static final int ENTRY_SIZE_KB = 4;
+
+    /**
+     * The cache type.
+     */
+    @Param({ "LRU", "LIRS" })
+    public String type;
+
+    private Cache cache;
+    private int[] keys;
+    private int index;
+    private int nextPos;
+
+    /**
+     * A cache entry.
+     */
+    static class Entry extends CacheObject {
+
+        Entry(int pos) {
+            setPos(pos);
+        }
+
+        public int getMemory() {
+            // in words (4 bytes each)
+            return ENTRY_SIZE_KB * 1024 / 4;
+        }
+
+        public boolean canRemove() {
+            return true;
+        }
+
+    }
+
+    /**
+     * Create and fill the cache, and generate the keys.
+     */
+    @Setup
+    public void setup() {
+        cache = CacheLRU.getCache(this, type, CACHE_SIZE_KB);
+        int entries = CACHE_SIZE_KB / ENTRY_SIZE_KB;
+        for (int i = 0; i < entries; i++) {
+            cache.put(new Entry(i));
+        }
+        Random random = new Random(1);
+        keys = new int[1024 * 1024];
+        for (int i = 0; i < keys.length; i++) {
+            // skewed: the lower keys are used more often
+            int x = random.nextInt(2 * entries);
+            keys[i] = random.nextBoolean() ? x / 4 : x;
+        }
+        nextPos = 2 * entries;
+    }
+
+    /**
+     * Get an entry, and add it if it is not in the cache.
+     *
+     * @return the entry
+     */
+    @Benchmark
+    public CacheObject get() {
+        int pos = keys[index++ & (keys.length - 1)];
+        CacheObject e = cache.get(pos);
+        if (e == null) {
+            e = new Entry(pos);
+            cache.put(e);
+        }
+        return e;
+    }
+
+    /**
+     * Add a new entry, which causes another entry to be removed.
+     *
+     * @return the new entry
+     */
+    @Benchmark
+    public CacheObject put() {
+        CacheObject e = new Entry(nextPos++);
+        cache.put(e);
+        return e;
+    }
+
+    public void writeBack(CacheObject entry) {
+        // nothing to do
+    }
+
+    public void flushLog() {
+        // nothing to do
+    }
+
+    public Trace getTrace() {
+        return null;
+    }
+
+}
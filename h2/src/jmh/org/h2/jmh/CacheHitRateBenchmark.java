@@ -0,0 +1,167 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.message.Trace;
+import org.h2.util.Cache;
+import org.h2.util.CacheLRU;
+import org.h2.util.CacheObject;
+import org.h2.util.CacheWriter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the hit rate of the cache algorithms for a mix of point lookups
+ * (with a skewed distribution) and large sequential scans. The hot set is
+ * about 10% of the pages, and every 100000 lookups a scan reads 20000 pages.
+ * The number of hits and misses of the point lookups are reported as the
+ * secondary results "hits" and "misses"; the pages read by the scans are not
+ * counted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CacheHitRateBenchmark implements CacheWriter {
+
+    private static final int CACHE_SIZE_KB = 16 * 1024;
+    private static final int PAGE_MEMORY = 2048 / 4;
+    private static final int PAGES = 100000;
+    private static final int SCAN_EVERY = 100000;
+    private static final int SCAN_LENGTH = 20000;
+
+    /**
+     * The cache type.
+     */
+    @Param({ "LRU", "TQ", "LIRS" })
+    public String type;
+
+    private Cache cache;
+    private int[] keys;
+    private int index;
+    private Random scanRandom;
+
+    /**
+     * The hits and misses of the point lookups.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        /**
+         * The number of point lookups that found the page in the cache.
+         */
+        public long hits;
+
+        /**
+         * The number of point lookups that had to add the page.
+         */
+        public long misses;
+
+        /**
+         * Reset the counters.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+
+    }
+
+    /**
+     * A cache object that uses as much memory as a page of 2 KB.
+     */
+    static class Page extends CacheObject {
+
+        Page(int pos) {
+            setPos(pos);
+        }
+
+        public boolean canRemove() {
+            return true;
+        }
+
+        public int getMemory() {
+            return PAGE_MEMORY;
+        }
+
+    }
+
+    /**
+     * Create the cache, and generate the point lookups.
+     */
+    @Setup
+    public void setup() {
+        cache = CacheLRU.getCache(this, type, CACHE_SIZE_KB);
+        Random random = new Random(1);
+        scanRandom = new Random(2);
+        keys = new int[1024 * 1024];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (int) Math.abs(random.nextGaussian() * PAGES / 20) % PAGES;
+        }
+    }
+
+    /**
+     * Look up a page, and add it if it is not in the cache. Every 100000
+     * lookups, a sequential scan is run first.
+     *
+     * @param counters the hit and miss counters
+     * @return the page
+     */
+    @Benchmark
+    public CacheObject lookup(Counters counters) {
+        int i = index++;
+        if (i % SCAN_EVERY == SCAN_EVERY - 1) {
+            int start = scanRandom.nextInt(PAGES - SCAN_LENGTH);
+            for (int j = 0; j < SCAN_LENGTH; j++) {
+                access(start + j);
+            }
+        }
+        int pos = keys[i & (keys.length - 1)];
+        CacheObject page = cache.get(pos);
+        if (page != null) {
+            counters.hits++;
+        } else {
+            counters.misses++;
+            page = new Page(pos);
+            cache.put(page);
+        }
+        return page;
+    }
+
+    private CacheObject access(int pos) {
+        CacheObject page = cache.get(pos);
+        if (page == null) {
+            page = new Page(pos);
+            cache.put(page);
+        }
+        return page;
+    }
+
+    public void flushLog() {
+        // nothing to do
+    }
+
+    public Trace getTrace() {
+        return null;
+    }
+
+    public void writeBack(CacheObject entry) {
+        // nothing to do
+    }
+
+}
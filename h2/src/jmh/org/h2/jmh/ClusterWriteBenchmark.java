@@ -0,0 +1,121 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.h2.tools.CreateCluster;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the latency of updates in cluster mode with 1, 2, and 3 local
+ * nodes. Each update waits for 1 millisecond on the server, to simulate work
+ * or network latency per node. As the update is sent to all nodes at the same
+ * time, the latency should be about the same for any number of nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClusterWriteBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int BASE_PORT = 9101;
+    private static final int DELAY = 1;
+
+    /**
+     * The number of cluster nodes.
+     */
+    @Param({ "1", "2", "3" })
+    public int nodes;
+
+    private Server[] servers;
+    private Connection conn;
+    private PreparedStatement update;
+
+    /**
+     * Wait for the given number of milliseconds. This method is called from
+     * the database.
+     *
+     * @param millis the number of milliseconds
+     * @return the number of milliseconds
+     */
+    public static int delay(int millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+        return millis;
+    }
+
+    /**
+     * Start the servers, create the cluster, and create the table.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        servers = new Server[nodes];
+        StringBuilder serverList = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            int port = BASE_PORT + i;
+            servers[i] = Server.createTcpServer("-tcpPort", "" + port,
+                    "-baseDir", DIR + "/node" + i).start();
+            if (i > 0) {
+                serverList.append(',');
+            }
+            serverList.append("localhost:").append(port);
+        }
+        String url1 = "jdbc:h2:tcp://localhost:" + BASE_PORT + "/cluster";
+        for (int i = 1; i < nodes; i++) {
+            String url = "jdbc:h2:tcp://localhost:" + (BASE_PORT + i) + "/cluster";
+            new CreateCluster().execute(url1, url, "sa", "", serverList.toString());
+        }
+        conn = DriverManager.getConnection("jdbc:h2:tcp://" + serverList + "/cluster", "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE ALIAS DELAY FOR \"" + getClass().getName() + ".delay\"");
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, VALUE INT)");
+        stat.execute("INSERT INTO TEST VALUES(1, 0)");
+        update = conn.prepareStatement("UPDATE TEST SET VALUE = VALUE + DELAY(?) WHERE ID = 1");
+        update.setInt(1, DELAY);
+    }
+
+    /**
+     * Close the connection, stop the servers, and delete the databases.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        for (Server s : servers) {
+            s.stop();
+        }
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Update one row on all nodes.
+     *
+     * @return the update count
+     */
+    @Benchmark
+    public int update() throws SQLException {
+        return update.executeUpdate();
+    }
+
+}
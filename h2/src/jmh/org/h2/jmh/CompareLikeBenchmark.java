@@ -0,0 +1,85 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.h2.expression.CompareLike;
+import org.h2.expression.Expression;
+import org.h2.expression.Parameter;
+import org.h2.expression.ValueExpression;
+import org.h2.value.CompareMode;
+import org.h2.value.Value;
+import org.h2.value.ValueString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the LIKE condition, with a constant pattern (the pattern is only
+ * parsed once, as for column LIKE 'pattern'), and with a pattern that is
+ * parsed each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompareLikeBenchmark {
+
+    private static final String[] VALUES = {
+        "Hello World", "Hello", "World", "Hallo Welt", "Hello World, this is a longer text"
+    };
+
+    /**
+     * The pattern.
+     */
+    @Param({ "Hello%", "%World%", "H_llo W%d" })
+    public String pattern;
+
+    private Parameter value;
+    private Expression constantLike;
+    private CompareLike like;
+    private int index;
+
+    /**
+     * Create and optimize the conditions.
+     */
+    @Setup
+    public void setup() {
+        CompareMode compareMode = CompareMode.getInstance(CompareMode.OFF, 0);
+        value = new Parameter(0);
+        value.setValue(ValueString.get(VALUES[0]));
+        constantLike = new CompareLike(compareMode, "\\", value,
+                ValueExpression.get(ValueString.get(pattern)), null, false).optimize(null);
+        like = new CompareLike(compareMode, "\\", null, null, null, false);
+    }
+
+    /**
+     * Evaluate the condition with a constant pattern.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public Value constantPattern() {
+        value.setValue(ValueString.get(VALUES[index++ % VALUES.length]));
+        return constantLike.getValue(null);
+    }
+
+    /**
+     * Parse the pattern and test a value.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public boolean variablePattern() {
+        return like.test(pattern, VALUES[index++ % VALUES.length], '\\');
+    }
+
+}
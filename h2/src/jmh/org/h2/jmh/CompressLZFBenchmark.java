@@ -0,0 +1,77 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.compress.CompressLZF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures compressing and expanding a page sized block of data with
+ * repeating content, similar to a data page of a table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressLZFBenchmark {
+
+    private static final int LENGTH = 4096;
+
+    private CompressLZF compress;
+    private byte[] data;
+    private byte[] compressed;
+    private int compressedLength;
+    private byte[] expanded;
+
+    /**
+     * Create the data and compress it once.
+     */
+    @Setup
+    public void setup() {
+        compress = new CompressLZF();
+        data = new byte[LENGTH];
+        Random random = new Random(1);
+        for (int i = 0; i < LENGTH;) {
+            String s = "Hello World " + random.nextInt(1000) + " ";
+            for (int j = 0; j < s.length() && i < LENGTH; j++) {
+                data[i++] = (byte) s.charAt(j);
+            }
+        }
+        compressed = new byte[LENGTH * 2];
+        compressedLength = compress.compress(data, LENGTH, compressed, 0);
+        expanded = new byte[LENGTH];
+    }
+
+    /**
+     * Compress the block.
+     *
+     * @return the compressed length
+     */
+    @Benchmark
+    public int compress() {
+        return compress.compress(data, LENGTH, compressed, 0);
+    }
+
+    /**
+     * Expand the compressed block.
+     *
+     * @return the expanded data
+     */
+    @Benchmark
+    public byte[] expand() {
+        compress.expand(compressed, 0, compressedLength, expanded, 0, LENGTH);
+        return expanded;
+    }
+
+}
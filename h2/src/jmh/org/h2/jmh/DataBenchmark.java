@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.Data;
+import org.h2.value.Value;
+import org.h2.value.ValueDecimal;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
+import org.h2.value.ValueTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the serialization of a row (as done when writing a data page), and
+ * the de-serialization (as done when reading a data page).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DataBenchmark {
+
+    private Value[] row;
+    private Data data;
+    private Data serialized;
+
+    /**
+     * Create the row and the buffers.
+     */
+    @Setup
+    public void setup() {
+        row = new Value[] {
+                ValueInt.get(12345),
+                ValueLong.get(1234567890123L),
+                ValueString.get("Hello World"),
+                ValueDecimal.get(new BigDecimal("1234.56")),
+                ValueTimestamp.get(Timestamp.valueOf("2012-01-01 12:00:00.0")),
+                ValueNull.INSTANCE,
+                ValueString.get("A longer text value that does not fit in a single word")
+        };
+        data = Data.create(null, 1024);
+        serialized = Data.create(null, 1024);
+        for (Value v : row) {
+            serialized.writeValue(v);
+        }
+    }
+
+    /**
+     * Write all values of the row.
+     *
+     * @return the number of bytes written
+     */
+    @Benchmark
+    public int writeRow() {
+        data.reset();
+        for (Value v : row) {
+            data.writeValue(v);
+        }
+        return data.length();
+    }
+
+    /**
+     * Read all values of the row.
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    public void readRow(Blackhole bh) {
+        serialized.reset();
+        for (int i = 0; i < row.length; i++) {
+            bh.consume(serialized.readValue());
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end benchmarks using JDBC and an embedded persistent database: point
+ * select on the primary key, range scan, group by, and insert throughput. The
+ * table contains 100000 rows, and all pages fit in the cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmbeddedBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int ROWS = 100000;
+    private static final int RANGE = 100;
+
+    private Connection conn;
+    private Random random;
+    private PreparedStatement pointSelect;
+    private PreparedStatement rangeScan;
+    private PreparedStatement groupBy;
+    private PreparedStatement insert;
+    private Statement stat;
+    private int nextId;
+
+    /**
+     * Create the database and the tables.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection("jdbc:h2:" + DIR + "/embedded;CACHE_SIZE=65536", "sa", "");
+        stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, K INT, NAME VARCHAR)");
+        stat.execute("CREATE INDEX IDX_K ON TEST(K)");
+        stat.execute("CREATE TABLE INSERT_TEST(ID INT PRIMARY KEY, K INT, NAME VARCHAR)");
+        stat.execute("CREATE INDEX IDX_INSERT_K ON INSERT_TEST(K)");
+        stat.execute("INSERT INTO TEST SELECT X, MOD(X * 1103515245, 1000), " +
+                "'Hello World ' || X FROM SYSTEM_RANGE(0, " + (ROWS - 1) + ")");
+        stat.execute("ANALYZE");
+        random = new Random(1);
+        pointSelect = conn.prepareStatement("SELECT NAME FROM TEST WHERE ID = ?");
+        rangeScan = conn.prepareStatement("SELECT ID, K, NAME FROM TEST WHERE ID BETWEEN ? AND ?");
+        groupBy = conn.prepareStatement("SELECT K, COUNT(*), MAX(NAME) FROM TEST " +
+                "WHERE ID BETWEEN ? AND ? GROUP BY K");
+        insert = conn.prepareStatement("INSERT INTO INSERT_TEST VALUES(?, ?, ?)");
+    }
+
+    /**
+     * Remove the rows inserted by the previous iteration.
+     */
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        stat.execute("TRUNCATE TABLE INSERT_TEST");
+        nextId = 0;
+    }
+
+    /**
+     * Close and delete the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Read one row using the primary key.
+     *
+     * @return the name
+     */
+    @Benchmark
+    public String pointSelect() throws SQLException {
+        pointSelect.setInt(1, random.nextInt(ROWS));
+        ResultSet rs = pointSelect.executeQuery();
+        rs.next();
+        String name = rs.getString(1);
+        rs.close();
+        return name;
+    }
+
+    /**
+     * Read a range of 100 rows using the primary key.
+     *
+     * @return the sum of the K column
+     */
+    @Benchmark
+    public long rangeScan() throws SQLException {
+        int start = random.nextInt(ROWS - RANGE);
+        rangeScan.setInt(1, start);
+        rangeScan.setInt(2, start + RANGE - 1);
+        ResultSet rs = rangeScan.executeQuery();
+        long sum = 0;
+        while (rs.next()) {
+            sum += rs.getInt(2);
+        }
+        rs.close();
+        return sum;
+    }
+
+    /**
+     * Group 10000 rows by a column with 1000 distinct values.
+     *
+     * @return the number of groups
+     */
+    @Benchmark
+    public int groupBy() throws SQLException {
+        int start = random.nextInt(ROWS - 100 * RANGE);
+        groupBy.setInt(1, start);
+        groupBy.setInt(2, start + 100 * RANGE - 1);
+        ResultSet rs = groupBy.executeQuery();
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        return count;
+    }
+
+    /**
+     * Insert one row (auto-commit is enabled).
+     *
+     * @return the update count
+     */
+    @Benchmark
+    public int insert() throws SQLException {
+        int id = nextId++;
+        insert.setInt(1, id);
+        insert.setInt(2, random.nextInt(1000));
+        insert.setString(3, "Hello World " + id);
+        return insert.executeUpdate();
+    }
+
+}
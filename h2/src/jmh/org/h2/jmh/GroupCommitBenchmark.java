@@ -0,0 +1,126 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.h2.tools.Server;
+import org.h2.util.New;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the number of commits per second with many concurrent writers
+ * connected over TCP, with and without group commit. Each writer inserts one
+ * row per transaction (auto-commit). Without group commit, a commit only
+ * writes the transaction log (WRITE_DELAY 0) and doesn't sync the file. With
+ * group commit, each commit is synced to disk, but concurrent commits share a
+ * sync. Use the option -t to change the number of writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(64)
+public class GroupCommitBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int PORT = 9213;
+
+    /**
+     * Whether group commit is enabled.
+     */
+    @Param({ "false", "true" })
+    public boolean groupCommit;
+
+    private Server server;
+    private String url;
+    private Connection conn;
+    private final ArrayList<Connection> writers = New.arrayList();
+
+    /**
+     * The connection of a writer thread. The connections are closed when the
+     * server is stopped.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private PreparedStatement prep;
+
+        /**
+         * Open the connection. The database is already open.
+         *
+         * @param db the benchmark that created the database
+         */
+        @Setup
+        public void setup(GroupCommitBenchmark db) throws SQLException {
+            Connection conn = DriverManager.getConnection(db.url, "sa", "");
+            synchronized (db.writers) {
+                db.writers.add(conn);
+            }
+            prep = conn.prepareStatement("INSERT INTO TEST(NAME) VALUES(?)");
+            prep.setString(1, "Hello World");
+        }
+
+    }
+
+    /**
+     * Start the server, and create the database and the table.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        server = Server.createTcpServer("-tcpPort", "" + PORT).start();
+        url = "jdbc:h2:tcp://localhost:" + PORT + "/" + FileUtils.toRealPath(DIR + "/groupCommit");
+        if (groupCommit) {
+            url += ";GROUP_COMMIT=TRUE";
+        }
+        conn = DriverManager.getConnection(url, "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("SET WRITE_DELAY 0");
+        stat.execute("CREATE TABLE TEST(ID IDENTITY, NAME VARCHAR)");
+    }
+
+    /**
+     * Close the connections, delete the database, and stop the server.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        for (Connection c : writers) {
+            c.close();
+        }
+        conn.close();
+        server.stop();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Insert one row and commit.
+     *
+     * @param writer the writer thread
+     * @return the update count
+     */
+    @Benchmark
+    public int insert(Writer writer) throws SQLException {
+        return writer.prep.executeUpdate();
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.h2.util.StatementBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the time to insert 100000 rows in one transaction one at a time
+ * with inserting 100 rows per statement (a multi-row VALUES list, or a batched
+ * prepared statement), and with INSERT ... SELECT. The table has a primary key
+ * and a secondary index on a column with random values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class InsertBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int ROWS = 100000;
+    private static final int ROWS_PER_STATEMENT = 100;
+
+    /**
+     * How the rows are inserted: single, values, batch, or select.
+     */
+    @Param({ "single", "values", "batch", "select" })
+    public String mode;
+
+    private Connection conn;
+    private Statement stat;
+    private PreparedStatement prep;
+
+    /**
+     * Create the database and the table, and prepare the statement.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection("jdbc:h2:" + DIR + "/insert", "sa", "");
+        stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, K INT, NAME VARCHAR)");
+        stat.execute("CREATE INDEX IDX_K ON TEST(K)");
+        conn.setAutoCommit(false);
+        if ("values".equals(mode)) {
+            StatementBuilder buff = new StatementBuilder("INSERT INTO TEST VALUES");
+            for (int i = 0; i < ROWS_PER_STATEMENT; i++) {
+                buff.appendExceptFirst(", ");
+                buff.append("(?, ?, ?)");
+            }
+            prep = conn.prepareStatement(buff.toString());
+        } else {
+            prep = conn.prepareStatement("INSERT INTO TEST VALUES(?, ?, ?)");
+        }
+    }
+
+    /**
+     * Remove the rows inserted by the previous invocation.
+     */
+    @Setup(Level.Invocation)
+    public void truncate() throws SQLException {
+        stat.execute("TRUNCATE TABLE TEST");
+        conn.commit();
+    }
+
+    /**
+     * Close and delete the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Insert the rows and commit.
+     *
+     * @return the number of rows
+     */
+    @Benchmark
+    public int insert() throws SQLException {
+        if ("single".equals(mode)) {
+            for (int i = 0; i < ROWS; i++) {
+                setValues(0, i);
+                prep.executeUpdate();
+            }
+        } else if ("values".equals(mode)) {
+            for (int i = 0; i < ROWS; i += ROWS_PER_STATEMENT) {
+                for (int j = 0; j < ROWS_PER_STATEMENT; j++) {
+                    setValues(3 * j, i + j);
+                }
+                prep.executeUpdate();
+            }
+        } else if ("batch".equals(mode)) {
+            for (int i = 0; i < ROWS; i++) {
+                setValues(0, i);
+                prep.addBatch();
+                if (i % ROWS_PER_STATEMENT == ROWS_PER_STATEMENT - 1) {
+                    prep.executeBatch();
+                }
+            }
+            prep.executeBatch();
+        } else {
+            stat.execute("INSERT INTO TEST SELECT X, MOD(X * 1103515245, 2147483647), " +
+                    "'Hello World ' || X FROM SYSTEM_RANGE(0, " + (ROWS - 1) + ")");
+        }
+        conn.commit();
+        return ROWS;
+    }
+
+    private void setValues(int offset, int i) throws SQLException {
+        prep.setInt(offset + 1, i);
+        prep.setInt(offset + 2, (int) (i * 1103515245L % 2147483647));
+        prep.setString(offset + 3, "Hello World " + i);
+    }
+
+}
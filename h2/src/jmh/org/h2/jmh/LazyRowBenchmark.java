@@ -0,0 +1,122 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.h2.result.LazyRow;
+import org.h2.result.Row;
+import org.h2.store.Data;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading a row from a data page, either by decoding all values (as
+ * done for narrow rows), or by copying the serialized values into a lazy row
+ * (as done for wide rows), then reading one or all columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LazyRowBenchmark {
+
+    /**
+     * The number of columns.
+     */
+    @Param({ "2", "4", "8", "16" })
+    public int columns;
+
+    private Data page;
+    private int length;
+
+    /**
+     * Serialize the row, every second column is a string.
+     */
+    @Setup
+    public void setup() {
+        page = Data.create(null, 4096);
+        for (int i = 0; i < columns; i++) {
+            if (i % 2 == 0) {
+                page.writeValue(ValueInt.get(i * 1000));
+            } else {
+                page.writeValue(ValueString.get("Hello World " + i));
+            }
+        }
+        length = page.length();
+    }
+
+    private Row readEager() {
+        Value[] values = new Value[columns];
+        page.setPos(0);
+        for (int i = 0; i < columns; i++) {
+            values[i] = page.readValue();
+        }
+        return new Row(values, Row.MEMORY_CALCULATE);
+    }
+
+    private Row readLazy() {
+        byte[] bytes = new byte[length];
+        System.arraycopy(page.getBytes(), 0, bytes, 0, length);
+        return new LazyRow(null, bytes, columns);
+    }
+
+    /**
+     * Decode all values, and read the column in the middle.
+     *
+     * @return the value
+     */
+    @Benchmark
+    public Value eagerOneColumn() {
+        return readEager().getValue(columns / 2);
+    }
+
+    /**
+     * Copy the serialized values, and read the column in the middle.
+     *
+     * @return the value
+     */
+    @Benchmark
+    public Value lazyOneColumn() {
+        return readLazy().getValue(columns / 2);
+    }
+
+    /**
+     * Decode all values, and read all columns.
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    public void eagerAllColumns(Blackhole bh) {
+        Row row = readEager();
+        for (int i = 0; i < columns; i++) {
+            bh.consume(row.getValue(i));
+        }
+    }
+
+    /**
+     * Copy the serialized values, and read all columns.
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    public void lazyAllColumns(Blackhole bh) {
+        Row row = readLazy();
+        for (int i = 0; i < columns; i++) {
+            bh.consume(row.getValue(i));
+        }
+    }
+
+}
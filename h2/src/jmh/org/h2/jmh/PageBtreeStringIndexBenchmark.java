@@ -0,0 +1,168 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.store.fs.FileUtils;
+import org.h2.table.Table;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a b-tree index on URL-like string keys, which share long
+ * prefixes: looking up a key, adding an entry, and iterating over all
+ * entries. The index is used directly (without parsing and executing a
+ * statement), but while holding the database lock, as a statement does. The
+ * index pages are not kept in the cache, so that reading and writing the page
+ * data is included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PageBtreeStringIndexBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int ROWS = 100000;
+
+    private Connection conn;
+    private Session session;
+    private Database database;
+    private Index index;
+    private Index emptyIndex;
+    private Table emptyTable;
+    private SearchRow search;
+    private String[] keys;
+    private int pos;
+    private long nextKey;
+
+    /**
+     * Create the database and the tables.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection("jdbc:h2:" + DIR + "/btree;CACHE_SIZE=1024", "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, K VARCHAR)");
+        stat.execute("CREATE INDEX IDX_K ON TEST(K)");
+        stat.execute("CREATE TABLE EMPTY(ID INT PRIMARY KEY, K VARCHAR)");
+        stat.execute("CREATE INDEX IDX_EMPTY_K ON EMPTY(K)");
+        conn.setAutoCommit(false);
+        PreparedStatement prep = conn.prepareStatement("INSERT INTO TEST VALUES(?, ?)");
+        Random random = new Random(1);
+        keys = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            keys[i] = "http://www.example.com/products/category" + random.nextInt(20) +
+                    "/item" + random.nextInt(1000000) + ".html";
+            prep.setInt(1, i);
+            prep.setString(2, keys[i]);
+            prep.execute();
+        }
+        conn.commit();
+        session = (Session) ((JdbcConnection) conn).getSession();
+        database = session.getDatabase();
+        index = session.getDatabase().getSchema(Constants.SCHEMA_MAIN).getIndex("IDX_K");
+        search = index.getTable().getTemplateSimpleRow(false);
+        emptyIndex = session.getDatabase().getSchema(Constants.SCHEMA_MAIN).getIndex("IDX_EMPTY_K");
+        emptyTable = emptyIndex.getTable();
+    }
+
+    /**
+     * Remove the entries added by the previous iteration.
+     */
+    @Setup(Level.Iteration)
+    public void truncate() {
+        synchronized (database) {
+            emptyIndex.truncate(session);
+        }
+    }
+
+    /**
+     * Close and delete the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Find the first entry with the given key.
+     *
+     * @return the row
+     */
+    @Benchmark
+    public SearchRow find() {
+        search.setValue(1, ValueString.get(keys[pos++ % ROWS]));
+        synchronized (database) {
+            Cursor cursor = index.find(session, search, search);
+            cursor.next();
+            return cursor.getSearchRow();
+        }
+    }
+
+    /**
+     * Add an entry with a random key.
+     *
+     * @return the added row
+     */
+    @Benchmark
+    public Row add() {
+        Row row = emptyTable.getTemplateRow();
+        row.setValue(0, ValueInt.get((int) nextKey));
+        row.setValue(1, ValueString.get(keys[pos++ % ROWS]));
+        row.setKey(nextKey++);
+        synchronized (database) {
+            emptyIndex.add(session, row);
+        }
+        return row;
+    }
+
+    /**
+     * Iterate over all entries of the index.
+     *
+     * @return the number of entries
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int scan() {
+        synchronized (database) {
+            Cursor cursor = index.find(session, null, null);
+            int count = 0;
+            while (cursor.next()) {
+                cursor.getSearchRow();
+                count++;
+            }
+            return count;
+        }
+    }
+
+}
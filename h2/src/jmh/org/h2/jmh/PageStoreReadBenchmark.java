@@ -0,0 +1,128 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.h2.util.New;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures point lookups on the primary key (data index) of a table, with
+ * concurrent readers in a multi-threaded database. The table contains 100000
+ * rows. With the larger cache size, all pages fit in the cache; with the
+ * smaller cache size, most lookups read a page from the file. Use the option
+ * -t to change the number of reader threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+public class PageStoreReadBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final String URL = "jdbc:h2:" + DIR + "/pageStoreRead;MULTI_THREADED=TRUE";
+    private static final int ROWS = 100000;
+
+    /**
+     * The cache size in KB.
+     */
+    @Param({ "65536", "1024" })
+    public int cacheSize;
+
+    private Connection conn;
+    private final ArrayList<Connection> readers = New.arrayList();
+
+    /**
+     * The connection of a reader thread. The connections are closed when the
+     * database is closed.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        private PreparedStatement prep;
+        private Random random;
+
+        /**
+         * Open the connection. The database is already open.
+         *
+         * @param db the benchmark that created the database
+         */
+        @Setup
+        public void setup(PageStoreReadBenchmark db) throws SQLException {
+            Connection conn = DriverManager.getConnection(URL, "sa", "");
+            synchronized (db.readers) {
+                db.readers.add(conn);
+            }
+            prep = conn.prepareStatement("SELECT NAME FROM TEST WHERE ID = ?");
+            random = new Random(System.identityHashCode(this));
+        }
+
+    }
+
+    /**
+     * Create the database and the table, and read all pages once.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection(URL + ";CACHE_SIZE=" + cacheSize, "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        stat.execute("INSERT INTO TEST SELECT X, 'Hello World ' || X " +
+                "FROM SYSTEM_RANGE(0, " + (ROWS - 1) + ")");
+        stat.execute("SELECT COUNT(NAME) FROM TEST");
+    }
+
+    /**
+     * Close the connections, and delete the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        for (Connection c : readers) {
+            c.close();
+        }
+        conn.close();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Read one row using the primary key.
+     *
+     * @param reader the reader thread
+     * @return the name
+     */
+    @Benchmark
+    public String pointSelect(Reader reader) throws SQLException {
+        PreparedStatement prep = reader.prep;
+        prep.setInt(1, reader.random.nextInt(ROWS));
+        ResultSet rs = prep.executeQuery();
+        rs.next();
+        String name = rs.getString(1);
+        rs.close();
+        return name;
+    }
+
+}
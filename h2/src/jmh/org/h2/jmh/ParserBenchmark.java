@@ -0,0 +1,83 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.command.Parser;
+import org.h2.command.Prepared;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures parsing and preparing statements (what is done when a statement is
+ * not in the query cache).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+
+    /**
+     * The statement to parse.
+     */
+    @Param({
+        "SELECT NAME FROM TEST WHERE ID = ?",
+        "INSERT INTO TEST(ID, K, NAME) VALUES(?, ?, ?)",
+        "SELECT T.K, COUNT(*), MAX(T.NAME) FROM TEST T, TEST U " +
+                "WHERE T.ID = U.K AND T.NAME LIKE 'H%' AND U.ID BETWEEN ? AND ? " +
+                "GROUP BY T.K HAVING COUNT(*) > 1 ORDER BY 2 DESC LIMIT 10"
+    })
+    public String sql;
+
+    private Connection conn;
+    private Session session;
+
+    /**
+     * Create the database and the table.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection("jdbc:h2:mem:parser", "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, K INT, NAME VARCHAR)");
+        stat.execute("CREATE INDEX IDX_K ON TEST(K)");
+        session = (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    /**
+     * Close the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    /**
+     * Parse and prepare the statement.
+     *
+     * @return the prepared statement
+     */
+    @Benchmark
+    public Prepared prepare() {
+        return new Parser(session).prepare(sql);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.h2.store.fs.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sorting a result of 1000000 rows that doesn't fit in memory (an
+ * external merge sort, with at most 100000 rows in memory). The chunks are
+ * sorted by the given number of threads (the database setting
+ * LARGE_RESULT_SORT_THREADS). The rows are generated, so that mainly the sort
+ * is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SortBenchmark {
+
+    private static final String DIR = "data/jmh";
+    private static final int ROWS = 1000000;
+    private static final int MAX_MEMORY_ROWS = 100000;
+
+    /**
+     * The number of threads that sort the chunks.
+     */
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    private Connection conn;
+    private Statement stat;
+
+    /**
+     * Create the database.
+     */
+    @Setup
+    public void setup() throws SQLException {
+        FileUtils.deleteRecursive(DIR, true);
+        org.h2.Driver.load();
+        conn = DriverManager.getConnection("jdbc:h2:" + DIR + "/sort;LARGE_RESULT_SORT_THREADS=" +
+                threads, "sa", "");
+        stat = conn.createStatement();
+        stat.execute("SET MAX_MEMORY_ROWS " + MAX_MEMORY_ROWS);
+    }
+
+    /**
+     * Close and delete the database.
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        FileUtils.deleteRecursive(DIR, true);
+    }
+
+    /**
+     * Sort the rows, and read the result.
+     *
+     * @return the number of rows
+     */
+    @Benchmark
+    public int sort() throws SQLException {
+        ResultSet rs = stat.executeQuery("SELECT MOD(X * 1103515245, 2147483647) K, " +
+                "'Name ' || MOD(X, 1000) NAME FROM SYSTEM_RANGE(1, " + ROWS + ") ORDER BY K, NAME");
+        long last = Long.MIN_VALUE;
+        int count = 0;
+        while (rs.next()) {
+            long k = rs.getLong(1);
+            if (k < last) {
+                throw new AssertionError("Not sorted at row " + count);
+            }
+            last = k;
+            count++;
+        }
+        rs.close();
+        return count;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import org.h2.engine.Constants;
+import org.h2.value.Transfer;
+import org.h2.value.Value;
+import org.h2.value.ValueDecimal;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
+import org.h2.value.ValueTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures writing and reading values using the client/server protocol. The
+ * values are sent over a loopback connection, in blocks of rows (as when
+ * fetching a result), so that the network overhead is small compared to the
+ * serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransferBenchmark {
+
+    private static final int ROWS = 100;
+
+    private Value[] row;
+    private ServerSocket serverSocket;
+    private Transfer out;
+    private Transfer in;
+
+    /**
+     * Create the row and open the connection.
+     */
+    @Setup
+    public void setup() throws IOException {
+        row = new Value[] {
+                ValueInt.get(12345),
+                ValueLong.get(1234567890123L),
+                ValueString.get("Hello World"),
+                ValueDecimal.get(new BigDecimal("1234.56")),
+                ValueTimestamp.get(Timestamp.valueOf("2012-01-01 12:00:00.0")),
+                ValueNull.INSTANCE
+        };
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+        serverSocket = new ServerSocket(0, 1, address);
+        Socket client = new Socket(address, serverSocket.getLocalPort());
+        Socket server = serverSocket.accept();
+        out = createTransfer(client);
+        in = createTransfer(server);
+    }
+
+    private static Transfer createTransfer(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        Transfer t = new Transfer(null);
+        t.setSocket(socket);
+        t.setVersion(Constants.TCP_PROTOCOL_VERSION_13);
+        t.init();
+        return t;
+    }
+
+    /**
+     * Close the connection.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        out.close();
+        in.close();
+        serverSocket.close();
+    }
+
+    /**
+     * Write a block of rows, and read them on the other side.
+     *
+     * @param bh the black hole
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void writeAndReadRow(Blackhole bh) throws IOException {
+        for (int i = 0; i < ROWS; i++) {
+            for (Value v : row) {
+                out.writeValue(v);
+            }
+        }
+        out.flush();
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < row.length; j++) {
+                bh.consume(in.readValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.h2.util.ValueHashMap;
+import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the hash map that is used for hash indexes, hash joins, and group
+ * by. The map contains integer or string keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueHashMapBenchmark {
+
+    private static final int SIZE = 100000;
+
+    /**
+     * The key data type: int or string.
+     */
+    @Param({ "int", "string" })
+    public String keyType;
+
+    private Value[] keys;
+    private ValueHashMap<Value> map;
+    private int index;
+
+    /**
+     * Create the keys and fill the map.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        keys = new Value[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            int x = random.nextInt();
+            keys[i] = "int".equals(keyType) ? (Value) ValueInt.get(x) : ValueString.get("key" + x);
+        }
+        map = ValueHashMap.newInstance();
+        for (Value k : keys) {
+            map.put(k, k);
+        }
+    }
+
+    /**
+     * Look up an existing key.
+     *
+     * @return the value
+     */
+    @Benchmark
+    public Value get() {
+        return map.get(keys[index++ % SIZE]);
+    }
+
+    /**
+     * Replace the value of an existing key.
+     *
+     * @return the map
+     */
+    @Benchmark
+    public ValueHashMap<Value> put() {
+        Value k = keys[index++ % SIZE];
+        map.put(k, k);
+        return map;
+    }
+
+    /**
+     * Fill a new map.
+     *
+     * @return the map
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ValueHashMap<Value> fill() {
+        ValueHashMap<Value> m = ValueHashMap.newInstance();
+        for (Value k : keys) {
+            m.put(k, k);
+        }
+        return m;
+    }
+
+}
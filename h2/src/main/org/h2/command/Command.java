@@ -7,16 +7,20 @@
 package org.h2.command;
 
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
+import org.h2.engine.QueryStatisticsData;
 import org.h2.engine.Session;
 import org.h2.expression.ParameterInterface;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
+import org.h2.result.LazyResult;
 import org.h2.result.ResultInterface;
 import org.h2.util.MathUtils;
+import org.h2.value.Value;
 
 /**
  * Represents a SQL statement. This object is only used on the server side.
@@ -47,6 +51,12 @@ public abstract class Command implements CommandInterface {
 
     private boolean canReuse;
 
+    private String normalizedSql;
+    private long statisticsStart;
+    private long statisticsRowsRead;
+    private long statisticsPageReads;
+    private long statisticsLockWait;
+
     Command(Parser parser, String sql) {
         this.session = parser.getSession();
         this.sql = sql;
@@ -110,6 +120,19 @@ public abstract class Command implements CommandInterface {
         throw DbException.get(ErrorCode.METHOD_ONLY_ALLOWED_FOR_QUERY);
     }
 
+    /**
+     * Execute a query statement lazily if this is possible, that means the
+     * rows are only computed when they are read. By default, the query is
+     * executed as usual.
+     *
+     * @param maxrows the maximum number of rows returned
+     * @return the result set
+     * @throws DbException if the command is not a query
+     */
+    public ResultInterface queryLazy(int maxrows) {
+        return query(maxrows);
+    }
+
     public final ResultInterface getMetaData() {
         return queryMeta();
     }
@@ -167,7 +190,8 @@ public abstract class Command implements CommandInterface {
      * This method prepares everything and calls {@link #query(int)} finally.
      *
      * @param maxrows the maximum number of rows to return
-     * @param scrollable if the result set must be scrollable (ignored)
+     * @param scrollable if the result set must be scrollable (if not, the
+     *            query may be executed lazily)
      * @return the result set
      */
     public ResultInterface executeQuery(int maxrows, boolean scrollable) {
@@ -182,13 +206,20 @@ public abstract class Command implements CommandInterface {
                 // wait
             }
         }
+        boolean lazy = !scrollable && session.isLazyQueryExecution();
+        QueryStatisticsData statistics = database.getQueryStatisticsData();
+        ResultInterface result;
         synchronized (sync) {
             session.setCurrentCommand(this);
+            if (statistics != null) {
+                startStatistics(database);
+            }
             try {
                 while (true) {
                     database.checkPowerOff();
                     try {
-                        return query(maxrows);
+                        result = lazy ? queryLazy(maxrows) : query(maxrows);
+                        break;
                     } catch (DbException e) {
                         start = filterConcurrentUpdate(e, start);
                     } catch (Throwable e) {
@@ -205,7 +236,13 @@ public abstract class Command implements CommandInterface {
                     database.afterWriting();
                 }
             }
+            if (statistics != null) {
+                // the row count of a lazy result is not known yet
+                updateStatistics(statistics, database, result instanceof LazyResult ? 0 : result.getRowCount());
+            }
         }
+        session.syncCommit();
+        return result;
     }
 
     public int executeUpdate() {
@@ -220,14 +257,20 @@ public abstract class Command implements CommandInterface {
                 // wait
             }
         }
+        QueryStatisticsData statistics = database.getQueryStatisticsData();
+        int updateCount;
         synchronized (sync) {
             int rollback = session.getUndoLogPos();
             session.setCurrentCommand(this);
+            if (statistics != null) {
+                startStatistics(database);
+            }
             try {
                 while (true) {
                     database.checkPowerOff();
                     try {
-                        return update();
+                        updateCount = update();
+                        break;
                     } catch (DbException e) {
                         start = filterConcurrentUpdate(e, start);
                     } catch (Throwable e) {
@@ -264,7 +307,69 @@ public abstract class Command implements CommandInterface {
                     }
                 }
             }
+            if (statistics != null) {
+                updateStatistics(statistics, database, updateCount);
+            }
+        }
+        // with group commit, wait for the log to be synced after releasing
+        // the lock, so that other sessions can commit in the meantime
+        session.syncCommit();
+        return updateCount;
+    }
+
+    public int[] executeBatchUpdate(ArrayList<Value[]> batchParameters, ArrayList<DbException> exceptions) {
+        return executeEach(this, batchParameters, exceptions);
+    }
+
+    /**
+     * Execute a statement once for each set of parameters, using one
+     * executeUpdate call per set.
+     *
+     * @param command the command
+     * @param batchParameters the list of parameter values
+     * @param exceptions the list where the exceptions are added
+     * @return the update counts
+     */
+    static int[] executeEach(CommandInterface command, ArrayList<Value[]> batchParameters,
+            ArrayList<DbException> exceptions) {
+        int size = batchParameters.size();
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            // the command may be re-compiled when executing it,
+            // which creates new parameter objects
+            ArrayList<? extends ParameterInterface> parameters = command.getParameters();
+            Value[] set = batchParameters.get(i);
+            for (int j = 0; j < set.length; j++) {
+                parameters.get(j).setValue(set[j], false);
+            }
+            try {
+                result[i] = command.executeUpdate();
+            } catch (Exception e) {
+                exceptions.add(DbException.convert(e));
+                result[i] = Statement.EXECUTE_FAILED;
+            }
+        }
+        return result;
+    }
+
+    private void startStatistics(Database database) {
+        statisticsStart = System.nanoTime();
+        statisticsRowsRead = session.getRowsRead();
+        statisticsPageReads = database.getPageReadCount();
+        statisticsLockWait = session.getLockWaitTime();
+    }
+
+    private void updateStatistics(QueryStatisticsData statistics, Database database, long rowCount) {
+        long time = System.nanoTime() - statisticsStart;
+        if (normalizedSql == null) {
+            normalizedSql = QueryStatisticsData.normalize(sql);
         }
+        // the page read count is per database, so it includes pages read
+        // by other sessions at the same time (in multi-threaded mode)
+        statistics.update(normalizedSql, time, rowCount,
+                session.getRowsRead() - statisticsRowsRead,
+                database.getPageReadCount() - statisticsPageReads,
+                session.getLockWaitTime() - statisticsLockWait);
     }
 
     private long filterConcurrentUpdate(DbException e, long start) {
@@ -277,6 +382,7 @@ public abstract class Command implements CommandInterface {
         }
         Database database = session.getDatabase();
         int sleep = 1 + MathUtils.randomInt(10);
+        long waitStart = System.nanoTime();
         while (true) {
             try {
                 if (database.isMultiThreaded()) {
@@ -292,6 +398,7 @@ public abstract class Command implements CommandInterface {
                 break;
             }
         }
+        session.addLockWaitTime(System.nanoTime() - waitStart);
         return start == 0 ? now : start;
     }
 
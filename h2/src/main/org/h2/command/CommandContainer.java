@@ -6,11 +6,18 @@
  */
 package org.h2.command;
 
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import org.h2.api.DatabaseEventListener;
+import org.h2.command.dml.Insert;
+import org.h2.command.dml.Select;
 import org.h2.expression.Parameter;
 import org.h2.expression.ParameterInterface;
+import org.h2.message.DbException;
+import org.h2.result.LazyResult;
 import org.h2.result.ResultInterface;
+import org.h2.util.New;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
 
@@ -23,6 +30,9 @@ class CommandContainer extends Command {
     private Prepared prepared;
     private boolean readOnlyKnown;
     private boolean readOnly;
+    private ArrayList<Value[]> batchParameters;
+    private ArrayList<Value[]> retryValues;
+    private LazyResult lazyResult;
 
     CommandContainer(Parser parser, String sql, Prepared prepared) {
         super(parser, sql);
@@ -72,18 +82,163 @@ class CommandContainer extends Command {
         start();
         session.setLastScopeIdentity(ValueNull.INSTANCE);
         prepared.checkParameters();
-        int updateCount = prepared.update();
+        int updateCount;
+        if (retryValues != null) {
+            ((Insert) prepared).setInsertValues(retryValues);
+        }
+        if (batchParameters == null) {
+            updateCount = prepared.update();
+        } else if (prepared instanceof Insert && ((Insert) prepared).isBatchable()) {
+            updateCount = ((Insert) prepared).updateBatch(batchParameters);
+        } else {
+            // the statement was re-compiled, and can no longer be used
+            return -1;
+        }
         prepared.trace(startTime, updateCount);
         setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         return updateCount;
     }
 
+    public int[] executeBatchUpdate(ArrayList<Value[]> batchParameters, ArrayList<DbException> exceptions) {
+        int size = batchParameters.size();
+        if (size < 2 || !(prepared instanceof Insert) || !((Insert) prepared).isBatchable()) {
+            return super.executeBatchUpdate(batchParameters, exceptions);
+        }
+        // insert all rows at once; if that fails, insert the rows before the
+        // failing row again at once, and the remaining rows one by one to get
+        // the exceptions
+        Insert insert = (Insert) prepared;
+        ArrayList<Value[]> rows = null;
+        int failed = 0;
+        try {
+            if (executeBatch(batchParameters, null) == size) {
+                int[] result = new int[size];
+                Arrays.fill(result, 1);
+                return result;
+            }
+        } catch (DbException e) {
+            // the rows that were built before the failure
+            rows = insert.getBatchRows();
+            failed = insert.getBatchFailedRow();
+        } finally {
+            insert.clearBatchRows();
+        }
+        if (rows == null) {
+            // the statement was re-compiled
+            return super.executeBatchUpdate(batchParameters, exceptions);
+        }
+        int[] result = new int[size];
+        int start = 0;
+        while (failed > 0) {
+            try {
+                ArrayList<Value[]> sets = New.arrayList(batchParameters.subList(0, failed));
+                if (executeBatch(sets, New.arrayList(rows.subList(0, failed))) == failed) {
+                    Arrays.fill(result, 0, failed, 1);
+                    start = failed;
+                }
+                break;
+            } catch (DbException e) {
+                // one of the rows before failed as well
+                failed = insert.getBatchFailedRow();
+            } finally {
+                insert.clearBatchRows();
+            }
+        }
+        executeEach(batchParameters, exceptions, rows, start, result);
+        return result;
+    }
+
+    /**
+     * Execute the insert statement once for all sets of parameters.
+     *
+     * @param parameterSets the list of parameter values
+     * @param values the values of the rows that were already built, or null
+     * @return the update count, or -1 if the statement was re-compiled
+     */
+    private int executeBatch(ArrayList<Value[]> parameterSets, ArrayList<Value[]> values) {
+        if (values != null && prepared.needRecompile()) {
+            // the values only match the columns of the table
+            // if the statement is not re-compiled
+            return -1;
+        }
+        ArrayList<? extends ParameterInterface> parameters = getParameters();
+        Value[] first = parameterSets.get(0);
+        for (int i = 0; i < first.length; i++) {
+            parameters.get(i).setValue(first[i], false);
+        }
+        batchParameters = parameterSets;
+        retryValues = values;
+        try {
+            return executeUpdate();
+        } finally {
+            batchParameters = null;
+            retryValues = null;
+        }
+    }
+
+    /**
+     * Execute the insert statement once for each set of parameters, starting
+     * with the row that caused the batch update to fail. The values of the
+     * rows that were already built are inserted again, so that the values
+     * generated by sequences are not lost.
+     *
+     * @param parameterSets the list of parameter values
+     * @param exceptions the list where the exceptions are added
+     * @param rows the values of the rows that were already built
+     * @param start the index of the first row to insert
+     * @param result the update counts
+     */
+    private void executeEach(ArrayList<Value[]> parameterSets, ArrayList<DbException> exceptions,
+            ArrayList<Value[]> rows, int start, int[] result) {
+        Prepared p = prepared;
+        for (int i = start, size = parameterSets.size(); i < size; i++) {
+            ArrayList<? extends ParameterInterface> parameters = getParameters();
+            Value[] set = parameterSets.get(i);
+            for (int j = 0; j < set.length; j++) {
+                parameters.get(j).setValue(set[j], false);
+            }
+            try {
+                // the values only match the columns of the table
+                // if the statement is not re-compiled
+                if (i < rows.size() && prepared == p && !p.needRecompile()) {
+                    retryValues = New.arrayList();
+                    retryValues.add(rows.get(i));
+                }
+                result[i] = executeUpdate();
+            } catch (Exception e) {
+                exceptions.add(DbException.convert(e));
+                result[i] = Statement.EXECUTE_FAILED;
+            } finally {
+                retryValues = null;
+            }
+        }
+    }
+
     public ResultInterface query(int maxrows) {
+        return query(maxrows, false);
+    }
+
+    public ResultInterface queryLazy(int maxrows) {
+        return query(maxrows, true);
+    }
+
+    public boolean canReuse() {
+        // the prepared statement is still in use by an open lazy result
+        return super.canReuse() && (lazyResult == null || lazyResult.isDone());
+    }
+
+    private ResultInterface query(int maxrows, boolean lazy) {
         recompileIfRequired();
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         start();
         prepared.checkParameters();
-        ResultInterface result = prepared.query(maxrows);
+        ResultInterface result;
+        if (lazy && prepared instanceof Select) {
+            result = ((Select) prepared).queryLazy(maxrows);
+            lazyResult = result instanceof LazyResult ? (LazyResult) result : null;
+        } else {
+            result = prepared.query(maxrows);
+        }
         prepared.trace(startTime, result.getRowCount());
         setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         return result;
@@ -8,7 +8,9 @@ package org.h2.command;
 
 import java.util.ArrayList;
 import org.h2.expression.ParameterInterface;
+import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
+import org.h2.value.Value;
 
 /**
  * Represents a SQL statement.
@@ -484,6 +486,18 @@ public interface CommandInterface {
      */
     int executeUpdate();
 
+    /**
+     * Execute the statement once for each set of parameters. If executing the
+     * statement fails for a set of parameters, the update count is
+     * Statement.EXECUTE_FAILED, the exception is added to the list, and the
+     * remaining sets are still executed.
+     *
+     * @param batchParameters the list of parameter values
+     * @param exceptions the list where the exceptions are added
+     * @return the update counts
+     */
+    int[] executeBatchUpdate(ArrayList<Value[]> batchParameters, ArrayList<DbException> exceptions);
+
     /**
      * Close the statement.
      */
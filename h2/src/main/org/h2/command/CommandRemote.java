@@ -7,8 +7,12 @@
 package org.h2.command;
 
 import java.io.IOException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
 import org.h2.engine.SessionRemote;
 import org.h2.expression.ParameterInterface;
 import org.h2.expression.ParameterRemote;
@@ -17,6 +21,7 @@ import org.h2.message.Trace;
 import org.h2.result.ResultInterface;
 import org.h2.result.ResultRemote;
 import org.h2.util.New;
+import org.h2.util.StatementBuilder;
 import org.h2.value.Transfer;
 import org.h2.value.Value;
 
@@ -169,6 +174,14 @@ public class CommandRemote implements CommandInterface {
     public int executeUpdate() {
         checkParameters();
         synchronized (session) {
+            if (transferList.size() > 1) {
+                prepareIfRequired();
+                Integer updateCount = executeUpdateCluster();
+                if (updateCount != null) {
+                    return updateCount;
+                }
+                // no server could be reached: the session was re-connected
+            }
             int updateCount = 0;
             boolean autoCommit = false;
             for (int i = 0, count = 0; i < transferList.size(); i++) {
@@ -192,6 +205,241 @@ public class CommandRemote implements CommandInterface {
         }
     }
 
+    /**
+     * Send the update to all cluster nodes at the same time, and then read the
+     * replies. This way the latency is the latency of the slowest node, and
+     * not the sum of the latencies of all nodes. If the nodes return different
+     * update counts or errors, an exception is thrown, and in auto-commit mode
+     * the statement is rolled back on all nodes.
+     *
+     * @return the update count, or null if no server could be reached
+     */
+    private Integer executeUpdateCluster() {
+        session.traceOperation("COMMAND_EXECUTE_UPDATE", id);
+        Transfer[] transfers = session.getTransfers();
+        int len = transfers.length;
+        IOException[] errors = new IOException[len];
+        for (int i = 0; i < len; i++) {
+            try {
+                transfers[i].writeInt(SessionRemote.COMMAND_EXECUTE_UPDATE).writeInt(id);
+                sendParameters(transfers[i]);
+                transfers[i].flush();
+            } catch (IOException e) {
+                errors[i] = e;
+            }
+        }
+        DbException[] exceptions = new DbException[len];
+        int[] updateCounts = new int[len];
+        boolean autoCommit = false;
+        int first = -1;
+        boolean differ = false;
+        for (int i = 0; i < len; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                session.readStatus(transfers[i]);
+                updateCounts[i] = transfers[i].readInt();
+                autoCommit = transfers[i].readBoolean();
+            } catch (IOException e) {
+                errors[i] = e;
+                continue;
+            } catch (DbException e) {
+                exceptions[i] = e;
+            }
+            if (first < 0) {
+                first = i;
+            } else if ((exceptions[i] == null) != (exceptions[first] == null) ||
+                    updateCounts[i] != updateCounts[first]) {
+                differ = true;
+            }
+        }
+        session.removeServers(transfers, errors);
+        if (first < 0) {
+            return null;
+        }
+        if (differ) {
+            StatementBuilder buff = new StatementBuilder();
+            for (int i = 0; i < len; i++) {
+                if (errors[i] == null) {
+                    buff.appendExceptFirst(", ");
+                    buff.append(exceptions[i] == null ? String.valueOf(updateCounts[i]) :
+                        "error " + exceptions[i].getErrorCode());
+                }
+            }
+            trace.error(null, "cluster nodes returned different results: " + buff + " for " + sql);
+            if (session.getAutoCommit()) {
+                session.rollbackIfCluster();
+            }
+            throw DbException.get(ErrorCode.CLUSTER_ERROR_RESULTS_DIFFER_1, buff.toString());
+        }
+        if (exceptions[first] != null) {
+            throw exceptions[first];
+        }
+        session.setAutoCommitFromServer(autoCommit);
+        session.autoCommitIfCluster();
+        session.readSessionState();
+        return updateCounts[first];
+    }
+
+    public int[] executeBatchUpdate(ArrayList<Value[]> batchParameters, ArrayList<DbException> exceptions) {
+        if (batchParameters.size() == 0) {
+            return new int[0];
+        }
+        if (session.getClientVersion() < Constants.TCP_PROTOCOL_VERSION_13 || !isSet(batchParameters)) {
+            // one round trip per set of parameters
+            return Command.executeEach(this, batchParameters, exceptions);
+        }
+        synchronized (session) {
+            if (transferList.size() > 1) {
+                prepareIfRequired();
+                int[] result = executeBatchUpdateCluster(batchParameters, exceptions);
+                if (result != null) {
+                    return result;
+                }
+                // no server could be reached: the session was re-connected
+            }
+            int size = batchParameters.size();
+            int[] result = new int[size];
+            boolean autoCommit = false;
+            for (int i = 0, count = 0; i < transferList.size(); i++) {
+                prepareIfRequired();
+                Transfer transfer = transferList.get(i);
+                try {
+                    session.traceOperation("COMMAND_EXECUTE_BATCH_UPDATE", id);
+                    sendBatchUpdate(transfer, batchParameters);
+                    session.done(transfer);
+                    exceptions.clear();
+                    for (int j = 0; j < size; j++) {
+                        result[j] = transfer.readInt();
+                        if (result[j] == Statement.EXECUTE_FAILED) {
+                            exceptions.add(session.readException(transfer));
+                        }
+                    }
+                    autoCommit = transfer.readBoolean();
+                } catch (IOException e) {
+                    session.removeServer(e, i--, ++count);
+                }
+            }
+            session.setAutoCommitFromServer(autoCommit);
+            session.autoCommitIfCluster();
+            session.readSessionState();
+            return result;
+        }
+    }
+
+    /**
+     * Send the batch to all cluster nodes at the same time, and then read the
+     * replies, the same way as single updates are sent. If the nodes return
+     * different update counts or errors for any of the parameter sets, an
+     * exception is thrown, and in auto-commit mode the batch is rolled back on
+     * all nodes.
+     *
+     * @param batchParameters the list of parameter sets
+     * @param exceptions the list the exceptions of the failed rows are added to
+     * @return the update counts, or null if no server could be reached
+     */
+    private int[] executeBatchUpdateCluster(ArrayList<Value[]> batchParameters, ArrayList<DbException> exceptions) {
+        session.traceOperation("COMMAND_EXECUTE_BATCH_UPDATE", id);
+        Transfer[] transfers = session.getTransfers();
+        int len = transfers.length;
+        IOException[] errors = new IOException[len];
+        for (int i = 0; i < len; i++) {
+            try {
+                sendBatchUpdate(transfers[i], batchParameters);
+                transfers[i].flush();
+            } catch (IOException e) {
+                errors[i] = e;
+            }
+        }
+        int size = batchParameters.size();
+        DbException[] statementErrors = new DbException[len];
+        int[][] updateCounts = new int[len][];
+        ArrayList<DbException> firstExceptions = New.arrayList();
+        boolean autoCommit = false;
+        int first = -1;
+        boolean differ = false;
+        for (int i = 0; i < len; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            ArrayList<DbException> list = first < 0 ? firstExceptions : New.<DbException>arrayList();
+            try {
+                session.readStatus(transfers[i]);
+                int[] counts = new int[size];
+                for (int j = 0; j < size; j++) {
+                    counts[j] = transfers[i].readInt();
+                    if (counts[j] == Statement.EXECUTE_FAILED) {
+                        list.add(session.readException(transfers[i]));
+                    }
+                }
+                updateCounts[i] = counts;
+                autoCommit = transfers[i].readBoolean();
+            } catch (IOException e) {
+                errors[i] = e;
+                firstExceptions.clear();
+                continue;
+            } catch (DbException e) {
+                statementErrors[i] = e;
+            }
+            if (first < 0) {
+                first = i;
+            } else if ((statementErrors[i] == null) != (statementErrors[first] == null) ||
+                    !Arrays.equals(updateCounts[i], updateCounts[first])) {
+                differ = true;
+            }
+        }
+        session.removeServers(transfers, errors);
+        if (first < 0) {
+            return null;
+        }
+        if (differ) {
+            StatementBuilder buff = new StatementBuilder();
+            for (int i = 0; i < len; i++) {
+                if (errors[i] == null) {
+                    buff.appendExceptFirst(", ");
+                    buff.append(statementErrors[i] == null ? Arrays.toString(updateCounts[i]) :
+                        "error " + statementErrors[i].getErrorCode());
+                }
+            }
+            trace.error(null, "cluster nodes returned different results: " + buff + " for " + sql);
+            if (session.getAutoCommit()) {
+                session.rollbackIfCluster();
+            }
+            throw DbException.get(ErrorCode.CLUSTER_ERROR_RESULTS_DIFFER_1, buff.toString());
+        }
+        if (statementErrors[first] != null) {
+            throw statementErrors[first];
+        }
+        exceptions.clear();
+        exceptions.addAll(firstExceptions);
+        session.setAutoCommitFromServer(autoCommit);
+        session.autoCommitIfCluster();
+        session.readSessionState();
+        return updateCounts[first];
+    }
+
+    private void sendBatchUpdate(Transfer transfer, ArrayList<Value[]> batchParameters) throws IOException {
+        transfer.writeInt(SessionRemote.COMMAND_EXECUTE_BATCH_UPDATE).writeInt(id).writeInt(batchParameters.size());
+        for (Value[] set : batchParameters) {
+            transfer.writeInt(set.length);
+            for (Value v : set) {
+                transfer.writeValue(v);
+            }
+        }
+    }
+
+    private static boolean isSet(ArrayList<Value[]> batchParameters) {
+        for (Value[] set : batchParameters) {
+            for (Value v : set) {
+                if (v == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private void checkParameters() {
         for (ParameterInterface p : parameters) {
             p.checkSet();
@@ -118,6 +118,7 @@ import org.h2.result.SortOrder;
 import org.h2.schema.Schema;
 import org.h2.schema.Sequence;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.FunctionTable;
 import org.h2.table.IndexColumn;
 import org.h2.table.RangeTable;
@@ -125,6 +126,7 @@ import org.h2.table.Table;
 import org.h2.table.TableFilter;
 import org.h2.table.TableView;
 import org.h2.table.TableFilter.TableFilterVisitor;
+import org.h2.util.IntArray;
 import org.h2.util.MathUtils;
 import org.h2.util.New;
 import org.h2.util.StatementBuilder;
@@ -3584,6 +3586,9 @@ public class Parser {
             int value = getPositiveInt();
             column.setSelectivity(value);
         }
+        if (readIf("STATISTICS")) {
+            column.setStatistics(readColumnStatistics(column));
+        }
         String comment = readCommentIf();
         if (comment != null) {
             column.setComment(comment);
@@ -3591,6 +3596,47 @@ public class Parser {
         return column;
     }
 
+    private ColumnStatistics readColumnStatistics(Column column) {
+        read("(");
+        int rowCount = getPositiveInt();
+        read(",");
+        int nullCount = getPositiveInt();
+        read(",");
+        int distinctCount = getPositiveInt();
+        read(",");
+        read("(");
+        ArrayList<Value> mostCommonValues = New.arrayList();
+        IntArray mostCommonCounts = new IntArray();
+        if (!readIf(")")) {
+            do {
+                mostCommonValues.add(readColumnValue(column));
+                read(",");
+                mostCommonCounts.add(getPositiveInt());
+            } while (readIf(","));
+            read(")");
+        }
+        read(",");
+        read("(");
+        ArrayList<Value> histogram = New.arrayList();
+        if (!readIf(")")) {
+            do {
+                histogram.add(readColumnValue(column));
+            } while (readIf(","));
+            read(")");
+        }
+        read(")");
+        int[] counts = new int[mostCommonCounts.size()];
+        mostCommonCounts.toArray(counts);
+        return new ColumnStatistics(database.getCompareMode(), rowCount, nullCount, distinctCount,
+                mostCommonValues.toArray(new Value[mostCommonValues.size()]), counts,
+                histogram.toArray(new Value[histogram.size()]));
+    }
+
+    private Value readColumnValue(Column column) {
+        Expression expr = readExpression().optimize(session);
+        return column.convert(expr.getValue(session));
+    }
+
     private void parseAutoIncrement(Column column) {
         long start = 1, increment = 1;
         if (readIf("(")) {
@@ -6,16 +6,23 @@
  */
 package org.h2.command.ddl;
 
+import java.util.ArrayList;
+import java.util.Random;
 import org.h2.command.CommandInterface;
 import org.h2.command.Prepared;
 import org.h2.engine.Database;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
+import org.h2.index.Cursor;
 import org.h2.result.ResultInterface;
+import org.h2.result.Row;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.RegularTable;
 import org.h2.table.Table;
+import org.h2.util.New;
 import org.h2.util.StatementBuilder;
+import org.h2.value.CompareMode;
 import org.h2.value.Value;
 
 /**
@@ -104,6 +111,7 @@ public class Analyze extends DefineCommand {
             int selectivity = result.currentRow()[j].getInt();
             columns[j].setSelectivity(selectivity);
         }
+        analyzeColumns(session, table, sample);
         if (manual) {
             db.update(session, table);
         } else {
@@ -119,6 +127,71 @@ public class Analyze extends DefineCommand {
         }
     }
 
+    /**
+     * Calculate the statistics (most common values and histogram) of all
+     * columns. All rows of the table are read, and a random sample of the rows
+     * is kept (reservoir sampling), so that the statistics don't depend on the
+     * order of the rows. The sample size is at most the database setting
+     * ANALYZE_SAMPLE, even if all rows are used for the selectivity.
+     *
+     * @param session the session
+     * @param table the table
+     * @param sample the number of sample rows (0 for all rows)
+     */
+    private static void analyzeColumns(Session session, Table table, int sample) {
+        Column[] columns = table.getColumns();
+        boolean[] skip = new boolean[columns.length];
+        ArrayList<ArrayList<Value>> samples = New.arrayList();
+        for (int j = 0; j < columns.length; j++) {
+            switch (columns[j].getType()) {
+            case Value.BLOB:
+            case Value.CLOB:
+            case Value.JAVA_OBJECT:
+            case Value.ARRAY:
+            case Value.RESULT_SET:
+                skip[j] = true;
+                break;
+            default:
+            }
+            samples.add(New.<Value>arrayList());
+        }
+        int size = session.getDatabase().getSettings().analyzeSample;
+        if (sample > 0) {
+            size = Math.min(size, sample);
+        }
+        Random random = new Random();
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        for (long count = 0; cursor.next(); count++) {
+            int pos;
+            if (count < size) {
+                pos = -1;
+            } else {
+                pos = (int) (random.nextDouble() * (count + 1));
+                if (pos >= size) {
+                    continue;
+                }
+            }
+            Row row = cursor.get();
+            for (int j = 0; j < columns.length; j++) {
+                if (!skip[j]) {
+                    if (pos < 0) {
+                        samples.get(j).add(row.getValue(j));
+                    } else {
+                        samples.get(j).set(pos, row.getValue(j));
+                    }
+                }
+            }
+        }
+        CompareMode compareMode = session.getDatabase().getCompareMode();
+        for (int j = 0; j < columns.length; j++) {
+            ColumnStatistics statistics = null;
+            if (!skip[j]) {
+                statistics = ColumnStatistics.create(compareMode, samples.get(j));
+            }
+            columns[j].setStatistics(statistics);
+        }
+    }
+
     public void setTop(int top) {
         this.sampleRows = top;
     }
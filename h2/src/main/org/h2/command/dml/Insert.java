@@ -7,21 +7,25 @@
 package org.h2.command.dml;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import org.h2.api.Trigger;
 import org.h2.command.Command;
 import org.h2.command.CommandInterface;
 import org.h2.command.Prepared;
 import org.h2.constant.ErrorCode;
+import org.h2.engine.DbObject;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
 import org.h2.index.Index;
 import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
 import org.h2.result.ResultTarget;
 import org.h2.result.Row;
+import org.h2.schema.Sequence;
 import org.h2.table.Column;
 import org.h2.table.Table;
 import org.h2.util.New;
@@ -34,6 +38,11 @@ import org.h2.value.Value;
  */
 public class Insert extends Prepared implements ResultTarget {
 
+    /**
+     * The maximum number of rows that are added to the table at once.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private Table table;
     private Column[] columns;
     private final ArrayList<Expression[]> list = New.arrayList();
@@ -41,6 +50,32 @@ public class Insert extends Prepared implements ResultTarget {
     private boolean sortedInsertMode;
     private int rowNumber;
     private boolean insertFromSelect;
+    private ArrayList<Value[]> batchParameters;
+    private ArrayList<Row> batch;
+
+    /**
+     * The values of the rows built by a batch update that failed, including
+     * the values generated by sequences.
+     */
+    private ArrayList<Value[]> batchRows;
+
+    /**
+     * The index of the row that caused the last batch update to fail.
+     */
+    private int batchFailedRow;
+
+    /**
+     * The values to insert instead of evaluating the expressions (one row for
+     * each set of batch parameters), or null.
+     */
+    private ArrayList<Value[]> insertValues;
+
+    /**
+     * Whether the rows of the values list can be evaluated before the previous
+     * rows are added, that means the expressions don't read from tables or
+     * call user defined functions.
+     */
+    private boolean independentRows = true;
 
     public Insert(Session session) {
         super(session);
@@ -83,47 +118,154 @@ public class Insert extends Prepared implements ResultTarget {
         try {
             return insertRows();
         } finally {
+            batch = null;
+            insertValues = null;
+            if (batchParameters == null) {
+                batchRows = null;
+            }
             if (index != null) {
                 index.setSortedInsertMode(false);
             }
         }
     }
 
+    /**
+     * Check if this statement can insert one row for each set of parameter
+     * values in one operation (see updateBatch). This is the case for
+     * statements of the form INSERT INTO ... VALUES(...) with one row, if the
+     * table supports adding rows in batches.
+     *
+     * @return true if it can
+     */
+    public boolean isBatchable() {
+        return list.size() == 1 && independentRows && table.canAddRows();
+    }
+
+    /**
+     * Insert one row for each set of parameter values. The statement level
+     * triggers are only called once.
+     *
+     * @param batchParameters the list of parameter values
+     * @return the update count
+     */
+    public int updateBatch(ArrayList<Value[]> batchParameters) {
+        this.batchParameters = batchParameters;
+        batchRows = New.arrayList();
+        try {
+            int count = update();
+            batchRows = null;
+            return count;
+        } finally {
+            this.batchParameters = null;
+        }
+    }
+
+    /**
+     * Get the values of the rows that were built by the last batch update, if
+     * it failed. The list contains the rows that were built before the
+     * failure. It is kept until clearBatchRows is called.
+     *
+     * @return the list of values, or null
+     */
+    public ArrayList<Value[]> getBatchRows() {
+        return batchRows;
+    }
+
+    /**
+     * Get the index of the row that caused the last batch update to fail. All
+     * rows before this row could be added.
+     *
+     * @return the row index
+     */
+    public int getBatchFailedRow() {
+        return batchFailedRow;
+    }
+
+    /**
+     * Release the values of the rows of the last batch update.
+     */
+    public void clearBatchRows() {
+        batchRows = null;
+    }
+
+    /**
+     * Insert the given values when the statement is executed the next time,
+     * instead of evaluating the expressions. This is used to insert rows of a
+     * failed batch update again, without using new sequence values.
+     *
+     * @param values the values of all columns of the table, one row for each
+     *            set of batch parameters (or one row)
+     */
+    public void setInsertValues(ArrayList<Value[]> values) {
+        this.insertValues = values;
+    }
+
     private int insertRows() {
         session.getUser().checkRight(table, Right.INSERT);
         setCurrentRowNumber(0);
         table.fire(session, Trigger.INSERT, true);
         rowNumber = 0;
+        if (independentRows && table.canAddRows()) {
+            batch = New.arrayList();
+        }
         int listSize = list.size();
         if (listSize > 0) {
+            if (batchParameters != null) {
+                listSize = batchParameters.size();
+            }
             int columnLen = columns.length;
             for (int x = 0; x < listSize; x++) {
                 Row newRow = table.getTemplateRow();
-                Expression[] expr = list.get(x);
+                Expression[] expr;
+                if (batchParameters == null) {
+                    expr = list.get(x);
+                } else {
+                    expr = list.get(0);
+                    Value[] set = batchParameters.get(x);
+                    for (int i = 0; i < set.length; i++) {
+                        parameters.get(i).setValue(set[i], false);
+                    }
+                }
                 setCurrentRowNumber(x + 1);
-                for (int i = 0; i < columnLen; i++) {
-                    Column c = columns[i];
-                    int index = c.getColumnId();
-                    Expression e = expr[i];
-                    if (e != null) {
-                        // e can be null (DEFAULT)
-                        e = e.optimize(session);
-                        try {
-                            Value v = c.convert(e.getValue(session));
-                            newRow.setValue(index, v);
-                        } catch (DbException ex) {
-                            throw setRow(ex, x, getSQL(expr));
+                batchFailedRow = x;
+                if (insertValues != null) {
+                    copyInsertValues(newRow, insertValues.get(x));
+                } else {
+                    for (int i = 0; i < columnLen; i++) {
+                        Column c = columns[i];
+                        int index = c.getColumnId();
+                        Expression e = expr[i];
+                        if (e != null) {
+                            // e can be null (DEFAULT)
+                            e = e.optimize(session);
+                            try {
+                                Value v = c.convert(e.getValue(session));
+                                newRow.setValue(index, v);
+                            } catch (DbException ex) {
+                                throw setRow(ex, x, getSQL(expr));
+                            }
                         }
                     }
                 }
                 rowNumber++;
                 table.validateConvertUpdateSequence(session, newRow);
+                if (batchParameters != null) {
+                    Value[] values = new Value[newRow.getColumnCount()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = newRow.getValue(i);
+                    }
+                    batchRows.add(values);
+                }
                 boolean done = table.fireBeforeRow(session, null, newRow);
                 if (!done) {
-                    table.lock(session, true, false);
-                    table.addRow(session, newRow);
-                    session.log(table, UndoLogRecord.INSERT, newRow);
-                    table.fireAfterRow(session, null, newRow, false);
+                    if (batch != null) {
+                        addToBatch(newRow);
+                    } else {
+                        table.lock(session, true, false);
+                        table.addRow(session, newRow);
+                        session.log(table, UndoLogRecord.INSERT, newRow);
+                        table.fireAfterRow(session, null, newRow, false);
+                    }
                 }
             }
         } else {
@@ -139,6 +281,9 @@ public class Insert extends Prepared implements ResultTarget {
                 rows.close();
             }
         }
+        if (batch != null) {
+            flushBatch();
+        }
         table.fire(session, Trigger.INSERT, false);
         return rowNumber;
     }
@@ -159,12 +304,77 @@ public class Insert extends Prepared implements ResultTarget {
         table.validateConvertUpdateSequence(session, newRow);
         boolean done = table.fireBeforeRow(session, null, newRow);
         if (!done) {
-            table.addRow(session, newRow);
-            session.log(table, UndoLogRecord.INSERT, newRow);
-            table.fireAfterRow(session, null, newRow, false);
+            if (batch != null) {
+                addToBatch(newRow);
+            } else {
+                table.addRow(session, newRow);
+                session.log(table, UndoLogRecord.INSERT, newRow);
+                table.fireAfterRow(session, null, newRow, false);
+            }
+        }
+    }
+
+    private void copyInsertValues(Row newRow, Value[] values) {
+        Column[] tableColumns = table.getColumns();
+        for (int i = 0; i < values.length; i++) {
+            Value v = values[i];
+            newRow.setValue(i, v);
+            if (tableColumns[i].getSequence() != null) {
+                session.setLastIdentity(v);
+            }
+        }
+    }
+
+    private void addToBatch(Row newRow) {
+        batch.add(newRow);
+        if (batch.size() >= MAX_BATCH_SIZE) {
+            flushBatch();
         }
     }
 
+    /**
+     * Add the buffered rows to the table. There are no after row triggers and
+     * constraints (otherwise the rows are not buffered), so only the undo log
+     * entries need to be written. The table is locked only now, as getting
+     * the next value of a sequence may commit the system session, which
+     * releases its locks.
+     */
+    private void flushBatch() {
+        table.lock(session, true, false);
+        try {
+            table.addRows(session, batch);
+        } catch (DbException e) {
+            if (batchRows != null) {
+                findFailedRow();
+            }
+            throw e;
+        }
+        for (Row row : batch) {
+            session.log(table, UndoLogRecord.INSERT, row);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Add the buffered rows of a batch update one at a time, after adding
+     * them at once failed, to find the row that caused the failure. The
+     * statement is rolled back afterwards.
+     */
+    private void findFailedRow() {
+        int first = rowNumber - batch.size();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            Row row = batch.get(i);
+            batchFailedRow = first + i;
+            try {
+                table.addRow(session, row);
+            } catch (DbException e) {
+                return;
+            }
+            session.log(table, UndoLogRecord.INSERT, row);
+        }
+        batchFailedRow = first;
+    }
+
     public int getRowCount() {
         return rowNumber;
     }
@@ -237,6 +447,20 @@ public class Insert extends Prepared implements ResultTarget {
                     }
                 }
             }
+            HashSet<DbObject> dependencies = New.hashSet();
+            ExpressionVisitor visitor = ExpressionVisitor.getDependenciesVisitor(dependencies);
+            for (Expression[] expr : list) {
+                for (Expression e : expr) {
+                    if (e != null) {
+                        e.isEverything(visitor);
+                    }
+                }
+            }
+            for (DbObject obj : dependencies) {
+                if (!(obj instanceof Sequence)) {
+                    independentRows = false;
+                }
+            }
         } else {
             query.prepare();
             if (query.getColumnCount() != columns.length) {
@@ -8,7 +8,6 @@ package org.h2.command.dml;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import org.h2.api.Trigger;
 import org.h2.command.CommandInterface;
@@ -17,6 +16,7 @@ import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.AggregateData;
 import org.h2.expression.Comparison;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
@@ -28,7 +28,9 @@ import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
+import org.h2.result.LazyResult;
 import org.h2.result.LocalResult;
+import org.h2.result.ResultDiskBuffer;
 import org.h2.result.ResultInterface;
 import org.h2.result.ResultTarget;
 import org.h2.result.Row;
@@ -61,6 +63,7 @@ import org.h2.value.ValueNull;
  * @author Joel Turkel (Group sorted query)
  */
 public class Select extends Query {
+
     private TableFilter topTableFilter;
     private final ArrayList<TableFilter> filters = New.arrayList();
     private final ArrayList<TableFilter> topFilters = New.arrayList();
@@ -73,7 +76,9 @@ public class Select extends Query {
     private ArrayList<Expression> group;
     private int[] groupIndex;
     private boolean[] groupByExpression;
-    private HashMap<Expression, Object> currentGroup;
+    private Object[] currentGroup;
+    private final ArrayList<Expression> groupSlots = New.arrayList();
+    private boolean groupSlotsMergeable = true;
     private int havingIndex;
     private boolean isGroupQuery, isGroupSortedQuery;
     private boolean isForUpdate, isForUpdateMvcc;
@@ -127,10 +132,60 @@ public class Select extends Query {
         this.group = group;
     }
 
-    public HashMap<Expression, Object> getCurrentGroup() {
+    /**
+     * Get the data of the current group. There is one slot per expression that
+     * keeps data per group (aggregates, and columns that are not grouped).
+     *
+     * @return the data, or null if this is not a group query
+     */
+    public Object[] getCurrentGroup() {
         return currentGroup;
     }
 
+    /**
+     * Add a slot for an expression that keeps data per group.
+     *
+     * @param expr the expression
+     * @param mergeable whether the data of two parts of the same group can be
+     *            merged, which is required to buffer groups to disk
+     * @return the slot index
+     */
+    public int addGroupSlot(Expression expr, boolean mergeable) {
+        groupSlots.add(expr);
+        groupSlotsMergeable &= mergeable;
+        return groupSlots.size() - 1;
+    }
+
+    /**
+     * Get the data of an expression in the current group.
+     *
+     * @param slot the slot index (-1 if no slot was added yet)
+     * @return the data, or null
+     */
+    public Object getCurrentGroupData(int slot) {
+        return slot < 0 || slot >= currentGroup.length ? null : currentGroup[slot];
+    }
+
+    /**
+     * Set the data of an expression in the current group.
+     *
+     * @param slot the slot index
+     * @param data the data
+     */
+    public void setCurrentGroupData(int slot, Object data) {
+        if (slot >= currentGroup.length) {
+            // the slot was added after the group was created
+            Object[] group = new Object[groupSlots.size()];
+            System.arraycopy(currentGroup, 0, group, 0, currentGroup.length);
+            currentGroup = group;
+        }
+        currentGroup[slot] = data;
+    }
+
+    private Object[] createGroup() {
+        return new Object[groupSlots.size()];
+    }
+
     public int getCurrentGroupRowId() {
         return currentGroupRowId;
     }
@@ -170,11 +225,11 @@ public class Select extends Query {
 
                 if (previousKeyValues == null) {
                     previousKeyValues = keyValues;
-                    currentGroup = New.hashMap();
+                    currentGroup = createGroup();
                 } else if (!Arrays.equals(previousKeyValues, keyValues)) {
                     addGroupSortedRow(previousKeyValues, columnCount, result);
                     previousKeyValues = keyValues;
-                    currentGroup = New.hashMap();
+                    currentGroup = createGroup();
                 }
                 currentGroupRowId++;
 
@@ -304,49 +359,90 @@ public class Select extends Query {
     }
 
     private void queryGroup(int columnCount, LocalResult result) {
-        ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+        ValueHashMap<Object[]> groups = ValueHashMap.newInstance();
+        Database db = session.getDatabase();
+        int maxGroups = db.isPersistent() && !db.isReadOnly() ? db.getMaxMemoryRows() : Integer.MAX_VALUE;
+        ResultDiskBuffer[] partitions = null;
+        int[] partitionRowCount = null;
+        boolean[] spilled = null;
         int rowNumber = 0;
         setCurrentRowNumber(0);
         ValueArray defaultGroup = ValueArray.get(new Value[0]);
-        while (topTableFilter.next()) {
-            setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
-                Value key;
-                rowNumber++;
-                if (groupIndex == null) {
-                    key = defaultGroup;
-                } else {
-                    Value[] keyValues = new Value[groupIndex.length];
-                    // update group
-                    for (int i = 0; i < groupIndex.length; i++) {
-                        int idx = groupIndex[i];
-                        Expression expr = expressions.get(idx);
-                        keyValues[i] = expr.getValue(session);
+        try {
+            while (topTableFilter.next()) {
+                setCurrentRowNumber(rowNumber + 1);
+                if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+                    Value key;
+                    rowNumber++;
+                    if (groupIndex == null) {
+                        key = defaultGroup;
+                    } else {
+                        Value[] keyValues = new Value[groupIndex.length];
+                        // update group
+                        for (int i = 0; i < groupIndex.length; i++) {
+                            int idx = groupIndex[i];
+                            Expression expr = expressions.get(idx);
+                            keyValues[i] = expr.getValue(session);
+                        }
+                        key = ValueArray.get(keyValues);
+                    }
+                    Object[] values = groups.get(key);
+                    if (values == null) {
+                        values = createGroup();
+                        groups.put(key, values);
+                    }
+                    currentGroup = values;
+                    currentGroupRowId++;
+                    int len = columnCount;
+                    for (int i = 0; i < len; i++) {
+                        if (groupByExpression == null || !groupByExpression[i]) {
+                            Expression expr = expressions.get(i);
+                            expr.updateAggregate(session);
+                        }
+                    }
+                    if (currentGroup != values) {
+                        groups.put(key, currentGroup);
+                    }
+                    if (groups.size() > maxGroups && groupSlotsMergeable) {
+                        if (partitions == null) {
+                            partitions = createGroupPartitions(rowNumber, groups.size(), maxGroups);
+                            partitionRowCount = new int[partitions.length];
+                            spilled = new boolean[partitions.length];
+                        }
+                        groups = writeGroups(groups, partitions, partitionRowCount, spilled, maxGroups / 2);
+                    }
+                    if (sampleSize > 0 && rowNumber >= sampleSize) {
+                        break;
                     }
-                    key = ValueArray.get(keyValues);
                 }
-                HashMap<Expression, Object> values = groups.get(key);
-                if (values == null) {
-                    values = new HashMap<Expression, Object>();
-                    groups.put(key, values);
+            }
+            if (partitions == null) {
+                if (groupIndex == null && groups.size() == 0) {
+                    groups.put(defaultGroup, createGroup());
                 }
-                currentGroup = values;
-                currentGroupRowId++;
-                int len = columnCount;
-                for (int i = 0; i < len; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
+                addGroupRows(groups, columnCount, result);
+            } else {
+                groups = writeGroups(groups, partitions, partitionRowCount, spilled, Integer.MAX_VALUE);
+                addGroupRows(groups, columnCount, result);
+                groups = null;
+                for (int i = 0; i < partitions.length; i++) {
+                    if (spilled[i]) {
+                        partitions[i].done();
+                        addGroupRows(readGroups(partitions[i], partitionRowCount[i]), columnCount, result);
                     }
+                    partitions[i].close();
                 }
-                if (sampleSize > 0 && rowNumber >= sampleSize) {
-                    break;
+            }
+        } finally {
+            if (partitions != null) {
+                for (ResultDiskBuffer p : partitions) {
+                    p.close();
                 }
             }
         }
-        if (groupIndex == null && groups.size() == 0) {
-            groups.put(defaultGroup, new HashMap<Expression, Object>());
-        }
+    }
+
+    private void addGroupRows(ValueHashMap<Object[]> groups, int columnCount, LocalResult result) {
         ArrayList<Value> keys = groups.keys();
         for (Value v : keys) {
             ValueArray key = (ValueArray) v;
@@ -371,6 +467,143 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Create the temporary files for a group query with too many groups to
+     * keep them in memory. The groups are partitioned by the hash code of the
+     * key; each partition should fit in memory.
+     *
+     * @param rowNumber the number of rows processed so far
+     * @param groupCount the number of groups so far
+     * @param maxGroups the maximum number of groups to keep in memory
+     * @return the partitions
+     */
+    private ResultDiskBuffer[] createGroupPartitions(int rowNumber, int groupCount, int maxGroups) {
+        // estimate the number of groups, assuming the rest of the table
+        // contains new groups at the same rate
+        long rowCount = topTableFilter.getTable().getRowCountApproximation();
+        long expected = groupCount * Math.max(1, rowCount / Math.max(1, rowNumber));
+        int count = 2;
+        while (count < ResultDiskBuffer.MAX_PARTITIONS && count * (long) maxGroups < 2 * expected) {
+            count *= 2;
+        }
+        ResultDiskBuffer[] partitions = new ResultDiskBuffer[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new ResultDiskBuffer(session, null, 1 + groupSlots.size());
+        }
+        return partitions;
+    }
+
+    /**
+     * Write the groups of the spilled partitions to the temporary files (hybrid
+     * hash aggregation). The groups of the other partitions stay in memory, so
+     * that frequent keys are only written once if at all. If there are more
+     * than the given number of groups left in memory, the partitions with the
+     * most groups are spilled as well.
+     *
+     * @param groups the groups
+     * @param partitions the temporary files
+     * @param partitionRowCount the number of rows in each file
+     * @param spilled which partitions are written to the temporary files
+     * @param maxResident the maximum number of groups to keep in memory
+     * @return the groups that are kept in memory
+     */
+    private ValueHashMap<Object[]> writeGroups(ValueHashMap<Object[]> groups, ResultDiskBuffer[] partitions,
+            int[] partitionRowCount, boolean[] spilled, int maxResident) {
+        int slotCount = groupSlots.size();
+        int bits = Integer.numberOfTrailingZeros(partitions.length);
+        ArrayList<Value> keys = groups.keys();
+        int[] partitionOfKey = new int[keys.size()];
+        int[] groupCount = new int[partitions.length];
+        int resident = 0;
+        for (int i = 0; i < partitionOfKey.length; i++) {
+            int p = ResultDiskBuffer.getPartition(keys.get(i), bits);
+            partitionOfKey[i] = p;
+            if (!spilled[p]) {
+                groupCount[p]++;
+                resident++;
+            }
+        }
+        while (resident > maxResident) {
+            int largest = -1;
+            for (int p = 0; p < partitions.length; p++) {
+                if (!spilled[p] && (largest < 0 || groupCount[p] > groupCount[largest])) {
+                    largest = p;
+                }
+            }
+            spilled[largest] = true;
+            resident -= groupCount[largest];
+        }
+        ValueHashMap<Object[]> kept = ValueHashMap.newInstance();
+        ArrayList<ArrayList<Value[]>> lists = New.arrayList();
+        for (int i = 0; i < partitions.length; i++) {
+            lists.add(New.<Value[]>arrayList());
+        }
+        for (int k = 0; k < partitionOfKey.length; k++) {
+            Value key = keys.get(k);
+            Object[] group = groups.get(key);
+            int p = partitionOfKey[k];
+            if (!spilled[p]) {
+                kept.put(key, group);
+                continue;
+            }
+            Value[] row = new Value[1 + slotCount];
+            row[0] = key;
+            for (int i = 0; i < slotCount; i++) {
+                Object data = i < group.length ? group[i] : null;
+                if (data == null) {
+                    row[1 + i] = ValueNull.INSTANCE;
+                } else if (data instanceof AggregateData) {
+                    row[1 + i] = ((AggregateData) data).getState();
+                } else {
+                    row[1 + i] = (Value) data;
+                }
+            }
+            lists.get(p).add(row);
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            ArrayList<Value[]> list = lists.get(i);
+            if (list.size() > 0) {
+                partitionRowCount[i] = partitions[i].addRows(list);
+            }
+        }
+        return kept;
+    }
+
+    private ValueHashMap<Object[]> readGroups(ResultDiskBuffer partition, int rowCount) {
+        Database db = session.getDatabase();
+        int slotCount = groupSlots.size();
+        ValueHashMap<Object[]> groups = ValueHashMap.newInstance();
+        for (int r = 0; r < rowCount; r++) {
+            Value[] row = partition.next();
+            Object[] group = groups.get(row[0]);
+            boolean isNew = group == null;
+            if (isNew) {
+                group = createGroup();
+                groups.put(row[0], group);
+            }
+            for (int i = 0; i < slotCount; i++) {
+                Expression expr = groupSlots.get(i);
+                Value v = row[1 + i];
+                if (expr instanceof ExpressionColumn) {
+                    // a column that is not grouped: all values must be equal
+                    if (isNew) {
+                        group[i] = v;
+                    } else if (!db.areEqual((Value) group[i], v)) {
+                        throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, expr.getSQL());
+                    }
+                } else if (v != ValueNull.INSTANCE) {
+                    AggregateData data = AggregateData.create(v);
+                    if (group[i] == null) {
+                        group[i] = data;
+                    } else {
+                        ((AggregateData) group[i]).merge(db, data);
+                    }
+                }
+            }
+        }
+        return groups;
+    }
+
     /**
      * Get the index that matches the ORDER BY list, if one exists. This is to
      * avoid running a separate ORDER BY if an index can be used. This is
@@ -551,7 +784,7 @@ public class Select extends Query {
         return result;
     }
 
-    protected LocalResult queryWithoutCache(int maxRows, ResultTarget target) {
+    private int getLimitRows(int maxRows) {
         int limitRows = maxRows == 0 ? -1 : maxRows;
         if (limitExpr != null) {
             Value v = limitExpr.getValue(session);
@@ -562,6 +795,42 @@ public class Select extends Query {
                 limitRows = Math.min(l, limitRows);
             }
         }
+        return limitRows;
+    }
+
+    /**
+     * Execute the query lazily if possible, that means the rows are only
+     * computed when they are read. This is possible for queries without
+     * grouping, DISTINCT, FOR UPDATE, and sorting (except if an index is used
+     * for sorting). Otherwise, the query is executed as usual.
+     *
+     * @param maxRows the maximum number of rows to return
+     * @return the result
+     */
+    public ResultInterface queryLazy(int maxRows) {
+        if (isGroupQuery || isQuickAggregateQuery || distinct || isDistinctQuery || isForUpdate ||
+                randomAccessResult || (sort != null && !sortUsingIndex)) {
+            return query(maxRows);
+        }
+        int limitRows = getLimitRows(maxRows);
+        if (limitRows == 0) {
+            return query(maxRows);
+        }
+        fireBeforeSelectTriggers();
+        int offset = offsetExpr == null ? 0 : offsetExpr.getValue(session).getInt();
+        topTableFilter.startQuery(session);
+        try {
+            topTableFilter.reset();
+            topTableFilter.lock(session, false, false);
+            return new LazyResultQueryFlat(limitRows, offset);
+        } catch (RuntimeException e) {
+            topTableFilter.endQuery();
+            throw e;
+        }
+    }
+
+    protected LocalResult queryWithoutCache(int maxRows, ResultTarget target) {
+        int limitRows = getLimitRows(maxRows);
         int columnCount = expressions.size();
         LocalResult result = null;
         if (target == null || !session.getDatabase().getSettings().optimizeInsertFromSelect) {
@@ -586,37 +855,46 @@ public class Select extends Query {
             result = createLocalResult(result);
         }
         topTableFilter.startQuery(session);
-        topTableFilter.reset();
-        boolean exclusive = isForUpdate && !isForUpdateMvcc;
-        if (isForUpdateMvcc) {
-            if (isGroupQuery) {
-                throw DbException.getUnsupportedException("FOR UPDATE && GROUP");
-            } else if (distinct) {
-                throw DbException.getUnsupportedException("FOR UPDATE && DISTINCT");
-            } else if (isQuickAggregateQuery) {
-                throw DbException.getUnsupportedException("FOR UPDATE && AGGREGATE");
-            } else if (topTableFilter.getJoin() != null) {
-                throw DbException.getUnsupportedException("FOR UPDATE && JOIN");
-            } else if (topTableFilter.getJoin() != null) {
-                throw DbException.getUnsupportedException("FOR UPDATE && JOIN");
-            }
-        }
-        topTableFilter.lock(session, exclusive, exclusive);
-        ResultTarget to = result != null ? result : target;
-        if (limitRows != 0) {
-            if (isQuickAggregateQuery) {
-                queryQuick(columnCount, to);
-            } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    queryGroupSorted(columnCount, to);
+        try {
+            topTableFilter.reset();
+            boolean exclusive = isForUpdate && !isForUpdateMvcc;
+            if (isForUpdateMvcc) {
+                if (isGroupQuery) {
+                    throw DbException.getUnsupportedException("FOR UPDATE && GROUP");
+                } else if (distinct) {
+                    throw DbException.getUnsupportedException("FOR UPDATE && DISTINCT");
+                } else if (isQuickAggregateQuery) {
+                    throw DbException.getUnsupportedException("FOR UPDATE && AGGREGATE");
+                } else if (topTableFilter.getJoin() != null) {
+                    throw DbException.getUnsupportedException("FOR UPDATE && JOIN");
+                } else if (topTableFilter.getJoin() != null) {
+                    throw DbException.getUnsupportedException("FOR UPDATE && JOIN");
+                }
+            }
+            topTableFilter.lock(session, exclusive, exclusive);
+            ResultTarget to = result != null ? result : target;
+            if (limitRows != 0) {
+                if (isQuickAggregateQuery) {
+                    queryQuick(columnCount, to);
+                } else if (isGroupQuery) {
+                    if (isGroupSortedQuery) {
+                        queryGroupSorted(columnCount, to);
+                    } else {
+                        queryGroup(columnCount, result);
+                    }
+                } else if (isDistinctQuery) {
+                    queryDistinct(to, limitRows);
                 } else {
-                    queryGroup(columnCount, result);
+                    queryFlat(columnCount, to, limitRows);
                 }
-            } else if (isDistinctQuery) {
-                queryDistinct(to, limitRows);
-            } else {
-                queryFlat(columnCount, to, limitRows);
             }
+        } catch (RuntimeException e) {
+            if (result != null) {
+                result.close();
+            }
+            throw e;
+        } finally {
+            topTableFilter.endQuery();
         }
         if (offsetExpr != null) {
             result.setOffset(offsetExpr.getValue(session).getInt());
@@ -1265,4 +1543,92 @@ public class Select extends Query {
         return false;
     }
 
+    /**
+     * A lazy result for a flat query: the rows are read from the table filters
+     * when they are requested. Reading the rows requires a consistent state of
+     * the tables (the cursors point to index pages), which is why the rows can
+     * only be read as long as the tables were not modified. Otherwise, an
+     * exception is thrown.
+     */
+    private final class LazyResultQueryFlat extends LazyResult {
+
+        private final Object sync;
+        private final int limitRows;
+        private final int offset;
+        private final ArrayList<Table> tables = New.arrayList();
+        private long[] modificationIds;
+        private int rowNumber;
+        private int skipped;
+
+        LazyResultQueryFlat(int limitRows, int offset) {
+            super(expressionArray, visibleColumnCount);
+            this.limitRows = limitRows;
+            this.offset = offset;
+            Database db = session.getDatabase();
+            sync = db.isMultiThreaded() ? (Object) session : (Object) db;
+            for (TableFilter f : filters) {
+                Table t = f.getTable();
+                String type = t.getTableType();
+                // the data of other tables (views, meta data tables,
+                // function tables, and linked tables) is already buffered
+                if (Table.TABLE.equals(type) || Table.EXTERNAL_TABLE_ENGINE.equals(type)) {
+                    tables.add(t);
+                }
+            }
+        }
+
+        protected Value[] fetchNextRow() {
+            synchronized (sync) {
+                if (modificationIds == null) {
+                    modificationIds = new long[tables.size()];
+                } else {
+                    for (int i = 0; i < modificationIds.length; i++) {
+                        Table t = tables.get(i);
+                        if (t.getMaxDataModificationId() != modificationIds[i]) {
+                            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, t.getSQL());
+                        }
+                    }
+                }
+                Value[] row = fetch();
+                for (int i = 0; i < modificationIds.length; i++) {
+                    modificationIds[i] = tables.get(i).getMaxDataModificationId();
+                }
+                return row;
+            }
+        }
+
+        private Value[] fetch() {
+            if (limitRows >= 0 && rowNumber >= limitRows) {
+                return null;
+            }
+            int columnCount = expressionArray.length;
+            while (topTableFilter.next()) {
+                setCurrentRowNumber(skipped + rowNumber + 1);
+                if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+                    if (sampleSize > 0 && skipped + rowNumber >= sampleSize) {
+                        return null;
+                    }
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    Value[] row = new Value[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = expressionArray[i].getValue(session);
+                    }
+                    rowNumber++;
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        protected void done() {
+            synchronized (sync) {
+                topTableFilter.endQuery();
+            }
+        }
+
+    }
+
 }
@@ -56,6 +56,7 @@ public class Set extends Prepared {
         case SetTypes.TRACE_LEVEL_SYSTEM_OUT:
         case SetTypes.TRACE_LEVEL_FILE:
         case SetTypes.THROTTLE:
+        case SetTypes.LAZY_QUERY_EXECUTION:
         case SetTypes.SCHEMA:
         case SetTypes.SCHEMA_SEARCH_PATH:
             return true;
@@ -300,6 +301,14 @@ public class Set extends Prepared {
             session.setQueryTimeout(value);
             break;
         }
+        case SetTypes.LAZY_QUERY_EXECUTION: {
+            int value = getIntValue();
+            if (value < 0 || value > 1) {
+                throw DbException.getInvalidValueException("LAZY_QUERY_EXECUTION", getIntValue());
+            }
+            session.setLazyQueryExecution(value == 1);
+            break;
+        }
         case SetTypes.REDO_LOG_BINARY: {
             int value = getIntValue();
             session.setRedoLogBinary(value == 1);
@@ -199,6 +199,11 @@ public class SetTypes {
      */
     public static final int REDO_LOG_BINARY = 37;
 
+    /**
+     * The type of a SET LAZY_QUERY_EXECUTION statement.
+     */
+    public static final int LAZY_QUERY_EXECUTION = 38;
+
     private static final ArrayList<String> TYPES = New.arrayList();
 
     private SetTypes() {
@@ -245,6 +250,7 @@ public class SetTypes {
         list.add(VARIABLE, "@");
         list.add(QUERY_TIMEOUT, "QUERY_TIMEOUT");
         list.add(REDO_LOG_BINARY, "REDO_LOG_BINARY");
+        list.add(LAZY_QUERY_EXECUTION, "LAZY_QUERY_EXECUTION");
     }
 
     /**
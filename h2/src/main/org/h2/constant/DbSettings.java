@@ -51,7 +51,8 @@ public class DbSettings extends SettingsBase {
 
     /**
      * Database setting <code>ANALYZE_SAMPLE</code> (default: 10000).<br />
-     * The default sample size when analyzing a table.
+     * The default sample size when analyzing a table. It is also the maximum
+     * number of rows kept to calculate the column statistics.
      */
     public final int analyzeSample = get("ANALYZE_SAMPLE", 10000);
 
@@ -125,6 +126,29 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean functionsInSchema = get("FUNCTIONS_IN_SCHEMA", true);
 
+    /**
+     * Database setting <code>GROUP_COMMIT</code> (default: false).<br />
+     * If enabled, a commit only returns after the transaction log was written
+     * and synced to disk. Sessions that commit at the same time, or while
+     * another session syncs the log, share one log flush and one sync.
+     */
+    public final boolean groupCommit = get("GROUP_COMMIT", false);
+
+    /**
+     * Database setting <code>GROUP_COMMIT_DELAY</code> (default: 0).<br />
+     * The number of milliseconds to wait before syncing the transaction log
+     * when using group commit, so that more sessions can commit in the same
+     * sync.
+     */
+    public final int groupCommitDelay = get("GROUP_COMMIT_DELAY", 0);
+
+    /**
+     * Database setting <code>HASH_JOIN</code> (default: true).<br />
+     * Use a hash join for equality join conditions if the joined table has
+     * no suitable index.
+     */
+    public final boolean hashJoin = get("HASH_JOIN", true);
+
     /**
      * Database setting <code>LARGE_RESULT_BUFFER_SIZE</code> (default: 4096).<br />
      * Buffer size for large result sets. Set this value to 0 to disable the
@@ -132,6 +156,17 @@ public class DbSettings extends SettingsBase {
      */
     public final int largeResultBufferSize = get("LARGE_RESULT_BUFFER_SIZE", 4 * 1024);
 
+    /**
+     * Database setting <code>LARGE_RESULT_SORT_THREADS</code> (default: 2 if
+     * there are multiple processors, otherwise 1).<br />
+     * The number of threads used to sort a large result set that is buffered
+     * to disk: the calling thread, and up to this value minus one background
+     * threads. Set this value to 1 to sort in the calling thread. Each
+     * background thread sorts a copy of up to MAX_MEMORY_ROWS rows.
+     */
+    public final int largeResultSortThreads = get("LARGE_RESULT_SORT_THREADS",
+            Math.min(2, Runtime.getRuntime().availableProcessors()));
+
     /**
      * Database setting <code>LARGE_TRANSACTIONS</code> (default: true).<br />
      * Support very large transactions
@@ -250,6 +285,16 @@ public class DbSettings extends SettingsBase {
      */
     public final int pageStoreMaxGrowth = get("PAGE_STORE_MAX_GROWTH", 128 * 1024);
 
+    /**
+     * Database setting <code>PAGE_STORE_MAX_CHANGED_PERCENT</code>
+     * (default: 25).<br />
+     * The writer thread writes back changed pages in the cache, in the order
+     * of the page id, if they use more than this percentage of the cache
+     * memory. Set to 100 to only write back changed pages when they are
+     * removed from the cache, or at a checkpoint.
+     */
+    public final int pageStoreMaxChangedPercent = get("PAGE_STORE_MAX_CHANGED_PERCENT", 25);
+
     /**
      * Database setting <code>PAGE_STORE_INTERNAL_COUNT</code>
      * (default: false).<br />
@@ -274,6 +319,24 @@ public class DbSettings extends SettingsBase {
      */
     public final int queryCacheSize = get("QUERY_CACHE_SIZE", 8);
 
+    /**
+     * Database setting <code>QUERY_STATISTICS</code> (default: true).<br />
+     * Collect execution statistics per SQL statement (execution count,
+     * execution time histogram, rows read and returned, pages read, lock wait
+     * time). Statements that only differ in the literals are combined. The
+     * statistics are available in INFORMATION_SCHEMA.QUERY_STATISTICS.
+     */
+    public final boolean queryStatistics = get("QUERY_STATISTICS", true);
+
+    /**
+     * Database setting <code>QUERY_STATISTICS_MAX_ENTRIES</code> (default:
+     * 100).<br />
+     * The maximum number of SQL statements for which execution statistics are
+     * kept. The statements that were not executed for the longest time are
+     * removed first.
+     */
+    public final int queryStatisticsMaxEntries = get("QUERY_STATISTICS_MAX_ENTRIES", 100);
+
     /**
      * Database setting <code>RECOMPILE_ALWAYS</code> (default: false).<br />
      * Always recompile prepared statements.
@@ -1849,8 +1849,18 @@ public class ErrorCode {
      */
     public static final int RESULT_SET_READONLY = 90140;
 
+    /**
+     * The error with code <code>90141</code> is thrown when the nodes of a
+     * cluster return different update counts or errors for the same
+     * statement. This can happen if the statement is not deterministic, or
+     * if the databases of the cluster nodes are not identical. If the
+     * connection is in auto-commit mode, the statement is rolled back on all
+     * nodes.
+     */
+    public static final int CLUSTER_ERROR_RESULTS_DIFFER_1 = 90141;
+
     // next are 90005, 90006, 90009, 90010, 90011, 90021, 90039,
-    // 90051, 90056, 90110, 90122, 90141
+    // 90051, 90056, 90110, 90122, 90142
 
     private ErrorCode() {
         // utility class
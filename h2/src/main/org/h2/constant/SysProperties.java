@@ -170,12 +170,26 @@ public class SysProperties {
      */
     public static final int DELAY_WRONG_PASSWORD_MAX = Utils.getProperty("h2.delayWrongPasswordMax", 4000);
 
+    /**
+     * System property <code>h2.lobBlockSize</code> (default: 20000).<br />
+     * The size of the blocks when storing LOB data in the database. Existing
+     * LOB data can be read with any block size.
+     */
+    public static final int LOB_BLOCK_SIZE = Utils.getProperty("h2.lobBlockSize", 20000);
+
     /**
      * System property <code>h2.lobCloseBetweenReads</code> (default: false).<br />
      * Close LOB files between read operations.
      */
     public static boolean lobCloseBetweenReads = Utils.getProperty("h2.lobCloseBetweenReads", false);
 
+    /**
+     * System property <code>h2.lobReadAhead</code> (default: 16).<br />
+     * When reading a LOB that is stored in the database sequentially, the
+     * number of blocks read per query is doubled up to this value.
+     */
+    public static final int LOB_READ_AHEAD = Utils.getProperty("h2.lobReadAhead", 16);
+
     /**
      * System property <code>h2.lobFilesPerDirectory</code> (default: 256).<br />
      * Maximum number of LOB files per directory.
@@ -289,6 +303,15 @@ public class SysProperties {
      */
     public static final int SERVER_CACHED_OBJECTS = Utils.getProperty("h2.serverCachedObjects", 64);
 
+    /**
+     * System property <code>h2.serverCompressThreshold</code>
+     * (default: 1024).<br />
+     * TCP Server: blocks of rows and LOB data of at least this many bytes are
+     * compressed with LZF before they are sent to the client. Use 0 to
+     * disable compression.
+     */
+    public static final int SERVER_COMPRESS_THRESHOLD = Utils.getProperty("h2.serverCompressThreshold", 1024);
+
     /**
      * System property <code>h2.serverResultSetFetchSize</code>
      * (default: 100).<br />
@@ -296,6 +319,24 @@ public class SysProperties {
      */
     public static final int SERVER_RESULT_SET_FETCH_SIZE = Utils.getProperty("h2.serverResultSetFetchSize", 100);
 
+    /**
+     * System property <code>h2.serverResultSetFetchBytes</code>
+     * (default: 1048576).<br />
+     * When a large result set is read sequentially in the server mode, the
+     * number of rows per request is increased as long as the estimated size
+     * of the rows is below this limit.
+     */
+    public static final int SERVER_RESULT_SET_FETCH_BYTES = Utils.getProperty("h2.serverResultSetFetchBytes", 1024 * 1024);
+
+    /**
+     * System property <code>h2.serverResultSetPrefetch</code>
+     * (default: true).<br />
+     * When a large result set is read sequentially in the server mode, the
+     * next rows are requested in advance, so that the server can read them
+     * while the application reads the current rows.
+     */
+    public static final boolean SERVER_RESULT_SET_PREFETCH = Utils.getProperty("h2.serverResultSetPrefetch", true);
+
     /**
      * System property <code>h2.socketConnectRetry</code> (default: 16).<br />
      * The number of times to retry opening a socket. Windows sometimes fails
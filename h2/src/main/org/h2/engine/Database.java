@@ -174,11 +174,14 @@ public class Database implements DataHandler {
     private final DbSettings dbSettings;
     private final int reconnectCheckDelay;
     private int logMode;
+    private final QueryStatisticsData queryStatisticsData;
 
     public Database(ConnectionInfo ci, String cipher) {
         String name = ci.getName();
         this.dbSettings = ci.getDbSettings();
         this.reconnectCheckDelay = dbSettings.reconnectCheckDelay;
+        this.queryStatisticsData = dbSettings.queryStatistics ?
+                new QueryStatisticsData(dbSettings.queryStatisticsMaxEntries) : null;
         this.compareMode = CompareMode.getInstance(null, 0);
         this.persistent = ci.isPersistent();
         this.filePasswordHash = ci.getFilePasswordHash();
@@ -1660,7 +1663,7 @@ public class Database implements DataHandler {
         }
         cacheSize = kb;
         if (pageStore != null) {
-            pageStore.getCache().setMaxMemory(kb);
+            pageStore.setMaxCacheMemory(kb);
         }
     }
 
@@ -1766,10 +1769,48 @@ public class Database implements DataHandler {
         }
         if (pageStore != null) {
             pageStore.commit(session);
+            if (dbSettings.groupCommit) {
+                session.setCommitSyncPending(pageStore.getCommitCount());
+            }
         }
         session.setAllCommitted();
     }
 
+    /**
+     * Write back changed pages of the cache if there are too many, and do a
+     * checkpoint if the transaction log is large. This method is called by the
+     * writer thread.
+     *
+     * @return true if there are more changed pages to write
+     */
+    public boolean writeBackChanged() {
+        if (readOnly || closing || pageStore == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (pageStore == null) {
+                return false;
+            }
+            if (pageStore.isCheckpointRecommended()) {
+                pageStore.checkpoint();
+            }
+            return pageStore.writeBackChanged(dbSettings.pageStoreMaxChangedPercent);
+        }
+    }
+
+    /**
+     * Wait until the transaction log is synced to disk up to the given commit
+     * (group commit).
+     *
+     * @param commitCount the commit count
+     */
+    void syncCommit(long commitCount) {
+        PageStore store = pageStore;
+        if (store != null) {
+            store.syncCommit(commitCount);
+        }
+    }
+
     /**
      * Flush all pending changes to the transaction log.
      */
@@ -2371,6 +2412,26 @@ public class Database implements DataHandler {
         return dbSettings;
     }
 
+    /**
+     * Get the query statistics of this database.
+     *
+     * @return the statistics, or null if disabled
+     */
+    public QueryStatisticsData getQueryStatisticsData() {
+        return queryStatisticsData;
+    }
+
+    /**
+     * Get the number of pages read from the database file since the database
+     * was opened. The page store is not created if it doesn't exist yet.
+     *
+     * @return the read count, or 0 if there is no page store
+     */
+    public long getPageReadCount() {
+        PageStore store = pageStore;
+        return store == null ? 0 : store.getReadCount();
+    }
+
     /**
      * Create a new hash map. Depending on the configuration, the key is case
      * sensitive or case insensitive.
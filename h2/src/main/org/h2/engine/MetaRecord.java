@@ -12,6 +12,7 @@ import org.h2.command.Prepared;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.SearchRow;
+import org.h2.table.TableBase;
 import org.h2.value.ValueInt;
 import org.h2.value.ValueString;
 
@@ -34,7 +35,12 @@ public class MetaRecord implements Comparable<MetaRecord> {
     MetaRecord(DbObject obj) {
         id = obj.getId();
         objectType = obj.getType();
-        sql = obj.getCreateSQL();
+        if (obj instanceof TableBase) {
+            // the column statistics are only kept in the meta data
+            sql = ((TableBase) obj).getCreateSQL(true);
+        } else {
+            sql = obj.getCreateSQL();
+        }
     }
 
     void setRecord(SearchRow r) {
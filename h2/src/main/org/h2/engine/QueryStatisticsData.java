@@ -0,0 +1,338 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import org.h2.util.New;
+
+/**
+ * Maintains the execution statistics of the statements of a database. The
+ * statistics are kept per normalized SQL statement, that is the SQL statement
+ * where all literals are replaced with a parameter (?). The number of
+ * statements is limited; statements that were not executed for the longest
+ * time are removed first.
+ */
+public class QueryStatisticsData {
+
+    private static final Comparator<QueryEntry> QUERY_ENTRY_COMPARATOR = new Comparator<QueryEntry>() {
+        public int compare(QueryEntry o1, QueryEntry o2) {
+            return (int) Math.signum(o1.lastUpdateTime - o2.lastUpdateTime);
+        }
+    };
+
+    private final HashMap<String, QueryEntry> map = New.hashMap();
+
+    private int maxQueryEntries;
+
+    public QueryStatisticsData(int maxQueryEntries) {
+        this.maxQueryEntries = maxQueryEntries;
+    }
+
+    /**
+     * Get a copy of the statistics of all statements, ordered by the SQL
+     * statement.
+     *
+     * @return the list of entries
+     */
+    public synchronized ArrayList<QueryEntry> getQueries() {
+        ArrayList<QueryEntry> list = New.arrayList();
+        for (QueryEntry e : map.values()) {
+            list.add(e.copy());
+        }
+        Collections.sort(list, new Comparator<QueryEntry>() {
+            public int compare(QueryEntry o1, QueryEntry o2) {
+                return o1.sqlStatement.compareTo(o2.sqlStatement);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Update the statistics of a statement.
+     *
+     * @param sqlStatement the normalized SQL statement
+     * @param executionTimeNanos the execution time in nanoseconds
+     * @param rowCount the number of rows returned or updated
+     * @param rowsRead the number of rows read
+     * @param pageReads the number of pages read from the file
+     * @param lockWaitNanos the time spent waiting for locks in nanoseconds
+     */
+    public synchronized void update(String sqlStatement, long executionTimeNanos, long rowCount,
+            long rowsRead, long pageReads, long lockWaitNanos) {
+        QueryEntry entry = map.get(sqlStatement);
+        if (entry == null) {
+            entry = new QueryEntry(sqlStatement);
+            map.put(sqlStatement, entry);
+        }
+        entry.update(executionTimeNanos, rowCount, rowsRead, pageReads, lockWaitNanos);
+        // remove the least recently used entries only once in a while, so that
+        // the cost of sorting is amortized
+        if (map.size() > maxQueryEntries * 3 / 2) {
+            ArrayList<QueryEntry> list = New.arrayList(map.values());
+            Collections.sort(list, QUERY_ENTRY_COMPARATOR);
+            for (int i = 0, count = map.size() - maxQueryEntries; i < count; i++) {
+                map.remove(list.get(i).sqlStatement);
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Replace all literals (numbers and strings) in the SQL statement with a
+     * parameter, so that statements that only differ in the literals are
+     * combined. Quoted identifiers, comments, and existing parameters are
+     * not changed.
+     *
+     * @param sql the SQL statement
+     * @return the normalized SQL statement
+     */
+    public static String normalize(String sql) {
+        int len = sql.length();
+        StringBuilder buff = new StringBuilder(len);
+        for (int i = 0; i < len;) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // string literal; two quotes are an escaped quote
+                i++;
+                while (i < len) {
+                    if (sql.charAt(i++) == '\'') {
+                        if (i < len && sql.charAt(i) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                buff.append('?');
+            } else if (c == '"') {
+                int start = i++;
+                while (i < len && sql.charAt(i) != '"') {
+                    i++;
+                }
+                i = Math.min(len, i + 1);
+                buff.append(sql, start, i);
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-' ||
+                    c == '/' && i + 1 < len && sql.charAt(i + 1) == '/') {
+                int start = i;
+                while (i < len && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                buff.append(sql, start, i);
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? len : end + 2;
+                buff.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) || c == '.' && i + 1 < len && Character.isDigit(sql.charAt(i + 1))) {
+                i++;
+                while (i < len) {
+                    c = sql.charAt(i);
+                    if (Character.isLetterOrDigit(c) || c == '.') {
+                        i++;
+                    } else if ((c == '+' || c == '-') && (sql.charAt(i - 1) == 'E' || sql.charAt(i - 1) == 'e')) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                buff.append('?');
+            } else if (Character.isJavaIdentifierStart(c)) {
+                // keywords and identifiers, which may contain digits
+                int start = i++;
+                while (i < len && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                buff.append(sql, start, i);
+            } else {
+                buff.append(c);
+                i++;
+            }
+        }
+        return buff.toString();
+    }
+
+    /**
+     * The execution statistics of one normalized SQL statement.
+     */
+    public static class QueryEntry {
+
+        /**
+         * The number of sub-buckets per power of two of the execution time
+         * histogram. With 8 sub-buckets, the relative error of the
+         * percentiles is at most 12.5%.
+         */
+        private static final int SUB_BUCKET_BITS = 3;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        /**
+         * The number of histogram buckets. The highest bucket is for about
+         * 2^40 microseconds (12 days).
+         */
+        private static final int BUCKETS = SUB_BUCKETS * (40 - SUB_BUCKET_BITS + 2);
+
+        /**
+         * The normalized SQL statement.
+         */
+        public final String sqlStatement;
+
+        /**
+         * The number of times the statement was executed.
+         */
+        public int count;
+
+        /**
+         * The last time the statement was executed (System.nanoTime).
+         */
+        public long lastUpdateTime;
+
+        /**
+         * The minimum execution time, in nanoseconds.
+         */
+        public long executionTimeMinNanos;
+
+        /**
+         * The maximum execution time, in nanoseconds.
+         */
+        public long executionTimeMaxNanos;
+
+        /**
+         * The total execution time, in nanoseconds.
+         */
+        public long executionTimeCumulativeNanos;
+
+        /**
+         * The total number of rows returned or updated.
+         */
+        public long rowCountCumulative;
+
+        /**
+         * The total number of rows read.
+         */
+        public long rowsReadCumulative;
+
+        /**
+         * The total number of pages read from the file.
+         */
+        public long pageReadsCumulative;
+
+        /**
+         * The total time spent waiting for locks, in nanoseconds.
+         */
+        public long lockWaitCumulativeNanos;
+
+        private int[] histogram = new int[BUCKETS];
+
+        QueryEntry(String sqlStatement) {
+            this.sqlStatement = sqlStatement;
+        }
+
+        /**
+         * Update the statistics.
+         *
+         * @param timeNanos the execution time in nanoseconds
+         * @param rows the number of rows returned or updated
+         * @param rowsRead the number of rows read
+         * @param pageReads the number of pages read
+         * @param lockWaitNanos the time spent waiting for locks
+         */
+        void update(long timeNanos, long rows, long rowsRead, long pageReads, long lockWaitNanos) {
+            if (count == 0 || timeNanos < executionTimeMinNanos) {
+                executionTimeMinNanos = timeNanos;
+            }
+            if (timeNanos > executionTimeMaxNanos) {
+                executionTimeMaxNanos = timeNanos;
+            }
+            count++;
+            lastUpdateTime = System.nanoTime();
+            executionTimeCumulativeNanos += timeNanos;
+            rowCountCumulative += rows;
+            rowsReadCumulative += rowsRead;
+            pageReadsCumulative += pageReads;
+            lockWaitCumulativeNanos += lockWaitNanos;
+            histogram[getBucket(timeNanos / 1000)]++;
+        }
+
+        /**
+         * Get the execution time at the given percentile, for example 50 for
+         * the median. The value is the upper bound of the histogram bucket.
+         *
+         * @param percent the percentile (0 to 100)
+         * @return the execution time in nanoseconds
+         */
+        public long getExecutionTimePercentileNanos(double percent) {
+            long target = (long) Math.ceil(count * percent / 100);
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                sum += histogram[i];
+                if (sum >= target && sum > 0) {
+                    long micros = getBucketUpperBound(i);
+                    return Math.min(micros * 1000, executionTimeMaxNanos);
+                }
+            }
+            return executionTimeMaxNanos;
+        }
+
+        QueryEntry copy() {
+            QueryEntry e = new QueryEntry(sqlStatement);
+            e.count = count;
+            e.lastUpdateTime = lastUpdateTime;
+            e.executionTimeMinNanos = executionTimeMinNanos;
+            e.executionTimeMaxNanos = executionTimeMaxNanos;
+            e.executionTimeCumulativeNanos = executionTimeCumulativeNanos;
+            e.rowCountCumulative = rowCountCumulative;
+            e.rowsReadCumulative = rowsReadCumulative;
+            e.pageReadsCumulative = pageReadsCumulative;
+            e.lockWaitCumulativeNanos = lockWaitCumulativeNanos;
+            System.arraycopy(histogram, 0, e.histogram, 0, BUCKETS);
+            return e;
+        }
+
+        /**
+         * Get the histogram bucket for the given value. Values below
+         * SUB_BUCKETS have their own bucket; larger values are grouped
+         * logarithmically, with SUB_BUCKETS linear buckets per power of two.
+         *
+         * @param micros the value
+         * @return the bucket
+         */
+        static int getBucket(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) Math.max(0, micros);
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return Math.min(BUCKETS - 1, (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub);
+        }
+
+        /**
+         * Get the largest value that is stored in the given bucket.
+         *
+         * @param bucket the bucket
+         * @return the value
+         */
+        static long getBucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+
+    }
+
+}
@@ -86,12 +86,14 @@ public class Session extends SessionWithState {
     private HashMap<String, Procedure> procedures;
     private boolean undoLogEnabled = true;
     private boolean redoLogBinary = true;
+    private boolean lazyQueryExecution;
     private boolean autoCommitAtTransactionEnd;
     private String currentTransactionName;
     private volatile long cancelAt;
     private boolean closed;
     private final long sessionStart = System.currentTimeMillis();
     private long transactionStart;
+    private long commitSyncPending;
     private long currentCommandStart;
     private HashMap<String, Value> variables;
     private HashSet<ResultInterface> temporaryResults;
@@ -103,6 +105,8 @@ public class Session extends SessionWithState {
     private int objectId;
     private final int queryCacheSize;
     private SmallLRUCache<String, Command> queryCache;
+    private long rowsRead;
+    private long lockWaitNanos;
 
     public Session(Database database, User user, int id) {
         this.database = database;
@@ -488,6 +492,11 @@ public class Session extends SessionWithState {
             unlinkLobMap = null;
         }
         unlockAll();
+        if (!Thread.holdsLock(database) && !Thread.holdsLock(this)) {
+            // otherwise, the command waits after releasing the lock (the
+            // session is locked instead of the database in multi-threaded mode)
+            syncCommit();
+        }
     }
 
     private void checkCommitRollback() {
@@ -750,6 +759,29 @@ public class Session extends SessionWithState {
         firstUncommittedPos = Session.LOG_WRITTEN;
     }
 
+    /**
+     * This method is called after the commit entry for this session was
+     * written, if group commit is used.
+     *
+     * @param commitCount the commit count to wait for
+     */
+    void setCommitSyncPending(long commitCount) {
+        commitSyncPending = commitCount;
+    }
+
+    /**
+     * Wait until the last commit of this session is synced to disk, if group
+     * commit is used and this was not done yet. This method must not be
+     * called while holding the database lock.
+     */
+    public void syncCommit() {
+        long count = commitSyncPending;
+        if (count != 0) {
+            commitSyncPending = 0;
+            database.syncCommit(count);
+        }
+    }
+
     private boolean containsUncommitted() {
         return firstUncommittedLog != Session.LOG_WRITTEN;
     }
@@ -910,6 +942,40 @@ public class Session extends SessionWithState {
         return currentCommandStart;
     }
 
+    /**
+     * Increment the number of rows read by this session.
+     */
+    public void addRowRead() {
+        rowsRead++;
+    }
+
+    /**
+     * Get the number of rows read by this session so far.
+     *
+     * @return the number of rows
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Add to the time this session spent waiting for locks.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    public void addLockWaitTime(long nanos) {
+        lockWaitNanos += nanos;
+    }
+
+    /**
+     * Get the total time this session spent waiting for locks.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLockWaitTime() {
+        return lockWaitNanos;
+    }
+
     public boolean getAllowLiterals() {
         return allowLiterals;
     }
@@ -1232,4 +1298,18 @@ public class Session extends SessionWithState {
         return redoLogBinary;
     }
 
+    public void setLazyQueryExecution(boolean lazyQueryExecution) {
+        this.lazyQueryExecution = lazyQueryExecution;
+    }
+
+    /**
+     * Check if queries may be executed lazily (if the rows may be computed
+     * when they are read).
+     *
+     * @return true if enabled
+     */
+    public boolean isLazyQueryExecution() {
+        return lazyQueryExecution;
+    }
+
 }
@@ -9,7 +9,9 @@ package org.h2.engine;
 import java.io.IOException;
 import java.net.Socket;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import org.h2.api.DatabaseEventListener;
 import org.h2.command.CommandInterface;
 import org.h2.command.CommandRemote;
@@ -20,6 +22,7 @@ import org.h2.jdbc.JdbcSQLException;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.message.TraceSystem;
+import org.h2.result.ResultRemote;
 import org.h2.store.DataHandler;
 import org.h2.store.FileStore;
 import org.h2.store.LobStorage;
@@ -57,6 +60,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     public static final int SESSION_SET_AUTOCOMMIT = 15;
     public static final int SESSION_UNDO_LOG_POS = 16;
     public static final int LOB_READ = 17;
+    public static final int COMMAND_EXECUTE_BATCH_UPDATE = 18;
 
     public static final int STATUS_ERROR = 0;
     public static final int STATUS_OK = 1;
@@ -70,7 +74,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     private ArrayList<Transfer> transferList = New.arrayList();
     private int nextId;
     private boolean autoCommit = true;
-    private CommandInterface autoCommitFalse, autoCommitTrue;
+    private CommandInterface autoCommitFalse, autoCommitTrue, rollbackCluster;
     private ConnectionInfo connectionInfo;
     private String databaseName;
     private String cipher;
@@ -84,6 +88,9 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     private DatabaseEventListener eventListener;
     private LobStorage lobStorage;
     private boolean cluster;
+    private final AtomicLong prefetchCount = new AtomicLong();
+    private final AtomicLong prefetchWastedCount = new AtomicLong();
+    private ResultRemote pendingFetch;
 
     public SessionRemote(ConnectionInfo ci) {
         this.connectionInfo = ci;
@@ -96,7 +103,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         trans.setSSL(ci.isSSL());
         trans.init();
         trans.writeInt(Constants.TCP_PROTOCOL_VERSION_6);
-        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_12);
+        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_15);
         trans.writeString(db);
         trans.writeString(ci.getOriginalURL());
         trans.writeString(ci.getUserName());
@@ -207,6 +214,21 @@ public class SessionRemote extends SessionWithState implements DataHandler {
 
     private void setAutoCommitSend(boolean autoCommit) {
         if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_8) {
+            if (transferList.size() > 1) {
+                traceOperation("SESSION_SET_AUTOCOMMIT", autoCommit ? 1 : 0);
+                Transfer[] transfers = getTransfers();
+                IOException[] errors = new IOException[transfers.length];
+                for (int i = 0; i < transfers.length; i++) {
+                    try {
+                        transfers[i].writeInt(SessionRemote.SESSION_SET_AUTOCOMMIT).writeBoolean(autoCommit);
+                        transfers[i].flush();
+                    } catch (IOException e) {
+                        errors[i] = e;
+                    }
+                }
+                readStatus(transfers, errors);
+                return;
+            }
             for (int i = 0, count = 0; i < transferList.size(); i++) {
                 Transfer transfer = transferList.get(i);
                 try {
@@ -240,6 +262,21 @@ public class SessionRemote extends SessionWithState implements DataHandler {
             // server side auto commit is off because of race conditions
             // (update set id=1 where id=0, but update set id=2 where id=0 is
             // faster)
+            if (transferList.size() > 1) {
+                traceOperation("COMMAND_COMMIT", 0);
+                Transfer[] transfers = getTransfers();
+                IOException[] errors = new IOException[transfers.length];
+                for (int i = 0; i < transfers.length; i++) {
+                    try {
+                        transfers[i].writeInt(SessionRemote.COMMAND_COMMIT);
+                        transfers[i].flush();
+                    } catch (IOException e) {
+                        errors[i] = e;
+                    }
+                }
+                readStatus(transfers, errors);
+                return;
+            }
             for (int i = 0, count = 0; i < transferList.size(); i++) {
                 Transfer transfer = transferList.get(i);
                 try {
@@ -253,6 +290,19 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         }
     }
 
+    /**
+     * Roll back the current transaction on all nodes if the session is in
+     * cluster mode. This is used if the nodes returned different results.
+     */
+    public void rollbackIfCluster() {
+        if (cluster) {
+            if (rollbackCluster == null) {
+                rollbackCluster = prepareCommand("ROLLBACK", Integer.MAX_VALUE);
+            }
+            rollbackCluster.executeUpdate();
+        }
+    }
+
     private String getFilePrefix(String dir) {
         StringBuilder buff = new StringBuilder(dir);
         buff.append('/');
@@ -434,6 +484,39 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         switchOffCluster();
     }
 
+    /**
+     * Remove the servers where a request failed from the list of cluster
+     * nodes. This is used after a request was sent to all servers at the same
+     * time.
+     *
+     * @param transfers the servers the request was sent to
+     * @param errors the exception for each server, or null if the request
+     *            succeeded on this server
+     */
+    public void removeServers(Transfer[] transfers, IOException[] errors) {
+        for (int i = 0, count = 0; i < transfers.length; i++) {
+            if (errors[i] != null && transferList != null) {
+                int index = transferList.indexOf(transfers[i]);
+                if (index >= 0) {
+                    removeServer(errors[i], index, ++count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a copy of the list of servers. In cluster mode, requests are sent to
+     * all servers before the replies are read, so that the servers process
+     * them at the same time.
+     *
+     * @return the servers
+     */
+    public Transfer[] getTransfers() {
+        Transfer[] transfers = new Transfer[transferList.size()];
+        transferList.toArray(transfers);
+        return transfers;
+    }
+
     public synchronized CommandInterface prepareCommand(String sql, int fetchSize) {
         checkClosed();
         return new CommandRemote(this, transferList, sql, fetchSize);
@@ -541,6 +624,42 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         return nextId++;
     }
 
+    /**
+     * Count a request for the next rows of a result set that was sent in
+     * advance, or count such a request as wasted because the rows were not
+     * used.
+     *
+     * @param wasted false when the request is sent, true if it was wasted
+     */
+    public void addPrefetch(boolean wasted) {
+        if (wasted) {
+            prefetchWastedCount.incrementAndGet();
+        } else {
+            prefetchCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of requests for the next rows of a result set that were
+     * sent in advance.
+     *
+     * @return the number of requests
+     */
+    public long getPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    /**
+     * Get the number of requests for the next rows of a result set that were
+     * sent in advance, but where the rows were not used because the
+     * result set was closed or reset.
+     *
+     * @return the number of requests
+     */
+    public long getPrefetchWastedCount() {
+        return prefetchWastedCount.get();
+    }
+
     public int getCurrentId() {
         return nextId;
     }
@@ -557,21 +676,30 @@ public class SessionRemote extends SessionWithState implements DataHandler {
      */
     public void done(Transfer transfer) throws IOException {
         transfer.flush();
+        readStatus(transfer);
+    }
+
+    /**
+     * Read the status code from the server and throw any exception the server
+     * sent. The request must already be flushed.
+     *
+     * @param transfer the transfer object
+     * @throws DbException if the server sent an exception
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    public void readStatus(Transfer transfer) throws IOException {
         int status = transfer.readInt();
         if (status == STATUS_ERROR) {
-            String sqlstate = transfer.readString();
-            String message = transfer.readString();
-            String sql = transfer.readString();
-            int errorCode = transfer.readInt();
-            String stackTrace = transfer.readString();
-            JdbcSQLException s = new JdbcSQLException(message, sql, sqlstate, errorCode, null, stackTrace);
-            if (errorCode == ErrorCode.CONNECTION_BROKEN_1) {
+            DbException e = readException(transfer);
+            if (e.getErrorCode() == ErrorCode.CONNECTION_BROKEN_1) {
                 // allow re-connect
-                IOException e = new IOException(s.toString());
-                e.initCause(s);
-                throw e;
+                SQLException s = e.getSQLException();
+                IOException io = new IOException(s.toString());
+                io.initCause(s);
+                throw io;
             }
-            throw DbException.convert(s);
+            throw e;
         } else if (status == STATUS_CLOSED) {
             transferList = null;
         } else if (status == STATUS_OK_STATE_CHANGED) {
@@ -583,6 +711,64 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         }
     }
 
+    /**
+     * Read the status code of each server after a request was sent to all
+     * servers. The status of all servers is read even if one of them sent an
+     * exception, so that no reply is left unread. Servers that can not be
+     * reached are removed from the cluster.
+     *
+     * @param transfers the servers the request was sent to
+     * @param errors the exception for each server where sending failed (will
+     *            be modified)
+     * @throws DbException the first exception that a server sent
+     */
+    public void readStatus(Transfer[] transfers, IOException[] errors) {
+        DbException error = null;
+        for (int i = 0; i < transfers.length; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                readStatus(transfers[i]);
+            } catch (IOException e) {
+                errors[i] = e;
+            } catch (DbException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        removeServers(transfers, errors);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Read an exception that was sent by the server.
+     *
+     * @param transfer the transfer object
+     * @return the exception
+     */
+    public DbException readException(Transfer transfer) throws IOException {
+        String sqlstate = transfer.readString();
+        String message = transfer.readString();
+        String sql = transfer.readString();
+        int errorCode = transfer.readInt();
+        String stackTrace = transfer.readString();
+        JdbcSQLException s = new JdbcSQLException(message, sql, sqlstate, errorCode, null, stackTrace);
+        return DbException.convert(s);
+    }
+
+    /**
+     * Get the version of the protocol that is used for this connection.
+     *
+     * @return the protocol version
+     */
+    public int getClientVersion() {
+        return clientVersion;
+    }
+
     /**
      * Returns true if the connection was opened in cluster mode.
      *
@@ -597,7 +783,10 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     }
 
     /**
-     * Write the operation to the trace system if debug trace is enabled.
+     * Write the operation to the trace system if debug trace is enabled. This
+     * method is called before each request is sent to the server, so it also
+     * reads the reply of a pending request for the next rows of a result set
+     * first, as the replies must be read in the order the requests were sent.
      *
      * @param operation the operation performed
      * @param id the id of the operation
@@ -606,6 +795,37 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         if (trace.isDebugEnabled()) {
             trace.debug("{0} {1}", operation, id);
         }
+        if (pendingFetch != null) {
+            try {
+                readPendingFetch();
+            } catch (IOException e) {
+                throw DbException.convertIOException(e, null);
+            }
+        }
+    }
+
+    /**
+     * Remember the result set that sent a request for the next rows, but did
+     * not read the reply yet. This method must be called while synchronized
+     * on the session.
+     *
+     * @param result the result set
+     */
+    public void setPendingFetch(ResultRemote result) {
+        pendingFetch = result;
+    }
+
+    /**
+     * Read the reply of a pending request for the next rows of a result set,
+     * if there is one. The rows are kept in the result set. This method must
+     * be called while synchronized on the session.
+     */
+    public void readPendingFetch() throws IOException {
+        ResultRemote result = pendingFetch;
+        if (result != null) {
+            pendingFetch = null;
+            result.readPrefetch();
+        }
     }
 
     public void checkPowerOff() {
@@ -704,11 +924,16 @@ public class SessionRemote extends SessionWithState implements DataHandler {
                 transfer.writeLong(offset);
                 transfer.writeInt(length);
                 done(transfer);
-                length = transfer.readInt();
-                if (length <= 0) {
-                    return length;
+                transfer.startReadBlock();
+                try {
+                    length = transfer.readInt();
+                    if (length <= 0) {
+                        return length;
+                    }
+                    transfer.readBytes(buff, off, length);
+                } finally {
+                    transfer.endReadBlock();
                 }
-                transfer.readBytes(buff, off, length);
                 return length;
             } catch (IOException e) {
                 removeServer(e, i--, ++count);
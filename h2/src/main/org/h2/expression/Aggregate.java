@@ -130,6 +130,7 @@ public class Aggregate extends Expression {
     private long precision;
     private int displaySize;
     private int lastGroupRowId;
+    private int groupSlot = -1;
 
     /**
      * Create a new aggregate object.
@@ -224,8 +225,7 @@ public class Aggregate extends Expression {
         // if(on != null) {
         // on.updateAggregate();
         // }
-        HashMap<Expression, Object> group = select.getCurrentGroup();
-        if (group == null) {
+        if (select.getCurrentGroup() == null) {
             // this is a different level (the enclosing query)
             return;
         }
@@ -237,10 +237,13 @@ public class Aggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateData data = (AggregateData) group.get(this);
+        if (groupSlot < 0) {
+            groupSlot = select.addGroupSlot(this, AggregateData.canMerge(type, distinct));
+        }
+        AggregateData data = (AggregateData) select.getCurrentGroupData(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
-            group.put(this, data);
+            select.setCurrentGroupData(groupSlot, data);
         }
         Value v = on == null ? null : on.getValue(session);
         if (type == GROUP_CONCAT) {
@@ -289,11 +292,10 @@ public class Aggregate extends Expression {
                 DbException.throwInternalError("type=" + type);
             }
         }
-        HashMap<Expression, Object> group = select.getCurrentGroup();
-        if (group == null) {
+        if (select.getCurrentGroup() == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) select.getCurrentGroupData(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
         }
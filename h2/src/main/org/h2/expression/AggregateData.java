@@ -28,7 +28,7 @@ import org.h2.value.ValueNull;
 /**
  * Data stored while calculating an aggregate.
  */
-class AggregateData {
+public class AggregateData {
     private final int aggregateType;
     private final int dataType;
     private long count;
@@ -171,6 +171,134 @@ class AggregateData {
         }
     }
 
+    /**
+     * Check whether the data of an aggregate can be converted to a value
+     * (using getState) and combined with the data of another part of the same
+     * group (using merge). This is not possible for distinct aggregates and
+     * for aggregates that keep a list or a set of values.
+     *
+     * @param aggregateType the aggregate type
+     * @param distinct if distinct is used
+     * @return true if the data can be merged
+     */
+    static boolean canMerge(int aggregateType, boolean distinct) {
+        if (distinct) {
+            return false;
+        }
+        switch (aggregateType) {
+        case Aggregate.COUNT:
+        case Aggregate.COUNT_ALL:
+        case Aggregate.SUM:
+        case Aggregate.AVG:
+        case Aggregate.MIN:
+        case Aggregate.MAX:
+        case Aggregate.STDDEV_POP:
+        case Aggregate.STDDEV_SAMP:
+        case Aggregate.VAR_POP:
+        case Aggregate.VAR_SAMP:
+        case Aggregate.BOOL_AND:
+        case Aggregate.BOOL_OR:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Get the intermediate state of this aggregate as a value. This is only
+     * supported if canMerge returns true.
+     *
+     * @return the state
+     */
+    public Value getState() {
+        return ValueArray.get(new Value[] {
+                ValueInt.get(aggregateType), ValueInt.get(dataType),
+                ValueLong.get(count), value == null ? ValueNull.INSTANCE : value,
+                ValueDouble.get(mean), ValueDouble.get(m2) });
+    }
+
+    /**
+     * Create the aggregate data from a state.
+     *
+     * @param state the state (see getState)
+     * @return the aggregate data
+     */
+    public static AggregateData create(Value state) {
+        Value[] list = ((ValueArray) state).getList();
+        AggregateData data = new AggregateData(list[0].getInt(), list[1].getInt());
+        data.count = list[2].getLong();
+        data.value = list[3] == ValueNull.INSTANCE ? null : list[3];
+        data.mean = list[4].getDouble();
+        data.m2 = list[5].getDouble();
+        return data;
+    }
+
+    /**
+     * Combine this aggregate with the data of another part of the same group.
+     * This is only supported if canMerge returns true.
+     *
+     * @param database the database
+     * @param other the data of the other part
+     */
+    public void merge(Database database, AggregateData other) {
+        Value v = other.value;
+        switch (aggregateType) {
+        case Aggregate.COUNT:
+        case Aggregate.COUNT_ALL:
+            break;
+        case Aggregate.SUM:
+        case Aggregate.AVG:
+            if (value == null) {
+                value = v;
+            } else if (v != null) {
+                value = value.add(v.convertTo(value.getType()));
+            }
+            break;
+        case Aggregate.MIN:
+            if (value == null || v != null && database.compare(v, value) < 0) {
+                value = v;
+            }
+            break;
+        case Aggregate.MAX:
+            if (value == null || v != null && database.compare(v, value) > 0) {
+                value = v;
+            }
+            break;
+        case Aggregate.STDDEV_POP:
+        case Aggregate.STDDEV_SAMP:
+        case Aggregate.VAR_POP:
+        case Aggregate.VAR_SAMP:
+            // the parallel algorithm of Chan et al.
+            if (count == 0) {
+                mean = other.mean;
+                m2 = other.m2;
+            } else if (other.count > 0) {
+                double delta = other.mean - mean;
+                double n = count + other.count;
+                mean += delta * other.count / n;
+                m2 += other.m2 + delta * delta * count * other.count / n;
+            }
+            break;
+        case Aggregate.BOOL_AND:
+            if (value == null) {
+                value = v;
+            } else if (v != null) {
+                value = ValueBoolean.get(value.getBoolean().booleanValue() && v.getBoolean().booleanValue());
+            }
+            break;
+        case Aggregate.BOOL_OR:
+            if (value == null) {
+                value = v;
+            } else if (v != null) {
+                value = ValueBoolean.get(value.getBoolean().booleanValue() || v.getBoolean().booleanValue());
+            }
+            break;
+        default:
+            DbException.throwInternalError("type=" + aggregateType);
+        }
+        count += other.count;
+    }
+
     ArrayList<Value> getList() {
         return list;
     }
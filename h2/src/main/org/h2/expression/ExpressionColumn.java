@@ -6,7 +6,6 @@
  */
 package org.h2.expression;
 
-import java.util.HashMap;
 import org.h2.command.Parser;
 import org.h2.command.dml.Select;
 import org.h2.command.dml.SelectListColumnResolver;
@@ -37,6 +36,7 @@ public class ExpressionColumn extends Expression {
     private int queryLevel;
     private Column column;
     private boolean evaluatable;
+    private int groupSlot = -1;
 
     public ExpressionColumn(Database database, Column column) {
         this.database = database;
@@ -146,14 +146,16 @@ public class ExpressionColumn extends Expression {
         if (select == null) {
             throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, getSQL());
         }
-        HashMap<Expression, Object> values = select.getCurrentGroup();
-        if (values == null) {
+        if (select.getCurrentGroup() == null) {
             // this is a different level (the enclosing query)
             return;
         }
-        Value v = (Value) values.get(this);
+        if (groupSlot < 0) {
+            groupSlot = select.addGroupSlot(this, true);
+        }
+        Value v = (Value) select.getCurrentGroupData(groupSlot);
         if (v == null) {
-            values.put(this, now);
+            select.setCurrentGroupData(groupSlot, now);
         } else {
             if (!database.areEqual(now, v)) {
                 throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, getSQL());
@@ -164,9 +166,8 @@ public class ExpressionColumn extends Expression {
     public Value getValue(Session session) {
         Select select = columnResolver.getSelect();
         if (select != null) {
-            HashMap<Expression, Object> values = select.getCurrentGroup();
-            if (values != null) {
-                Value v = (Value) values.get(this);
+            if (select.getCurrentGroup() != null) {
+                Value v = (Value) select.getCurrentGroupData(groupSlot);
                 if (v != null) {
                     return v;
                 }
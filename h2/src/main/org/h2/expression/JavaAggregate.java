@@ -8,7 +8,6 @@ package org.h2.expression;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.HashMap;
 import org.h2.api.AggregateFunction;
 import org.h2.command.Parser;
 import org.h2.command.dml.Select;
@@ -35,6 +34,7 @@ public class JavaAggregate extends Expression {
     private int dataType;
     private Connection userConnection;
     private int lastGroupRowId;
+    private int groupSlot = -1;
 
     public JavaAggregate(UserAggregate userAggregate, Expression[] args, Select select) {
         this.userAggregate = userAggregate;
@@ -137,12 +137,11 @@ public class JavaAggregate extends Expression {
     }
 
     public Value getValue(Session session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
-        if (group == null) {
+        if (select.getCurrentGroup() == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
         try {
-            AggregateFunction agg = (AggregateFunction) group.get(this);
+            AggregateFunction agg = (AggregateFunction) select.getCurrentGroupData(groupSlot);
             if (agg == null) {
                 agg = getInstance();
             }
@@ -157,8 +156,7 @@ public class JavaAggregate extends Expression {
     }
 
     public void updateAggregate(Session session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
-        if (group == null) {
+        if (select.getCurrentGroup() == null) {
             // this is a different level (the enclosing query)
             return;
         }
@@ -170,11 +168,15 @@ public class JavaAggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateFunction agg = (AggregateFunction) group.get(this);
+        if (groupSlot < 0) {
+            // the state of a user defined aggregate can't be stored on disk
+            groupSlot = select.addGroupSlot(this, false);
+        }
+        AggregateFunction agg = (AggregateFunction) select.getCurrentGroupData(groupSlot);
         try {
             if (agg == null) {
                 agg = getInstance();
-                group.put(this, agg);
+                select.setCurrentGroupData(groupSlot, agg);
             }
             Object[] argValues = new Object[args.length];
             Object arg = null;
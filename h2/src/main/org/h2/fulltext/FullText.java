@@ -19,12 +19,15 @@ import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.UUID;
 import org.h2.api.Trigger;
+import org.h2.command.Command;
+import org.h2.command.CommandInterface;
 import org.h2.command.Parser;
 import org.h2.engine.Session;
 import org.h2.expression.Comparison;
@@ -73,9 +76,11 @@ public class FullText {
     private static final String FIELD_SCORE = "SCORE";
 
     private static final String TRIGGER_PREFIX = "FT_";
+    private static final String STATEMENT_TRIGGER_PREFIX = "FTS_";
     private static final String SCHEMA = "FT";
-    private static final String SELECT_MAP_BY_WORD_ID = "SELECT ROWID FROM " + SCHEMA + ".MAP WHERE WORDID=?";
+    private static final String SELECT_MAP_BY_WORD_ID = "SELECT ROWID, FREQ FROM " + SCHEMA + ".MAP WHERE WORDID=? ORDER BY ROWID";
     private static final String SELECT_ROW_BY_ID = "SELECT KEY, INDEXID FROM " + SCHEMA + ".ROWS WHERE ID=?";
+    private static final String SELECT_ROW_COUNT = "SELECT COUNT(*) FROM " + SCHEMA + ".ROWS";
 
     /**
      * The column name of the result set returned by the search method.
@@ -114,7 +119,10 @@ public class FullText {
         stat.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA
                 + ".ROWS(ID IDENTITY, HASH INT, INDEXID INT, KEY VARCHAR, UNIQUE(HASH, INDEXID, KEY))");
         stat.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA
-                        + ".MAP(ROWID INT, WORDID INT, PRIMARY KEY(WORDID, ROWID))");
+                        + ".MAP(ROWID INT, WORDID INT, FREQ INT, PRIMARY KEY(WORDID, ROWID))");
+        // the number of times the word appears in the row (null if the row
+        // was indexed by an older version)
+        stat.execute("ALTER TABLE " + SCHEMA + ".MAP ADD IF NOT EXISTS FREQ INT");
         stat.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA + ".IGNORELIST(LIST VARCHAR)");
         stat.execute("CREATE TABLE IF NOT EXISTS " + SCHEMA + ".SETTINGS(KEY VARCHAR PRIMARY KEY, VALUE VARCHAR)");
         stat.execute("CREATE ALIAS IF NOT EXISTS FT_CREATE_INDEX FOR \"" + FullText.class.getName() + ".createIndex\"");
@@ -137,6 +145,9 @@ public class FullText {
                 setting.setWhitespaceChars(value);
             }
         }
+        rs = stat.executeQuery("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME='MVCC'");
+        setting.cachePostings = !(rs.next() && "TRUE".equals(rs.getString(1)));
+        setting.clearPostingLists();
         rs = stat.executeQuery("SELECT * FROM " + SCHEMA + ".WORDS");
         HashMap<String, Integer> map = setting.getWordList();
         while (rs.next()) {
@@ -180,8 +191,10 @@ public class FullText {
     public static void reindex(Connection conn) throws SQLException {
         init(conn);
         removeAllTriggers(conn, TRIGGER_PREFIX);
+        removeAllTriggers(conn, STATEMENT_TRIGGER_PREFIX);
         FullTextSettings setting = FullTextSettings.getInstance(conn);
         setting.getWordList().clear();
+        setting.clearPostingLists();
         Statement stat = conn.createStatement();
         stat.execute("TRUNCATE TABLE " + SCHEMA + ".WORDS");
         stat.execute("TRUNCATE TABLE " + SCHEMA + ".ROWS");
@@ -228,6 +241,7 @@ public class FullText {
                 break;
             }
         }
+        FullTextSettings.getInstance(conn).clearPostingLists();
         prep = conn.prepareStatement("DELETE FROM " + SCHEMA + ".MAP M " +
                 "WHERE NOT EXISTS (SELECT * FROM " + SCHEMA + ".ROWS R WHERE R.ID=M.ROWID) AND ROWID<10000");
         while (true) {
@@ -248,10 +262,12 @@ public class FullText {
         Statement stat = conn.createStatement();
         stat.execute("DROP SCHEMA IF EXISTS " + SCHEMA);
         removeAllTriggers(conn, TRIGGER_PREFIX);
+        removeAllTriggers(conn, STATEMENT_TRIGGER_PREFIX);
         FullTextSettings setting = FullTextSettings.getInstance(conn);
         setting.removeAllIndexes();
         setting.getIgnoreList().clear();
         setting.getWordList().clear();
+        setting.clearPostingLists();
     }
 
     /**
@@ -260,8 +276,9 @@ public class FullText {
      * <ul><li>QUERY (varchar): the query to use to get the data.
      * The query does not include 'SELECT * FROM '. Example:
      * PUBLIC.TEST WHERE ID = 1
-     * </li><li>SCORE (float) the relevance score. This value is always 1.0
-     * for the native fulltext search.
+     * </li><li>SCORE (float) the relevance score. Rows that contain the
+     * searched words more often, and rows that contain rare words, get a higher
+     * score. The rows are returned in the order of the score, highest first.
      * </li></ul>
      *
      * @param conn the connection
@@ -289,8 +306,9 @@ public class FullText {
      * names. The column names are quoted if necessary. Example: (ID) </li>
      * <li>KEYS (array of values): comma separated list of values. Example: (1)
      * </li>
-     * <li>SCORE (float) the relevance score. This value is always 1.0
-     * for the native fulltext search.
+     * <li>SCORE (float) the relevance score. Rows that contain the searched
+     * words more often, and rows that contain rare words, get a higher score.
+     * The rows are returned in the order of the score, highest first.
      * </li>
      * </ul>
      *
@@ -580,36 +598,66 @@ public class FullText {
         if (!setting.isInitialized()) {
             init(conn);
         }
+        // changes of a statement that is still running, or that failed
+        setting.flushPendingChanges();
         HashSet<String> words = New.hashSet();
         addWords(setting, words, text);
-        HashSet<Integer> rIds = null, lastRowIds = null;
         HashMap<String, Integer> allWords = setting.getWordList();
-
-        PreparedStatement prepSelectMapByWordId = setting.prepare(conn, SELECT_MAP_BY_WORD_ID);
+        PostingList[] lists = new PostingList[words.size()];
+        int i = 0;
         for (String word : words) {
-            lastRowIds = rIds;
-            rIds = New.hashSet();
             Integer wId = allWords.get(word);
             if (wId == null) {
-                continue;
+                return result;
             }
-            prepSelectMapByWordId.setInt(1, wId.intValue());
-            ResultSet rs = prepSelectMapByWordId.executeQuery();
-            while (rs.next()) {
-                Integer rId = rs.getInt(1);
-                if (lastRowIds == null || lastRowIds.contains(rId)) {
-                    rIds.add(rId);
-                }
+            PostingList list = getPostingList(conn, setting, wId.intValue());
+            if (list.size() == 0) {
+                return result;
+            }
+            lists[i++] = list;
+        }
+        if (lists.length == 0) {
+            return result;
+        }
+        // start with the shortest list, so that the intermediate result
+        // is as small as possible
+        Arrays.sort(lists, new Comparator<PostingList>() {
+            public int compare(PostingList a, PostingList b) {
+                return a.size() - b.size();
             }
+        });
+        int[] rIds = lists[0].toArray();
+        int len = rIds.length;
+        for (i = 1; i < lists.length && len > 0; i++) {
+            len = lists[i].retainAll(rIds, len);
         }
-        if (rIds == null || rIds.size() == 0) {
+        if (len == 0) {
             return result;
         }
+        // rank the rows as in BM25 (without the document length): a word
+        // that appears in fewer rows has a higher weight
+        ResultSet rs = setting.prepare(conn, SELECT_ROW_COUNT).executeQuery();
+        rs.next();
+        long rowTotal = rs.getLong(1);
+        float[] scores = new float[len];
+        for (PostingList list : lists) {
+            double n = list.size(), total = Math.max(rowTotal, list.size());
+            float idf = (float) Math.log(1 + (total - n + 0.5) / (n + 0.5));
+            list.addScores(rIds, len, scores, idf);
+        }
+        // sort by score (highest first), and then by row id; the scores are
+        // positive, so the bits of the float values sort the same way
+        long[] order = new long[len];
+        for (i = 0; i < len; i++) {
+            order[i] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(scores[i])) << 32) | i;
+        }
+        Arrays.sort(order);
         PreparedStatement prepSelectRowById = setting.prepare(conn, SELECT_ROW_BY_ID);
         int rowCount = 0;
-        for (int rowId : rIds) {
-            prepSelectRowById.setInt(1, rowId);
-            ResultSet rs = prepSelectRowById.executeQuery();
+        for (i = 0; i < len; i++) {
+            int x = (int) order[i];
+            prepSelectRowById.setInt(1, rIds[x]);
+            rs = prepSelectRowById.executeQuery();
             if (!rs.next()) {
                 continue;
             }
@@ -626,12 +674,12 @@ public class FullText {
                             index.table,
                             columnData[0],
                             columnData[1],
-                            1.0);
+                            (double) scores[x]);
                 } else {
                     String query = StringUtils.quoteIdentifier(index.schema) +
                         "." + StringUtils.quoteIdentifier(index.table) +
                         " WHERE " + key;
-                    result.addRow(query, 1.0);
+                    result.addRow(query, (double) scores[x]);
                 }
                 rowCount++;
                 if (limit > 0 && rowCount >= limit) {
@@ -642,6 +690,49 @@ public class FullText {
         return result;
     }
 
+    /**
+     * Get the posting list of a word. The list is read from the map table if
+     * it is not cached.
+     *
+     * @param conn the database connection
+     * @param setting the fulltext settings
+     * @param wordId the word id
+     * @return the posting list
+     */
+    private static PostingList getPostingList(Connection conn, FullTextSettings setting, int wordId)
+            throws SQLException {
+        PostingList list = setting.getPostingList(wordId);
+        if (list != null) {
+            return list;
+        }
+        PreparedStatement prep = setting.prepare(conn, SELECT_MAP_BY_WORD_ID);
+        prep.setInt(1, wordId);
+        ResultSet rs = prep.executeQuery();
+        int[] ids = new int[16];
+        int[] counts = new int[16];
+        int size = 0;
+        while (rs.next()) {
+            if (size == ids.length) {
+                int[] newIds = new int[size * 2];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                ids = newIds;
+                int[] newCounts = new int[size * 2];
+                System.arraycopy(counts, 0, newCounts, 0, size);
+                counts = newCounts;
+            }
+            ids[size] = rs.getInt(1);
+            // null (0) if the row was indexed by an older version
+            counts[size++] = Math.max(1, rs.getInt(2));
+        }
+        list = PostingList.create(ids, counts, size);
+        // within a transaction, the list may contain uncommitted changes
+        // that are rolled back later (without calling the trigger)
+        if (conn.getAutoCommit()) {
+            setting.putPostingList(wordId, list);
+        }
+        return list;
+    }
+
     private static void addColumnData(ArrayList<String> columns, ArrayList<String> data, Expression expr) {
         if (expr instanceof ConditionAndOr) {
             ConditionAndOr and = (ConditionAndOr) expr;
@@ -671,6 +762,20 @@ public class FullText {
      * @param reader the reader
      */
     protected static void addWords(FullTextSettings setting, HashSet<String> set, Reader reader) {
+        HashMap<String, Integer> counts = New.hashMap();
+        addWords(setting, counts, reader);
+        set.addAll(counts.keySet());
+    }
+
+    /**
+     * Add all words in the given text to the map, and count how many times
+     * each word appears.
+     *
+     * @param setting the fulltext settings
+     * @param counts the map of words and the number of times
+     * @param reader the reader
+     */
+    protected static void addWords(FullTextSettings setting, HashMap<String, Integer> counts, Reader reader) {
         StreamTokenizer tokenizer = new StreamTokenizer(reader);
         tokenizer.resetSyntax();
         tokenizer.wordChars(' ' + 1, 255);
@@ -687,7 +792,7 @@ public class FullText {
                     String word = tokenizer.sval;
                     word = setting.convertWord(word);
                     if (word != null) {
-                        set.add(word);
+                        addWord(counts, word);
                     }
                 }
             }
@@ -704,17 +809,36 @@ public class FullText {
      * @param text the text
      */
     protected static void addWords(FullTextSettings setting, HashSet<String> set, String text) {
+        HashMap<String, Integer> counts = New.hashMap();
+        addWords(setting, counts, text);
+        set.addAll(counts.keySet());
+    }
+
+    /**
+     * Add all words in the given text to the map, and count how many times
+     * each word appears.
+     *
+     * @param setting the fulltext settings
+     * @param counts the map of words and the number of times
+     * @param text the text
+     */
+    protected static void addWords(FullTextSettings setting, HashMap<String, Integer> counts, String text) {
         String whitespaceChars = setting.getWhitespaceChars();
         StringTokenizer tokenizer = new StringTokenizer(text, whitespaceChars);
         while (tokenizer.hasMoreTokens()) {
             String word = tokenizer.nextToken();
             word = setting.convertWord(word);
             if (word != null) {
-                set.add(word);
+                addWord(counts, word);
             }
         }
     }
 
+    private static void addWord(HashMap<String, Integer> counts, String word) {
+        Integer count = counts.get(word);
+        counts.put(word, count == null ? 1 : count + 1);
+    }
+
     /**
      * Create the trigger.
      *
@@ -731,8 +855,18 @@ public class FullText {
         Statement stat = conn.createStatement();
         String trigger = StringUtils.quoteIdentifier(schema) + "."
                 + StringUtils.quoteIdentifier(TRIGGER_PREFIX + table);
+        String statementTrigger = StringUtils.quoteIdentifier(schema) + "."
+                + StringUtils.quoteIdentifier(STATEMENT_TRIGGER_PREFIX + table);
         stat.execute("DROP TRIGGER IF EXISTS " + trigger);
+        stat.execute("DROP TRIGGER IF EXISTS " + statementTrigger);
         if (create) {
+            // writes the changes of the row trigger at the end of the
+            // statement; it is created first, so that it already exists when
+            // the row trigger is initialized
+            stat.execute("CREATE TRIGGER IF NOT EXISTS " + statementTrigger +
+                    " AFTER INSERT, UPDATE, DELETE ON " +
+                    StringUtils.quoteIdentifier(schema) + "." + StringUtils.quoteIdentifier(table) +
+                    " CALL \"" + FullText.FullTextStatementTrigger.class.getName() + "\"");
             StringBuilder buff = new StringBuilder("CREATE TRIGGER IF NOT EXISTS ");
             // needs to be called on rollback as well, because we use the init connection
             // do to changes in the index (not the user connection)
@@ -761,13 +895,17 @@ public class FullText {
         String sql = "SELECT * FROM " + StringUtils.quoteIdentifier(schema) + "." + StringUtils.quoteIdentifier(table);
         ResultSet rs = conn.createStatement().executeQuery(sql);
         int columnCount = rs.getMetaData().getColumnCount();
-        while (rs.next()) {
+        for (int count = 1; rs.next(); count++) {
             Object[] row = new Object[columnCount];
             for (int i = 0; i < columnCount; i++) {
                 row[i] = rs.getObject(i + 1);
             }
-            existing.fire(conn, null, row);
+            existing.insert(row);
+            if (count % 1000 == 0) {
+                existing.changes.flush();
+            }
         }
+        existing.changes.flush();
     }
 
     private static String quoteString(String data) {
@@ -831,10 +969,21 @@ public class FullText {
         protected FullTextSettings setting;
         protected IndexInfo index;
         protected int[] columnTypes;
-        protected PreparedStatement prepInsertWord, prepInsertRow, prepInsertMap;
-        protected PreparedStatement prepDeleteRow, prepDeleteMap;
+        protected PreparedStatement prepInsertWord, prepInsertRow;
+        protected PreparedStatement prepDeleteRow;
         protected PreparedStatement prepSelectRow;
 
+        /**
+         * The changes to the word map that were not yet written.
+         */
+        protected PendingChanges changes;
+
+        /**
+         * Whether the changes of a statement are written at the end of the
+         * statement (if the statement trigger exists).
+         */
+        protected boolean batch;
+
         /**
          * INTERNAL
          */
@@ -905,14 +1054,23 @@ public class FullText {
                     "INSERT INTO " + SCHEMA + ".WORDS(NAME) VALUES(?)");
             prepInsertRow = conn.prepareStatement(
                     "INSERT INTO " + SCHEMA + ".ROWS(HASH, INDEXID, KEY) VALUES(?, ?, ?)");
-            prepInsertMap = conn.prepareStatement(
-                    "INSERT INTO " + SCHEMA + ".MAP(ROWID, WORDID) VALUES(?, ?)");
             prepDeleteRow = conn.prepareStatement(
                     "DELETE FROM " + SCHEMA + ".ROWS WHERE HASH=? AND INDEXID=? AND KEY=?");
-            prepDeleteMap = conn.prepareStatement(
-                    "DELETE FROM " + SCHEMA + ".MAP WHERE ROWID=? AND WORDID=?");
             prepSelectRow = conn.prepareStatement(
                     "SELECT ID FROM " + SCHEMA + ".ROWS WHERE HASH=? AND INDEXID=? AND KEY=?");
+            prep = conn.prepareStatement(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TRIGGERS WHERE TRIGGER_SCHEMA=? AND TRIGGER_NAME=?");
+            prep.setString(1, schemaName);
+            prep.setString(2, STATEMENT_TRIGGER_PREFIX + tableName);
+            rs = prep.executeQuery();
+            batch = rs.next() && rs.getInt(1) > 0;
+            changes = batch ? setting.getPendingChanges(index.id) : null;
+            if (changes == null) {
+                changes = new PendingChanges(setting, conn, SCHEMA);
+                if (batch) {
+                    setting.setPendingChanges(index.id, changes);
+                }
+            }
         }
 
         /**
@@ -935,6 +1093,10 @@ public class FullText {
                 // insert
                 insert(newRow);
             }
+            if (!batch || !isModification(conn)) {
+                // for example when a transaction is rolled back
+                changes.flush();
+            }
         }
 
         /**
@@ -942,13 +1104,16 @@ public class FullText {
          */
         public void close() {
             setting.removeIndexInfo(index);
+            setting.removePendingChanges(index.id);
         }
 
         /**
          * INTERNAL
          */
-        public void remove() {
+        public void remove() throws SQLException {
+            changes.flush();
             setting.removeIndexInfo(index);
+            setting.removePendingChanges(index.id);
         }
 
         /**
@@ -966,11 +1131,8 @@ public class FullText {
             ResultSet rs = prepInsertRow.getGeneratedKeys();
             rs.next();
             int rowId = rs.getInt(1);
-            prepInsertMap.setInt(1, rowId);
-            int[] wordIds = getWordIds(row);
-            for (int id : wordIds) {
-                prepInsertMap.setInt(2, id);
-                prepInsertMap.execute();
+            for (Map.Entry<String, Integer> e : getWords(row).entrySet()) {
+                changes.insert(rowId, getWordId(e.getKey()), e.getValue());
             }
         }
 
@@ -988,11 +1150,8 @@ public class FullText {
             ResultSet rs = prepSelectRow.executeQuery();
             if (rs.next()) {
                 int rowId = rs.getInt(1);
-                prepDeleteMap.setInt(1, rowId);
-                int[] wordIds = getWordIds(row);
-                for (int id : wordIds) {
-                    prepDeleteMap.setInt(2, id);
-                    prepDeleteMap.executeUpdate();
+                for (String word : getWords(row).keySet()) {
+                    changes.delete(rowId, getWordId(word));
                 }
                 prepDeleteRow.setInt(1, hash);
                 prepDeleteRow.setInt(2, index.id);
@@ -1001,8 +1160,8 @@ public class FullText {
             }
         }
 
-        private int[] getWordIds(Object[] row) throws SQLException {
-            HashSet<String> words = New.hashSet();
+        private HashMap<String, Integer> getWords(Object[] row) throws SQLException {
+            HashMap<String, Integer> words = New.hashMap();
             for (int idx : index.indexColumns) {
                 int type = columnTypes[idx];
                 Object data = row[idx];
@@ -1019,27 +1178,22 @@ public class FullText {
                     addWords(setting, words, string);
                 }
             }
+            return words;
+        }
+
+        private int getWordId(String word) throws SQLException {
             HashMap<String, Integer> allWords = setting.getWordList();
-            int[] wordIds = new int[words.size()];
-            Iterator<String> it = words.iterator();
-            for (int i = 0; it.hasNext(); i++) {
-                String word = it.next();
-                Integer wId = allWords.get(word);
-                int wordId;
-                if (wId == null) {
-                    prepInsertWord.setString(1, word);
-                    prepInsertWord.execute();
-                    ResultSet rs = prepInsertWord.getGeneratedKeys();
-                    rs.next();
-                    wordId = rs.getInt(1);
-                    allWords.put(word, wordId);
-                } else {
-                    wordId = wId.intValue();
-                }
-                wordIds[i] = wordId;
+            Integer wId = allWords.get(word);
+            if (wId != null) {
+                return wId.intValue();
             }
-            Arrays.sort(wordIds);
-            return wordIds;
+            prepInsertWord.setString(1, word);
+            prepInsertWord.execute();
+            ResultSet rs = prepInsertWord.getGeneratedKeys();
+            rs.next();
+            int wordId = rs.getInt(1);
+            allWords.put(word, wordId);
+            return wordId;
         }
 
         private String getKey(Object[] row) throws SQLException {
@@ -1059,6 +1213,88 @@ public class FullText {
 
     }
 
+    /**
+     * Check whether the current statement of the session is an insert, update,
+     * delete, or merge statement. The statement trigger is called at the end
+     * of such statements (unless they fail).
+     *
+     * @param conn the connection of the session
+     * @return true if it is
+     */
+    static boolean isModification(Connection conn) {
+        if (!(conn instanceof JdbcConnection) ||
+                !(((JdbcConnection) conn).getSession() instanceof Session)) {
+            return false;
+        }
+        Command command = ((Session) ((JdbcConnection) conn).getSession()).getCurrentCommand();
+        if (command == null) {
+            return false;
+        }
+        switch (command.getCommandType()) {
+        case CommandInterface.INSERT:
+        case CommandInterface.UPDATE:
+        case CommandInterface.DELETE:
+        case CommandInterface.MERGE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Trigger that writes the changes of the row trigger at the end of each
+     * statement that changes the table, as one batch.
+     */
+    public static class FullTextStatementTrigger implements Trigger {
+
+        protected FullTextSettings setting;
+        protected int indexId;
+
+        /**
+         * INTERNAL
+         */
+        public void init(Connection conn, String schemaName, String triggerName,
+                String tableName, boolean before, int type) throws SQLException {
+            setting = FullTextSettings.getInstance(conn);
+            if (!setting.isInitialized()) {
+                FullText.init(conn);
+            }
+            PreparedStatement prep = conn.prepareStatement(
+                    "SELECT ID FROM " + SCHEMA + ".INDEXES WHERE SCHEMA=? AND TABLE=?");
+            prep.setString(1, schemaName);
+            prep.setString(2, tableName);
+            ResultSet rs = prep.executeQuery();
+            if (rs.next()) {
+                indexId = rs.getInt(1);
+            }
+        }
+
+        /**
+         * INTERNAL
+         */
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            PendingChanges changes = setting.getPendingChanges(indexId);
+            if (changes != null) {
+                changes.flush();
+            }
+        }
+
+        /**
+         * INTERNAL
+         */
+        public void close() {
+            // nothing to do
+        }
+
+        /**
+         * INTERNAL
+         */
+        public void remove() {
+            // nothing to do
+        }
+
+    }
+
     /**
      * INTERNAL
      * Close all fulltext settings, freeing up memory.
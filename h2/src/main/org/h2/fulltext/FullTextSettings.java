@@ -11,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import org.h2.util.New;
@@ -52,6 +53,22 @@ public class FullTextSettings {
     protected SoftHashMap<Connection, SoftHashMap<String, PreparedStatement>> cache =
         new SoftHashMap<Connection, SoftHashMap<String, PreparedStatement>>();
 
+    /**
+     * The posting lists of the words that were recently searched, by word id.
+     */
+    protected SoftHashMap<Integer, PostingList> postings = new SoftHashMap<Integer, PostingList>();
+
+    /**
+     * Whether posting lists may be cached. They are not cached in the MVCC
+     * mode, because there each connection may see a different version.
+     */
+    protected boolean cachePostings = true;
+
+    /**
+     * The changes that were not yet written to the word map, by index id.
+     */
+    protected HashMap<Integer, PendingChanges> pendingChanges = New.hashMap();
+
     /**
      * The whitespace characters.
      */
@@ -175,11 +192,100 @@ public class FullTextSettings {
         return prep;
     }
 
+    /**
+     * Get the cached posting list of a word.
+     *
+     * @param wordId the word id
+     * @return the posting list, or null if it is not cached
+     */
+    protected synchronized PostingList getPostingList(int wordId) {
+        return postings.get(wordId);
+    }
+
+    /**
+     * Add a posting list to the cache.
+     *
+     * @param wordId the word id
+     * @param list the posting list
+     */
+    protected synchronized void putPostingList(int wordId, PostingList list) {
+        if (cachePostings) {
+            postings.put(wordId, list);
+        }
+    }
+
+    /**
+     * Remove the cached posting lists of the given words, because rows that
+     * contain the words were added or removed.
+     *
+     * @param wordIds the word ids
+     */
+    protected synchronized void removePostingLists(int[] wordIds) {
+        for (int id : wordIds) {
+            postings.remove(id);
+        }
+    }
+
+    /**
+     * Remove all cached posting lists.
+     */
+    protected synchronized void clearPostingLists() {
+        postings.clear();
+    }
+
+    /**
+     * Get the changes of an index that are written at the end of each
+     * statement.
+     *
+     * @param indexId the index id
+     * @return the pending changes, or null if the changes of this index are
+     *         written immediately
+     */
+    protected synchronized PendingChanges getPendingChanges(int indexId) {
+        return pendingChanges.get(indexId);
+    }
+
+    /**
+     * Set the changes of an index that are written at the end of each
+     * statement.
+     *
+     * @param indexId the index id
+     * @param changes the pending changes
+     */
+    protected synchronized void setPendingChanges(int indexId, PendingChanges changes) {
+        pendingChanges.put(indexId, changes);
+    }
+
+    /**
+     * Remove the pending changes of an index.
+     *
+     * @param indexId the index id
+     */
+    protected synchronized void removePendingChanges(int indexId) {
+        pendingChanges.remove(indexId);
+    }
+
+    /**
+     * Write the pending changes of all indexes.
+     */
+    protected void flushPendingChanges() throws SQLException {
+        ArrayList<PendingChanges> list;
+        synchronized (this) {
+            list = New.arrayList(pendingChanges.values());
+        }
+        for (PendingChanges changes : list) {
+            changes.flush();
+        }
+    }
+
     /**
      * Remove all indexes from the settings.
      */
     protected void removeAllIndexes() {
         indexes.clear();
+        synchronized (this) {
+            pendingChanges.clear();
+        }
     }
 
     /**
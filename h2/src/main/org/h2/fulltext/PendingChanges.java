@@ -0,0 +1,133 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.fulltext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import org.h2.util.New;
+
+/**
+ * The changes to the word map of a native full text index that were not yet
+ * written. The changes of all rows of a statement are collected, and written
+ * at the end of the statement as one batch, in the order of the word id. If a
+ * row is added and removed again before the changes are written (for example
+ * because the statement failed), the entries cancel each other out.
+ */
+public class PendingChanges {
+
+    private final FullTextSettings setting;
+    private final PreparedStatement prepInsertMap, prepDeleteMap;
+
+    /**
+     * The map entries to add (the key is the word id and the row id), and the
+     * number of times the word appears in the row.
+     */
+    private final HashMap<Long, Integer> inserts = New.hashMap();
+
+    /**
+     * The map entries to remove.
+     */
+    private final HashSet<Long> deletes = New.hashSet();
+
+    /**
+     * Create a new instance.
+     *
+     * @param setting the fulltext settings
+     * @param conn the connection used to write the changes
+     * @param schema the name of the schema that contains the map table
+     */
+    PendingChanges(FullTextSettings setting, Connection conn, String schema) throws SQLException {
+        this.setting = setting;
+        prepInsertMap = conn.prepareStatement(
+                "INSERT INTO " + schema + ".MAP(ROWID, WORDID, FREQ) VALUES(?, ?, ?)");
+        prepDeleteMap = conn.prepareStatement(
+                "DELETE FROM " + schema + ".MAP WHERE ROWID=? AND WORDID=?");
+    }
+
+    /**
+     * Add a word of a row.
+     *
+     * @param rowId the row id
+     * @param wordId the word id
+     * @param count the number of times the word appears in the row
+     */
+    public synchronized void insert(int rowId, int wordId, int count) {
+        inserts.put(getKey(rowId, wordId), count);
+    }
+
+    /**
+     * Remove a word of a row.
+     *
+     * @param rowId the row id
+     * @param wordId the word id
+     */
+    public synchronized void delete(int rowId, int wordId) {
+        Long key = getKey(rowId, wordId);
+        if (inserts.remove(key) == null) {
+            deletes.add(key);
+        }
+    }
+
+    /**
+     * Write the changes to the map table, and remove the posting lists of the
+     * changed words from the cache.
+     */
+    public synchronized void flush() throws SQLException {
+        if (inserts.size() == 0 && deletes.size() == 0) {
+            return;
+        }
+        HashSet<Integer> wordIds = New.hashSet();
+        try {
+            for (long key : sort(deletes)) {
+                int wordId = (int) (key >>> 32);
+                prepDeleteMap.setInt(1, (int) key);
+                prepDeleteMap.setInt(2, wordId);
+                prepDeleteMap.addBatch();
+                wordIds.add(wordId);
+            }
+            prepDeleteMap.executeBatch();
+            for (long key : sort(inserts.keySet())) {
+                int wordId = (int) (key >>> 32);
+                prepInsertMap.setInt(1, (int) key);
+                prepInsertMap.setInt(2, wordId);
+                prepInsertMap.setInt(3, inserts.get(key));
+                prepInsertMap.addBatch();
+                wordIds.add(wordId);
+            }
+            prepInsertMap.executeBatch();
+        } finally {
+            inserts.clear();
+            deletes.clear();
+            int[] ids = new int[wordIds.size()];
+            int i = 0;
+            for (int id : wordIds) {
+                ids[i++] = id;
+            }
+            setting.removePostingLists(ids);
+        }
+    }
+
+    private static Long getKey(int rowId, int wordId) {
+        return ((long) wordId << 32) | (rowId & 0xffffffffL);
+    }
+
+    private static long[] sort(Collection<Long> keys) {
+        long[] list = new long[keys.size()];
+        int i = 0;
+        for (long k : keys) {
+            list[i++] = k;
+        }
+        Arrays.sort(list);
+        return list;
+    }
+
+}
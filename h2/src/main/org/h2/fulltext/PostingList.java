@@ -0,0 +1,144 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.fulltext;
+
+import org.h2.store.Data;
+import org.h2.util.Utils;
+
+/**
+ * The sorted list of the ids of all rows that contain a word, together with
+ * the number of times the word appears in each row. The list is stored in
+ * compressed form: each entry is the difference to the previous id, followed by
+ * the number of times, both encoded as a variable size int.
+ */
+public class PostingList {
+
+    /**
+     * How fast the score of a row grows less if a word appears more often in
+     * the row (the BM25 parameter k1).
+     */
+    private static final float K1 = 1.2f;
+
+    private final byte[] data;
+    private final int size;
+
+    private PostingList(byte[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    /**
+     * Create a posting list.
+     *
+     * @param ids the row ids, sorted in ascending order
+     * @param counts the number of times the word appears in each row
+     * @param size the number of row ids
+     * @return the posting list
+     */
+    public static PostingList create(int[] ids, int[] counts, int size) {
+        Data buff = Data.create(null, Math.max(16, size * 3));
+        int last = 0;
+        for (int i = 0; i < size; i++) {
+            buff.checkCapacity(10);
+            buff.writeVarInt(ids[i] - last);
+            buff.writeVarInt(counts[i]);
+            last = ids[i];
+        }
+        byte[] data = Utils.newBytes(buff.length());
+        System.arraycopy(buff.getBytes(), 0, data, 0, data.length);
+        return new PostingList(data, size);
+    }
+
+    /**
+     * Get the number of row ids.
+     *
+     * @return the number of row ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes used by the compressed list.
+     *
+     * @return the number of bytes
+     */
+    public int getMemory() {
+        return data.length;
+    }
+
+    /**
+     * Decode all row ids.
+     *
+     * @return the row ids, sorted in ascending order
+     */
+    public int[] toArray() {
+        int[] ids = new int[size];
+        Data buff = Data.create(null, data);
+        int last = 0;
+        for (int i = 0; i < size; i++) {
+            last += buff.readVarInt();
+            buff.readVarInt();
+            ids[i] = last;
+        }
+        return ids;
+    }
+
+    /**
+     * Remove all row ids from the array that are not in this list. The
+     * remaining row ids are moved to the beginning of the array.
+     *
+     * @param ids the row ids, sorted in ascending order (will be modified)
+     * @param len the number of row ids in the array
+     * @return the number of remaining row ids
+     */
+    public int retainAll(int[] ids, int len) {
+        Data buff = Data.create(null, data);
+        int remaining = size;
+        int current = 0;
+        if (remaining > 0) {
+            current = buff.readVarInt();
+            buff.readVarInt();
+        }
+        int j = 0;
+        for (int i = 0; i < len && remaining > 0; i++) {
+            int id = ids[i];
+            while (current < id && --remaining > 0) {
+                current += buff.readVarInt();
+                buff.readVarInt();
+            }
+            if (remaining > 0 && current == id) {
+                ids[j++] = id;
+            }
+        }
+        return j;
+    }
+
+    /**
+     * Add the score of this word to the score of each row in the array. The
+     * score grows with the number of times the word appears in the row, but
+     * less and less (as in BM25): idf * count * (k1 + 1) / (count + k1).
+     *
+     * @param ids the row ids, sorted in ascending order (all of them must be
+     *            in this list)
+     * @param len the number of row ids in the array
+     * @param scores the scores of the rows (will be modified)
+     * @param idf the weight of the word (the inverse document frequency)
+     */
+    public void addScores(int[] ids, int len, float[] scores, float idf) {
+        Data buff = Data.create(null, data);
+        int current = 0;
+        for (int i = 0, j = 0; i < size && j < len; i++) {
+            current += buff.readVarInt();
+            int count = buff.readVarInt();
+            if (ids[j] == current) {
+                scores[j++] += idf * count * (K1 + 1) / (count + K1);
+            }
+        }
+    }
+
+}
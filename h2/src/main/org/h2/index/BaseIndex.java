@@ -18,6 +18,7 @@ import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
 import org.h2.schema.SchemaObjectBase;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.IndexColumn;
 import org.h2.table.Table;
 import org.h2.table.TableFilter;
@@ -102,6 +103,40 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
         return find(filter.getSession(), first, last);
     }
 
+    /**
+     * Estimate the cost to search for rows given the search mask and the
+     * conditions of the table filter. This implementation ignores the table
+     * filter and calls getCost(session, masks).
+     *
+     * @param session the session
+     * @param masks the search mask
+     * @param filter the table filter (may be null)
+     * @return the estimated cost
+     */
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        return getCost(session, masks);
+    }
+
+    /**
+     * Estimate the cost to search for rows in the given index, using the
+     * conditions of the table filter if the index supports it. Indexes that
+     * don't extend BaseIndex only get the search mask.
+     *
+     * @param index the index
+     * @param session the session
+     * @param masks the search mask
+     * @param filter the table filter (may be null)
+     * @return the estimated cost
+     */
+    public static double getCost(Index index, Session session, int[] masks, TableFilter filter) {
+        if (index instanceof BaseIndex) {
+            return ((BaseIndex) index).getCost(session, masks, filter);
+        } else if (index instanceof MultiVersionIndex) {
+            return ((MultiVersionIndex) index).getCost(session, masks, filter);
+        }
+        return index.getCost(session, masks);
+    }
+
     /**
      * Find a row or a list of rows that is larger and create a cursor to
      * iterate over the result. The base implementation doesn't support this feature.
@@ -126,6 +161,23 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
      * @return the estimated cost
      */
     protected long getCostRangeIndex(int[] masks, long rowCount) {
+        return getCostRangeIndex(masks, rowCount, null);
+    }
+
+    /**
+     * Calculate the cost for the given mask as if this index was a typical
+     * b-tree range index. If the table filter is set and the columns have
+     * statistics (see ANALYZE), the number of rows is estimated using the
+     * most common values and the histogram of the columns.
+     *
+     * @param masks the search mask
+     * @param rowCount the number of rows in the index
+     * @param filter the table filter, or null
+     * @return the estimated cost
+     */
+    protected long getCostRangeIndex(int[] masks, long rowCount, TableFilter filter) {
+        // the estimated number of matching rows, if statistics are used
+        double matching = rowCount;
         rowCount += Constants.COST_ROW_OFFSET;
         long cost = rowCount;
         long rows = rowCount;
@@ -137,26 +189,39 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
             Column column = columns[i];
             int index = column.getColumnId();
             int mask = masks[index];
+            ColumnStatistics statistics = filter == null ? null : column.getStatistics();
             if ((mask & IndexCondition.EQUALITY) == IndexCondition.EQUALITY) {
                 if (i == columns.length - 1 && getIndexType().isUnique()) {
                     cost = 3;
                     break;
                 }
-                totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
-                long distinctRows = rowCount * totalSelectivity / 100;
-                if (distinctRows <= 0) {
-                    distinctRows = 1;
+                double fraction = statistics == null ? -1 :
+                    statistics.getEqualityFraction(filter.getSession(), filter, column);
+                if (fraction >= 0) {
+                    matching *= fraction;
+                    rows = Math.max((long) matching, 1);
+                } else {
+                    totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
+                    long distinctRows = rowCount * totalSelectivity / 100;
+                    if (distinctRows <= 0) {
+                        distinctRows = 1;
+                    }
+                    rows = Math.min(rows, Math.max(rowCount / distinctRows, 1));
+                    matching = Math.min(matching, rows);
                 }
-                rows = Math.max(rowCount / distinctRows, 1);
                 cost = 2 + rows;
-            } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
-                cost = 2 + rows / 4;
-                break;
-            } else if ((mask & IndexCondition.START) == IndexCondition.START) {
-                cost = 2 + rows / 3;
-                break;
-            } else if ((mask & IndexCondition.END) == IndexCondition.END) {
-                cost = rows / 3;
+            } else if ((mask & IndexCondition.RANGE) != 0) {
+                double fraction = statistics == null ? -1 :
+                    statistics.getRangeFraction(filter.getSession(), filter, column);
+                if (fraction >= 0) {
+                    cost = 2 + (long) (matching * fraction);
+                } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
+                    cost = 2 + rows / 4;
+                } else if ((mask & IndexCondition.START) == IndexCondition.START) {
+                    cost = 2 + rows / 3;
+                } else {
+                    cost = rows / 3;
+                }
                 break;
             } else {
                 break;
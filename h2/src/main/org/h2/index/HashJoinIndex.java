@@ -0,0 +1,250 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.util.New;
+import org.h2.util.ValueHashMap;
+import org.h2.value.CompareMode;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueNull;
+
+/**
+ * A temporary hash index that is used to join a table on equality conditions
+ * (a hash join). The optimizer only uses it for tables that are not the first
+ * table of a join, and if the table has no better index. The hash table is
+ * built when the first row is requested (the build phase), by scanning the
+ * table once. Each outer row then only needs a hash lookup (the probe
+ * phase). The optimizer doesn't use a hash join if the table contains more
+ * than MAX_MEMORY_ROWS rows. If the table grew larger than that after the
+ * query was prepared, the hash table is not built, and the whole table is
+ * scanned for each outer row instead (a nested loop join). The hash table is
+ * not partitioned to disk, because the outer rows are read in the order of
+ * the outer table, so that the partitions would be re-loaded for almost each
+ * outer row.
+ */
+public class HashJoinIndex extends BaseIndex {
+
+    private final int[] keyColumnIds;
+    private final int maxMemoryRows;
+
+    private Session buildSession;
+    private long buildModificationId = -1;
+    private ValueHashMap<ArrayList<Row>> rows;
+
+    public HashJoinIndex(Table table, IndexColumn[] columns) {
+        initBaseIndex(table, 0, table.getName() + "_HASH_JOIN", columns, IndexType.createNonUnique(false, true));
+        keyColumnIds = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            keyColumnIds[i] = columns[i].column.getColumnId();
+        }
+        maxMemoryRows = database.getMaxMemoryRows();
+    }
+
+    /**
+     * Check whether a hash join can be used for a condition of the form
+     * column = expression. This is only the case if the values are equal
+     * exactly when the hash keys are equal: the expression must have the same
+     * data type as the column, and a few data types are not supported (for
+     * example decimal values, where 1.0 and 1.00 are equal but have different
+     * hash codes, and text if a collation is used).
+     *
+     * @param column the column
+     * @param expressionType the data type of the expression
+     * @return true if a hash join can be used
+     */
+    public static boolean isHashable(Column column, int expressionType) {
+        int type = column.getType();
+        if (type != expressionType) {
+            return false;
+        }
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.BYTES:
+        case Value.UUID:
+            return true;
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.STRING_FIXED:
+            String collation = column.getTable().getDatabase().getCompareMode().getName();
+            return CompareMode.OFF.equals(collation);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Release the hash table. This method is called when the query is started
+     * and when it is done.
+     */
+    public void reset() {
+        rows = null;
+        buildSession = null;
+        buildModificationId = -1;
+    }
+
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        if (first == null) {
+            throw DbException.throwInternalError();
+        }
+        Value key = getKey(first, true);
+        if (key == null) {
+            // column = NULL is never true
+            return new MetaCursor(new ArrayList<Row>(0));
+        }
+        if (buildSession != session || buildModificationId != table.getMaxDataModificationId()) {
+            build(session);
+        }
+        if (rows == null) {
+            // the table is too large: the conditions are checked
+            // by the table filter for each row
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        ArrayList<Row> list = rows.get(key);
+        if (list == null) {
+            list = new ArrayList<Row>(0);
+        }
+        return new MetaCursor(list);
+    }
+
+    private Value getKey(SearchRow row, boolean convert) {
+        int len = keyColumnIds.length;
+        Value[] list = len == 1 ? null : new Value[len];
+        for (int i = 0; i < len; i++) {
+            Value v = row.getValue(keyColumnIds[i]);
+            if (v == null || v == ValueNull.INSTANCE) {
+                return null;
+            }
+            if (convert) {
+                v = columns[i].convert(v);
+            }
+            if (len == 1) {
+                return v;
+            }
+            list[i] = v;
+        }
+        return ValueArray.get(list);
+    }
+
+    private void build(Session session) {
+        reset();
+        rows = ValueHashMap.newInstance();
+        int rowCount = 0;
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        while (cursor.next()) {
+            Row row = cursor.get();
+            Value key = getKey(row, false);
+            if (key == null) {
+                // can never match
+                continue;
+            }
+            add(key, row);
+            if (++rowCount > maxMemoryRows) {
+                // use a nested loop join
+                rows = null;
+                break;
+            }
+        }
+        buildSession = session;
+        buildModificationId = table.getMaxDataModificationId();
+    }
+
+    private void add(Value key, Row row) {
+        ArrayList<Row> list = rows.get(key);
+        if (list == null) {
+            list = New.arrayList();
+            rows.put(key, list);
+        }
+        list.add(row);
+    }
+
+    public double getCost(Session session, int[] masks) {
+        return getCost(session, masks, null);
+    }
+
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        for (Column column : columns) {
+            int index = column.getColumnId();
+            int mask = masks[index];
+            if ((mask & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                return Long.MAX_VALUE;
+            }
+        }
+        // a little more expensive than a regular index,
+        // as the hash table needs to be built first
+        return 10 * getCostRangeIndex(masks, table.getRowCountApproximation(), filter) + 10;
+    }
+
+    public String getPlanSQL() {
+        return table.getSQL() + ".hashJoin";
+    }
+
+    public void close(Session session) {
+        reset();
+    }
+
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void checkRename() {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public boolean needRebuild() {
+        return false;
+    }
+
+    public String getCreateSQL() {
+        return null;
+    }
+
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+}
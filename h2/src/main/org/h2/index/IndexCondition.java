@@ -306,6 +306,45 @@ public class IndexCondition {
         return column;
     }
 
+    /**
+     * Get the data type of the expression (only for single value
+     * conditions).
+     *
+     * @return the data type, or Value.UNKNOWN
+     */
+    public int getExpressionType() {
+        return expression == null ? Value.UNKNOWN : expression.getType();
+    }
+
+    /**
+     * Check if the expression (or all expressions of the list) are constant.
+     *
+     * @return true if the values are known when the query is prepared
+     */
+    public boolean isConstant() {
+        if (expression != null) {
+            return expression.isConstant();
+        }
+        if (expressionList != null) {
+            for (Expression e : expressionList) {
+                if (!e.isConstant()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of expressions in the list (for IN_LIST conditions).
+     *
+     * @return the number of expressions, or 1
+     */
+    public int getExpressionCount() {
+        return expressionList == null ? 1 : expressionList.size();
+    }
+
     /**
      * Check if the expression can be evaluated.
      *
@@ -142,6 +142,10 @@ public class MultiVersionCursor implements Cursor {
                     long k2 = baseRow.getKey();
                     compare = MathUtils.compareLong(k1, k2);
                 }
+                if (reverse) {
+                    // iterating backwards: the larger row comes first
+                    compare = -compare;
+                }
                 if (compare == 0) {
                     if (isDeleted) {
                         if (isThisSession) {
@@ -66,6 +66,9 @@ public class MultiVersionIndex implements Index {
     public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
         synchronized (sync) {
             Cursor baseCursor = base.find(filter, first, last);
+            if (!hasUncommittedChanges()) {
+                return baseCursor;
+            }
             Cursor deltaCursor = delta.find(filter, first, last);
             return new MultiVersionCursor(filter.getSession(), this, baseCursor, deltaCursor, sync);
         }
@@ -74,6 +77,9 @@ public class MultiVersionIndex implements Index {
     public Cursor find(Session session, SearchRow first, SearchRow last) {
         synchronized (sync) {
             Cursor baseCursor = base.find(session, first, last);
+            if (!hasUncommittedChanges()) {
+                return baseCursor;
+            }
             Cursor deltaCursor = delta.find(session, first, last);
             return new MultiVersionCursor(session, this, baseCursor, deltaCursor, sync);
         }
@@ -105,8 +111,15 @@ public class MultiVersionIndex implements Index {
             }
             return cursor;
         }
-        Cursor baseCursor = base.findFirstOrLast(session, false);
-        Cursor deltaCursor = delta.findFirstOrLast(session, false);
+        Cursor baseCursor;
+        Cursor deltaCursor;
+        synchronized (sync) {
+            baseCursor = base.findFirstOrLast(session, false);
+            if (!hasUncommittedChanges()) {
+                return baseCursor;
+            }
+            deltaCursor = delta.findFirstOrLast(session, false);
+        }
         MultiVersionCursor cursor = new MultiVersionCursor(session, this, baseCursor, deltaCursor, sync);
         cursor.loadCurrent();
         // TODO optimization: this loops through NULL elements
@@ -127,6 +140,19 @@ public class MultiVersionIndex implements Index {
         return base.getCost(session, masks);
     }
 
+    /**
+     * Estimate the cost to search for rows given the search mask and the
+     * conditions of the table filter, using the base index.
+     *
+     * @param session the session
+     * @param masks the search mask
+     * @param filter the table filter (may be null)
+     * @return the estimated cost
+     */
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        return BaseIndex.getCost(base, session, masks, filter);
+    }
+
     public boolean needRebuild() {
         return base.needRebuild();
     }
@@ -140,6 +166,9 @@ public class MultiVersionIndex implements Index {
      * @return true if there is an uncommitted row
      */
     public boolean isUncommittedFromOtherSession(Session session, Row row) {
+        if (!hasUncommittedChanges()) {
+            return false;
+        }
         Cursor c = delta.find(session, row, row);
         while (c.next()) {
             Row r = c.get();
@@ -148,6 +177,18 @@ public class MultiVersionIndex implements Index {
         return false;
     }
 
+    /**
+     * Check if there are uncommitted changes in this index. If there are none,
+     * the base index alone returns the same rows as the combined cursor, so
+     * readers don't need to merge the delta index and don't need to lock the
+     * database for each row.
+     *
+     * @return true if the delta index is not empty
+     */
+    private boolean hasUncommittedChanges() {
+        return delta.getRowCount(null) > 0;
+    }
+
     private boolean removeIfExists(Session session, Row row) {
         // maybe it was inserted by the same session just before
         Cursor c = delta.find(session, row, row);
@@ -65,6 +65,12 @@ public abstract class PageBtree extends Page {
      */
     protected boolean onlyPosition;
 
+    /**
+     * The common prefix of the first column of all entries, or null if the
+     * entries are not prefix compressed.
+     */
+    protected String prefix;
+
     /**
      * Whether the data page is up-to-date.
      */
@@ -171,7 +177,7 @@ public abstract class PageBtree extends Page {
     SearchRow getRow(int at) {
         SearchRow row = rows[at];
         if (row == null) {
-            row = index.readRow(data, offsets[at], onlyPosition, true);
+            row = index.readRow(data, offsets[at], onlyPosition, true, prefix);
             memoryChange();
             rows[at] = row;
         } else if (!index.hasData(row)) {
@@ -265,12 +271,122 @@ public abstract class PageBtree extends Page {
         for (int i = 0; i < entryCount; i++) {
             SearchRow row = rows[i];
             if (row == null) {
-                row = index.readRow(data, offsets[i], onlyPosition, false);
+                row = index.readRow(data, offsets[i], onlyPosition, false, prefix);
                 rows[i] = row;
             }
         }
     }
 
+    /**
+     * Get the number of bytes the prefix needs in the page header.
+     *
+     * @param prefix the prefix, or null
+     * @return the number of bytes
+     */
+    static int getPrefixLength(String prefix) {
+        return prefix == null ? 0 : Data.getStringLen(prefix);
+    }
+
+    /**
+     * Get the offset of the last entry, if all entries use the given prefix.
+     *
+     * @param newPrefix the prefix
+     * @return the offset
+     */
+    protected int getLastOffset(String newPrefix) {
+        int pageSize = index.getPageStore().getPageSize();
+        int last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
+        if (newPrefix == prefix) {
+            return last;
+        }
+        if (isShorterPrefix(newPrefix) && isDataWritten()) {
+            // the entries grow by the characters that are removed from the
+            // prefix; this doesn't require reading the rows
+            String s = prefix.substring(newPrefix.length());
+            for (int i = 0; i < entryCount; i++) {
+                last -= index.getPrefixGrowth(data, offsets[i], s);
+            }
+            return last;
+        }
+        readAllRows();
+        int o = pageSize;
+        for (int i = 0; i < entryCount; i++) {
+            o -= index.getRowSize(data, rows[i], onlyPosition, newPrefix);
+        }
+        return o;
+    }
+
+    /**
+     * Get the new prefix if the given row is added to this page. Pages that
+     * only store the position don't have a prefix.
+     *
+     * @param row the row
+     * @return the new prefix (the same object if it didn't change), or null
+     */
+    protected String getNewPrefix(SearchRow row) {
+        return onlyPosition ? null : index.getPrefix(prefix, row);
+    }
+
+    /**
+     * Check whether the given prefix is shorter than the current prefix (it is
+     * always a prefix of the current prefix).
+     *
+     * @param newPrefix the new prefix
+     * @return true if it is shorter
+     */
+    protected boolean isShorterPrefix(String newPrefix) {
+        return prefix != null && newPrefix != null && newPrefix.length() < prefix.length();
+    }
+
+    /**
+     * Whether the entries in the data buffer are up-to-date, so that they can
+     * be used without reading the rows.
+     *
+     * @return true if they are
+     */
+    protected boolean isDataWritten() {
+        return false;
+    }
+
+    /**
+     * Change the prefix of the entries. This changes the offsets, and the
+     * start of the data area.
+     *
+     * @param newPrefix the new prefix, or null
+     */
+    protected void setPrefix(String newPrefix) {
+        readAllRows();
+        start += getPrefixLength(newPrefix) - getPrefixLength(prefix);
+        prefix = newPrefix;
+        int o = index.getPageStore().getPageSize();
+        for (int i = 0; i < entryCount; i++) {
+            o -= index.getRowSize(data, rows[i], onlyPosition, prefix);
+            offsets[i] = o;
+        }
+        written = false;
+    }
+
+    /**
+     * Use the longest common prefix of the remaining entries, if that needs
+     * less space. This is called after the page was split.
+     */
+    protected void updatePrefix() {
+        if (prefix == null || onlyPosition) {
+            return;
+        }
+        readAllRows();
+        String p = null;
+        for (int i = 0; i < entryCount; i++) {
+            p = index.getPrefix(p, rows[i]);
+        }
+        if (p == null || p.length() == prefix.length()) {
+            return;
+        }
+        if (getLastOffset(p) - getPrefixLength(p) > getLastOffset(prefix) - getPrefixLength(prefix)) {
+            setPrefix(p);
+        }
+    }
+
     /**
      * Get the estimated memory size.
      *
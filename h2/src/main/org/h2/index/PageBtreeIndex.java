@@ -19,9 +19,12 @@ import org.h2.store.PageStore;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.RegularTable;
+import org.h2.table.TableFilter;
 import org.h2.util.MathUtils;
+import org.h2.value.DataType;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
+import org.h2.value.ValueString;
 
 /**
  * This is the most common type of index, a b tree index.
@@ -33,6 +36,7 @@ public class PageBtreeIndex extends PageIndex {
 
     private final PageStore store;
     private final RegularTable tableData;
+    private final boolean prefixCompression;
     private boolean needRebuild;
     private long rowCount;
     private int memoryPerPage;
@@ -51,6 +55,7 @@ public class PageBtreeIndex extends PageIndex {
             throw DbException.throwInternalError("" + indexName);
         }
         this.store = database.getPageStore();
+        prefixCompression = store.isPrefixCompression() && DataType.isStringType(columns[0].column.getType());
         store.addIndex(this);
         if (create) {
             // new index
@@ -220,7 +225,11 @@ public class PageBtreeIndex extends PageIndex {
     }
 
     public double getCost(Session session, int[] masks) {
-        return 10 * getCostRangeIndex(masks, tableData.getRowCount(session));
+        return getCost(session, masks, null);
+    }
+
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        return 10 * getCostRangeIndex(masks, tableData.getRowCount(session), filter);
     }
 
     public boolean needRebuild() {
@@ -327,9 +336,10 @@ public class PageBtreeIndex extends PageIndex {
      * @param offset the offset
      * @param onlyPosition whether only the position of the row is stored
      * @param needData whether the row data is required
+     * @param prefix the prefix of the first column, or null
      * @return the row
      */
-    SearchRow readRow(Data data, int offset, boolean onlyPosition, boolean needData) {
+    SearchRow readRow(Data data, int offset, boolean onlyPosition, boolean needData, String prefix) {
         synchronized (data) {
             data.setPos(offset);
             long key = data.readVarLong();
@@ -343,9 +353,9 @@ public class PageBtreeIndex extends PageIndex {
             }
             SearchRow row = table.getTemplateSimpleRow(columns.length == 1);
             row.setKey(key);
-            for (Column col : columns) {
-                int idx = col.getColumnId();
-                row.setValue(idx, data.readValue());
+            row.setValue(columns[0].getColumnId(), addPrefix(prefix, data.readValue()));
+            for (int i = 1; i < columns.length; i++) {
+                row.setValue(columns[i].getColumnId(), data.readValue());
             }
             return row;
         }
@@ -368,14 +378,15 @@ public class PageBtreeIndex extends PageIndex {
      * @param offset the offset
      * @param onlyPosition whether only the position of the row is stored
      * @param row the row to write
+     * @param prefix the prefix of the first column, or null
      */
-    void writeRow(Data data, int offset, SearchRow row, boolean onlyPosition) {
+    void writeRow(Data data, int offset, SearchRow row, boolean onlyPosition, String prefix) {
         data.setPos(offset);
         data.writeVarLong(row.getKey());
         if (!onlyPosition) {
-            for (Column col : columns) {
-                int idx = col.getColumnId();
-                data.writeValue(row.getValue(idx));
+            data.writeValue(removePrefix(prefix, row.getValue(columns[0].getColumnId())));
+            for (int i = 1; i < columns.length; i++) {
+                data.writeValue(row.getValue(columns[i].getColumnId()));
             }
         }
     }
@@ -386,19 +397,106 @@ public class PageBtreeIndex extends PageIndex {
      * @param dummy a dummy data page to calculate the size
      * @param row the row
      * @param onlyPosition whether only the position of the row is stored
+     * @param prefix the prefix of the first column, or null
      * @return the number of bytes
      */
-    int getRowSize(Data dummy, SearchRow row, boolean onlyPosition) {
+    int getRowSize(Data dummy, SearchRow row, boolean onlyPosition, String prefix) {
         int rowsize = Data.getVarLongLen(row.getKey());
         if (!onlyPosition) {
-            for (Column col : columns) {
-                Value v = row.getValue(col.getColumnId());
+            rowsize += dummy.getValueLen(removePrefix(prefix, row.getValue(columns[0].getColumnId())));
+            for (int i = 1; i < columns.length; i++) {
+                Value v = row.getValue(columns[i].getColumnId());
                 rowsize += dummy.getValueLen(v);
             }
         }
         return rowsize;
     }
 
+    /**
+     * Get the common prefix of the given prefix and the value of the first
+     * column of the row. Only string columns are prefix compressed; NULL
+     * doesn't change the prefix.
+     *
+     * @param prefix the prefix, or null if there is none yet
+     * @param row the row
+     * @return the new prefix (the same object if it didn't change), or null
+     */
+    String getPrefix(String prefix, SearchRow row) {
+        if (!prefixCompression) {
+            return null;
+        }
+        Value v = row.getValue(columns[0].getColumnId());
+        if (v == ValueNull.INSTANCE) {
+            return prefix;
+        }
+        String s = v.getString();
+        if (prefix == null) {
+            return s;
+        }
+        int len = Math.min(prefix.length(), s.length());
+        for (int i = 0; i < len; i++) {
+            if (prefix.charAt(i) != s.charAt(i)) {
+                len = i;
+                break;
+            }
+        }
+        return len == prefix.length() ? prefix : prefix.substring(0, len);
+    }
+
+    /**
+     * Get the number of bytes an entry needs in addition if the given
+     * characters are removed from the end of the prefix.
+     *
+     * @param data the data page
+     * @param offset the offset of the entry
+     * @param s the characters that are removed from the prefix
+     * @return the number of additional bytes
+     */
+    int getPrefixGrowth(Data data, int offset, String s) {
+        synchronized (data) {
+            data.setPos(offset);
+            data.readVarLong();
+            return data.getStringValueGrowth(s);
+        }
+    }
+
+    /**
+     * Copy an entry from the source to the target page, and add the given
+     * characters at the start of the first column, without reading the row.
+     * This is used if characters are removed from the end of the prefix.
+     *
+     * @param source the source page
+     * @param offset the offset of the entry in the source page
+     * @param end the end of the entry in the source page
+     * @param target the target page
+     * @param targetOffset the offset of the entry in the target page
+     * @param s the characters to add
+     */
+    void copyRowAddPrefix(Data source, int offset, int end, Data target, int targetOffset, String s) {
+        source.setPos(offset);
+        target.setPos(targetOffset);
+        target.writeVarLong(source.readVarLong());
+        target.writeStringValueWithPrefix(source, s);
+        int p = source.length();
+        target.write(source.getBytes(), p, end - p);
+    }
+
+    private static Value removePrefix(String prefix, Value v) {
+        if (prefix == null || prefix.length() == 0 || v == ValueNull.INSTANCE) {
+            return v;
+        }
+        Value s = ValueString.get(v.getString().substring(prefix.length()));
+        return v.getType() == Value.STRING ? s : s.convertTo(v.getType());
+    }
+
+    private static Value addPrefix(String prefix, Value v) {
+        if (prefix == null || prefix.length() == 0 || v == ValueNull.INSTANCE) {
+            return v;
+        }
+        Value s = ValueString.get(prefix + v.getString());
+        return v.getType() == Value.STRING ? s : s.convertTo(v.getType());
+    }
+
     public boolean canFindNext() {
         return true;
     }
@@ -25,9 +25,12 @@ import org.h2.store.PageStore;
  * <li>parent page id (0 for root): int</li>
  * <li>index id: varInt</li>
  * <li>entry count: short</li>
+ * <li>prefix (only if the page type contains FLAG_PREFIX): string</li>
  * <li>list of offsets: short</li>
  * <li>data (key: varLong, value,...)</li>
  * </ul>
+ * If the entries are prefix compressed, the first value of each entry is
+ * stored without the common prefix (NULL is stored as is).
  */
 public class PageBtreeLeaf extends PageBtree {
 
@@ -86,6 +89,9 @@ public class PageBtreeLeaf extends PageBtree {
                     "got:" + indexId);
         }
         entryCount = data.readShortInt();
+        if ((type & Page.FLAG_PREFIX) != 0) {
+            prefix = data.readString();
+        }
         offsets = new int[entryCount];
         rows = new SearchRow[entryCount];
         for (int i = 0; i < entryCount; i++) {
@@ -103,10 +109,12 @@ public class PageBtreeLeaf extends PageBtree {
     }
 
     private int addRow(SearchRow row, boolean tryOnly) {
-        int rowLength = index.getRowSize(data, row, onlyPosition);
+        String newPrefix = getNewPrefix(row);
+        int rowLength = index.getRowSize(data, row, onlyPosition, newPrefix);
         int pageSize = index.getPageStore().getPageSize();
-        int last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
-        if (last - rowLength < start + OFFSET_LENGTH) {
+        int last = getLastOffset(newPrefix);
+        int newStart = start + getPrefixLength(newPrefix) - getPrefixLength(prefix);
+        if (last - rowLength < newStart + OFFSET_LENGTH) {
             if (tryOnly && entryCount > 1) {
                 int x = find(row, false, true, true);
                 if (entryCount < 5) {
@@ -122,17 +130,22 @@ public class PageBtreeLeaf extends PageBtree {
             readAllRows();
             writtenData = false;
             onlyPosition = true;
+            start -= getPrefixLength(prefix);
+            prefix = null;
             // change the offsets (now storing only positions)
             int o = pageSize;
             for (int i = 0; i < entryCount; i++) {
-                o -= index.getRowSize(data, getRow(i), true);
+                o -= index.getRowSize(data, getRow(i), true, null);
                 offsets[i] = o;
             }
             last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
-            rowLength = index.getRowSize(data, row, true);
+            rowLength = index.getRowSize(data, row, true, null);
             if (SysProperties.CHECK && last - rowLength < start + OFFSET_LENGTH) {
                 throw DbException.throwInternalError();
             }
+        } else if (newPrefix != prefix) {
+            // all entries are written again
+            setPrefix(newPrefix);
         }
         index.getPageStore().logUndo(this, data);
         if (!optimizeUpdate) {
@@ -155,7 +168,7 @@ public class PageBtreeLeaf extends PageBtree {
                 int dataEnd = offset;
                 System.arraycopy(d, dataStart, d, dataStart - rowLength, dataEnd - dataStart + rowLength);
             }
-            index.writeRow(data, offset, row, onlyPosition);
+            index.writeRow(data, offset, row, onlyPosition, prefix);
         }
         offsets = insert(offsets, entryCount, x, offset);
         add(offsets, x + 1, entryCount + 1, -rowLength);
@@ -205,6 +218,7 @@ public class PageBtreeLeaf extends PageBtree {
             p2.addRow(getRow(splitPoint), false);
             removeRow(splitPoint);
         }
+        updatePrefix();
         memoryChange();
         p2.memoryChange();
         return p2;
@@ -260,11 +274,15 @@ public class PageBtreeLeaf extends PageBtree {
 
     private void writeHead() {
         data.reset();
-        data.writeByte((byte) (Page.TYPE_BTREE_LEAF | (onlyPosition ? 0 : Page.FLAG_LAST)));
+        data.writeByte((byte) (Page.TYPE_BTREE_LEAF | (onlyPosition ? 0 : Page.FLAG_LAST) |
+                (prefix == null ? 0 : Page.FLAG_PREFIX)));
         data.writeShortInt(0);
         data.writeInt(parentPageId);
         data.writeVarInt(index.getId());
         data.writeShortInt(entryCount);
+        if (prefix != null) {
+            data.writeString(prefix);
+        }
     }
 
     private void writeData() {
@@ -280,7 +298,7 @@ public class PageBtreeLeaf extends PageBtree {
         }
         if (!writtenData || !optimizeUpdate) {
             for (int i = 0; i < entryCount; i++) {
-                index.writeRow(data, offsets[i], rows[i], onlyPosition);
+                index.writeRow(data, offsets[i], rows[i], onlyPosition, prefix);
             }
             writtenData = true;
         }
@@ -351,6 +369,7 @@ public class PageBtreeLeaf extends PageBtree {
         p2.entryCount = entryCount;
         p2.offsets = offsets;
         p2.onlyPosition = onlyPosition;
+        p2.prefix = prefix;
         p2.parentPageId = parentPageId;
         p2.start = start;
         store.update(p2);
@@ -363,6 +382,40 @@ public class PageBtreeLeaf extends PageBtree {
         store.free(getPos());
     }
 
+    protected boolean isDataWritten() {
+        return optimizeUpdate && writtenData;
+    }
+
+    protected void setPrefix(String newPrefix) {
+        if (!isShorterPrefix(newPrefix) || !isDataWritten()) {
+            super.setPrefix(newPrefix);
+            writtenData = false;
+            return;
+        }
+        // move the entries, and add the characters that are removed from the
+        // prefix to each of them, without reading the rows
+        index.getPageStore().logUndo(this, data);
+        String s = prefix.substring(newPrefix.length());
+        int pageSize = index.getPageStore().getPageSize();
+        int last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
+        byte[] copy = new byte[pageSize];
+        synchronized (data) {
+            System.arraycopy(data.getBytes(), last, copy, last, pageSize - last);
+            Data source = Data.create(index.getDatabase(), copy);
+            int end = pageSize, o = pageSize;
+            for (int i = 0; i < entryCount; i++) {
+                int offset = offsets[i];
+                o -= end - offset + index.getPrefixGrowth(source, offset, s);
+                index.copyRowAddPrefix(source, offset, end, data, o, s);
+                offsets[i] = o;
+                end = offset;
+            }
+        }
+        start += getPrefixLength(newPrefix) - getPrefixLength(prefix);
+        prefix = newPrefix;
+        written = false;
+    }
+
     protected void memoryChange() {
         if (!PageBtreeIndex.isMemoryChangeRequired()) {
             return;
@@ -26,11 +26,13 @@ import org.h2.util.Utils;
  * <li>index id: varInt</li>
  * <li>count of all children (-1 if not known): int</li>
  * <li>entry count: short</li>
+ * <li>prefix (only if the page type contains FLAG_PREFIX): string</li>
  * <li>rightmost child page id: int</li>
  * <li>entries (child page id: int, offset: short)</li>
  * </ul>
  * The row contains the largest key of the respective child,
  * meaning row[0] contains the largest key of child[0].
+ * The rows are prefix compressed in the same way as in leaf pages.
  */
 public class PageBtreeNode extends PageBtree {
 
@@ -103,6 +105,9 @@ public class PageBtreeNode extends PageBtree {
         }
         rowCount = rowCountStored = data.readInt();
         entryCount = data.readShortInt();
+        if ((type & Page.FLAG_PREFIX) != 0) {
+            prefix = data.readString();
+        }
         childPageIds = new int[entryCount + 1];
         childPageIds[entryCount] = data.readInt();
         rows = entryCount == 0 ? SearchRow.EMPTY_ARRAY : new SearchRow[entryCount];
@@ -135,10 +140,10 @@ public class PageBtreeNode extends PageBtree {
             // more space) - and removing a child can't split this page
             startData = entryCount + 1 * MAX_KEY_LENGTH;
         } else {
-            int rowLength = index.getRowSize(data, row, onlyPosition);
-            int pageSize = index.getPageStore().getPageSize();
-            int last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
-            startData = last - rowLength;
+            String newPrefix = getNewPrefix(row);
+            int rowLength = index.getRowSize(data, row, onlyPosition, newPrefix);
+            int last = getLastOffset(newPrefix);
+            startData = last - rowLength - getPrefixLength(newPrefix) + getPrefixLength(prefix);
         }
         if (startData < start + CHILD_OFFSET_PAIR_LENGTH) {
             return entryCount / 2;
@@ -154,23 +159,30 @@ public class PageBtreeNode extends PageBtree {
      * @param row the row smaller than the first row of the child and its children
      */
     private void addChild(int x, int childPageId, SearchRow row) {
-        int rowLength = index.getRowSize(data, row, onlyPosition);
+        String newPrefix = getNewPrefix(row);
+        int rowLength = index.getRowSize(data, row, onlyPosition, newPrefix);
         int pageSize = index.getPageStore().getPageSize();
-        int last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
-        if (last - rowLength < start + CHILD_OFFSET_PAIR_LENGTH) {
+        int last = getLastOffset(newPrefix);
+        int newStart = start + getPrefixLength(newPrefix) - getPrefixLength(prefix);
+        if (last - rowLength < newStart + CHILD_OFFSET_PAIR_LENGTH) {
             readAllRows();
             onlyPosition = true;
+            start -= getPrefixLength(prefix);
+            prefix = null;
             // change the offsets (now storing only positions)
             int o = pageSize;
             for (int i = 0; i < entryCount; i++) {
-                o -= index.getRowSize(data, getRow(i), true);
+                o -= index.getRowSize(data, getRow(i), true, null);
                 offsets[i] = o;
             }
             last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
-            rowLength = index.getRowSize(data, row, true);
+            rowLength = index.getRowSize(data, row, true, null);
             if (SysProperties.CHECK && last - rowLength < start + CHILD_OFFSET_PAIR_LENGTH) {
                 throw DbException.throwInternalError();
             }
+        } else if (newPrefix != prefix) {
+            setPrefix(newPrefix);
+            last = entryCount == 0 ? pageSize : offsets[entryCount - 1];
         }
         int offset = last - rowLength;
         if (entryCount > 0) {
@@ -256,6 +268,7 @@ public class PageBtreeNode extends PageBtree {
         }
         p2.childPageIds[0] = firstChild;
         p2.remapChildren();
+        updatePrefix();
         return p2;
     }
 
@@ -412,12 +425,16 @@ public class PageBtreeNode extends PageBtree {
 
     private void writeHead() {
         data.reset();
-        data.writeByte((byte) (Page.TYPE_BTREE_NODE | (onlyPosition ? 0 : Page.FLAG_LAST)));
+        data.writeByte((byte) (Page.TYPE_BTREE_NODE | (onlyPosition ? 0 : Page.FLAG_LAST) |
+                (prefix == null ? 0 : Page.FLAG_PREFIX)));
         data.writeShortInt(0);
         data.writeInt(parentPageId);
         data.writeVarInt(index.getId());
         data.writeInt(rowCountStored);
         data.writeShortInt(entryCount);
+        if (prefix != null) {
+            data.writeString(prefix);
+        }
     }
 
     private void writeData() {
@@ -432,7 +449,7 @@ public class PageBtreeNode extends PageBtree {
             data.writeShortInt(offsets[i]);
         }
         for (int i = 0; i < entryCount; i++) {
-            index.writeRow(data, offsets[i], rows[i], onlyPosition);
+            index.writeRow(data, offsets[i], rows[i], onlyPosition, prefix);
         }
         written = true;
     }
@@ -543,6 +560,7 @@ public class PageBtreeNode extends PageBtree {
         p2.entryCount = entryCount;
         p2.offsets = offsets;
         p2.onlyPosition = onlyPosition;
+        p2.prefix = prefix;
         p2.parentPageId = parentPageId;
         p2.start = start;
         store.update(p2);
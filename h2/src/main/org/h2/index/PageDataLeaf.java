@@ -13,6 +13,7 @@ import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
+import org.h2.result.LazyRow;
 import org.h2.result.Row;
 import org.h2.store.Data;
 import org.h2.store.Page;
@@ -36,6 +37,13 @@ import org.h2.value.Value;
  */
 public class PageDataLeaf extends PageData {
 
+    /**
+     * The minimum number of columns of a row to decode it lazily. Rows with
+     * fewer columns are decoded when they are read, as copying the serialized
+     * values costs about as much as decoding them.
+     */
+    private static final int LAZY_MIN_COLUMNS = 4;
+
     private final boolean optimizeUpdate;
 
     /**
@@ -144,11 +152,7 @@ public class PageDataLeaf extends PageData {
     }
 
     private int getRowLength(Row row) {
-        int size = 0;
-        for (int i = 0; i < columnCount; i++) {
-            size += data.getValueLen(row.getValue(i));
-        }
-        return size;
+        return row.getByteCount(data);
     }
 
     private int findInsertionPoint(long key) {
@@ -327,7 +331,11 @@ public class PageDataLeaf extends PageData {
         Row r = rows[at];
         if (r == null) {
             if (firstOverflowPageId == 0) {
-                r = readRow(data, offsets[at], columnCount);
+                if (columnCount < LAZY_MIN_COLUMNS) {
+                    r = readRow(data, offsets[at], columnCount);
+                } else {
+                    r = readLazyRow(at);
+                }
             } else {
                 if (rowRef != null) {
                     r = rowRef.get();
@@ -584,6 +592,23 @@ public class PageDataLeaf extends PageData {
         return firstOverflowPageId > 0;
     }
 
+    /**
+     * Read a row that is stored within this page. The serialized values are
+     * copied, and only decoded when they are used.
+     *
+     * @param at the index
+     * @return the row
+     */
+    private Row readLazyRow(int at) {
+        int end = at == 0 ? index.getPageStore().getPageSize() : offsets[at - 1];
+        int offset = offsets[at];
+        byte[] bytes = new byte[end - offset];
+        synchronized (data) {
+            System.arraycopy(data.getBytes(), offset, bytes, 0, bytes.length);
+        }
+        return new LazyRow(index.getDatabase(), bytes, columnCount);
+    }
+
     /**
      * Read a row from the data page at the given position.
      *
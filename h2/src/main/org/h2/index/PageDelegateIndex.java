@@ -14,6 +14,7 @@ import org.h2.store.PageStore;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.RegularTable;
+import org.h2.table.TableFilter;
 
 /**
  * An index that delegates indexing to the page data index.
@@ -85,7 +86,11 @@ public class PageDelegateIndex extends PageIndex {
     }
 
     public double getCost(Session session, int[] masks) {
-        return 10 * getCostRangeIndex(masks, mainIndex.getRowCount(session));
+        return getCost(session, masks, null);
+    }
+
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        return 10 * getCostRangeIndex(masks, mainIndex.getRowCount(session), filter);
     }
 
     public boolean needRebuild() {
@@ -37,7 +37,12 @@ public abstract class PageIndex extends BaseIndex {
         this.sortedInsertMode = sortedInsertMode;
     }
 
-    boolean isSortedInsertMode() {
+    /**
+     * Check whether the sorted insert mode is enabled.
+     *
+     * @return true if it is enabled
+     */
+    public boolean isSortedInsertMode() {
         return sortedInsertMode;
     }
 
@@ -309,7 +309,11 @@ public class TreeIndex extends BaseIndex {
     }
 
     public double getCost(Session session, int[] masks) {
-        return getCostRangeIndex(masks, tableData.getRowCountApproximation());
+        return getCost(session, masks, null);
+    }
+
+    public double getCost(Session session, int[] masks, TableFilter filter) {
+        return getCostRangeIndex(masks, tableData.getRowCountApproximation(), filter);
     }
 
     public void remove(Session session) {
@@ -1088,36 +1088,36 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
                 // TODO batch: check what other database do if no parameters are set
                 batchParameters = New.arrayList();
             }
-            int size = batchParameters.size();
-            int[] result = new int[size];
-            boolean error = false;
-            SQLException next = null;
             checkClosedForWrite();
             try {
-                for (int i = 0; i < size; i++) {
-                    Value[] set = batchParameters.get(i);
-                    ArrayList<? extends ParameterInterface> parameters = command.getParameters();
-                    for (int j = 0; j < set.length; j++) {
-                        Value value = set[j];
-                        ParameterInterface param = parameters.get(j);
-                        param.setValue(value, false);
-                    }
+                // over a TCP connection, all sets of parameters are sent
+                // to the server at once
+                ArrayList<DbException> exceptions = New.arrayList();
+                int[] result;
+                closeOldResultSet();
+                synchronized (session) {
                     try {
-                        result[i] = executeUpdateInternal();
-                    } catch (Exception re) {
+                        setExecutingStatement(command);
+                        result = command.executeBatchUpdate(batchParameters, exceptions);
+                    } finally {
+                        setExecutingStatement(null);
+                    }
+                }
+                batchParameters = null;
+                for (int updateCount : result) {
+                    if (updateCount != Statement.EXECUTE_FAILED) {
+                        this.updateCount = updateCount;
+                    }
+                }
+                if (exceptions.size() > 0) {
+                    SQLException next = null;
+                    for (DbException re : exceptions) {
                         SQLException e = logAndConvert(re);
-                        if (next == null) {
-                            next = e;
-                        } else {
+                        if (next != null) {
                             e.setNextException(next);
-                            next = e;
                         }
-                        result[i] = Statement.EXECUTE_FAILED;
-                        error = true;
+                        next = e;
                     }
-                }
-                batchParameters = null;
-                if (error) {
                     JdbcBatchUpdateException e = new JdbcBatchUpdateException(next, result);
                     throw e;
                 }
@@ -1276,8 +1276,12 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     // =============================================================
 
-    private void setParameter(int parameterIndex, Value value) {
+    private void setParameter(int parameterIndex, Value value) throws SQLException {
         checkClosed();
+        if (resultSet != null && resultSet.isLazy()) {
+            // the remaining rows of a lazy result depend on the parameters
+            closeOldResultSet();
+        }
         parameterIndex--;
         ArrayList<? extends ParameterInterface> parameters = command.getParameters();
         if (parameterIndex < 0 || parameterIndex >= parameters.size()) {
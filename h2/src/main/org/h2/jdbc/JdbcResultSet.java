@@ -192,6 +192,16 @@ public class JdbcResultSet extends TraceObject implements ResultSet {
         }
     }
 
+    /**
+     * Check whether the rows of this result set are computed while they are
+     * read (lazy query execution).
+     *
+     * @return true if the result set is open and lazy
+     */
+    boolean isLazy() {
+        return result != null && result.isLazy();
+    }
+
     /**
      * Close the result set. This method also closes the statement if required.
      */
@@ -2953,7 +2963,16 @@ public class JdbcResultSet extends TraceObject implements ResultSet {
     }
 
     private void checkOnValidRow() {
-        if (result.getRowId() < 0 || result.getRowId() >= result.getRowCount()) {
+        int rowId = result.getRowId();
+        if (rowId < 0) {
+            throw DbException.get(ErrorCode.NO_DATA_AVAILABLE);
+        }
+        if (result.isLazy()) {
+            // don't compute the next row just to read the current one
+            if (result.currentRow() == null) {
+                throw DbException.get(ErrorCode.NO_DATA_AVAILABLE);
+            }
+        } else if (rowId >= result.getRowCount()) {
             throw DbException.get(ErrorCode.NO_DATA_AVAILABLE);
         }
     }
@@ -9,6 +9,9 @@ package org.h2.jmx;
 import java.lang.management.ManagementFactory;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.TreeMap;
@@ -19,6 +22,7 @@ import org.h2.command.Command;
 import org.h2.engine.ConnectionInfo;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
+import org.h2.engine.QueryStatisticsData;
 import org.h2.engine.Session;
 import org.h2.table.Table;
 import org.h2.util.New;
@@ -151,7 +155,7 @@ public class DatabaseInfo implements DatabaseInfoMBean {
 
     public void setCacheSizeMax(int kb) {
         if (database.isPersistent()) {
-            database.getPageStore().getCache().setMaxMemory(kb);
+            database.getPageStore().setMaxCacheMemory(kb);
         }
     }
 
@@ -201,4 +205,32 @@ public class DatabaseInfo implements DatabaseInfoMBean {
         return buff.toString();
     }
 
+    public String listQueryStatistics() {
+        QueryStatisticsData statistics = database.getQueryStatisticsData();
+        if (statistics == null) {
+            return "disabled";
+        }
+        ArrayList<QueryStatisticsData.QueryEntry> list = statistics.getQueries();
+        Collections.sort(list, new Comparator<QueryStatisticsData.QueryEntry>() {
+            public int compare(QueryStatisticsData.QueryEntry o1, QueryStatisticsData.QueryEntry o2) {
+                return (int) Math.signum(o2.executionTimeCumulativeNanos - o1.executionTimeCumulativeNanos);
+            }
+        });
+        StringBuilder buff = new StringBuilder();
+        for (QueryStatisticsData.QueryEntry e : list) {
+            buff.append("statement: ").append(e.sqlStatement).append('\n');
+            buff.append("count: ").append(e.count);
+            buff.append(" total: ").append(e.executionTimeCumulativeNanos / 1000000).append(" ms");
+            buff.append(" max: ").append(e.executionTimeMaxNanos / 1000000).append(" ms");
+            buff.append(" median: ").append(e.getExecutionTimePercentileNanos(50) / 1000).append(" us");
+            buff.append(" p99: ").append(e.getExecutionTimePercentileNanos(99) / 1000).append(" us").append('\n');
+            buff.append("rows: ").append(e.rowCountCumulative);
+            buff.append(" rows read: ").append(e.rowsReadCumulative);
+            buff.append(" page reads: ").append(e.pageReadsCumulative);
+            buff.append(" lock wait: ").append(e.lockWaitCumulativeNanos / 1000000).append(" ms").append('\n');
+            buff.append('\n');
+        }
+        return buff.toString();
+    }
+
 }
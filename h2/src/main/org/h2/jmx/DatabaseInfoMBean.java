@@ -166,4 +166,13 @@ public interface DatabaseInfoMBean {
      */
     String listSessions();
 
+    /**
+     * List the execution statistics of the SQL statements, slowest
+     * statements (by cumulative execution time) first.
+     * @h2.resource
+     *
+     * @return information about the statements
+     */
+    String listQueryStatistics();
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.result;
+
+import org.h2.constant.ErrorCode;
+import org.h2.expression.Expression;
+import org.h2.message.DbException;
+import org.h2.value.Value;
+
+/**
+ * A result that is not materialized: the rows are only computed when they are
+ * requested (lazy query execution). At most one row is read ahead. Such a
+ * result can not be reset, and the number of rows is not known until all rows
+ * are read. Until then, getRowCount returns the number of rows read so far,
+ * plus one if there is a next row, so that the checks for the first, last,
+ * and current row work as usual.
+ */
+public abstract class LazyResult implements ResultInterface {
+
+    private final Expression[] expressions;
+    private final int visibleColumnCount;
+    private Value[] currentRow;
+    private Value[] nextRow;
+    private int rowId = -1;
+    private boolean noMoreRows;
+    private boolean afterLast;
+    private boolean closed;
+
+    protected LazyResult(Expression[] expressions, int visibleColumnCount) {
+        this.expressions = expressions;
+        this.visibleColumnCount = visibleColumnCount;
+    }
+
+    /**
+     * Compute the next row.
+     *
+     * @return the next row, or null if there are no more rows
+     */
+    protected abstract Value[] fetchNextRow();
+
+    /**
+     * Release the resources. This method is called once, when there are no
+     * more rows, or when the result is closed.
+     */
+    protected abstract void done();
+
+    private boolean hasNext() {
+        if (nextRow == null && !noMoreRows) {
+            nextRow = fetchNextRow();
+            if (nextRow == null) {
+                noMoreRows = true;
+                done();
+            }
+        }
+        return nextRow != null;
+    }
+
+    public void reset() {
+        throw DbException.get(ErrorCode.RESULT_SET_NOT_SCROLLABLE);
+    }
+
+    public Value[] currentRow() {
+        return currentRow;
+    }
+
+    public boolean next() {
+        if (afterLast) {
+            return false;
+        }
+        rowId++;
+        if (hasNext()) {
+            currentRow = nextRow;
+            nextRow = null;
+            return true;
+        }
+        currentRow = null;
+        afterLast = true;
+        return false;
+    }
+
+    public int getRowId() {
+        return rowId;
+    }
+
+    public int getVisibleColumnCount() {
+        return visibleColumnCount;
+    }
+
+    public int getRowCount() {
+        if (afterLast) {
+            return rowId;
+        }
+        return rowId + (hasNext() ? 2 : 1);
+    }
+
+    public boolean needToClose() {
+        return true;
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            nextRow = null;
+            if (!noMoreRows) {
+                noMoreRows = true;
+                done();
+            }
+        }
+    }
+
+    public boolean isLazy() {
+        return true;
+    }
+
+    /**
+     * Check whether the resources of this result are released, either
+     * because all rows were read or because the result was closed.
+     *
+     * @return true if no more rows will be computed
+     */
+    public boolean isDone() {
+        return noMoreRows;
+    }
+
+    public String getAlias(int i) {
+        return expressions[i].getAlias();
+    }
+
+    public String getSchemaName(int i) {
+        return expressions[i].getSchemaName();
+    }
+
+    public String getTableName(int i) {
+        return expressions[i].getTableName();
+    }
+
+    public String getColumnName(int i) {
+        return expressions[i].getColumnName();
+    }
+
+    public int getColumnType(int i) {
+        return expressions[i].getType();
+    }
+
+    public long getColumnPrecision(int i) {
+        return expressions[i].getPrecision();
+    }
+
+    public int getColumnScale(int i) {
+        return expressions[i].getScale();
+    }
+
+    public int getDisplaySize(int i) {
+        return expressions[i].getDisplaySize();
+    }
+
+    public boolean isAutoIncrement(int i) {
+        return expressions[i].isAutoIncrement();
+    }
+
+    public int getNullable(int i) {
+        return expressions[i].getNullable();
+    }
+
+    public int getFetchSize() {
+        return 0;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        // ignore
+    }
+
+    public String toString() {
+        return "columns: " + visibleColumnCount + " pos: " + rowId + " lazy";
+    }
+
+}
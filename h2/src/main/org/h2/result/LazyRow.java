@@ -0,0 +1,139 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.result;
+
+import org.h2.engine.Constants;
+import org.h2.store.Data;
+import org.h2.store.DataHandler;
+import org.h2.value.Value;
+
+/**
+ * A row that keeps the serialized form of its values, and only decodes a
+ * value when it is first read. Decoded values are kept. This is used for rows
+ * read from a data page, so that scanning a wide table does not create value
+ * objects for the columns a query doesn't use.
+ */
+public class LazyRow extends Row {
+
+    /**
+     * The serialized values, or null once all values are decoded.
+     */
+    private Data buff;
+
+    /**
+     * The start position of each value, as far as known.
+     */
+    private int[] offsets;
+
+    /**
+     * The number of known value positions.
+     */
+    private int offsetCount;
+
+    private int decodedCount;
+
+    /**
+     * The length of the serialized values, or -1 if a value was changed.
+     */
+    private int byteCount;
+
+    /**
+     * Create a new row.
+     *
+     * @param handler the data handler (used to read LOB values)
+     * @param bytes the serialized values (this array is not copied)
+     * @param columnCount the number of columns
+     */
+    public LazyRow(DataHandler handler, byte[] bytes, int columnCount) {
+        super(new Value[columnCount], MEMORY_CALCULATE);
+        buff = Data.create(handler, bytes);
+        byteCount = bytes.length;
+        if (columnCount > 0) {
+            offsets = new int[columnCount];
+            offsetCount = 1;
+        }
+    }
+
+    public Value getValue(int i) {
+        if (i == -1) {
+            return super.getValue(i);
+        }
+        Value v = data[i];
+        if (v == null) {
+            v = decode(i);
+        }
+        return v;
+    }
+
+    private synchronized Value decode(int i) {
+        Value v = data[i];
+        if (v != null) {
+            // decoded by another thread
+            return v;
+        }
+        Data b = buff;
+        b.setPos(offsets[offsetCount - 1]);
+        while (offsetCount <= i) {
+            b.skipValue();
+            offsets[offsetCount++] = b.length();
+        }
+        b.setPos(offsets[i]);
+        v = b.readValue();
+        if (i + 1 == offsetCount && offsetCount < offsets.length) {
+            offsets[offsetCount++] = b.length();
+        }
+        data[i] = v;
+        if (++decodedCount == data.length) {
+            buff = null;
+            offsets = null;
+        }
+        return v;
+    }
+
+    private void decodeAll() {
+        for (int i = 0; i < data.length; i++) {
+            getValue(i);
+        }
+    }
+
+    public void setValue(int i, Value v) {
+        if (i != -1) {
+            if (data[i] == null) {
+                // keep the decoded count consistent
+                decode(i);
+            }
+            byteCount = -1;
+        }
+        super.setValue(i, v);
+    }
+
+    public Row getCopy() {
+        decodeAll();
+        return super.getCopy();
+    }
+
+    public int getByteCount(Data dummy) {
+        if (byteCount < 0) {
+            decodeAll();
+            return super.getByteCount(dummy);
+        }
+        return byteCount;
+    }
+
+    public int getMemory() {
+        // the serialized data, plus an estimate for the decoded values
+        int len = data.length;
+        return Constants.MEMORY_ROW + 2 * Constants.MEMORY_OBJECT + len * Constants.MEMORY_POINTER +
+                len * 4 + len * Constants.MEMORY_OBJECT + Math.max(0, byteCount) * 2;
+    }
+
+    public String toString() {
+        decodeAll();
+        return super.toString();
+    }
+
+}
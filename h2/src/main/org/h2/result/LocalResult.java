@@ -372,6 +372,10 @@ public class LocalResult implements ResultInterface, ResultTarget {
         }
     }
 
+    public boolean isLazy() {
+        return false;
+    }
+
     public boolean needToClose() {
         return external != null;
     }
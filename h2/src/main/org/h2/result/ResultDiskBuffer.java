@@ -8,31 +8,70 @@ package org.h2.result;
 
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import org.h2.compress.CompressLZF;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
 import org.h2.store.Data;
+import org.h2.store.DataHandler;
 import org.h2.store.FileStore;
+import org.h2.util.MathUtils;
 import org.h2.util.New;
+import org.h2.util.Task;
+import org.h2.value.CompareMode;
 import org.h2.value.Value;
 
 /**
- * This class implements the disk buffer for the LocalResult class.
+ * This class implements the disk buffer for the LocalResult class. It is also
+ * used to store the partitions of a hash join that doesn't fit in memory.
+ * <p>
+ * The rows are stored in blocks of up to READ_AHEAD rows. Each block is
+ * compressed using LZF. If the result is sorted, each list of rows that is
+ * added is sorted and stored as a separate tape. If possible, the sorting and
+ * compression is done in background threads, so that the next rows can be
+ * read in the meantime. The tape of a list is reserved when the list is
+ * added, so the tapes are always in the order the rows were added. When
+ * reading, the tapes are merged using a heap.
  */
-class ResultDiskBuffer implements ResultExternal {
+public class ResultDiskBuffer implements ResultExternal {
+
+    /**
+     * The maximum number of partitions of a hash join or group query that
+     * doesn't fit in memory.
+     */
+    public static final int MAX_PARTITIONS = 256;
 
     private static final int READ_AHEAD = 128;
 
+    /**
+     * The length of the block header: the block length, the row count, the
+     * uncompressed length, and the compressed length (0 if the block is not
+     * compressed).
+     */
+    private static final int BLOCK_HEADER_LENGTH = Constants.FILE_BLOCK_SIZE;
+
     private final Data rowBuff;
+    private final Data blockBuff;
+    private final CompressLZF compress = new CompressLZF();
     private final ArrayList<ResultDiskTape> tapes;
     private final ResultDiskTape mainTape;
     private final SortOrder sort;
     private final int columnCount;
     private final int maxBufferSize;
 
+    /**
+     * The maximum number of lists of rows that are sorted in the background at
+     * the same time (0 to sort in the calling thread). Each list is a copy of
+     * up to MAX_MEMORY_ROWS rows.
+     */
+    private final int maxSortTasks;
+
     private FileStore file;
     private int rowCount;
+    private ArrayList<SortTask> sortTasks;
+    private int[] heap;
+    private int heapSize;
 
     private final ResultDiskBuffer parent;
     private boolean closed;
@@ -63,14 +102,44 @@ class ResultDiskBuffer implements ResultExternal {
          * A list of rows in the buffer.
          */
         ArrayList<Value[]> buffer = New.arrayList();
+
+        /**
+         * The index of the next row in the buffer.
+         */
+        int bufferPos;
+    }
+
+    /**
+     * Sorts and serializes a list of rows in a separate thread.
+     */
+    private class SortTask extends Task {
+
+        private final ArrayList<Value[]> rows;
+        private final ResultDiskTape tape;
+
+        SortTask(ArrayList<Value[]> rows, ResultDiskTape tape) {
+            this.rows = rows;
+            this.tape = tape;
+        }
+
+        public void call() {
+            sort.sort(rows);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataHandler handler = rowBuff.getHandler();
+            writeRows(rows, Data.create(handler, Constants.DEFAULT_PAGE_SIZE),
+                    Data.create(handler, Constants.DEFAULT_PAGE_SIZE), new CompressLZF(), out, false);
+            result = out.toByteArray();
+        }
+
     }
 
-    ResultDiskBuffer(Session session, SortOrder sort, int columnCount) {
+    public ResultDiskBuffer(Session session, SortOrder sort, int columnCount) {
         this.parent = null;
         this.sort = sort;
         this.columnCount = columnCount;
         Database db = session.getDatabase();
         rowBuff = Data.create(db, Constants.DEFAULT_PAGE_SIZE);
+        blockBuff = Data.create(db, Constants.DEFAULT_PAGE_SIZE);
         String fileName = db.createTempFile();
         file = db.openFile(fileName, "rw", false);
         file.setCheckedWriting(false);
@@ -84,11 +153,18 @@ class ResultDiskBuffer implements ResultExternal {
             mainTape.pos = FileStore.HEADER_LENGTH;
         }
         this.maxBufferSize = db.getSettings().largeResultBufferSize;
+        // the collator of a compare mode is not thread safe
+        if (sort != null && CompareMode.OFF.equals(db.getCompareMode().getName())) {
+            maxSortTasks = Math.max(0, db.getSettings().largeResultSortThreads - 1);
+        } else {
+            maxSortTasks = 0;
+        }
     }
 
     private ResultDiskBuffer(ResultDiskBuffer parent) {
         this.parent = parent;
         rowBuff = Data.create(parent.rowBuff.getHandler(), Constants.DEFAULT_PAGE_SIZE);
+        blockBuff = Data.create(parent.rowBuff.getHandler(), Constants.DEFAULT_PAGE_SIZE);
         file = parent.file;
         if (parent.tapes != null) {
             tapes = New.arrayList();
@@ -112,6 +188,20 @@ class ResultDiskBuffer implements ResultExternal {
         sort = parent.sort;
         columnCount = parent.columnCount;
         maxBufferSize = parent.maxBufferSize;
+        maxSortTasks = 0;
+    }
+
+    /**
+     * Get the partition of a key, if the rows are split into 2^bits buffers
+     * by the hash code of the key.
+     *
+     * @param key the key
+     * @param bits the number of partition bits
+     * @return the partition
+     */
+    public static int getPartition(Value key, int bits) {
+        // use the high bits, as the hash map uses the low bits
+        return (key.hashCode() * 0x9e3779b9) >>> (32 - bits);
     }
 
     public synchronized ResultDiskBuffer createShallowCopy() {
@@ -123,38 +213,28 @@ class ResultDiskBuffer implements ResultExternal {
     }
 
     public int addRows(ArrayList<Value[]> rows) {
+        rowCount += rows.size();
+        if (maxSortTasks > 0 && canSortInBackground(rows)) {
+            if (sortTasks == null) {
+                sortTasks = New.arrayList();
+            } else if (sortTasks.size() >= maxSortTasks) {
+                writeSortedTape(sortTasks.remove(0));
+            }
+            ResultDiskTape tape = new ResultDiskTape();
+            tapes.add(tape);
+            // the caller re-uses the list
+            SortTask task = new SortTask(New.arrayList(rows), tape);
+            task.execute("H2 Sort");
+            sortTasks.add(task);
+            return rowCount;
+        }
         if (sort != null) {
             sort.sort(rows);
         }
-        Data buff = rowBuff;
         long start = file.getFilePointer();
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int bufferLen = 0;
-        for (Value[] row : rows) {
-            buff.reset();
-            buff.writeInt(0);
-            for (int j = 0; j < columnCount; j++) {
-                Value v = row[j];
-                buff.checkCapacity(buff.getValueLen(v));
-                buff.writeValue(v);
-            }
-            buff.fillAligned();
-            int len = buff.length();
-            buff.setInt(0, len);
-            if (maxBufferSize > 0) {
-                buffer.write(buff.getBytes(), 0, len);
-                bufferLen += len;
-                if (bufferLen > maxBufferSize) {
-                    byte[] data = buffer.toByteArray();
-                    buffer.reset();
-                    file.write(data, 0, data.length);
-                    bufferLen = 0;
-                }
-            } else {
-                file.write(buff.getBytes(), 0, len);
-            }
-        }
-        if (bufferLen > 0) {
+        writeRows(rows, rowBuff, blockBuff, compress, buffer, true);
+        if (buffer.size() > 0) {
             byte[] data = buffer.toByteArray();
             file.write(data, 0, data.length);
         }
@@ -166,11 +246,100 @@ class ResultDiskBuffer implements ResultExternal {
         } else {
             mainTape.end = file.getFilePointer();
         }
-        rowCount += rows.size();
         return rowCount;
     }
 
+    /**
+     * Check whether the rows can be sorted and serialized in another thread.
+     * This is not the case if the rows contain values that need to access the
+     * database when comparing or serializing them.
+     *
+     * @param rows the rows
+     * @return true if they can
+     */
+    private static boolean canSortInBackground(ArrayList<Value[]> rows) {
+        for (Value[] row : rows) {
+            for (Value v : row) {
+                int type = v.getType();
+                if (type == Value.BLOB || type == Value.CLOB || type == Value.ARRAY || type == Value.RESULT_SET) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void writeSortedTape(SortTask task) {
+        byte[] data;
+        try {
+            data = (byte[]) task.get();
+        } catch (RuntimeException e) {
+            throw DbException.convert(e.getCause() == null ? e : e.getCause());
+        }
+        ResultDiskTape tape = task.tape;
+        tape.start = file.getFilePointer();
+        file.write(data, 0, data.length);
+        tape.end = file.getFilePointer();
+    }
+
+    /**
+     * Serialize the rows to compressed blocks. This method may be called
+     * concurrently, and therefore only uses the buffers that are passed.
+     *
+     * @param rows the rows
+     * @param buff the buffer for the uncompressed data
+     * @param block the buffer for the block
+     * @param compressor the compressor
+     * @param out the target stream
+     * @param write whether the stream may be written to the file if it is
+     *            larger than the buffer size
+     */
+    void writeRows(ArrayList<Value[]> rows, Data buff, Data block, CompressLZF compressor,
+            ByteArrayOutputStream out, boolean write) {
+        for (int i = 0, size = rows.size(); i < size;) {
+            int blockRows = Math.min(READ_AHEAD, size - i);
+            buff.reset();
+            for (int j = 0; j < blockRows; j++) {
+                Value[] row = rows.get(i + j);
+                for (int k = 0; k < columnCount; k++) {
+                    Value v = row[k];
+                    buff.checkCapacity(buff.getValueLen(v));
+                    buff.writeValue(v);
+                }
+            }
+            i += blockRows;
+            int len = buff.length();
+            block.reset();
+            block.checkCapacity(BLOCK_HEADER_LENGTH + 2 * len + Constants.FILE_BLOCK_SIZE);
+            int compressed = compressor.compress(buff.getBytes(), len, block.getBytes(), BLOCK_HEADER_LENGTH);
+            compressed -= BLOCK_HEADER_LENGTH;
+            if (compressed >= len) {
+                // not compressible
+                compressed = 0;
+                System.arraycopy(buff.getBytes(), 0, block.getBytes(), BLOCK_HEADER_LENGTH, len);
+            }
+            int blockLen = MathUtils.roundUpInt(BLOCK_HEADER_LENGTH +
+                    (compressed == 0 ? len : compressed), Constants.FILE_BLOCK_SIZE);
+            block.writeInt(blockLen);
+            block.writeInt(blockRows);
+            block.writeInt(len);
+            block.writeInt(compressed);
+            out.write(block.getBytes(), 0, blockLen);
+            if (write && out.size() > maxBufferSize) {
+                byte[] data = out.toByteArray();
+                out.reset();
+                file.write(data, 0, data.length);
+            }
+        }
+    }
+
     public void done() {
+        if (sortTasks != null) {
+            for (SortTask task : sortTasks) {
+                writeSortedTape(task);
+            }
+            sortTasks = null;
+        }
         file.seek(FileStore.HEADER_LENGTH);
         file.autoDelete();
     }
@@ -180,29 +349,62 @@ class ResultDiskBuffer implements ResultExternal {
             for (ResultDiskTape tape : tapes) {
                 tape.pos = tape.start;
                 tape.buffer = New.arrayList();
+                tape.bufferPos = 0;
             }
+            heap = null;
         } else {
             mainTape.pos = FileStore.HEADER_LENGTH;
             mainTape.buffer = New.arrayList();
+            mainTape.bufferPos = 0;
         }
     }
 
-    private void readRow(ResultDiskTape tape) {
-        int min = Constants.FILE_BLOCK_SIZE;
-        Data buff = rowBuff;
+    private void readBlock(ResultDiskTape tape) {
+        Data buff = blockBuff;
         buff.reset();
-        file.readFully(buff.getBytes(), 0, min);
+        file.seek(tape.pos);
+        file.readFully(buff.getBytes(), 0, BLOCK_HEADER_LENGTH);
+        int blockLen = buff.readInt();
+        int blockRows = buff.readInt();
         int len = buff.readInt();
-        buff.checkCapacity(len);
-        if (len - min > 0) {
-            file.readFully(buff.getBytes(), min, len - min);
+        int compressed = buff.readInt();
+        buff.checkCapacity(blockLen);
+        file.readFully(buff.getBytes(), BLOCK_HEADER_LENGTH, blockLen - BLOCK_HEADER_LENGTH);
+        tape.pos += blockLen;
+        Data data = buff;
+        if (compressed > 0) {
+            data = rowBuff;
+            data.reset();
+            data.checkCapacity(len);
+            compress.expand(buff.getBytes(), BLOCK_HEADER_LENGTH, compressed, data.getBytes(), 0, len);
         }
-        tape.pos += len;
-        Value[] row = new Value[columnCount];
-        for (int k = 0; k < columnCount; k++) {
-            row[k] = buff.readValue();
+        ArrayList<Value[]> list = tape.buffer;
+        list.clear();
+        tape.bufferPos = 0;
+        for (int i = 0; i < blockRows; i++) {
+            Value[] row = new Value[columnCount];
+            for (int k = 0; k < columnCount; k++) {
+                row[k] = data.readValue();
+            }
+            list.add(row);
         }
-        tape.buffer.add(row);
+    }
+
+    /**
+     * Read the next block of the tape if the buffer is empty.
+     *
+     * @param tape the tape
+     * @return true if there are more rows
+     */
+    private boolean fillBuffer(ResultDiskTape tape) {
+        if (tape.bufferPos < tape.buffer.size()) {
+            return true;
+        }
+        if (tape.pos < tape.end) {
+            readBlock(tape);
+            return true;
+        }
+        return false;
     }
 
     public Value[] next() {
@@ -210,45 +412,57 @@ class ResultDiskBuffer implements ResultExternal {
     }
 
     private Value[] nextUnsorted() {
-        file.seek(mainTape.pos);
-        if (mainTape.buffer.size() == 0) {
-            for (int j = 0; mainTape.pos < mainTape.end && j < READ_AHEAD; j++) {
-                readRow(mainTape);
-            }
-        }
-        Value[] row = mainTape.buffer.get(0);
-        mainTape.buffer.remove(0);
-        return row;
+        fillBuffer(mainTape);
+        return mainTape.buffer.get(mainTape.bufferPos++);
     }
 
     private Value[] nextSorted() {
-        int next = -1;
-        for (int i = 0, size = tapes.size(); i < size; i++) {
-            ResultDiskTape tape = tapes.get(i);
-            if (tape.buffer.size() == 0 && tape.pos < tape.end) {
-                file.seek(tape.pos);
-                for (int j = 0; tape.pos < tape.end && j < READ_AHEAD; j++) {
-                    readRow(tape);
+        if (heap == null) {
+            heap = new int[tapes.size()];
+            heapSize = 0;
+            for (int i = 0, size = tapes.size(); i < size; i++) {
+                if (fillBuffer(tapes.get(i))) {
+                    heap[heapSize++] = i;
                 }
             }
-            if (tape.buffer.size() > 0) {
-                if (next == -1) {
-                    next = i;
-                } else if (compareTapes(tape, tapes.get(next)) < 0) {
-                    next = i;
-                }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
             }
         }
-        ResultDiskTape t = tapes.get(next);
-        Value[] row = t.buffer.get(0);
-        t.buffer.remove(0);
+        ResultDiskTape t = tapes.get(heap[0]);
+        Value[] row = t.buffer.get(t.bufferPos++);
+        if (!fillBuffer(t)) {
+            heap[0] = heap[--heapSize];
+        }
+        siftDown(0);
         return row;
     }
 
-    private int compareTapes(ResultDiskTape a, ResultDiskTape b) {
-        Value[] va = a.buffer.get(0);
-        Value[] vb = b.buffer.get(0);
-        return sort.compare(va, vb);
+    private void siftDown(int i) {
+        int x = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && compareTapes(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compareTapes(x, heap[child]) <= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+
+    private int compareTapes(int a, int b) {
+        ResultDiskTape ta = tapes.get(a);
+        ResultDiskTape tb = tapes.get(b);
+        int comp = sort.compare(ta.buffer.get(ta.bufferPos), tb.buffer.get(tb.bufferPos));
+        // for equal rows, the first tape wins, so that the order is stable
+        return comp != 0 ? comp : a - b;
     }
 
     private synchronized void closeChild() {
@@ -57,6 +57,15 @@ public interface ResultInterface {
      */
     int getRowCount();
 
+    /**
+     * Check if this result is computed lazily, that means the rows are only
+     * read when they are requested. Lazy results can not be reset, and the
+     * row count is only known after all rows are read.
+     *
+     * @return true if the result is lazy
+     */
+    boolean isLazy();
+
     /**
      * Check if this result set should be closed, for example because it is
      * buffered using a temporary file.
@@ -8,6 +8,7 @@ package org.h2.result;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.engine.SessionRemote;
 import org.h2.message.DbException;
@@ -20,16 +21,31 @@ import org.h2.value.Value;
  * The client side part of a result set that is kept on the server.
  * In many cases, the complete data is kept on the client side,
  * but for large results only a subset is in-memory.
+ * <p>
+ * If a large result is read sequentially, the request for the next rows is
+ * sent right after the current rows are read, so that the server can process
+ * it while the application reads the current rows. The reply is read the next
+ * time the session is used, by this result or by another request. The number
+ * of rows per request is increased up to a size limit.
+ * <p>
+ * If the result is computed lazily on the server, the row count is not known
+ * until the last row was received.
  */
 public class ResultRemote implements ResultInterface {
 
     private int fetchSize;
+    private int currentFetchSize;
+    private int prefetchSize;
+    private int prefetchOffset;
+    private ArrayList<Value[]> prefetched;
+    private DbException prefetchException;
     private SessionRemote session;
     private Transfer transfer;
     private int id;
     private final ResultColumn[] columns;
     private Value[] currentRow;
-    private final int rowCount;
+    private final boolean lazy;
+    private int rowCount;
     private int rowId, rowOffset;
     private ArrayList<Value[]> result;
     private final Trace trace;
@@ -42,12 +58,14 @@ public class ResultRemote implements ResultInterface {
         this.id = id;
         this.columns = new ResultColumn[columnCount];
         rowCount = transfer.readInt();
+        lazy = rowCount < 0;
         for (int i = 0; i < columnCount; i++) {
             columns[i] = new ResultColumn(transfer);
         }
         rowId = -1;
         result = New.arrayList();
         this.fetchSize = fetchSize;
+        this.currentFetchSize = fetchSize;
         fetchRows(false);
     }
 
@@ -92,12 +110,16 @@ public class ResultRemote implements ResultInterface {
     }
 
     public void reset() {
+        if (lazy) {
+            throw DbException.get(ErrorCode.RESULT_SET_NOT_SCROLLABLE);
+        }
         rowId = -1;
         currentRow = null;
         if (session == null) {
             return;
         }
         synchronized (session) {
+            discardPrefetch();
             session.checkClosed();
             try {
                 session.traceOperation("RESULT_RESET", id);
@@ -113,15 +135,17 @@ public class ResultRemote implements ResultInterface {
     }
 
     public boolean next() {
-        if (rowId < rowCount) {
+        if (rowCount < 0 || rowId < rowCount) {
             rowId++;
             remapIfOld();
-            if (rowId < rowCount) {
+            if (rowCount < 0 || rowId < rowCount) {
                 if (rowId - rowOffset >= result.size()) {
                     fetchRows(true);
                 }
-                currentRow = result.get(rowId - rowOffset);
-                return true;
+                if (rowId - rowOffset < result.size()) {
+                    currentRow = result.get(rowId - rowOffset);
+                    return true;
+                }
             }
             currentRow = null;
         }
@@ -137,6 +161,14 @@ public class ResultRemote implements ResultInterface {
     }
 
     public int getRowCount() {
+        if (rowCount < 0 && rowId + 1 - rowOffset >= result.size()) {
+            // find out whether there is a next row
+            fetchRows(true);
+        }
+        if (rowCount < 0) {
+            // the rows read so far, plus the next row
+            return rowId + 2;
+        }
         return rowCount;
     }
 
@@ -160,6 +192,11 @@ public class ResultRemote implements ResultInterface {
 
     public void close() {
         result = null;
+        if (session != null) {
+            synchronized (session) {
+                discardPrefetch();
+            }
+        }
         sendClose();
     }
 
@@ -167,54 +204,192 @@ public class ResultRemote implements ResultInterface {
         if (session == null) {
             return;
         }
-        try {
-            if (id <= session.getCurrentId() - SysProperties.SERVER_CACHED_OBJECTS / 2) {
-                // object is too old - we need to map it to a new id
-                int newId = session.getNextId();
-                session.traceOperation("CHANGE_ID", id);
-                transfer.writeInt(SessionRemote.CHANGE_ID).writeInt(id).writeInt(newId);
-                id = newId;
-                // TODO remote result set: very old result sets may be
-                // already removed on the server (theoretically) - how to
-                // solve this?
+        synchronized (session) {
+            try {
+                if (id <= session.getCurrentId() - SysProperties.SERVER_CACHED_OBJECTS / 2) {
+                    // object is too old - we need to map it to a new id
+                    int newId = session.getNextId();
+                    session.traceOperation("CHANGE_ID", id);
+                    transfer.writeInt(SessionRemote.CHANGE_ID).writeInt(id).writeInt(newId);
+                    id = newId;
+                    // TODO remote result set: very old result sets may be
+                    // already removed on the server (theoretically) - how to
+                    // solve this?
+                }
+            } catch (IOException e) {
+                throw DbException.convertIOException(e, null);
             }
-        } catch (IOException e) {
-            throw DbException.convertIOException(e, null);
         }
     }
 
     private void fetchRows(boolean sendFetch) {
+        ArrayList<Value[]> rows;
+        int offset = rowOffset + result.size();
         synchronized (session) {
             session.checkClosed();
             try {
-                rowOffset += result.size();
-                result.clear();
-                int fetch = Math.min(fetchSize, rowCount - rowOffset);
-                if (sendFetch) {
-                    session.traceOperation("RESULT_FETCH_ROWS", id);
-                    transfer.writeInt(SessionRemote.RESULT_FETCH_ROWS).writeInt(id).writeInt(fetch);
-                    session.done(transfer);
+                session.readPendingFetch();
+                if (prefetchException != null) {
+                    DbException e = prefetchException;
+                    prefetchException = null;
+                    throw e;
                 }
-                for (int r = 0; r < fetch; r++) {
-                    boolean row = transfer.readBoolean();
-                    if (!row) {
-                        break;
-                    }
-                    int len = columns.length;
-                    Value[] values = new Value[len];
-                    for (int i = 0; i < len; i++) {
-                        Value v = transfer.readValue();
-                        values[i] = v;
+                if (prefetched != null) {
+                    rows = prefetched;
+                    prefetched = null;
+                } else {
+                    int fetch = getFetchSize(offset);
+                    rows = readRows(sendFetch, fetch);
+                    if (rowCount < 0 && rows.size() < fetch) {
+                        rowCount = offset + rows.size();
                     }
-                    result.add(values);
                 }
-                if (rowOffset + result.size() >= rowCount) {
-                    sendClose();
+                offset += rows.size();
+                if ((rowCount < 0 || offset < rowCount) && sendFetch && SysProperties.SERVER_RESULT_SET_PREFETCH) {
+                    // the result is read sequentially
+                    increaseFetchSize(rows);
+                    sendPrefetch(offset);
                 }
             } catch (IOException e) {
                 throw DbException.convertIOException(e, null);
             }
         }
+        rowOffset = offset - rows.size();
+        result = rows;
+        if (rowCount >= 0 && offset >= rowCount) {
+            sendClose();
+        }
+    }
+
+    /**
+     * Get the number of rows to request.
+     *
+     * @param offset the index of the first row to request
+     * @return the number of rows
+     */
+    private int getFetchSize(int offset) {
+        if (rowCount < 0) {
+            // the server marks the end of the result
+            return Math.max(1, currentFetchSize);
+        }
+        return Math.min(currentFetchSize, rowCount - offset);
+    }
+
+    /**
+     * Request and read the next rows. This method must be called while
+     * synchronized on the session.
+     *
+     * @param sendFetch whether to send the request (false if the rows are
+     *            sent together with the query result)
+     * @param fetch the number of rows
+     * @return the rows
+     */
+    private ArrayList<Value[]> readRows(boolean sendFetch, int fetch) throws IOException {
+        if (sendFetch) {
+            session.traceOperation("RESULT_FETCH_ROWS", id);
+            transfer.writeInt(SessionRemote.RESULT_FETCH_ROWS).writeInt(id).writeInt(fetch);
+            session.done(transfer);
+        }
+        ArrayList<Value[]> rows = New.arrayList();
+        transfer.startReadBlock();
+        try {
+            for (int r = 0; r < fetch; r++) {
+                boolean row = transfer.readBoolean();
+                if (!row) {
+                    break;
+                }
+                int len = columns.length;
+                Value[] values = new Value[len];
+                for (int i = 0; i < len; i++) {
+                    Value v = transfer.readValue();
+                    values[i] = v;
+                }
+                rows.add(values);
+            }
+        } finally {
+            transfer.endReadBlock();
+        }
+        return rows;
+    }
+
+    /**
+     * Double the number of rows per request, as long as the estimated size of
+     * the rows is below the limit.
+     *
+     * @param rows the rows that were just fetched
+     */
+    private void increaseFetchSize(ArrayList<Value[]> rows) {
+        if (rows.size() == 0) {
+            return;
+        }
+        long memory = 0;
+        for (Value[] row : rows) {
+            for (Value v : row) {
+                memory += v.getMemory();
+            }
+        }
+        long rowMemory = Math.max(1, memory / rows.size());
+        long max = SysProperties.SERVER_RESULT_SET_FETCH_BYTES / rowMemory;
+        long size = Math.min((long) currentFetchSize * 2, max);
+        currentFetchSize = (int) Math.max(currentFetchSize, Math.min(size, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Request the next rows, without reading the reply. This method must be
+     * called while synchronized on the session.
+     *
+     * @param offset the index of the first row to request
+     */
+    private void sendPrefetch(int offset) throws IOException {
+        int fetch = getFetchSize(offset);
+        session.traceOperation("RESULT_FETCH_ROWS", id);
+        transfer.writeInt(SessionRemote.RESULT_FETCH_ROWS).writeInt(id).writeInt(fetch);
+        transfer.flush();
+        prefetchSize = fetch;
+        prefetchOffset = offset;
+        session.setPendingFetch(this);
+        session.addPrefetch(false);
+    }
+
+    /**
+     * Read the reply to the request for the next rows. The rows are kept until
+     * they are needed. This method must be called while synchronized on the
+     * session, before another request is sent.
+     */
+    public void readPrefetch() throws IOException {
+        int fetch = prefetchSize;
+        prefetchSize = 0;
+        try {
+            session.readStatus(transfer);
+            prefetched = readRows(false, fetch);
+            if (rowCount < 0 && prefetched.size() < fetch) {
+                rowCount = prefetchOffset + prefetched.size();
+            }
+        } catch (DbException e) {
+            prefetchException = e;
+        }
+    }
+
+    /**
+     * Read and discard the rows that were requested in advance. This method
+     * must be called while synchronized on the session.
+     */
+    private void discardPrefetch() {
+        if (prefetchSize > 0) {
+            try {
+                session.readPendingFetch();
+            } catch (IOException e) {
+                trace.debug(e, "prefetch");
+            }
+        }
+        if (prefetched != null || prefetchException != null) {
+            if (prefetchException != null) {
+                trace.debug(prefetchException, "prefetch");
+            }
+            prefetched = null;
+            prefetchException = null;
+            session.addPrefetch(true);
+        }
     }
 
     public String toString() {
@@ -227,6 +402,11 @@ public class ResultRemote implements ResultInterface {
 
     public void setFetchSize(int fetchSize) {
         this.fetchSize = fetchSize;
+        this.currentFetchSize = fetchSize;
+    }
+
+    public boolean isLazy() {
+        return lazy;
     }
 
     public boolean needToClose() {
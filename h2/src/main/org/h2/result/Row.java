@@ -20,8 +20,12 @@ public class Row implements SearchRow {
     public static final int MEMORY_CALCULATE = -1;
     public static final Row[] EMPTY_ARRAY = {};
 
+    /**
+     * The column values.
+     */
+    protected final Value[] data;
+
     private long key;
-    private final Value[] data;
     private int memory;
     private int version;
     private boolean deleted;
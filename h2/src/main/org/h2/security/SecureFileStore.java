@@ -59,7 +59,7 @@ public class SecureFileStore extends FileStore {
             buffer = new byte[len];
         }
         System.arraycopy(b, off, buffer, 0, len);
-        xorInitVector(buffer, 0, len, pos);
+        xorInitVector(bufferForInitVector, buffer, 0, len, pos);
         cipher.encrypt(buffer, 0, len);
         super.write(buffer, 0, len);
         pos += len;
@@ -75,20 +75,42 @@ public class SecureFileStore extends FileStore {
         for (int i = 0; i < len; i++) {
             if (b[i] != 0) {
                 cipher.decrypt(b, off, len);
-                xorInitVector(b, off, len, pos);
+                xorInitVector(bufferForInitVector, b, off, len, pos);
                 break;
             }
         }
         pos += len;
     }
 
+    public void readFully(long p, byte[] b, int off, int len) {
+        super.readFully(p, b, off, len);
+        for (int i = 0; i < len; i++) {
+            if (b[off + i] != 0) {
+                cipher.decrypt(b, off, len);
+                // this method may be called concurrently,
+                // so the shared init vector buffer can't be used
+                xorInitVector(new byte[Constants.FILE_BLOCK_SIZE], b, off, len, p);
+                break;
+            }
+        }
+    }
+
+    public void write(long p, byte[] b, int off, int len) {
+        if (buffer.length < len) {
+            buffer = new byte[len];
+        }
+        System.arraycopy(b, off, buffer, 0, len);
+        xorInitVector(bufferForInitVector, buffer, 0, len, p);
+        cipher.encrypt(buffer, 0, len);
+        super.write(p, buffer, 0, len);
+    }
+
     public void seek(long x) {
         this.pos = x;
         super.seek(x);
     }
 
-    private void xorInitVector(byte[] b, int off, int len, long p) {
-        byte[] iv = bufferForInitVector;
+    private void xorInitVector(byte[] iv, byte[] b, int off, int len, long p) {
         while (len > 0) {
             for (int i = 0; i < Constants.FILE_BLOCK_SIZE; i += 8) {
                 long block = (p + i) >>> 3;
@@ -51,12 +51,21 @@ public class TcpServer implements Service {
      */
     private static final String MANAGEMENT_DB_PREFIX = "management_db_";
 
+    /**
+     * The default maximum number of worker threads if connections are
+     * multiplexed using a selector.
+     */
+    private static final int DEFAULT_NIO_THREADS = 64;
+
     private static final Map<Integer, TcpServer> SERVERS = Collections.synchronizedMap(new HashMap<Integer, TcpServer>());
 
     private int port;
     private boolean portIsSet;
     private boolean trace;
     private boolean ssl;
+    private boolean nio;
+    private int nioThreads = DEFAULT_NIO_THREADS;
+    private TcpServerDispatcher dispatcher;
     private boolean stop;
     private ShutdownHandler shutdownHandler;
     private ServerSocket serverSocket;
@@ -168,6 +177,10 @@ public class TcpServer implements Service {
                 trace = true;
             } else if (Tool.isOption(a, "-tcpSSL")) {
                 ssl = true;
+            } else if (Tool.isOption(a, "-tcpNioThreads")) {
+                nioThreads = Integer.decode(args[++i]);
+            } else if (Tool.isOption(a, "-tcpNio")) {
+                nio = true;
             } else if (Tool.isOption(a, "-tcpPort")) {
                 port = Integer.decode(args[++i]);
                 portIsSet = true;
@@ -219,10 +232,10 @@ public class TcpServer implements Service {
     public synchronized void start() throws SQLException {
         stop = false;
         try {
-            serverSocket = NetUtils.createServerSocket(port, ssl);
+            serverSocket = createServerSocket(port);
         } catch (DbException e) {
             if (!portIsSet) {
-                serverSocket = NetUtils.createServerSocket(0, ssl);
+                serverSocket = createServerSocket(0);
             } else {
                 throw e;
             }
@@ -231,14 +244,39 @@ public class TcpServer implements Service {
         initManagementDb();
     }
 
+    private ServerSocket createServerSocket(int p) {
+        if (isNio()) {
+            return NetUtils.createServerSocketChannel(p);
+        }
+        return NetUtils.createServerSocket(p, ssl);
+    }
+
+    /**
+     * Check whether the connections are multiplexed using a selector. This is
+     * not supported if SSL is used.
+     *
+     * @return true if they are
+     */
+    private boolean isNio() {
+        return nio && !ssl;
+    }
+
     public void listen() {
         listenerThread = Thread.currentThread();
         String threadName = listenerThread.getName();
         try {
+            if (isNio()) {
+                dispatcher = new TcpServerDispatcher(this, nioThreads, isDaemon, threadName);
+                dispatcher.start();
+            }
             while (!stop) {
                 Socket s = serverSocket.accept();
                 TcpServerThread c = new TcpServerThread(s, this, nextThreadId++);
                 running.add(c);
+                if (dispatcher != null) {
+                    dispatcher.connect(c);
+                    continue;
+                }
                 Thread thread = new Thread(c, threadName + " thread");
                 thread.setDaemon(isDaemon);
                 c.setThread(thread);
@@ -295,14 +333,20 @@ public class TcpServer implements Service {
                 }
             }
         }
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
         // TODO server: using a boolean 'now' argument? a timeout?
         for (TcpServerThread c : New.arrayList(running)) {
             if (c != null) {
                 c.close();
-                try {
-                    c.getThread().join(100);
-                } catch (Exception e) {
-                    TraceSystem.traceThrowable(e);
+                Thread t = c.getThread();
+                if (t != null) {
+                    try {
+                        t.join(100);
+                    } catch (Exception e) {
+                        TraceSystem.traceThrowable(e);
+                    }
                 }
             }
         }
@@ -402,6 +446,41 @@ public class TcpServer implements Service {
         return ifExists;
     }
 
+    /**
+     * Get the number of connections where a request was received, but that
+     * wait for a free worker thread. This is always 0 if the connections are
+     * not multiplexed (option -tcpNio).
+     *
+     * @return the number of queued connections
+     */
+    public int getQueuedConnectionCount() {
+        TcpServerDispatcher d = dispatcher;
+        return d == null ? 0 : d.getQueuedCount();
+    }
+
+    /**
+     * Get the number of connections that are currently processing a request.
+     * If the connections are not multiplexed, each open connection has its
+     * own thread and is counted as active.
+     *
+     * @return the number of active connections
+     */
+    public int getActiveConnectionCount() {
+        TcpServerDispatcher d = dispatcher;
+        return d == null ? running.size() : d.getActiveCount();
+    }
+
+    /**
+     * Get the number of connections that wait for the next request. This is
+     * always 0 if the connections are not multiplexed.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleConnectionCount() {
+        TcpServerDispatcher d = dispatcher;
+        return d == null ? 0 : d.getIdleCount();
+    }
+
     /**
      * Stop the TCP server with the given URL.
      *
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.h2.message.DbException;
+import org.h2.util.New;
+
+/**
+ * Multiplexes the connections of a TCP server on a selector, so that a thread
+ * is only used while a request is processed. Idle connections wait in the
+ * selector. When data arrives on a connection, it is taken out of the
+ * selector, switched to blocking mode, and processed by one of a bounded
+ * number of worker threads. The worker processes all requests that were
+ * already received, and then gives the connection back to the selector.
+ * <p>
+ * The protocol does not contain the length of a request, so a request is
+ * dispatched as soon as its first bytes arrive. Clients send each request
+ * completely, so the worker rarely has to wait for the rest.
+ * <p>
+ * A statement that waits for a lock occupies a worker thread. If all worker
+ * threads are busy and none of them finished a request for a while, while
+ * other requests are waiting (possibly the one that would release the lock),
+ * more worker threads are started, up to four times the configured number.
+ * Beyond that, requests wait in the queue until a worker thread is free (for
+ * example when a lock timeout occurs). When the requests are processed again
+ * without delay, the pool shrinks back to the configured size.
+ */
+class TcpServerDispatcher implements Runnable {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * How often to check whether the worker threads are blocked, in
+     * milliseconds.
+     */
+    private static final long CHECK_BLOCKED_MILLIS = 200;
+
+    /**
+     * The maximum number of worker threads, as a multiple of the configured
+     * number of worker threads.
+     */
+    private static final int MAX_POOL_FACTOR = 4;
+
+    private final TcpServer server;
+    private final Selector selector;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentLinkedQueue<TcpServerThread> pending = new ConcurrentLinkedQueue<TcpServerThread>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final int maxThreads;
+    private long lastProcessed;
+    private final Thread thread;
+    private volatile boolean stop;
+
+    TcpServerDispatcher(TcpServer server, int maxThreads, final boolean daemon, final String threadName) {
+        this.server = server;
+        this.maxThreads = maxThreads;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw DbException.convertIOException(e, "selector");
+        }
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, threadName + " worker");
+                        t.setDaemon(daemon);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        thread = new Thread(this, threadName + " selector");
+        thread.setDaemon(daemon);
+    }
+
+    /**
+     * Start the selector thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop the selector thread and the worker threads. The connections are
+     * not closed.
+     */
+    void stop() {
+        stop = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            server.traceError(e);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Process the connection request of a new connection, and then wait for
+     * the next request.
+     *
+     * @param c the connection
+     */
+    void connect(TcpServerThread c) {
+        dispatch(c, true);
+    }
+
+    /**
+     * Get the number of connections where a request was received, but that
+     * wait for a free worker thread.
+     *
+     * @return the number of queued connections
+     */
+    int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Get the number of connections that are currently processed by a worker
+     * thread.
+     *
+     * @return the number of active connections
+     */
+    int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Get the number of connections that wait for the next request.
+     *
+     * @return the number of idle connections
+     */
+    int getIdleCount() {
+        return idle.get();
+    }
+
+    public void run() {
+        ArrayList<TcpServerThread> ready = New.arrayList();
+        while (!stop) {
+            try {
+                selector.select(CHECK_BLOCKED_MILLIS);
+                checkBlocked();
+                for (TcpServerThread c; (c = pending.poll()) != null;) {
+                    register(c);
+                }
+                Set<SelectionKey> keys = selector.selectedKeys();
+                while (!keys.isEmpty()) {
+                    for (SelectionKey key : keys) {
+                        key.cancel();
+                        ready.add((TcpServerThread) key.attachment());
+                    }
+                    keys.clear();
+                    // de-register the cancelled keys, so that the channels
+                    // can be switched to blocking mode
+                    selector.selectNow();
+                    for (TcpServerThread c : ready) {
+                        idle.decrementAndGet();
+                        try {
+                            c.getSocket().getChannel().configureBlocking(true);
+                            dispatch(c, false);
+                        } catch (Exception e) {
+                            server.traceError(e);
+                            c.close();
+                        }
+                    }
+                    ready.clear();
+                }
+            } catch (Exception e) {
+                if (!stop) {
+                    server.traceError(e);
+                }
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            server.traceError(e);
+        }
+    }
+
+    /**
+     * Start more worker threads if all of them are blocked (for example
+     * because they wait for a lock that is held by a session whose request is
+     * queued), and stop the additional threads when they are no longer needed.
+     * The pool does not grow beyond the limit, in which case the requests
+     * stay in the queue.
+     */
+    private void checkBlocked() {
+        long now = processed.get();
+        boolean progress = now != lastProcessed;
+        lastProcessed = now;
+        int size = executor.getCorePoolSize();
+        if (queued.get() > 0 && active.get() >= size && !progress) {
+            if (size < maxThreads * MAX_POOL_FACTOR) {
+                executor.setMaximumPoolSize(size + maxThreads);
+                executor.setCorePoolSize(size + maxThreads);
+                server.trace("worker threads blocked, pool size " + (size + maxThreads));
+            }
+        } else if (size > maxThreads && queued.get() == 0 && active.get() < maxThreads) {
+            executor.setCorePoolSize(maxThreads);
+            executor.setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    private void register(TcpServerThread c) {
+        try {
+            SocketChannel channel = c.getSocket().getChannel();
+            channel.register(selector, SelectionKey.OP_READ, c);
+            idle.incrementAndGet();
+        } catch (Exception e) {
+            if (!c.isStopped()) {
+                server.traceError(e);
+            }
+            c.close();
+        }
+    }
+
+    private void dispatch(final TcpServerThread c, final boolean connect) {
+        queued.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        process(c, connect);
+                    } finally {
+                        active.decrementAndGet();
+                        processed.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the server is stopped
+            queued.decrementAndGet();
+            c.close();
+        }
+    }
+
+    private void process(TcpServerThread c, boolean connect) {
+        boolean close = true;
+        try {
+            if (connect) {
+                c.connect();
+            } else {
+                c.processRequest();
+            }
+            while (!c.isStopped() && c.isRequestAvailable()) {
+                c.processRequest();
+            }
+            if (!c.isStopped() && !stop) {
+                c.getSocket().getChannel().configureBlocking(false);
+                pending.add(c);
+                selector.wakeup();
+                close = false;
+            }
+        } catch (Throwable e) {
+            if (!c.isStopped()) {
+                server.traceError(e);
+            }
+        } finally {
+            if (close) {
+                c.close();
+            }
+        }
+    }
+
+}
@@ -14,6 +14,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.Socket;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import org.h2.command.Command;
 import org.h2.constant.ErrorCode;
@@ -32,6 +33,7 @@ import org.h2.result.ResultColumn;
 import org.h2.result.ResultInterface;
 import org.h2.store.LobStorage;
 import org.h2.util.IOUtils;
+import org.h2.util.New;
 import org.h2.util.SmallLRUCache;
 import org.h2.util.SmallMap;
 import org.h2.util.StringUtils;
@@ -72,84 +74,9 @@ public class TcpServerThread implements Runnable {
 
     public void run() {
         try {
-            transfer.init();
-            trace("Connect");
-            // TODO server: should support a list of allowed databases
-            // and a list of allowed clients
-            try {
-                if (!server.allow(transfer.getSocket())) {
-                    throw DbException.get(ErrorCode.REMOTE_CONNECTION_NOT_ALLOWED);
-                }
-                int minClientVersion = transfer.readInt();
-                if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
-                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_12) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_12);
-                }
-                int maxClientVersion = transfer.readInt();
-                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
-                    clientVersion = Constants.TCP_PROTOCOL_VERSION_12;
-                } else {
-                    clientVersion = minClientVersion;
-                }
-                transfer.setVersion(clientVersion);
-                String db = transfer.readString();
-                String originalURL = transfer.readString();
-                if (db == null && originalURL == null) {
-                    String targetSessionId = transfer.readString();
-                    int command = transfer.readInt();
-                    stop = true;
-                    if (command == SessionRemote.SESSION_CANCEL_STATEMENT) {
-                        // cancel a running statement
-                        int statementId = transfer.readInt();
-                        server.cancelStatement(targetSessionId, statementId);
-                    } else if (command == SessionRemote.SESSION_CHECK_KEY) {
-                        // check if this is the correct server
-                        db = server.checkKeyAndGetDatabaseName(targetSessionId);
-                        if (!targetSessionId.equals(db)) {
-                            transfer.writeInt(SessionRemote.STATUS_OK);
-                        } else {
-                            transfer.writeInt(SessionRemote.STATUS_ERROR);
-                        }
-                    }
-                }
-                String baseDir = server.getBaseDir();
-                if (baseDir == null) {
-                    baseDir = SysProperties.getBaseDir();
-                }
-                db = server.checkKeyAndGetDatabaseName(db);
-                ConnectionInfo ci = new ConnectionInfo(db);
-                if (baseDir != null) {
-                    ci.setBaseDir(baseDir);
-                }
-                if (server.getIfExists()) {
-                    ci.setProperty("IFEXISTS", "TRUE");
-                }
-                ci.setOriginalURL(originalURL);
-                ci.setUserName(transfer.readString());
-                ci.setUserPasswordHash(transfer.readBytes());
-                ci.setFilePasswordHash(transfer.readBytes());
-                int len = transfer.readInt();
-                for (int i = 0; i < len; i++) {
-                    ci.setProperty(transfer.readString(), transfer.readString());
-                }
-                session = Engine.getInstance().createSession(ci);
-                transfer.setSession(session);
-                transfer.writeInt(SessionRemote.STATUS_OK);
-                transfer.writeInt(clientVersion);
-                transfer.flush();
-                server.addConnection(threadId, originalURL, ci.getUserName());
-                trace("Connected");
-            } catch (Throwable e) {
-                sendError(e);
-                stop = true;
-            }
+            connect();
             while (!stop) {
-                try {
-                    process();
-                } catch (Throwable e) {
-                    sendError(e);
-                }
+                processRequest();
             }
             trace("Disconnect");
         } catch (Throwable e) {
@@ -159,6 +86,119 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    /**
+     * Initialize the connection, and read and process the connection request
+     * of the client.
+     */
+    void connect() throws IOException {
+        transfer.init();
+        trace("Connect");
+        // TODO server: should support a list of allowed databases
+        // and a list of allowed clients
+        try {
+            if (!server.allow(transfer.getSocket())) {
+                throw DbException.get(ErrorCode.REMOTE_CONNECTION_NOT_ALLOWED);
+            }
+            int minClientVersion = transfer.readInt();
+            if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
+                throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
+            } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_15) {
+                throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_15);
+            }
+            int maxClientVersion = transfer.readInt();
+            if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_15) {
+                clientVersion = Constants.TCP_PROTOCOL_VERSION_15;
+            } else {
+                clientVersion = minClientVersion;
+            }
+            transfer.setVersion(clientVersion);
+            String db = transfer.readString();
+            String originalURL = transfer.readString();
+            if (db == null && originalURL == null) {
+                String targetSessionId = transfer.readString();
+                int command = transfer.readInt();
+                stop = true;
+                if (command == SessionRemote.SESSION_CANCEL_STATEMENT) {
+                    // cancel a running statement
+                    int statementId = transfer.readInt();
+                    server.cancelStatement(targetSessionId, statementId);
+                } else if (command == SessionRemote.SESSION_CHECK_KEY) {
+                    // check if this is the correct server
+                    db = server.checkKeyAndGetDatabaseName(targetSessionId);
+                    if (!targetSessionId.equals(db)) {
+                        transfer.writeInt(SessionRemote.STATUS_OK);
+                    } else {
+                        transfer.writeInt(SessionRemote.STATUS_ERROR);
+                    }
+                }
+            }
+            String baseDir = server.getBaseDir();
+            if (baseDir == null) {
+                baseDir = SysProperties.getBaseDir();
+            }
+            db = server.checkKeyAndGetDatabaseName(db);
+            ConnectionInfo ci = new ConnectionInfo(db);
+            if (baseDir != null) {
+                ci.setBaseDir(baseDir);
+            }
+            if (server.getIfExists()) {
+                ci.setProperty("IFEXISTS", "TRUE");
+            }
+            ci.setOriginalURL(originalURL);
+            ci.setUserName(transfer.readString());
+            ci.setUserPasswordHash(transfer.readBytes());
+            ci.setFilePasswordHash(transfer.readBytes());
+            int len = transfer.readInt();
+            for (int i = 0; i < len; i++) {
+                ci.setProperty(transfer.readString(), transfer.readString());
+            }
+            session = Engine.getInstance().createSession(ci);
+            transfer.setSession(session);
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            transfer.writeInt(clientVersion);
+            transfer.flush();
+            server.addConnection(threadId, originalURL, ci.getUserName());
+            trace("Connected");
+        } catch (Throwable e) {
+            sendError(e);
+            stop = true;
+        }
+    }
+
+    /**
+     * Read and process one request of the client.
+     */
+    void processRequest() {
+        try {
+            process();
+        } catch (Throwable e) {
+            sendError(e);
+        }
+    }
+
+    /**
+     * Check whether the connection was closed or should be closed.
+     *
+     * @return true if it is
+     */
+    boolean isStopped() {
+        return stop;
+    }
+
+    /**
+     * Check whether (part of) the next request was already received, so that
+     * it can be processed without waiting.
+     *
+     * @return true if data is available
+     */
+    boolean isRequestAvailable() throws IOException {
+        return transfer.isReadAvailable();
+    }
+
+    Socket getSocket() {
+        return transfer.getSocket();
+    }
+
     private void closeSession() {
         if (session != null) {
             RuntimeException closeError = null;
@@ -208,22 +248,9 @@ public class TcpServerThread implements Runnable {
 
     private void sendError(Throwable t) {
         try {
-            SQLException e = DbException.convert(t).getSQLException();
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            String trace = writer.toString();
-            String message;
-            String sql;
-            if (e instanceof JdbcSQLException) {
-                JdbcSQLException j = (JdbcSQLException) e;
-                message = j.getOriginalMessage();
-                sql = j.getSQL();
-            } else {
-                message = e.getMessage();
-                sql = null;
-            }
-            transfer.writeInt(SessionRemote.STATUS_ERROR).writeString(e.getSQLState()).writeString(message)
-                    .writeString(sql).writeInt(e.getErrorCode()).writeString(trace).flush();
+            transfer.writeInt(SessionRemote.STATUS_ERROR);
+            writeError(t);
+            transfer.flush();
         } catch (Exception e2) {
             if (!transfer.isClosed()) {
                 server.traceError(e2);
@@ -233,6 +260,25 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    private void writeError(Throwable t) throws IOException {
+        SQLException e = DbException.convert(t).getSQLException();
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        String trace = writer.toString();
+        String message;
+        String sql;
+        if (e instanceof JdbcSQLException) {
+            JdbcSQLException j = (JdbcSQLException) e;
+            message = j.getOriginalMessage();
+            sql = j.getSQL();
+        } else {
+            message = e.getMessage();
+            sql = null;
+        }
+        transfer.writeString(e.getSQLState()).writeString(message)
+                .writeString(sql).writeInt(e.getErrorCode()).writeString(trace);
+    }
+
     private void setParameters(Command command) throws IOException {
         int len = transfer.readInt();
         ArrayList<? extends ParameterInterface> params = command.getParameters();
@@ -292,6 +338,8 @@ public class TcpServerThread implements Runnable {
             for (int i = 0; i < columnCount; i++) {
                 ResultColumn.writeColumn(transfer, result, i);
             }
+            // the client reads the (empty) block of rows in any case
+            sendRows(result, null, 0);
             transfer.flush();
             break;
         }
@@ -303,23 +351,28 @@ public class TcpServerThread implements Runnable {
             Command command = (Command) cache.getObject(id, false);
             setParameters(command);
             int old = session.getModificationId();
+            // older clients need the row count before the rows; all rows are
+            // requested at once if the result is scrollable or the database
+            // is clustered, so the result is not lazy in those cases
+            boolean scrollable = clientVersion < Constants.TCP_PROTOCOL_VERSION_15 ||
+                    fetchSize == Integer.MAX_VALUE;
             ResultInterface result;
             synchronized (session) {
-                result = command.executeQuery(maxRows, false);
+                result = command.executeQuery(maxRows, scrollable);
             }
+            // the row count of a lazy result is not known (-1)
+            int rowCount = result.isLazy() ? -1 : result.getRowCount();
+            int fetch = rowCount < 0 ? fetchSize : Math.min(rowCount, fetchSize);
+            ArrayList<Value[]> rows = readLazyRows(result, fetch);
             cache.addObject(objectId, result);
             int columnCount = result.getVisibleColumnCount();
             int state = getState(old);
             transfer.writeInt(state).writeInt(columnCount);
-            int rowCount = result.getRowCount();
             transfer.writeInt(rowCount);
             for (int i = 0; i < columnCount; i++) {
                 ResultColumn.writeColumn(transfer, result, i);
             }
-            int fetch = Math.min(rowCount, fetchSize);
-            for (int i = 0; i < fetch; i++) {
-                sendRow(result);
-            }
+            sendRows(result, rows, fetch);
             transfer.flush();
             break;
         }
@@ -342,6 +395,41 @@ public class TcpServerThread implements Runnable {
             transfer.flush();
             break;
         }
+        case SessionRemote.COMMAND_EXECUTE_BATCH_UPDATE: {
+            int id = transfer.readInt();
+            Command command = (Command) cache.getObject(id, false);
+            int size = transfer.readInt();
+            ArrayList<Value[]> batchParameters = New.arrayList();
+            for (int i = 0; i < size; i++) {
+                Value[] set = new Value[transfer.readInt()];
+                for (int j = 0; j < set.length; j++) {
+                    set[j] = transfer.readValue();
+                }
+                batchParameters.add(set);
+            }
+            int old = session.getModificationId();
+            ArrayList<DbException> exceptions = New.arrayList();
+            int[] result;
+            synchronized (session) {
+                result = command.executeBatchUpdate(batchParameters, exceptions);
+            }
+            int status;
+            if (session.isClosed()) {
+                status = SessionRemote.STATUS_CLOSED;
+            } else {
+                status = getState(old);
+            }
+            transfer.writeInt(status);
+            for (int i = 0, e = 0; i < size; i++) {
+                transfer.writeInt(result[i]);
+                if (result[i] == Statement.EXECUTE_FAILED) {
+                    writeError(exceptions.get(e++));
+                }
+            }
+            transfer.writeBoolean(session.getAutoCommit());
+            transfer.flush();
+            break;
+        }
         case SessionRemote.COMMAND_CLOSE: {
             int id = transfer.readInt();
             Command command = (Command) cache.getObject(id, true);
@@ -355,10 +443,9 @@ public class TcpServerThread implements Runnable {
             int id = transfer.readInt();
             int count = transfer.readInt();
             ResultInterface result = (ResultInterface) cache.getObject(id, false);
+            ArrayList<Value[]> rows = readLazyRows(result, count);
             transfer.writeInt(SessionRemote.STATUS_OK);
-            for (int i = 0; i < count; i++) {
-                sendRow(result);
-            }
+            sendRows(result, rows, count);
             transfer.flush();
             break;
         }
@@ -435,11 +522,17 @@ public class TcpServerThread implements Runnable {
             int length = transfer.readInt();
             // limit the buffer size
             length = Math.min(16 * Constants.IO_BUFFER_SIZE, length);
-            transfer.writeInt(SessionRemote.STATUS_OK);
             byte[] buff = new byte[length];
+            // read the data first, so that an error can still be sent
             length = IOUtils.readFully(in, buff, 0, length);
-            transfer.writeInt(length);
-            transfer.writeBytes(buff, 0, length);
+            transfer.writeInt(SessionRemote.STATUS_OK);
+            transfer.startWriteBlock();
+            try {
+                transfer.writeInt(length);
+                transfer.writeBytes(buff, 0, length);
+            } finally {
+                transfer.endWriteBlock();
+            }
             transfer.flush();
             break;
         }
@@ -457,19 +550,69 @@ public class TcpServerThread implements Runnable {
         return SessionRemote.STATUS_OK_STATE_CHANGED;
     }
 
-    private void sendRow(ResultInterface result) throws IOException {
-        if (result.next()) {
-            transfer.writeBoolean(true);
-            Value[] v = result.currentRow();
-            for (int i = 0; i < result.getVisibleColumnCount(); i++) {
-                if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
-                    transfer.writeValue(v[i]);
+    /**
+     * Compute the next rows of a lazy result. This is done before the status
+     * is sent, so that an error (for example because a table was changed) can
+     * still be sent to the client. If computing a row fails, the result is
+     * closed.
+     *
+     * @param result the result
+     * @param count the maximum number of rows
+     * @return the rows, or null if the result is not lazy
+     */
+    private static ArrayList<Value[]> readLazyRows(ResultInterface result, int count) {
+        if (!result.isLazy()) {
+            return null;
+        }
+        ArrayList<Value[]> rows = New.arrayList();
+        try {
+            while (rows.size() < count && result.next()) {
+                rows.add(result.currentRow());
+            }
+        } catch (RuntimeException e) {
+            result.close();
+            throw e;
+        }
+        return rows;
+    }
+
+    /**
+     * Send the next rows. After the last row, the end of the result is
+     * marked, and no more rows are sent.
+     *
+     * @param result the result
+     * @param rows the rows that were already read from a lazy result, or null
+     * @param count the maximum number of rows
+     */
+    private void sendRows(ResultInterface result, ArrayList<Value[]> rows, int count) throws IOException {
+        transfer.startWriteBlock();
+        try {
+            for (int i = 0; i < count; i++) {
+                Value[] row;
+                if (rows != null) {
+                    row = i < rows.size() ? rows.get(i) : null;
                 } else {
-                    writeValue(v[i]);
+                    row = result.next() ? result.currentRow() : null;
+                }
+                if (row == null) {
+                    transfer.writeBoolean(false);
+                    break;
                 }
+                sendRow(row, result.getVisibleColumnCount());
+            }
+        } finally {
+            transfer.endWriteBlock();
+        }
+    }
+
+    private void sendRow(Value[] v, int columnCount) throws IOException {
+        transfer.writeBoolean(true);
+        for (int i = 0; i < columnCount; i++) {
+            if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
+                transfer.writeValue(v[i]);
+            } else {
+                writeValue(v[i]);
             }
-        } else {
-            transfer.writeBoolean(false);
         }
     }
 
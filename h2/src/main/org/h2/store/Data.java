@@ -856,6 +856,189 @@ public class Data {
         }
     }
 
+    /**
+     * Skip a value without creating a value object. The current position is
+     * incremented.
+     */
+    public void skipValue() {
+        int type = data[pos++] & 255;
+        switch (type) {
+        case Value.NULL:
+        case BOOLEAN_TRUE:
+        case BOOLEAN_FALSE:
+        case DECIMAL_0_1:
+        case DECIMAL_0_1 + 1:
+        case FLOAT_0_1:
+        case FLOAT_0_1 + 1:
+        case DOUBLE_0_1:
+        case DOUBLE_0_1 + 1:
+            break;
+        case INT_NEG:
+        case Value.INT:
+        case Value.FLOAT:
+            readVarInt();
+            break;
+        case LONG_NEG:
+        case Value.LONG:
+        case DECIMAL_SMALL_0:
+        case LOCAL_DATE:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.DOUBLE:
+            readVarLong();
+            break;
+        case Value.BYTE:
+            pos++;
+            break;
+        case Value.SHORT:
+            pos += 2;
+            break;
+        case DECIMAL_SMALL:
+            readVarInt();
+            readVarLong();
+            break;
+        case Value.DECIMAL: {
+            readVarInt();
+            int len = readVarInt();
+            pos += len;
+            break;
+        }
+        case LOCAL_TIME:
+            readVarLong();
+            readVarLong();
+            break;
+        case LOCAL_TIMESTAMP:
+            readVarLong();
+            readVarLong();
+            readVarLong();
+            break;
+        case Value.TIMESTAMP:
+            readVarLong();
+            readVarInt();
+            break;
+        case Value.BYTES:
+        case Value.JAVA_OBJECT: {
+            int len = readVarInt();
+            pos += len;
+            break;
+        }
+        case Value.UUID:
+            pos += 2 * LENGTH_LONG;
+            break;
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.STRING_FIXED:
+            skipString(readVarInt());
+            break;
+        default:
+            if (type >= INT_0_15 && type < INT_0_15 + 16) {
+                break;
+            } else if (type >= LONG_0_7 && type < LONG_0_7 + 8) {
+                break;
+            } else if (type >= BYTES_0_31 && type < BYTES_0_31 + 32) {
+                pos += type - BYTES_0_31;
+            } else if (type >= STRING_0_31 && type < STRING_0_31 + 32) {
+                skipString(type - STRING_0_31);
+            } else {
+                // LOB, array, result set: rare, so read the value
+                pos--;
+                readValue();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes the string value at the current position needs
+     * in addition if the given characters are added at the start. NULL doesn't
+     * change. The current position is not changed.
+     *
+     * @param s the characters to add
+     * @return the number of additional bytes
+     */
+    public int getStringValueGrowth(String s) {
+        int p = pos;
+        int type = data[p] & 255;
+        if (type == Value.NULL) {
+            return 0;
+        }
+        int len = readStringValueLength();
+        int headerLen = pos - p;
+        pos = p;
+        if (type >= STRING_0_31 && type < STRING_0_31 + 32) {
+            type = Value.STRING;
+        }
+        return getStringValueHeaderLen(type, len + s.length()) - headerLen +
+                getStringWithoutLengthLen(s, s.length());
+    }
+
+    /**
+     * Copy the string value at the current position of the source buffer to
+     * this buffer, and add the given characters at the start. NULL is copied
+     * as is. The current position of both buffers is incremented.
+     *
+     * @param source the source buffer
+     * @param s the characters to add
+     */
+    public void writeStringValueWithPrefix(Data source, String s) {
+        int type = source.data[source.pos] & 255;
+        if (type == Value.NULL) {
+            source.pos++;
+            writeByte((byte) Value.NULL);
+            return;
+        }
+        int len = source.readStringValueLength();
+        int start = source.pos;
+        source.skipString(len);
+        int newLen = len + s.length();
+        if (type == Value.STRING_IGNORECASE || type == Value.STRING_FIXED) {
+            writeByte((byte) type);
+            writeVarInt(newLen);
+        } else if (newLen < 32) {
+            writeByte((byte) (STRING_0_31 + newLen));
+        } else {
+            writeByte((byte) Value.STRING);
+            writeVarInt(newLen);
+        }
+        writeStringWithoutLength(s, s.length());
+        write(source.data, start, source.pos - start);
+    }
+
+    private int readStringValueLength() {
+        int type = data[pos++] & 255;
+        switch (type) {
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.STRING_FIXED:
+            return readVarInt();
+        default:
+            if (type >= STRING_0_31 && type < STRING_0_31 + 32) {
+                return type - STRING_0_31;
+            }
+            throw DbException.get(ErrorCode.FILE_CORRUPTED_1, "type: " + type);
+        }
+    }
+
+    private static int getStringValueHeaderLen(int type, int len) {
+        if (type == Value.STRING && len < 32) {
+            return 1;
+        }
+        return 1 + getVarIntLen(len);
+    }
+
+    private void skipString(int len) {
+        byte[] buff = data;
+        int p = pos;
+        for (int i = 0; i < len; i++) {
+            int x = buff[p++] & 0xff;
+            if (x >= 0xe0) {
+                p += 2;
+            } else if (x >= 0x80) {
+                p++;
+            }
+        }
+        pos = p;
+    }
+
     /**
      * Calculate the number of bytes required to encode the given value.
      *
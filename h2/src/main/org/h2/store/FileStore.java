@@ -279,6 +279,41 @@ public class FileStore {
         filePos += len;
     }
 
+    /**
+     * Read a number of bytes at the given position. The file pointer is not
+     * changed, so that reads at different positions may run concurrently.
+     *
+     * @param pos the position in the file
+     * @param b the target buffer
+     * @param off the offset
+     * @param len the number of bytes to read
+     */
+    public void readFully(long pos, byte[] b, int off, int len) {
+        readFullyDirect(pos, b, off, len);
+    }
+
+    /**
+     * Read a number of bytes at the given position without decrypting. The
+     * file pointer is not changed.
+     *
+     * @param pos the position in the file
+     * @param b the target buffer
+     * @param off the offset
+     * @param len the number of bytes to read
+     */
+    protected void readFullyDirect(long pos, byte[] b, int off, int len) {
+        if (SysProperties.CHECK && (len < 0 || len % Constants.FILE_BLOCK_SIZE != 0 ||
+                pos % Constants.FILE_BLOCK_SIZE != 0)) {
+            DbException.throwInternalError("unaligned read " + name + " pos " + pos + " len " + len);
+        }
+        checkPowerOff();
+        try {
+            FileUtils.readFully(file, ByteBuffer.wrap(b, off, len), pos);
+        } catch (IOException e) {
+            throw DbException.convertIOException(e, name);
+        }
+    }
+
     /**
      * Go to the specified file location.
      *
@@ -332,6 +367,31 @@ public class FileStore {
         fileLength = Math.max(filePos, fileLength);
     }
 
+    /**
+     * Write a number of bytes at the given position. The file pointer is not
+     * changed.
+     *
+     * @param pos the position in the file
+     * @param b the source buffer
+     * @param off the offset
+     * @param len the number of bytes to write
+     */
+    public void write(long pos, byte[] b, int off, int len) {
+        if (SysProperties.CHECK && (len < 0 || len % Constants.FILE_BLOCK_SIZE != 0 ||
+                pos % Constants.FILE_BLOCK_SIZE != 0)) {
+            DbException.throwInternalError("unaligned write " + name + " pos " + pos + " len " + len);
+        }
+        checkWritingAllowed();
+        checkPowerOff();
+        try {
+            FileUtils.writeFully(file, ByteBuffer.wrap(b, off, len), pos);
+        } catch (IOException e) {
+            closeFileSilently();
+            throw DbException.convertIOException(e, name);
+        }
+        fileLength = Math.max(pos + len, fileLength);
+    }
+
     /**
      * Set the length of the file. This will expand or shrink the file.
      *
@@ -345,10 +405,7 @@ public class FileStore {
         checkWritingAllowed();
         try {
             if (newLength > fileLength) {
-                long pos = filePos;
-                file.position(newLength - 1);
-                FileUtils.writeFully(file, ByteBuffer.wrap(new byte[1]));
-                file.position(pos);
+                FileUtils.writeFully(file, ByteBuffer.wrap(new byte[1]), newLength - 1);
             } else {
                 file.truncate(newLength);
             }
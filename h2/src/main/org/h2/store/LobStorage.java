@@ -59,7 +59,7 @@ public class LobStorage {
     private static final String LOB_MAP = LOB_SCHEMA + ".LOB_MAP";
     private static final String LOB_DATA = LOB_SCHEMA + "." + LOB_DATA_TABLE;
 
-    private static final int BLOCK_LENGTH = 20000;
+    private static final int BLOCK_LENGTH = SysProperties.LOB_BLOCK_SIZE;
 
     /**
      * The size of cache for lob block hashes. Each entry needs 2 longs (16
@@ -209,31 +209,43 @@ public class LobStorage {
     }
 
     /**
-     * Read a block of data from the given LOB.
+     * Read a number of consecutive blocks of data from the given LOB. The
+     * blocks are read in one query, in the order of the primary key of the
+     * map table.
      *
      * @param lob the lob id
-     * @param seq the block sequence number
-     * @return the block (expanded if stored compressed)
+     * @param seq the sequence number of the first block
+     * @param blocks the array to store the data of the blocks into
+     * @param compressed the array to store the compression flags into
+     * @return the number of blocks read (reading stops before a missing
+     *         block)
      */
-    byte[] readBlock(long lob, int seq) throws SQLException {
+    int readBlocks(long lob, int seq, byte[][] blocks, boolean[] compressed) throws SQLException {
         synchronized (handler) {
-            String sql = "SELECT COMPRESSED, DATA FROM " + LOB_MAP + " M " +
+            String sql = "SELECT M.SEQ, COMPRESSED, DATA FROM " + LOB_MAP + " M " +
                     "INNER JOIN " + LOB_DATA + " D ON M.BLOCK = D.BLOCK " +
-                    "WHERE M.LOB = ? AND M.SEQ = ?";
+                    "WHERE M.LOB = ? AND M.SEQ >= ? AND M.SEQ < ? ORDER BY M.SEQ";
             PreparedStatement prep = prepare(sql);
             prep.setLong(1, lob);
             prep.setInt(2, seq);
+            prep.setInt(3, seq + blocks.length);
             ResultSet rs = prep.executeQuery();
-            if (!rs.next()) {
-                throw DbException.get(ErrorCode.IO_EXCEPTION_1, "Missing lob entry: "+ lob + "/" + seq).getSQLException();
+            int count = 0;
+            while (count < blocks.length && rs.next()) {
+                if (rs.getInt(1) != seq + count) {
+                    // a block in the middle is missing
+                    break;
+                }
+                compressed[count] = rs.getInt(2) != 0;
+                blocks[count] = rs.getBytes(3);
+                count++;
             }
-            int compressed = rs.getInt(1);
-            byte[] buffer = rs.getBytes(2);
-            if (compressed != 0) {
-                buffer = compress.expand(buffer);
+            rs.close();
+            if (count == 0) {
+                throw DbException.get(ErrorCode.IO_EXCEPTION_1, "Missing lob entry: "+ lob + "/" + seq).getSQLException();
             }
             reuse(sql, prep);
-            return buffer;
+            return count;
         }
     }
 
@@ -318,7 +330,11 @@ public class LobStorage {
             if (length == 0) {
                 return -1;
             }
-            length = handler.readLob(lob, hmac, pos, buff, off, length);
+            try {
+                length = handler.readLob(lob, hmac, pos, buff, off, length);
+            } catch (DbException e) {
+                throw DbException.convertToIOException(e);
+            }
             remainingBytes -= length;
             if (length == 0) {
                 return -1;
@@ -366,10 +382,30 @@ public class LobStorage {
         private final long lob;
 
         /**
-         * The lob sequence id.
+         * The lob sequence id of the next block to read from the database.
          */
         private int seq;
 
+        /**
+         * The blocks that were read ahead (compressed if stored compressed).
+         */
+        private byte[][] blocks;
+
+        /**
+         * Whether the blocks that were read ahead are compressed.
+         */
+        private boolean[] compressed;
+
+        /**
+         * The number of blocks that were read ahead.
+         */
+        private int blockCount;
+
+        /**
+         * The index of the next block to use.
+         */
+        private int blockIndex;
+
         public LobInputStream(long lob, long byteCount) {
             this.lob = lob;
             remainingBytes = byteCount;
@@ -397,6 +433,7 @@ public class LobStorage {
                         return n - remaining;
                     }
                     seq = (int) seqPos[0];
+                    blockIndex = blockCount = 0;
                     long p = seqPos[1];
                     remainingBytes = length - p;
                     remaining = toPos - p;
@@ -460,12 +497,42 @@ public class LobStorage {
             if (remainingBytes <= 0) {
                 return;
             }
+            if (blockIndex >= blockCount) {
+                readAhead();
+            }
+            byte[] b = blocks[blockIndex];
+            if (compressed[blockIndex]) {
+                b = compress.expand(b);
+            }
+            blocks[blockIndex++] = null;
+            buffer = b;
+            pos = 0;
+        }
+
+        /**
+         * Read the next blocks from the database. The number of blocks per
+         * query is doubled each time, up to the read ahead limit, so that
+         * only reading the beginning of a large LOB stays cheap.
+         */
+        private void readAhead() throws IOException {
+            int count;
+            if (blocks == null) {
+                count = 1;
+            } else {
+                count = Math.min(blocks.length * 2, SysProperties.LOB_READ_AHEAD);
+            }
+            count = Math.max(1, count);
+            if (blocks == null || blocks.length != count) {
+                blocks = new byte[count][];
+                compressed = new boolean[count];
+            }
             try {
-                buffer = readBlock(lob, seq++);
-                pos = 0;
+                blockCount = readBlocks(lob, seq, blocks, compressed);
             } catch (SQLException e) {
                 throw DbException.convertToIOException(e);
             }
+            seq += blockCount;
+            blockIndex = 0;
         }
 
     }
@@ -24,6 +24,11 @@ public abstract class Page extends CacheObject {
      */
     public static final int FLAG_LAST = 16;
 
+    /**
+     * The entries of this b-tree page are prefix compressed.
+     */
+    public static final int FLAG_PREFIX = 32;
+
     /**
      * An empty page.
      */
@@ -13,6 +13,7 @@ import java.util.HashMap;
 import org.h2.compress.CompressLZF;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
+import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
@@ -550,7 +551,9 @@ public class PageLog {
         buffer.writeByte((byte) COMMIT);
         buffer.writeVarInt(sessionId);
         write(buffer);
-        if (store.getDatabase().getFlushOnEachCommit()) {
+        Database db = store.getDatabase();
+        if (db.getFlushOnEachCommit() && !db.getSettings().groupCommit) {
+            // with group commit, the log is flushed in PageStore.syncCommit
             flush();
         }
     }
@@ -45,6 +45,7 @@ import org.h2.util.BitField;
 import org.h2.util.Cache;
 import org.h2.util.CacheLRU;
 import org.h2.util.CacheObject;
+import org.h2.util.CacheSynchronized;
 import org.h2.util.CacheWriter;
 import org.h2.util.IntArray;
 import org.h2.util.IntIntHashMap;
@@ -123,12 +124,24 @@ public class PageStore implements CacheWriter {
     private static final int MIN_PAGE_COUNT = 6;
     private static final int INCREMENT_KB = 1024;
     private static final int INCREMENT_PERCENT_MIN = 35;
-    private static final int READ_VERSION = 3;
-    private static final int WRITE_VERSION = 3;
+    private static final int READ_VERSION = 4;
+    private static final int WRITE_VERSION = 4;
+    private static final int PREFIX_COMPRESSION_VERSION = 4;
     private static final int META_TYPE_DATA_INDEX = 0;
     private static final int META_TYPE_BTREE_INDEX = 1;
     private static final int META_TABLE_ID = -1;
     private static final int COMPACT_BLOCK_SIZE = 1536;
+
+    /**
+     * The maximum number of adjacent pages that are written in one operation.
+     */
+    private static final int WRITE_BATCH_PAGES = 32;
+
+    /**
+     * The maximum number of changed pages the writer thread writes back at
+     * once, before it releases the lock.
+     */
+    private static final int WRITE_BACK_PAGES = 128;
     private final Database database;
     private final Trace trace;
     private final String fileName;
@@ -136,7 +149,13 @@ public class PageStore implements CacheWriter {
     private String accessMode;
     private int pageSize = Constants.DEFAULT_PAGE_SIZE;
     private int pageSizeShift;
-    private long writeCountBase, writeCount, readCount;
+    private long writeCountBase, readCount;
+
+    /**
+     * The number of pages written. Concurrent readers use this to detect that
+     * a page they read without synchronization may have changed.
+     */
+    private volatile long writeCount;
     private int logKey, logFirstTrunkPage, logFirstDataPage;
     private final Cache cache;
     private int freeListPagesPerList;
@@ -173,6 +192,7 @@ public class PageStore implements CacheWriter {
      */
     private HashMap<Integer, Integer> reservedPages;
     private boolean isNew;
+    private boolean prefixCompression;
     private long maxLogSize = Constants.DEFAULT_MAX_LOG_SIZE;
     private final Session systemSession;
 
@@ -197,8 +217,35 @@ public class PageStore implements CacheWriter {
 
     private Data emptyPage;
     private long logSizeBase;
+
+    /**
+     * The size of the transaction log after the last checkpoint.
+     */
+    private long checkpointLogSize;
     private HashMap<String, Integer> statistics;
     private int logMode = LOG_MODE_SYNC;
+
+    /**
+     * The number of commit records written to the log.
+     */
+    private long commitCount;
+
+    /**
+     * The lock object for group commit. Guards syncedCommitCount and
+     * syncingCommits.
+     */
+    private final Object commitSync = new Object();
+    private long syncedCommitCount;
+    private boolean syncingCommits;
+    private long commitSyncCount;
+
+    /**
+     * Whether adjacent pages are collected in the write batch buffer, so that
+     * they can be written in one operation.
+     */
+    private boolean writeBatch;
+    private byte[] writeBatchBuffer;
+    private int writeBatchFirstPageId, writeBatchPageCount;
     private boolean lockFile;
     private boolean readMode;
     private int backupLevel;
@@ -219,7 +266,14 @@ public class PageStore implements CacheWriter {
         // if (fileName.endsWith("X.h2.db"))
         // trace.setLevel(TraceSystem.DEBUG);
         String cacheType = database.getCacheType();
-        this.cache = CacheLRU.getCache(this, cacheType, cacheSizeDefault);
+        // the cache is segmented, and each segment is synchronized on its own,
+        // so that pages that are already cached can be read without locking
+        // the page store (the LIRS cache is segmented internally)
+        if (cacheType.equals("LIRS")) {
+            this.cache = CacheLRU.getCache(this, cacheType, cacheSizeDefault);
+        } else {
+            this.cache = new CacheSynchronized(this, cacheType, cacheSizeDefault);
+        }
         systemSession = new Session(database, null, 0);
     }
 
@@ -260,8 +314,7 @@ public class PageStore implements CacheWriter {
         if (pageId >= pageCount) {
             return -1;
         }
-        file.seek((long) pageId << pageSizeShift);
-        file.readFullyDirect(buffer, 0, pageSize);
+        file.readFullyDirect((long) pageId << pageSizeShift, buffer, 0, pageSize);
         readCount++;
         out.write(buffer, 0, pageSize);
         return pageId + 1;
@@ -299,6 +352,7 @@ public class PageStore implements CacheWriter {
         file = database.openFile(fileName, accessMode, false);
         lockFile();
         recoveryRunning = true;
+        prefixCompression = true;
         writeStaticHeader();
         writeVariableHeader();
         log = new PageLog(this);
@@ -408,8 +462,92 @@ public class PageStore implements CacheWriter {
     private void writeBack() {
         ArrayList<CacheObject> list = cache.getAllChanged();
         Collections.sort(list);
+        beginWriteBatch();
+        try {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                writeBack(list.get(i));
+            }
+        } finally {
+            endWriteBatch();
+        }
+    }
+
+    /**
+     * Write back changed pages in the order of the page id, until the changed
+     * pages use at most the given percentage of the cache memory. This method
+     * is called by the writer thread, so that pages that need to be removed
+     * from the cache are usually unchanged, and the next checkpoint has less
+     * to write. At most WRITE_BACK_PAGES pages are written per call.
+     *
+     * @param maxPercent the maximum percentage of the cache memory used by
+     *            changed pages
+     * @return true if more pages need to be written
+     */
+    public synchronized boolean writeBackChanged(int maxPercent) {
+        if (file == null || log == null || readMode || recoveryRunning || database.isReadOnly()) {
+            return false;
+        }
+        ArrayList<CacheObject> list = cache.getAllChanged();
+        long changed = 0;
         for (int i = 0, size = list.size(); i < size; i++) {
-            writeBack(list.get(i));
+            changed += list.get(i).getMemory();
+        }
+        // the cache size is in KB, the memory of a record in words
+        long max = cache.getMaxMemory() * 256L * maxPercent / 100;
+        if (changed <= max) {
+            return false;
+        }
+        Collections.sort(list);
+        // the log must be written before the pages
+        log.flush();
+        beginWriteBatch();
+        try {
+            for (int i = 0, size = list.size(); i < size && i < WRITE_BACK_PAGES && changed > max; i++) {
+                CacheObject rec = list.get(i);
+                writeBack(rec);
+                changed -= rec.getMemory();
+            }
+        } finally {
+            endWriteBatch();
+        }
+        return changed > max;
+    }
+
+    /**
+     * Check whether the transaction log grew by more than half of the maximum
+     * size since the last checkpoint. In this case, the writer thread does a
+     * checkpoint, so that a commit doesn't need to. If the log could not be
+     * truncated (because a transaction is still open), the next checkpoint is
+     * only recommended once the log has grown by that much again.
+     *
+     * @return true if a checkpoint should be done
+     */
+    public synchronized boolean isCheckpointRecommended() {
+        if (log == null || readMode || ignoreBigLog || database.isReadOnly()) {
+            return false;
+        }
+        long base = Math.max(logSizeBase, checkpointLogSize);
+        return log.getSize() - base > maxLogSize / 2;
+    }
+
+    private void beginWriteBatch() {
+        if (writeBatchBuffer == null || writeBatchBuffer.length != pageSize * WRITE_BATCH_PAGES) {
+            writeBatchBuffer = new byte[pageSize * WRITE_BATCH_PAGES];
+        }
+        writeBatch = true;
+    }
+
+    private void endWriteBatch() {
+        writeBatch = false;
+        flushWriteBatch();
+    }
+
+    private void flushWriteBatch() {
+        int count = writeBatchPageCount;
+        if (count > 0) {
+            writeBatchPageCount = 0;
+            file.write((long) writeBatchFirstPageId << pageSizeShift, writeBatchBuffer, 0, count << pageSizeShift);
+            writeCount += count;
         }
     }
 
@@ -451,16 +589,15 @@ public class PageStore implements CacheWriter {
                 if (trace.isDebugEnabled()) {
                     trace.debug("free " + i);
                 }
-                file.seek((long) i << pageSizeShift);
-                file.readFully(test, 0, 16);
+                file.readFully((long) i << pageSizeShift, test, 0, 16);
                 if (test[0] != 0) {
-                    file.seek((long) i << pageSizeShift);
-                    file.write(empty, 0, pageSize);
+                    file.write((long) i << pageSizeShift, empty, 0, pageSize);
                     writeCount++;
                 }
                 freed.set(i);
             }
         }
+        checkpointLogSize = log.getSize();
     }
 
     /**
@@ -720,19 +857,65 @@ public class PageStore implements CacheWriter {
     }
 
     /**
-     * Read a page from the store.
+     * Read a page from the store. If the page is in the cache, the page store
+     * is not locked, so that concurrent sessions (in multi-threaded mode) can
+     * read cached pages in parallel.
      *
      * @param pageId the page id
      * @return the page
      */
-    public synchronized Page getPage(int pageId) {
+    public Page getPage(int pageId) {
         Page p = (Page) cache.get(pageId);
         if (p != null) {
             return p;
         }
+        return readAndCachePage(pageId, readPageUnlocked(pageId));
+    }
 
+    /**
+     * Read a page from the file without synchronization, so that sessions
+     * that need different pages don't wait for each other's I/O. The file
+     * is read at a position, without moving the file pointer.
+     *
+     * @param pageId the page id
+     * @return the data, or null if the page could not be read
+     */
+    private UnlockedRead readPageUnlocked(int pageId) {
+        FileStore f = file;
+        if (f == null || recordPageReads || pageId >= pageCount) {
+            return null;
+        }
+        long writes = writeCount;
         Data data = createData();
-        readPage(pageId, data);
+        try {
+            f.readFully((long) pageId << pageSizeShift, data.getBytes(), 0, pageSize);
+        } catch (DbException e) {
+            if (e.getErrorCode() == ErrorCode.DATABASE_IS_CLOSED) {
+                throw e;
+            }
+            // the file may have been truncated in the meantime;
+            // the page is read again while synchronized
+            return null;
+        }
+        return new UnlockedRead(f, writes, data);
+    }
+
+    private synchronized Page readAndCachePage(int pageId, UnlockedRead unlocked) {
+        // another session could have read the page in the meantime
+        Page p = (Page) cache.get(pageId);
+        if (p != null) {
+            return p;
+        }
+        Data data;
+        if (unlocked != null && unlocked.file == file && unlocked.writeCount == writeCount &&
+                !recordPageReads && pageId < pageCount) {
+            // no page was written while reading, so the data is current
+            data = unlocked.data;
+            readCount++;
+        } else {
+            data = createData();
+            readPage(pageId, data);
+        }
         int type = data.readByte();
         if (type == Page.TYPE_EMPTY) {
             return null;
@@ -742,7 +925,7 @@ public class PageStore implements CacheWriter {
         if (!checksumTest(data.getBytes(), pageId, pageSize)) {
             throw DbException.get(ErrorCode.FILE_CORRUPTED_1, "wrong checksum");
         }
-        switch (type & ~Page.FLAG_LAST) {
+        switch (type & ~(Page.FLAG_LAST | Page.FLAG_PREFIX)) {
         case Page.TYPE_FREE_LIST:
             p = PageFreeList.read(this, data, pageId);
             break;
@@ -846,9 +1029,8 @@ public class PageStore implements CacheWriter {
     }
 
     private void readStaticHeader() {
-        file.seek(FileStore.HEADER_LENGTH);
         Data page = Data.create(database, new byte[PAGE_SIZE_MIN - FileStore.HEADER_LENGTH]);
-        file.readFully(page.getBytes(), 0, PAGE_SIZE_MIN - FileStore.HEADER_LENGTH);
+        file.readFully(FileStore.HEADER_LENGTH, page.getBytes(), 0, PAGE_SIZE_MIN - FileStore.HEADER_LENGTH);
         readCount++;
         setPageSize(page.readInt());
         int writeVersion = page.readByte();
@@ -856,6 +1038,9 @@ public class PageStore implements CacheWriter {
         if (readVersion > READ_VERSION) {
             throw DbException.get(ErrorCode.FILE_VERSION_ERROR_1, fileName);
         }
+        // files of older versions are kept in the old format,
+        // so that they can still be opened with older versions
+        prefixCompression = readVersion >= PREFIX_COMPRESSION_VERSION;
         if (writeVersion > WRITE_VERSION) {
             close();
             database.setReadOnly(true);
@@ -919,8 +1104,7 @@ public class PageStore implements CacheWriter {
         page.writeInt(pageSize);
         page.writeByte((byte) WRITE_VERSION);
         page.writeByte((byte) READ_VERSION);
-        file.seek(FileStore.HEADER_LENGTH);
-        file.write(page.getBytes(), 0, pageSize - FileStore.HEADER_LENGTH);
+        file.write(FileStore.HEADER_LENGTH, page.getBytes(), 0, pageSize - FileStore.HEADER_LENGTH);
         writeCount++;
     }
 
@@ -955,10 +1139,8 @@ public class PageStore implements CacheWriter {
         CRC32 crc = new CRC32();
         crc.update(page.getBytes(), 4, pageSize - 4);
         page.setInt(0, (int) crc.getValue());
-        file.seek(pageSize);
-        file.write(page.getBytes(), 0, pageSize);
-        file.seek(pageSize + pageSize);
-        file.write(page.getBytes(), 0, pageSize);
+        file.write(pageSize, page.getBytes(), 0, pageSize);
+        file.write(pageSize + pageSize, page.getBytes(), 0, pageSize);
         // don't increment the write counter, because it was just written
     }
 
@@ -1281,8 +1463,11 @@ public class PageStore implements CacheWriter {
         if (pos < 0 || pos >= pageCount) {
             throw DbException.get(ErrorCode.FILE_CORRUPTED_1, pos + " of " + pageCount);
         }
-        file.seek((long) pos << pageSizeShift);
-        file.readFully(page.getBytes(), 0, pageSize);
+        if (writeBatchPageCount > 0 && pos >= writeBatchFirstPageId &&
+                pos < writeBatchFirstPageId + writeBatchPageCount) {
+            flushWriteBatch();
+        }
+        file.readFully((long) pos << pageSizeShift, page.getBytes(), 0, pageSize);
         readCount++;
     }
 
@@ -1323,8 +1508,19 @@ public class PageStore implements CacheWriter {
             }
         }
         checksumSet(bytes, pageId);
-        file.seek((long) pageId << pageSizeShift);
-        file.write(bytes, 0, pageSize);
+        if (writeBatch) {
+            if (writeBatchPageCount > 0 && (writeBatchPageCount == WRITE_BATCH_PAGES ||
+                    pageId != writeBatchFirstPageId + writeBatchPageCount)) {
+                flushWriteBatch();
+            }
+            if (writeBatchPageCount == 0) {
+                writeBatchFirstPageId = pageId;
+            }
+            System.arraycopy(bytes, 0, writeBatchBuffer, writeBatchPageCount << pageSizeShift, pageSize);
+            writeBatchPageCount++;
+            return;
+        }
+        file.write((long) pageId << pageSizeShift, bytes, 0, pageSize);
         writeCount++;
     }
 
@@ -1432,6 +1628,7 @@ public class PageStore implements CacheWriter {
         checkOpen();
         openForWriting();
         log.commit(session.getId());
+        commitCount++;
         long size = log.getSize();
         if (size - logSizeBase > maxLogSize) {
             int firstSection = log.getLogFirstSectionId();
@@ -1456,6 +1653,77 @@ public class PageStore implements CacheWriter {
         }
     }
 
+    /**
+     * Get the number of commit records written to the log so far.
+     *
+     * @return the commit count
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Wait until the log is flushed and synced up to the given commit (group
+     * commit). If no other session is syncing the log, the current thread
+     * flushes and syncs it, for all sessions that committed until then.
+     * Otherwise, it waits for that sync, and then checks again. This method
+     * must not be called while holding the database lock, so that other
+     * sessions can commit in the meantime.
+     *
+     * @param count the commit count to wait for
+     */
+    public void syncCommit(long count) {
+        synchronized (commitSync) {
+            while (syncedCommitCount < count) {
+                if (!syncingCommits) {
+                    syncingCommits = true;
+                    break;
+                }
+                try {
+                    commitSync.wait();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            if (syncedCommitCount >= count) {
+                return;
+            }
+        }
+        long synced = 0;
+        try {
+            int delay = database.getSettings().groupCommitDelay;
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            FileStore f;
+            long c;
+            synchronized (this) {
+                f = file;
+                c = commitCount;
+                if (f != null) {
+                    log.flush();
+                }
+            }
+            // sync outside of the page store lock, so that
+            // other sessions can already write the next commits
+            if (f != null && logMode == LOG_MODE_SYNC) {
+                f.sync();
+            }
+            synced = c;
+        } finally {
+            synchronized (commitSync) {
+                commitSyncCount++;
+                syncingCommits = false;
+                syncedCommitCount = Math.max(syncedCommitCount, synced);
+                commitSync.notifyAll();
+            }
+        }
+    }
+
     /**
      * Prepare a transaction.
      *
@@ -1475,6 +1743,17 @@ public class PageStore implements CacheWriter {
         return isNew;
     }
 
+    /**
+     * Check whether the entries of b-tree index pages may be prefix
+     * compressed. This is not the case for files created with an older
+     * version.
+     *
+     * @return true if they may
+     */
+    public boolean isPrefixCompression() {
+        return prefixCompression;
+    }
+
     /**
      * Reserve the page if this is a index root page entry.
      *
@@ -1847,6 +2126,18 @@ public class PageStore implements CacheWriter {
         return writeCount;
     }
 
+    /**
+     * Get the number of times the log was synced for group commit since the
+     * database was opened.
+     *
+     * @return the sync count
+     */
+    public long getCommitSyncCount() {
+        synchronized (commitSync) {
+            return commitSyncCount;
+        }
+    }
+
     /**
      * Get the file read count since the database was opened.
      *
@@ -1883,6 +2174,16 @@ public class PageStore implements CacheWriter {
         return cache;
     }
 
+    /**
+     * Set the maximum memory used by the cache. Changed pages may need to be
+     * written back, which requires the page store to be locked.
+     *
+     * @param kb the maximum size in KB
+     */
+    public synchronized void setMaxCacheMemory(int kb) {
+        cache.setMaxMemory(kb);
+    }
+
     private void checksumSet(byte[] d, int pageId) {
         int ps = pageSize;
         int type = d[0];
@@ -1970,4 +2271,32 @@ public class PageStore implements CacheWriter {
         backupLevel += start ? 1 : -1;
     }
 
+    /**
+     * The data of a page that was read without synchronization.
+     */
+    private static class UnlockedRead {
+
+        /**
+         * The file the page was read from.
+         */
+        final FileStore file;
+
+        /**
+         * The write count before the page was read.
+         */
+        final long writeCount;
+
+        /**
+         * The page data.
+         */
+        final Data data;
+
+        UnlockedRead(FileStore file, long writeCount, Data data) {
+            this.file = file;
+            this.writeCount = writeCount;
+            this.data = data;
+        }
+
+    }
+
 }
@@ -16,7 +16,9 @@ import org.h2.message.TraceSystem;
 
 /**
  * The writer thread is responsible to flush the transaction transaction log
- * from time to time.
+ * from time to time. It also writes back changed pages in the cache, so that
+ * only few of them are changed, and does a checkpoint before the transaction
+ * log gets too large.
  */
 public class WriterThread implements Runnable {
 
@@ -84,6 +86,11 @@ public class WriterThread implements Runnable {
                     database.checkpointIfRequired();
                 } else {
                     database.flush();
+                    if (database.writeBackChanged()) {
+                        // continue soon, but let other threads
+                        // use the database in the meantime
+                        wait = Constants.MIN_WRITE_DELAY;
+                    }
                 }
             } catch (Exception e) {
                 TraceSystem traceSystem = database.getTraceSystem();
@@ -428,6 +428,11 @@ class FileDisk extends FileBase {
         return len;
     }
 
+    public int read(ByteBuffer dst, long position) throws IOException {
+        // doesn't change the file pointer, so no need to synchronize
+        return file.getChannel().read(dst, position);
+    }
+
     public FileChannel position(long pos) throws IOException {
         file.seek(pos);
         return this;
@@ -440,6 +445,10 @@ class FileDisk extends FileBase {
         return len;
     }
 
+    public int write(ByteBuffer src, long position) throws IOException {
+        return file.getChannel().write(src, position);
+    }
+
     public String toString() {
         return name;
     }
@@ -269,6 +269,20 @@ class FileMem extends FileBase {
         return len;
     }
 
+    public int read(ByteBuffer dst, long position) throws IOException {
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        long newPos = data.readWrite(position, dst.array(), dst.position(), len, false);
+        len = (int) (newPos - position);
+        if (len <= 0) {
+            return -1;
+        }
+        dst.position(dst.position() + len);
+        return len;
+    }
+
     public long position() {
         return pos;
     }
@@ -447,7 +461,7 @@ class FileMemData {
      *
      * @param newLength the new length
      */
-    void truncate(long newLength) {
+    synchronized void truncate(long newLength) {
         changeLength(newLength);
         long end = MathUtils.roundUpLong(newLength, BLOCK_SIZE);
         if (end != newLength) {
@@ -487,7 +501,7 @@ class FileMemData {
      * @param write true for writing
      * @return the new position
      */
-    long readWrite(long pos, byte[] b, int off, int len, boolean write) {
+    synchronized long readWrite(long pos, byte[] b, int off, int len, boolean write) {
         long end = pos + len;
         if (end > length) {
             if (write) {
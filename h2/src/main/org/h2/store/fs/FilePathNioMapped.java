@@ -6,12 +6,10 @@
  */
 package org.h2.store.fs;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -35,23 +33,48 @@ public class FilePathNioMapped extends FilePathNio {
 }
 
 /**
- * Uses memory mapped files.
- * The file size is limited to 2 GB.
+ * Uses memory mapped files. The file is mapped as a list of segments of
+ * 1 GB each (the last segment may be smaller), so that files larger than 2 GB
+ * are supported, and so that only the last segment needs to be re-mapped when
+ * the file grows. Reads don't need to synchronize; writes and changing the
+ * file length are synchronized. The file must not be truncated while it is
+ * read concurrently.
  */
 class FileNioMapped extends FileBase {
 
     private static final long GC_TIMEOUT_MS = 10000;
+
+    /**
+     * The number of bits of the segment size.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * The size of a segment (1 GB).
+     */
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
     private final String name;
     private final MapMode mode;
     private RandomAccessFile file;
-    private MappedByteBuffer mapped;
-    private long fileLength;
+
+    /**
+     * The mapped segments. The array is replaced (not modified) when the file
+     * grows, so that concurrent readers see a consistent list.
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * The file length. When the file grows, this field is set after the
+     * segments; when it shrinks, before the segments.
+     */
+    private volatile long fileLength;
 
     /**
      * The position within the file. Can't use the position of the mapped buffer
      * because it doesn't support seeking past the end of the file.
      */
-    private int pos;
+    private long pos;
 
     FileNioMapped(String fileName, String mode) throws IOException {
         if ("r".equals(mode)) {
@@ -61,20 +84,24 @@ class FileNioMapped extends FileBase {
         }
         this.name = fileName;
         file = new RandomAccessFile(fileName, mode);
-        reMap();
+        map(file.length());
     }
 
-    private void unMap() throws IOException {
-        if (mapped == null) {
-            return;
-        }
+    /**
+     * Un-map a segment and remove it from the list.
+     *
+     * @param list the list of segments
+     * @param index the index of the segment
+     */
+    private static void unMap(MappedByteBuffer[] list, int index) throws IOException {
+        MappedByteBuffer mapped = list[index];
+        list[index] = null;
         // first write all data
         mapped.force();
 
         // need to dispose old direct buffer, see bug
         // http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4724038
 
-        boolean useSystemGc = true;
         if (SysProperties.NIO_CLEANER_HACK) {
             try {
                 Method cleanerMethod = mapped.getClass().getMethod("cleaner");
@@ -84,62 +111,84 @@ class FileNioMapped extends FileBase {
                     Method clearMethod = cleaner.getClass().getMethod("clean");
                     clearMethod.invoke(cleaner);
                 }
-                useSystemGc = false;
+                return;
             } catch (Throwable e) {
-                // useSystemGc is already true
-            } finally {
-                mapped = null;
+                // use System.gc()
             }
         }
-        if (useSystemGc) {
-            WeakReference<MappedByteBuffer> bufferWeakRef = new WeakReference<MappedByteBuffer>(mapped);
-            mapped = null;
-            long start = System.currentTimeMillis();
-            while (bufferWeakRef.get() != null) {
-                if (System.currentTimeMillis() - start > GC_TIMEOUT_MS) {
-                    throw new IOException("Timeout (" + GC_TIMEOUT_MS
-                            + " ms) reached while trying to GC mapped buffer");
-                }
-                System.gc();
-                Thread.yield();
+        WeakReference<MappedByteBuffer> bufferWeakRef = new WeakReference<MappedByteBuffer>(mapped);
+        mapped = null;
+        long start = System.currentTimeMillis();
+        while (bufferWeakRef.get() != null) {
+            if (System.currentTimeMillis() - start > GC_TIMEOUT_MS) {
+                throw new IOException("Timeout (" + GC_TIMEOUT_MS
+                        + " ms) reached while trying to GC mapped buffer");
             }
+            System.gc();
+            Thread.yield();
         }
     }
 
     /**
-     * Re-map byte buffer into memory, called when file size has changed or file
-     * was created.
+     * Un-map the segments starting with the given index. The segments are
+     * removed from the list before they are un-mapped.
+     *
+     * @param start the index of the first segment to un-map
      */
-    private void reMap() throws IOException {
-        int oldPos = 0;
-        if (mapped != null) {
-            oldPos = pos;
-            unMap();
-        }
-        fileLength = file.length();
-        checkFileSizeLimit(fileLength);
-        // maps new MappedByteBuffer; the old one is disposed during GC
-        mapped = file.getChannel().map(mode, 0, fileLength);
-        int limit = mapped.limit();
-        int capacity = mapped.capacity();
-        if (limit < fileLength || capacity < fileLength) {
-            throw new IOException("Unable to map: length=" + limit + " capacity=" + capacity + " length=" + fileLength);
+    private void unMap(int start) throws IOException {
+        MappedByteBuffer[] old = segments;
+        if (start >= old.length) {
+            return;
         }
-        if (SysProperties.NIO_LOAD_MAPPED) {
-            mapped.load();
+        MappedByteBuffer[] list = new MappedByteBuffer[start];
+        System.arraycopy(old, 0, list, 0, start);
+        segments = list;
+        for (int i = start; i < old.length; i++) {
+            unMap(old, i);
         }
-        this.pos = Math.min(oldPos, (int) fileLength);
     }
 
-    private static void checkFileSizeLimit(long length) throws IOException {
-        if (length > Integer.MAX_VALUE) {
-            throw new IOException("File over 2GB is not supported yet when using this file system");
+    /**
+     * Map the file up to the given length. The existing complete segments are
+     * kept; the last segment is re-mapped if it is not complete. In read-write
+     * mode, the file is extended if required.
+     *
+     * @param newLength the new file length
+     */
+    private void map(long newLength) throws IOException {
+        MappedByteBuffer[] old = segments;
+        int count = (int) ((newLength + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] list = new MappedByteBuffer[count];
+        int keep = Math.min(old.length, count);
+        if (keep > 0 && old[keep - 1].capacity() < SEGMENT_SIZE) {
+            // the old last segment is not complete
+            keep--;
         }
+        System.arraycopy(old, 0, list, 0, keep);
+        FileChannel channel = file.getChannel();
+        for (int i = keep; i < count; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            long len = Math.min(SEGMENT_SIZE, newLength - start);
+            MappedByteBuffer mapped = channel.map(mode, start, len);
+            if (mapped.capacity() < len) {
+                throw new IOException("Unable to map: length=" + len + " capacity=" + mapped.capacity() +
+                        " position=" + start);
+            }
+            if (SysProperties.NIO_LOAD_MAPPED) {
+                mapped.load();
+            }
+            list[i] = mapped;
+        }
+        // the replaced last segment is not un-mapped explicitly,
+        // as concurrent readers may still use it
+        segments = list;
+        fileLength = newLength;
     }
 
-    public void implCloseChannel() throws IOException {
+    public synchronized void implCloseChannel() throws IOException {
         if (file != null) {
-            unMap();
+            fileLength = 0;
+            unMap(0);
             file.close();
             file = null;
         }
@@ -153,39 +202,45 @@ class FileNioMapped extends FileBase {
         return "nioMapped:" + name;
     }
 
-    public synchronized long size() throws IOException {
+    public long size() throws IOException {
         return fileLength;
     }
 
-    public synchronized int read(ByteBuffer dst) throws IOException {
-        try {
-            int len = dst.remaining();
-            if (len == 0) {
-                return 0;
-            }
-            len = (int) Math.min(len, fileLength - pos);
-            if (len <= 0) {
-                return -1;
-            }
-            mapped.position(pos);
-            mapped.get(dst.array(), dst.position(), len);
-            dst.position(dst.position() + len);
+    public int read(ByteBuffer dst) throws IOException {
+        int len = read(dst, pos);
+        if (len > 0) {
             pos += len;
-            return len;
-        } catch (IllegalArgumentException e) {
-            EOFException e2 = new EOFException("EOF");
-            e2.initCause(e);
-            throw e2;
-        } catch (BufferUnderflowException e) {
-            EOFException e2 = new EOFException("EOF");
-            e2.initCause(e);
-            throw e2;
         }
+        return len;
+    }
+
+    public int read(ByteBuffer dst, long position) throws IOException {
+        // read the length first, as it is set after the segments when growing
+        long length = fileLength;
+        MappedByteBuffer[] list = segments;
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        len = (int) Math.min(len, length - position);
+        if (len <= 0) {
+            return -1;
+        }
+        for (int done = 0; done < len;) {
+            long p = position + done;
+            int offset = (int) (p & (SEGMENT_SIZE - 1));
+            ByteBuffer src = list[(int) (p >>> SEGMENT_SHIFT)].duplicate();
+            int l = Math.min(len - done, src.capacity() - offset);
+            src.limit(offset + l);
+            src.position(offset);
+            dst.put(src);
+            done += l;
+        }
+        return len;
     }
 
     public FileChannel position(long pos) throws IOException {
-        checkFileSizeLimit(pos);
-        this.pos = (int) pos;
+        this.pos = pos;
         return this;
     }
 
@@ -196,10 +251,21 @@ class FileNioMapped extends FileBase {
         return this;
     }
 
+    /**
+     * Change the file length. If the file grows, only the last segment is
+     * re-mapped, and the new segments are mapped. If the file shrinks, all
+     * segments are un-mapped first.
+     *
+     * @param newLength the new file length
+     */
     public synchronized void setFileLength(long newLength) throws IOException {
-        checkFileSizeLimit(newLength);
-        int oldPos = pos;
-        unMap();
+        if (newLength > fileLength) {
+            map(newLength);
+            return;
+        }
+        // some operating systems can't truncate a file while it is mapped
+        fileLength = newLength;
+        unMap(0);
         for (int i = 0;; i++) {
             try {
                 file.setLength(newLength);
@@ -211,24 +277,42 @@ class FileNioMapped extends FileBase {
             }
             System.gc();
         }
-        reMap();
-        pos = (int) Math.min(newLength, oldPos);
+        map(newLength);
+        pos = Math.min(newLength, pos);
     }
 
     public void force(boolean metaData) throws IOException {
-        mapped.force();
+        for (MappedByteBuffer mapped : segments) {
+            mapped.force();
+        }
         file.getFD().sync();
     }
 
     public synchronized int write(ByteBuffer src) throws IOException {
+        int len = write(src, pos);
+        pos += len;
+        return len;
+    }
+
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
         int len = src.remaining();
         // check if need to expand file
-        if (mapped.capacity() < pos + len) {
-            setFileLength(pos + len);
+        if (fileLength < position + len) {
+            setFileLength(position + len);
+        }
+        MappedByteBuffer[] list = segments;
+        for (int done = 0; done < len;) {
+            long p = position + done;
+            int offset = (int) (p & (SEGMENT_SIZE - 1));
+            ByteBuffer dst = list[(int) (p >>> SEGMENT_SHIFT)].duplicate();
+            int l = Math.min(len - done, dst.capacity() - offset);
+            dst.position(offset);
+            int limit = src.limit();
+            src.limit(src.position() + l);
+            dst.put(src);
+            src.limit(limit);
+            done += l;
         }
-        mapped.position(pos);
-        mapped.put(src);
-        pos += len;
         return len;
     }
 
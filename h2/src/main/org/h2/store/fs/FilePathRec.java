@@ -143,6 +143,10 @@ class FileRec extends FileBase {
         return channel.read(dst);
     }
 
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return channel.read(dst, position);
+    }
+
     public FileChannel position(long pos) throws IOException {
         channel.position(pos);
         return this;
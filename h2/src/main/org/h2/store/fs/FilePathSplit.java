@@ -240,9 +240,9 @@ class FileSplit extends FileBase {
     private final FilePathSplit file;
     private final String mode;
     private final long maxLength;
-    private FileChannel[] list;
+    private volatile FileChannel[] list;
     private long filePointer;
-    private long length;
+    private volatile long length;
 
     FileSplit(FilePathSplit file, String mode, FileChannel[] list, long length, long maxLength) {
         this.file = file;
@@ -284,6 +284,32 @@ class FileSplit extends FileBase {
         return len;
     }
 
+    public int read(ByteBuffer dst, long position) throws IOException {
+        // doesn't change the file pointer, so no need to synchronize
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        len = (int) Math.min(len, length - position);
+        if (len <= 0) {
+            return -1;
+        }
+        FileChannel[] channels = list;
+        int id = (int) (position / maxLength);
+        if (id >= channels.length) {
+            return -1;
+        }
+        long offset = position % maxLength;
+        len = (int) Math.min(len, maxLength - offset);
+        int oldLimit = dst.limit();
+        dst.limit(dst.position() + len);
+        try {
+            return channels[id].read(dst, offset);
+        } finally {
+            dst.limit(oldLimit);
+        }
+    }
+
     public FileChannel position(long pos) {
         filePointer = pos;
         return this;
@@ -369,6 +395,37 @@ class FileSplit extends FileBase {
         return l;
     }
 
+    public int write(ByteBuffer src, long position) throws IOException {
+        FileChannel[] channels = list;
+        int id = (int) (position / maxLength);
+        if (id >= channels.length) {
+            // need to create files
+            return super.write(src, position);
+        }
+        // doesn't change the file pointer, so no need to synchronize
+        long offset = position % maxLength;
+        int len = src.remaining();
+        int l = (int) Math.min(len, maxLength - offset);
+        if (l == len) {
+            l = channels[id].write(src, offset);
+        } else {
+            int oldLimit = src.limit();
+            src.limit(src.position() + l);
+            try {
+                l = channels[id].write(src, offset);
+            } finally {
+                src.limit(oldLimit);
+            }
+        }
+        long end = position + l;
+        if (end > length) {
+            synchronized (this) {
+                length = Math.max(length, end);
+            }
+        }
+        return l;
+    }
+
     public synchronized FileLock tryLock(long position, long size, boolean shared) throws IOException {
         return list[0].tryLock();
     }
@@ -361,6 +361,25 @@ public class FileUtils {
         } while (dst.remaining() > 0);
     }
 
+    /**
+     * Fully read from the file at the given position, without changing the
+     * position of the channel. This will read all remaining bytes, or throw
+     * an EOFException if not successful.
+     *
+     * @param channel the file channel
+     * @param dst the byte buffer
+     * @param pos the position in the file
+     */
+    public static void readFully(FileChannel channel, ByteBuffer dst, long pos) throws IOException {
+        do {
+            int r = channel.read(dst, pos);
+            if (r < 0) {
+                throw new EOFException();
+            }
+            pos += r;
+        } while (dst.remaining() > 0);
+    }
+
     /**
      * Fully write to the file. This will write all remaining bytes.
      *
@@ -373,4 +392,18 @@ public class FileUtils {
         } while (src.remaining() > 0);
     }
 
+    /**
+     * Fully write to the file at the given position, without changing the
+     * position of the channel. This will write all remaining bytes.
+     *
+     * @param channel the file channel
+     * @param src the byte buffer
+     * @param pos the position in the file
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer src, long pos) throws IOException {
+        do {
+            pos += channel.write(src, pos);
+        } while (src.remaining() > 0);
+    }
+
 }
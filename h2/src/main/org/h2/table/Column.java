@@ -81,6 +81,7 @@ public class Column {
     private boolean isComputed;
     private TableFilter computeTableFilter;
     private int selectivity;
+    private ColumnStatistics statistics;
     private SingleColumnResolver resolver;
     private String comment;
     private boolean primaryKey;
@@ -392,6 +393,16 @@ public class Column {
     }
 
     public String getCreateSQL() {
+        return getCreateSQL(false);
+    }
+
+    /**
+     * Get the SQL snippet to create this column.
+     *
+     * @param withStatistics whether to include the statistics (see ANALYZE)
+     * @return the SQL snippet
+     */
+    public String getCreateSQL(boolean withStatistics) {
         StringBuilder buff = new StringBuilder();
         if (name != null) {
             buff.append(Parser.quoteIdentifier(name)).append(' ');
@@ -437,6 +448,9 @@ public class Column {
         if (selectivity != 0) {
             buff.append(" SELECTIVITY ").append(selectivity);
         }
+        if (withStatistics && statistics != null) {
+            buff.append(' ').append(statistics.getSQL());
+        }
         if (comment != null) {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
@@ -525,6 +539,24 @@ public class Column {
         this.selectivity = selectivity;
     }
 
+    /**
+     * Get the statistics of this column (see ANALYZE).
+     *
+     * @return the statistics, or null if not analyzed
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Set the statistics of this column.
+     *
+     * @param statistics the statistics, or null
+     */
+    public void setStatistics(ColumnStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Add a check constraint expression to this column. An existing check
      * constraint constraint is added using AND.
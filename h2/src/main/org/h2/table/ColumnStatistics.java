@@ -0,0 +1,401 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import org.h2.engine.Session;
+import org.h2.expression.Comparison;
+import org.h2.index.IndexCondition;
+import org.h2.message.DbException;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
+import org.h2.value.CompareMode;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * The statistics of a column, as calculated by the ANALYZE statement from a
+ * sample of the rows: the number of null and distinct values, a list of the
+ * most common values, and an equi-depth histogram of the remaining values.
+ * Each histogram bucket contains about the same number of rows.
+ */
+public class ColumnStatistics {
+
+    /**
+     * The maximum number of most common values.
+     */
+    public static final int MAX_MOST_COMMON = 10;
+
+    /**
+     * The maximum number of histogram buckets.
+     */
+    public static final int MAX_BUCKETS = 16;
+
+    /**
+     * Values with a longer SQL representation are not stored.
+     */
+    private static final int MAX_VALUE_LENGTH = 100;
+
+    private final CompareMode compareMode;
+    private final int rowCount;
+    private final int nullCount;
+    private final int distinctCount;
+    private final Value[] mostCommonValues;
+    private final int[] mostCommonCounts;
+    private final Value[] histogram;
+    private final int mostCommonTotal;
+
+    public ColumnStatistics(CompareMode compareMode, int rowCount, int nullCount, int distinctCount,
+            Value[] mostCommonValues, int[] mostCommonCounts, Value[] histogram) {
+        this.compareMode = compareMode;
+        this.rowCount = rowCount;
+        this.nullCount = nullCount;
+        this.distinctCount = distinctCount;
+        this.mostCommonValues = mostCommonValues;
+        this.mostCommonCounts = mostCommonCounts;
+        this.histogram = histogram;
+        int total = 0;
+        for (int c : mostCommonCounts) {
+            total += c;
+        }
+        mostCommonTotal = total;
+    }
+
+    /**
+     * Calculate the statistics for the given sample.
+     *
+     * @param compareMode the compare mode
+     * @param sample the sample values (may include NULL)
+     * @return the statistics
+     */
+    public static ColumnStatistics create(final CompareMode compareMode, ArrayList<Value> sample) {
+        ArrayList<Value> list = New.arrayList();
+        boolean storeValues = true;
+        for (Value v : sample) {
+            if (v != ValueNull.INSTANCE) {
+                list.add(v);
+                if (storeValues && v.getPrecision() > MAX_VALUE_LENGTH) {
+                    storeValues = false;
+                }
+            }
+        }
+        int nullCount = sample.size() - list.size();
+        Collections.sort(list, new Comparator<Value>() {
+            public int compare(Value a, Value b) {
+                return a.compareTo(b, compareMode);
+            }
+        });
+        // find the distinct values, and how often each value occurs
+        ArrayList<Value> distinct = New.arrayList();
+        ArrayList<Integer> counts = New.arrayList();
+        for (int i = 0, size = list.size(); i < size;) {
+            Value v = list.get(i);
+            int j = i + 1;
+            while (j < size && list.get(j).compareTo(v, compareMode) == 0) {
+                j++;
+            }
+            distinct.add(v);
+            counts.add(j - i);
+            i = j;
+        }
+        int distinctCount = distinct.size();
+        if (!storeValues) {
+            return new ColumnStatistics(compareMode, sample.size(), nullCount, distinctCount,
+                    new Value[0], new int[0], new Value[0]);
+        }
+        // the most common values occur more often than the average value
+        ArrayList<Integer> common = New.arrayList();
+        double average = (double) list.size() / Math.max(1, distinctCount);
+        for (int i = 0; i < distinctCount; i++) {
+            int c = counts.get(i);
+            if (c > 1 && c > average * 1.25) {
+                common.add(i);
+            }
+        }
+        final ArrayList<Integer> countList = counts;
+        Collections.sort(common, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return countList.get(b) - countList.get(a);
+            }
+        });
+        int commonCount = Math.min(MAX_MOST_COMMON, common.size());
+        Value[] mostCommonValues = new Value[commonCount];
+        int[] mostCommonCounts = new int[commonCount];
+        boolean[] isCommon = new boolean[distinctCount];
+        for (int i = 0; i < commonCount; i++) {
+            int x = common.get(i);
+            mostCommonValues[i] = distinct.get(x);
+            mostCommonCounts[i] = counts.get(x);
+            isCommon[x] = true;
+        }
+        // the histogram contains the remaining values
+        ArrayList<Value> rest = New.arrayList();
+        for (int i = 0; i < distinctCount; i++) {
+            if (!isCommon[i]) {
+                Value v = distinct.get(i);
+                for (int j = counts.get(i); j > 0; j--) {
+                    rest.add(v);
+                }
+            }
+        }
+        Value[] histogram;
+        if (rest.size() < 2) {
+            histogram = new Value[0];
+        } else {
+            int buckets = Math.min(MAX_BUCKETS, rest.size() - 1);
+            histogram = new Value[buckets + 1];
+            for (int i = 0; i <= buckets; i++) {
+                histogram[i] = rest.get((int) ((long) i * (rest.size() - 1) / buckets));
+            }
+        }
+        return new ColumnStatistics(compareMode, sample.size(), nullCount, distinctCount,
+                mostCommonValues, mostCommonCounts, histogram);
+    }
+
+    /**
+     * Estimate which fraction of the rows matches the equality conditions of
+     * the given column (column = value, or column IN(..)). If the values are
+     * not known (for example in a join or if a parameter is used), the
+     * average fraction for a non-null value is returned.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param column the column
+     * @return the estimated fraction (0 to 1), or -1 if unknown
+     */
+    public double getEqualityFraction(Session session, TableFilter filter, Column column) {
+        if (rowCount == 0) {
+            return -1;
+        }
+        double fraction = -1;
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            if (condition.getColumn() != column || !condition.isEvaluatable()) {
+                continue;
+            }
+            double f;
+            switch (condition.getCompareType()) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Value v = condition.isConstant() ? getConstant(session, condition, column) : null;
+                if (v == null) {
+                    f = getAverageFraction();
+                } else if (v == ValueNull.INSTANCE) {
+                    f = condition.getCompareType() == Comparison.EQUAL ? 0 : (double) nullCount / rowCount;
+                } else {
+                    f = getFraction(v);
+                }
+                break;
+            }
+            case Comparison.IN_LIST:
+                if (condition.isConstant()) {
+                    f = 0;
+                    for (Value v : condition.getCurrentValueList(session)) {
+                        if (v != ValueNull.INSTANCE) {
+                            f += getFraction(v);
+                        }
+                    }
+                } else {
+                    f = getAverageFraction() * condition.getExpressionCount();
+                }
+                break;
+            default:
+                continue;
+            }
+            fraction = fraction < 0 ? f : Math.min(fraction, f);
+        }
+        return fraction < 0 ? -1 : Math.min(1, fraction);
+    }
+
+    /**
+     * Estimate which fraction of the rows matches the range conditions of the
+     * given column (column &gt; value and so on). This is only possible if
+     * the values are constants.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param column the column
+     * @return the estimated fraction (0 to 1), or -1 if unknown
+     */
+    public double getRangeFraction(Session session, TableFilter filter, Column column) {
+        if (rowCount == 0 || histogram.length == 0 && mostCommonValues.length == 0) {
+            return -1;
+        }
+        Value min = null, max = null;
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            if (condition.getColumn() != column || !condition.isEvaluatable() || !condition.isConstant()) {
+                continue;
+            }
+            int type = condition.getCompareType();
+            if (type == Comparison.EQUAL || type == Comparison.EQUAL_NULL_SAFE
+                    || type == Comparison.IN_LIST || type == Comparison.IN_QUERY) {
+                continue;
+            }
+            Value v = getConstant(session, condition, column);
+            if (v == null || v == ValueNull.INSTANCE) {
+                return -1;
+            }
+            if (condition.isStart()) {
+                min = min == null || v.compareTo(min, compareMode) > 0 ? v : min;
+            }
+            if (condition.isEnd()) {
+                max = max == null || v.compareTo(max, compareMode) < 0 ? v : max;
+            }
+        }
+        if (min == null && max == null) {
+            return -1;
+        }
+        long common = 0;
+        for (int i = 0; i < mostCommonValues.length; i++) {
+            Value v = mostCommonValues[i];
+            if ((min == null || v.compareTo(min, compareMode) >= 0) &&
+                    (max == null || v.compareTo(max, compareMode) <= 0)) {
+                common += mostCommonCounts[i];
+            }
+        }
+        double f = (double) common / rowCount;
+        if (histogram.length > 0) {
+            double from = min == null ? 0 : getPosition(min);
+            double to = max == null ? 1 : getPosition(max);
+            f += Math.max(0, to - from) * getRestFraction();
+        }
+        return Math.min(1, f);
+    }
+
+    private static Value getConstant(Session session, IndexCondition condition, Column column) {
+        try {
+            return column.convert(condition.getCurrentValue(session));
+        } catch (DbException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the fraction of rows that are not null and not one of the most
+     * common values.
+     */
+    private double getRestFraction() {
+        return (double) (rowCount - nullCount - mostCommonTotal) / rowCount;
+    }
+
+    private double getAverageFraction() {
+        return (double) (rowCount - nullCount) / rowCount / Math.max(1, distinctCount);
+    }
+
+    private double getFraction(Value v) {
+        for (int i = 0; i < mostCommonValues.length; i++) {
+            if (v.compareTo(mostCommonValues[i], compareMode) == 0) {
+                return (double) mostCommonCounts[i] / rowCount;
+            }
+        }
+        int restDistinct = distinctCount - mostCommonValues.length;
+        double rest = getRestFraction();
+        if (restDistinct <= 0 || rest <= 0) {
+            // the value was not in the sample
+            return 1.0 / rowCount;
+        }
+        return rest / restDistinct;
+    }
+
+    /**
+     * Get the estimated position of a value within the histogram.
+     *
+     * @param v the value
+     * @return the position (0 to 1)
+     */
+    private double getPosition(Value v) {
+        int buckets = histogram.length - 1;
+        if (v.compareTo(histogram[0], compareMode) <= 0) {
+            return 0;
+        } else if (v.compareTo(histogram[buckets], compareMode) >= 0) {
+            return 1;
+        }
+        int i = 0;
+        while (v.compareTo(histogram[i + 1], compareMode) >= 0) {
+            i++;
+        }
+        double within = 0.5;
+        if (isNumeric(v.getType())) {
+            double low = histogram[i].getDouble(), high = histogram[i + 1].getDouble();
+            if (high > low) {
+                within = (v.getDouble() - low) / (high - low);
+            }
+        }
+        return (i + within) / buckets;
+    }
+
+    private static boolean isNumeric(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DECIMAL:
+        case Value.FLOAT:
+        case Value.DOUBLE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Get the SQL snippet that is used to persist the statistics.
+     *
+     * @return the SQL snippet
+     */
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder("STATISTICS(");
+        buff.append(rowCount).append(", ").append(nullCount).append(", ").append(distinctCount);
+        buff.append(", (").append(getMostCommonValuesSQL()).append("), (");
+        buff.append(getHistogramSQL()).append("))");
+        return buff.toString();
+    }
+
+    /**
+     * Get the list of most common values and their counts, in the form
+     * value, count, value, count.
+     *
+     * @return the list
+     */
+    public String getMostCommonValuesSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        for (int i = 0; i < mostCommonValues.length; i++) {
+            buff.appendExceptFirst(", ");
+            buff.append(mostCommonValues[i].getSQL()).append(", ").append(mostCommonCounts[i]);
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the list of histogram bucket boundaries.
+     *
+     * @return the list
+     */
+    public String getHistogramSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        for (Value v : histogram) {
+            buff.appendExceptFirst(", ");
+            buff.append(v.getSQL());
+        }
+        return buff.toString();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    public int getDistinctCount() {
+        return distinctCount;
+    }
+
+}
@@ -26,6 +26,7 @@ import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.DbObject;
 import org.h2.engine.FunctionAlias;
+import org.h2.engine.QueryStatisticsData;
 import org.h2.engine.Right;
 import org.h2.engine.Role;
 import org.h2.engine.Session;
@@ -102,7 +103,9 @@ public class MetaTable extends Table {
     private static final int SESSIONS = 25;
     private static final int LOCKS = 26;
     private static final int SESSION_STATE = 27;
-    private static final int META_TABLE_TYPE_COUNT = SESSION_STATE + 1;
+    private static final int COLUMN_STATISTICS = 28;
+    private static final int QUERY_STATISTICS = 29;
+    private static final int META_TABLE_TYPE_COUNT = QUERY_STATISTICS + 1;
 
     private final int type;
     private final int indexColumn;
@@ -508,6 +511,41 @@ public class MetaTable extends Table {
             );
             break;
         }
+        case COLUMN_STATISTICS: {
+            setObjectName("COLUMN_STATISTICS");
+            cols = createColumns(
+                    "TABLE_CATALOG",
+                    "TABLE_SCHEMA",
+                    "TABLE_NAME",
+                    "COLUMN_NAME",
+                    "SAMPLE_ROWS INT",
+                    "NULL_COUNT INT",
+                    "DISTINCT_COUNT INT",
+                    "MOST_COMMON_VALUES",
+                    "HISTOGRAM_BOUNDS"
+            );
+            indexColumnName = "TABLE_NAME";
+            break;
+        }
+        case QUERY_STATISTICS: {
+            setObjectName("QUERY_STATISTICS");
+            cols = createColumns(
+                    "SQL_STATEMENT",
+                    "EXECUTION_COUNT INT",
+                    "MIN_EXECUTION_TIME DOUBLE",
+                    "MAX_EXECUTION_TIME DOUBLE",
+                    "CUMULATIVE_EXECUTION_TIME DOUBLE",
+                    "AVERAGE_EXECUTION_TIME DOUBLE",
+                    "MEDIAN_EXECUTION_TIME DOUBLE",
+                    "P95_EXECUTION_TIME DOUBLE",
+                    "P99_EXECUTION_TIME DOUBLE",
+                    "CUMULATIVE_ROW_COUNT BIGINT",
+                    "CUMULATIVE_ROWS_READ BIGINT",
+                    "CUMULATIVE_PAGE_READS BIGINT",
+                    "CUMULATIVE_LOCK_WAIT_TIME DOUBLE"
+            );
+            break;
+        }
         default:
             throw DbException.throwInternalError("type="+type);
         }
@@ -1596,6 +1634,14 @@ public class MetaTable extends Table {
                         buff.toString()
                 );
             }
+            if (session.isLazyQueryExecution()) {
+                add(rows,
+                        // KEY
+                        "LAZY_QUERY_EXECUTION",
+                        // SQL
+                        "SET LAZY_QUERY_EXECUTION TRUE"
+                );
+            }
             String schema = session.getCurrentSchemaName();
             if (schema != null) {
                 add(rows,
@@ -1607,12 +1653,90 @@ public class MetaTable extends Table {
             }
             break;
         }
+        case COLUMN_STATISTICS: {
+            for (Table table : getAllTables(session)) {
+                String tableName = identifier(table.getName());
+                if (!checkIndex(session, tableName, indexFrom, indexTo)) {
+                    continue;
+                }
+                if (hideTable(table, session)) {
+                    continue;
+                }
+                for (Column c : table.getColumns()) {
+                    ColumnStatistics statistics = c.getStatistics();
+                    if (statistics == null) {
+                        continue;
+                    }
+                    add(rows,
+                            // TABLE_CATALOG
+                            catalog,
+                            // TABLE_SCHEMA
+                            identifier(table.getSchema().getName()),
+                            // TABLE_NAME
+                            tableName,
+                            // COLUMN_NAME
+                            identifier(c.getName()),
+                            // SAMPLE_ROWS
+                            "" + statistics.getRowCount(),
+                            // NULL_COUNT
+                            "" + statistics.getNullCount(),
+                            // DISTINCT_COUNT
+                            "" + statistics.getDistinctCount(),
+                            // MOST_COMMON_VALUES
+                            statistics.getMostCommonValuesSQL(),
+                            // HISTOGRAM_BOUNDS
+                            statistics.getHistogramSQL()
+                    );
+                }
+            }
+            break;
+        }
+        case QUERY_STATISTICS: {
+            QueryStatisticsData statistics = database.getQueryStatisticsData();
+            if (admin && statistics != null) {
+                for (QueryStatisticsData.QueryEntry e : statistics.getQueries()) {
+                    add(rows,
+                            // SQL_STATEMENT
+                            e.sqlStatement,
+                            // EXECUTION_COUNT
+                            "" + e.count,
+                            // MIN_EXECUTION_TIME
+                            "" + nanosToMillis(e.executionTimeMinNanos),
+                            // MAX_EXECUTION_TIME
+                            "" + nanosToMillis(e.executionTimeMaxNanos),
+                            // CUMULATIVE_EXECUTION_TIME
+                            "" + nanosToMillis(e.executionTimeCumulativeNanos),
+                            // AVERAGE_EXECUTION_TIME
+                            "" + nanosToMillis(e.executionTimeCumulativeNanos) / e.count,
+                            // MEDIAN_EXECUTION_TIME
+                            "" + nanosToMillis(e.getExecutionTimePercentileNanos(50)),
+                            // P95_EXECUTION_TIME
+                            "" + nanosToMillis(e.getExecutionTimePercentileNanos(95)),
+                            // P99_EXECUTION_TIME
+                            "" + nanosToMillis(e.getExecutionTimePercentileNanos(99)),
+                            // CUMULATIVE_ROW_COUNT
+                            "" + e.rowCountCumulative,
+                            // CUMULATIVE_ROWS_READ
+                            "" + e.rowsReadCumulative,
+                            // CUMULATIVE_PAGE_READS
+                            "" + e.pageReadsCumulative,
+                            // CUMULATIVE_LOCK_WAIT_TIME
+                            "" + nanosToMillis(e.lockWaitCumulativeNanos)
+                    );
+                }
+            }
+            break;
+        }
         default:
             DbException.throwInternalError("type="+type);
         }
         return rows;
     }
 
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1000000d;
+    }
+
     private static int getRefAction(int action) {
         switch(action) {
         case ConstraintReferential.CASCADE:
@@ -1777,6 +1901,7 @@ public class MetaTable extends Table {
         case SESSIONS:
         case LOCKS:
         case SESSION_STATE:
+        case QUERY_STATISTICS:
             return Long.MAX_VALUE;
         }
         return database.getModificationDataId();
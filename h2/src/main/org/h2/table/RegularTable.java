@@ -42,6 +42,7 @@ import org.h2.util.New;
 import org.h2.value.CompareMode;
 import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueNull;
 
 /**
  * Most tables are an instance of this class. For this table, the data is stored
@@ -153,6 +154,116 @@ public class RegularTable extends TableBase {
         analyzeIfRequired(session);
     }
 
+    public void addRows(Session session, ArrayList<Row> rows) {
+        int size = rows.size();
+        if (size < 2) {
+            super.addRows(session, rows);
+            return;
+        }
+        lastModificationId = database.getNextModificationDataId();
+        if (database.isMultiVersion()) {
+            for (Row row : rows) {
+                row.setSessionId(session.getId());
+            }
+        }
+        // if the rows are appended, the data pages can be filled completely
+        boolean append = mainIndex != null && !mainIndex.isSortedInsertMode() && isAppend(rows);
+        if (append) {
+            mainIndex.setSortedInsertMode(true);
+        }
+        int i = 0, j = 0;
+        ArrayList<Row> list = rows;
+        try {
+            for (int indexCount = indexes.size(); i < indexCount; i++) {
+                Index index = indexes.get(i);
+                list = rows;
+                j = 0;
+                if (i > 0 && !(index instanceof PageDelegateIndex)) {
+                    // adding the rows in index order is faster,
+                    // as the same index pages are used again
+                    list = New.arrayList(rows);
+                    final Index idx = index;
+                    Collections.sort(list, new Comparator<Row>() {
+                        public int compare(Row r1, Row r2) {
+                            return idx.compareRows(r1, r2);
+                        }
+                    });
+                }
+                for (; j < size; j++) {
+                    index.add(session, list.get(j));
+                }
+                checkRowCount(session, index, size);
+            }
+            rowCount += size;
+        } catch (Throwable e) {
+            try {
+                Index index = indexes.get(i);
+                while (--j >= 0) {
+                    index.remove(session, list.get(j));
+                }
+                while (--i >= 0) {
+                    index = indexes.get(i);
+                    for (Row row : rows) {
+                        index.remove(session, row);
+                    }
+                    checkRowCount(session, index, 0);
+                }
+            } catch (DbException e2) {
+                trace.error(e2, "could not undo operation");
+                throw e2;
+            }
+            DbException de = DbException.convert(e);
+            if (de.getErrorCode() == ErrorCode.DUPLICATE_KEY_1) {
+                for (Row row : rows) {
+                    for (int k = 0; k < indexes.size(); k++) {
+                        Index index = indexes.get(k);
+                        if (index.getIndexType().isUnique() && index instanceof MultiVersionIndex) {
+                            MultiVersionIndex mv = (MultiVersionIndex) index;
+                            if (mv.isUncommittedFromOtherSession(session, row)) {
+                                throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, index.getName());
+                            }
+                        }
+                    }
+                }
+            }
+            throw de;
+        } finally {
+            if (append) {
+                mainIndex.setSortedInsertMode(false);
+            }
+        }
+        changesSinceAnalyze += size - 1;
+        analyzeIfRequired(session);
+    }
+
+    /**
+     * Check if the rows are added at the end of the data index, that means if
+     * the keys are generated, or if the rows are sorted by the primary key.
+     *
+     * @param rows the rows
+     * @return true if the rows are appended
+     */
+    private boolean isAppend(ArrayList<Row> rows) {
+        int column = mainIndex.getMainIndexColumn();
+        if (column < 0) {
+            // generated keys are always ascending
+            return true;
+        }
+        long last = Long.MIN_VALUE;
+        for (Row row : rows) {
+            Value v = row.getValue(column);
+            if (v == null || v == ValueNull.INSTANCE) {
+                return false;
+            }
+            long key = v.getLong();
+            if (key <= last) {
+                return false;
+            }
+            last = key;
+        }
+        return true;
+    }
+
     public void commit(short operation, Row row) {
         lastModificationId = database.getNextModificationDataId();
         for (int i = 0, size = indexes.size(); i < size; i++) {
@@ -517,7 +628,9 @@ public class RegularTable extends TableBase {
                     sleep = 1;
                 }
                 waitForLock = true;
+                long start = System.nanoTime();
                 database.wait(sleep);
+                session.addLockWaitTime(System.nanoTime() - start);
             } catch (InterruptedException e) {
                 // ignore
             }
@@ -20,6 +20,7 @@ import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
+import org.h2.index.BaseIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
@@ -188,6 +189,28 @@ public abstract class Table extends SchemaObjectBase {
      */
     public abstract void addRow(Session session, Row row);
 
+    /**
+     * Add a number of rows to the table and all indexes. Either all rows are
+     * added, or (if adding one of the rows fails) none of them.
+     *
+     * @param session the session
+     * @param rows the rows
+     * @throws DbException if a constraint was violated
+     */
+    public void addRows(Session session, ArrayList<Row> rows) {
+        int i = 0;
+        try {
+            for (int size = rows.size(); i < size; i++) {
+                addRow(session, rows.get(i));
+            }
+        } catch (DbException e) {
+            while (--i >= 0) {
+                removeRow(session, rows.get(i));
+            }
+            throw e;
+        }
+    }
+
     /**
      * Commit an operation (when using multi-version concurrency).
      *
@@ -625,14 +648,27 @@ public abstract class Table extends SchemaObjectBase {
      * @return the plan item
      */
     public PlanItem getBestPlanItem(Session session, int[] masks) {
+        return getBestPlanItem(session, masks, null);
+    }
+
+    /**
+     * Get the best plan for the given search mask and the conditions of the
+     * table filter.
+     *
+     * @param session the session
+     * @param masks null means 'always false'
+     * @param filter the table filter (may be null)
+     * @return the plan item
+     */
+    public PlanItem getBestPlanItem(Session session, int[] masks, TableFilter filter) {
         PlanItem item = new PlanItem();
         item.setIndex(getScanIndex(session));
-        item.cost = item.getIndex().getCost(session, null);
+        item.cost = BaseIndex.getCost(item.getIndex(), session, null, filter);
         ArrayList<Index> indexes = getIndexes();
         if (indexes != null && masks != null) {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                double cost = index.getCost(session, masks);
+                double cost = BaseIndex.getCost(index, session, masks, filter);
                 if (cost < item.cost) {
                     item.cost = cost;
                     item.setIndex(index);
@@ -848,6 +884,27 @@ public abstract class Table extends SchemaObjectBase {
         return (constraints != null && constraints.size() > 0) || (triggers != null && triggers.size() > 0);
     }
 
+    /**
+     * Check if rows can be added in batches (using addRows). This is only
+     * possible if there are no triggers, and no constraints that need to be
+     * checked after a row is added (such as referential constraints).
+     *
+     * @return true if rows can be added in batches
+     */
+    public boolean canAddRows() {
+        if (triggers != null && triggers.size() > 0) {
+            return false;
+        }
+        if (constraints != null) {
+            for (int i = 0, size = constraints.size(); i < size; i++) {
+                if (!constraints.get(i).isBefore()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Fire all triggers that need to be called before a row is updated.
      *
@@ -40,6 +40,18 @@ public abstract class TableBase extends Table {
     }
 
     public String getCreateSQL() {
+        return getCreateSQL(false);
+    }
+
+    /**
+     * Get the SQL statement to create this table. The column statistics (see
+     * ANALYZE) are only included in the meta data of the database, not in
+     * scripts, so that older versions can still run the scripts.
+     *
+     * @param withStatistics whether to include the column statistics
+     * @return the SQL statement
+     */
+    public String getCreateSQL(boolean withStatistics) {
         StatementBuilder buff = new StatementBuilder("CREATE ");
         if (isTemporary()) {
             if (isGlobalTemporary()) {
@@ -64,7 +76,7 @@ public abstract class TableBase extends Table {
         buff.append("(\n    ");
         for (Column column : columns) {
             buff.appendExceptFirst(",\n    ");
-            buff.append(column.getCreateSQL());
+            buff.append(column.getCreateSQL(withStatistics));
         }
         buff.append("\n)");
         if (tableEngine != null) {
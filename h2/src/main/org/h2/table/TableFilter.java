@@ -17,6 +17,8 @@ import org.h2.expression.Comparison;
 import org.h2.expression.ConditionAndOr;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
+import org.h2.index.HashJoinIndex;
+import org.h2.index.BaseIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
 import org.h2.index.IndexCursor;
@@ -159,7 +161,7 @@ public class TableFilter implements ColumnResolver {
         if (indexConditions.size() == 0) {
             item = new PlanItem();
             item.setIndex(table.getScanIndex(s));
-            item.cost = item.getIndex().getCost(s, null);
+            item.cost = BaseIndex.getCost(item.getIndex(), s, null, this);
         } else {
             int len = table.getColumns().length;
             int[] masks = new int[len];
@@ -175,7 +177,15 @@ public class TableFilter implements ColumnResolver {
                     }
                 }
             }
-            item = table.getBestPlanItem(s, masks);
+            item = table.getBestPlanItem(s, masks, this);
+            if (level > 1 && masks != null) {
+                // the table is scanned once for each row of the outer
+                // tables, so building a hash table may be cheaper
+                PlanItem hashJoin = getHashJoinPlanItem(s, masks);
+                if (hashJoin != null && hashJoin.cost < item.cost) {
+                    item = hashJoin;
+                }
+            }
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
@@ -198,6 +208,34 @@ public class TableFilter implements ColumnResolver {
         return item;
     }
 
+    private PlanItem getHashJoinPlanItem(Session s, int[] masks) {
+        if (!s.getDatabase().getSettings().hashJoin || !(table instanceof RegularTable)) {
+            return null;
+        }
+        if (table.getRowCountApproximation() > s.getDatabase().getMaxMemoryRows()) {
+            // the hash table would not fit in memory
+            return null;
+        }
+        ArrayList<Column> keys = New.arrayList();
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getCompareType() == Comparison.EQUAL && condition.isEvaluatable()) {
+                Column column = condition.getColumn();
+                if (column.getColumnId() >= 0 && !keys.contains(column) &&
+                        HashJoinIndex.isHashable(column, condition.getExpressionType())) {
+                    keys.add(column);
+                }
+            }
+        }
+        if (keys.size() == 0) {
+            return null;
+        }
+        IndexColumn[] cols = IndexColumn.wrap(keys.toArray(new Column[keys.size()]));
+        PlanItem item = new PlanItem();
+        item.setIndex(new HashJoinIndex(table, cols));
+        item.cost = BaseIndex.getCost(item.getIndex(), s, masks, this);
+        return item;
+    }
+
     private void setEvaluatable(TableFilter join) {
         if (session.getDatabase().getSettings().nestedJoins) {
             setEvaluatable(true);
@@ -288,6 +326,9 @@ public class TableFilter implements ColumnResolver {
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -296,6 +337,22 @@ public class TableFilter implements ColumnResolver {
         }
     }
 
+    /**
+     * Release the resources that were used by this filter and all joined
+     * filters while running the query.
+     */
+    public void endQuery() {
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
+        if (nestedJoin != null) {
+            nestedJoin.endQuery();
+        }
+        if (join != null) {
+            join.endQuery();
+        }
+    }
+
     /**
      * Reset to the current position.
      */
@@ -351,6 +408,7 @@ public class TableFilter implements ColumnResolver {
                     checkTimeout();
                 }
                 if (cursor.next()) {
+                    session.addRowRead();
                     currentSearchRow = cursor.getSearchRow();
                     current = null;
                     state = FOUND;
@@ -477,6 +535,15 @@ public class TableFilter implements ColumnResolver {
         indexConditions.add(condition);
     }
 
+    /**
+     * Get the index conditions of this filter.
+     *
+     * @return the list of index conditions
+     */
+    public ArrayList<IndexCondition> getIndexConditions() {
+        return indexConditions;
+    }
+
     /**
      * Add a filter condition.
      *
@@ -16,6 +16,7 @@ import org.h2.engine.User;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
+import org.h2.index.BaseIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
 import org.h2.index.ViewIndex;
@@ -199,9 +200,9 @@ public class TableView extends Table {
         return createException != null;
     }
 
-    public synchronized PlanItem getBestPlanItem(Session session, int[] masks) {
+    public synchronized PlanItem getBestPlanItem(Session session, int[] masks, TableFilter filter) {
         PlanItem item = new PlanItem();
-        item.cost = index.getCost(session, masks);
+        item.cost = BaseIndex.getCost(index, session, masks, filter);
         IntArray masksArray = new IntArray(masks == null ? Utils.EMPTY_INT_ARRAY : masks);
         SynchronizedVerifier.check(indexCache);
         ViewIndex i2 = indexCache.get(masksArray);
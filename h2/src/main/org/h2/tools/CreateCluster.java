@@ -6,16 +6,22 @@
  */
 package org.h2.tools;
 
-import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import org.h2.constant.ErrorCode;
 import org.h2.engine.Constants;
-import org.h2.store.fs.FileUtils;
-import org.h2.util.IOUtils;
 import org.h2.util.JdbcUtils;
+import org.h2.util.New;
+import org.h2.util.StatementBuilder;
+import org.h2.util.StringUtils;
 import org.h2.util.Tool;
 
 /**
@@ -26,6 +32,12 @@ import org.h2.util.Tool;
  */
 public class CreateCluster extends Tool {
 
+    /**
+     * The number of rows that are read with one statement, and inserted in
+     * one batch.
+     */
+    private static final int COPY_BATCH_SIZE = 1000;
+
     /**
      * Options are case sensitive. Supported options are:
      * <table>
@@ -101,7 +113,6 @@ public class CreateCluster extends Tool {
             String user, String password, String serverList) throws SQLException {
         Connection connSource = null, connTarget = null;
         Statement statSource = null, statTarget = null;
-        String scriptFile = "backup.sql";
         try {
             org.h2.Driver.load();
 
@@ -134,36 +145,35 @@ public class CreateCluster extends Tool {
             connSource = DriverManager.getConnection(urlSource + ";CLUSTER=''", user, password);
             statSource = connSource.createStatement();
 
+            // delete the target database
+            connTarget = DriverManager.getConnection(urlTarget + ";CLUSTER=''", user, password);
+            statTarget = connTarget.createStatement();
+            statTarget.execute("DROP ALL OBJECTS DELETE FILES");
+            connTarget.close();
+
+            // copy while the source database is still in use:
+            // the data that is changed in the meantime is copied again later
+            connTarget = DriverManager.getConnection(urlTarget, user, password);
+            statTarget = connTarget.createStatement();
+            String schema = getSchema(statSource);
+            HashMap<String, Long> modified = getLastModifications(statSource);
+            ArrayList<String> failed = copy(connSource, connTarget, modified.keySet());
+
             // enable the exclusive mode and close other connections,
-            // so that data can't change while restoring the second database
+            // so that data can't change while copying the changes
             statSource.execute("SET EXCLUSIVE 2");
 
             try {
-
-                // backup
-                Script script = new Script();
-                script.setOut(out);
-                OutputStream scriptOut = null;
-                try {
-                    scriptOut = FileUtils.newOutputStream(scriptFile, false);
-                    Script.process(connSource, scriptOut);
-                } finally {
-                    IOUtils.closeSilently(scriptOut);
+                if (!schema.equals(getSchema(statSource)) ||
+                        !copyChanges(connSource, connTarget, modified, failed)) {
+                    // copy everything again
+                    statTarget.execute("DROP ALL OBJECTS");
+                    failed = copy(connSource, connTarget, getLastModifications(statSource).keySet());
+                    if (failed.size() > 0) {
+                        throw new SQLException("Copying the table " + failed.get(0) + " failed");
+                    }
                 }
 
-                // delete the target database and then restore
-                connTarget = DriverManager.getConnection(urlTarget + ";CLUSTER=''", user, password);
-                statTarget = connTarget.createStatement();
-                statTarget.execute("DROP ALL OBJECTS DELETE FILES");
-                connTarget.close();
-
-                RunScript runScript = new RunScript();
-                runScript.setOut(out);
-                runScript.process(urlTarget, user, password, scriptFile, null, false);
-
-                connTarget = DriverManager.getConnection(urlTarget, user, password);
-                statTarget = connTarget.createStatement();
-
                 // set the cluster to the serverList on both databases
                 statSource.executeUpdate("SET CLUSTER '" + serverList + "'");
                 statTarget.executeUpdate("SET CLUSTER '" + serverList + "'");
@@ -173,7 +183,6 @@ public class CreateCluster extends Tool {
                 statSource.execute("SET EXCLUSIVE FALSE");
             }
         } finally {
-            FileUtils.delete(scriptFile);
             JdbcUtils.closeSilently(statSource);
             JdbcUtils.closeSilently(statTarget);
             JdbcUtils.closeSilently(connSource);
@@ -181,4 +190,237 @@ public class CreateCluster extends Tool {
         }
     }
 
+    /**
+     * Copy the schema and the data from the source to the target database.
+     * The schema is copied first (the triggers last). Then the rows of each
+     * table are copied in blocks ordered by the row id, so that each statement
+     * only locks one table of the source database for a short time, and
+     * applications can still write to the source database. Therefore the copy
+     * is not consistent: a table may fail to copy (for example because a
+     * unique key was moved from one row to another in the meantime), in which
+     * case it is copied again later, as are all tables that were changed. The
+     * target does not use the transaction log and the undo log while copying,
+     * because the copy is discarded anyway if it fails.
+     *
+     * @param connSource the connection to the source database
+     * @param connTarget the connection to the target database
+     * @param tables the quoted names of the tables to copy
+     * @return the quoted names of the tables that could not be copied
+     */
+    private static ArrayList<String> copy(Connection connSource, Connection connTarget,
+            Collection<String> tables) throws SQLException {
+        Statement statSource = connSource.createStatement();
+        Statement statTarget = connTarget.createStatement();
+        ArrayList<String> failed = New.arrayList();
+        try {
+            ResultSet rs = statTarget.executeQuery(
+                    "SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'LOG'");
+            String logMode = rs.next() ? rs.getString(1) : "2";
+            rs.close();
+            statTarget.execute("SET LOG 0");
+            statTarget.execute("SET UNDO_LOG 0");
+            ArrayList<String> triggers = New.arrayList();
+            rs = statSource.executeQuery("SCRIPT NODATA");
+            while (rs.next()) {
+                String sql = rs.getString(1);
+                if (sql.startsWith("--")) {
+                    continue;
+                } else if (sql.startsWith("CREATE FORCE TRIGGER ")) {
+                    // triggers must not run when the rows are inserted
+                    triggers.add(sql);
+                } else {
+                    statTarget.execute(sql);
+                }
+            }
+            rs.close();
+            // the rows are copied in any order
+            statTarget.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            for (String table : tables) {
+                try {
+                    copyRows(connSource, connTarget, table);
+                } catch (SQLException e) {
+                    failed.add(table);
+                }
+            }
+            statTarget.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            for (String sql : triggers) {
+                statTarget.execute(sql);
+            }
+            statTarget.execute("SET UNDO_LOG 1");
+            statTarget.execute("SET LOG " + logMode);
+            statTarget.execute("CHECKPOINT SYNC");
+        } finally {
+            statSource.close();
+            statTarget.close();
+        }
+        return failed;
+    }
+
+    /**
+     * Get the script of the source database without data. Comments, the
+     * current values of sequences, and the selectivity of columns (which is
+     * updated automatically after many changes) are removed, so that the
+     * script only changes if the schema is changed.
+     *
+     * @param statSource the statement of the source database
+     * @return the script
+     */
+    private static String getSchema(Statement statSource) throws SQLException {
+        StringBuilder buff = new StringBuilder();
+        ResultSet rs = statSource.executeQuery("SCRIPT NODATA");
+        while (rs.next()) {
+            String sql = rs.getString(1);
+            if (sql.startsWith("--")) {
+                continue;
+            }
+            if (sql.startsWith("CREATE SEQUENCE ")) {
+                sql = sql.replaceAll(" START WITH -?[0-9]+", "");
+            }
+            sql = sql.replaceAll(" SELECTIVITY [0-9]+", "");
+            buff.append(sql).append('\n');
+        }
+        rs.close();
+        return buff.toString();
+    }
+
+    /**
+     * Get the data modification id of each table of the source database.
+     *
+     * @param statSource the statement of the source database
+     * @return a map of the quoted table name and the modification id
+     */
+    private static HashMap<String, Long> getLastModifications(Statement statSource) throws SQLException {
+        HashMap<String, Long> map = New.hashMap();
+        ResultSet rs = statSource.executeQuery(
+                "SELECT TABLE_SCHEMA, TABLE_NAME, LAST_MODIFICATION FROM INFORMATION_SCHEMA.TABLES " +
+                "WHERE TABLE_TYPE = 'TABLE' AND STORAGE_TYPE NOT LIKE '%TEMPORARY'");
+        while (rs.next()) {
+            String table = StringUtils.quoteIdentifier(rs.getString(1)) + "." +
+                    StringUtils.quoteIdentifier(rs.getString(2));
+            map.put(table, rs.getLong(3));
+        }
+        rs.close();
+        return map;
+    }
+
+    /**
+     * Copy the data that was changed in the source database since the copy
+     * was started: the rows of the tables that were modified in the meantime
+     * or could not be copied, and the values of all sequences. The source
+     * database must be in exclusive mode. Rows of tables with triggers are not
+     * copied, because the triggers would run again on the target.
+     * <p>
+     * All rows of such a table are copied again, as the changed rows are not
+     * known. So the time the source database is in exclusive mode depends on
+     * the size of the tables that are changed while the database is copied.
+     *
+     * @param connSource the connection to the source database
+     * @param connTarget the connection to the target database
+     * @param modified the data modification ids when the copy was started
+     * @param failed the tables that could not be copied
+     * @return false if the database needs to be copied again
+     */
+    private static boolean copyChanges(Connection connSource, Connection connTarget,
+            HashMap<String, Long> modified, ArrayList<String> failed) throws SQLException {
+        Statement statSource = connSource.createStatement();
+        Statement statTarget = connTarget.createStatement();
+        try {
+            ArrayList<String> changed = New.arrayList();
+            for (Map.Entry<String, Long> e : getLastModifications(statSource).entrySet()) {
+                if (!e.getValue().equals(modified.get(e.getKey())) || failed.contains(e.getKey())) {
+                    changed.add(e.getKey());
+                }
+            }
+            ResultSet rs = statSource.executeQuery(
+                    "SELECT TABLE_SCHEMA, TABLE_NAME FROM INFORMATION_SCHEMA.TRIGGERS");
+            while (rs.next()) {
+                String table = StringUtils.quoteIdentifier(rs.getString(1)) + "." +
+                        StringUtils.quoteIdentifier(rs.getString(2));
+                if (changed.contains(table)) {
+                    return false;
+                }
+            }
+            rs.close();
+            if (changed.size() > 0) {
+                // the rows are copied in any order,
+                // and deleting must not cascade
+                statTarget.execute("SET REFERENTIAL_INTEGRITY FALSE");
+                try {
+                    for (String table : changed) {
+                        statTarget.execute("DELETE FROM " + table);
+                        copyRows(connSource, connTarget, table);
+                    }
+                } finally {
+                    statTarget.execute("SET REFERENTIAL_INTEGRITY TRUE");
+                }
+            }
+            rs = statSource.executeQuery(
+                    "SELECT SEQUENCE_SCHEMA, SEQUENCE_NAME, CURRENT_VALUE + INCREMENT " +
+                    "FROM INFORMATION_SCHEMA.SEQUENCES");
+            while (rs.next()) {
+                String sequence = StringUtils.quoteIdentifier(rs.getString(1)) + "." +
+                        StringUtils.quoteIdentifier(rs.getString(2));
+                statTarget.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + rs.getLong(3));
+            }
+            rs.close();
+            return true;
+        } finally {
+            statSource.close();
+            statTarget.close();
+        }
+    }
+
+    /**
+     * Copy the rows of a table from the source to the target database. The
+     * rows are read in blocks ordered by the row id, each with a separate
+     * statement.
+     *
+     * @param connSource the connection to the source database
+     * @param connTarget the connection to the target database
+     * @param table the quoted table name
+     */
+    private static void copyRows(Connection connSource, Connection connTarget, String table)
+            throws SQLException {
+        PreparedStatement prepSource = connSource.prepareStatement("SELECT _ROWID_, * FROM " + table +
+                " WHERE _ROWID_ > ? ORDER BY _ROWID_ LIMIT " + COPY_BATCH_SIZE);
+        PreparedStatement prep = null;
+        try {
+            long last = Long.MIN_VALUE;
+            while (true) {
+                prepSource.setLong(1, last);
+                ResultSet rs = prepSource.executeQuery();
+                int columnCount = rs.getMetaData().getColumnCount() - 1;
+                if (prep == null) {
+                    StatementBuilder buff = new StatementBuilder("INSERT INTO ");
+                    buff.append(table).append(" VALUES(");
+                    for (int i = 0; i < columnCount; i++) {
+                        buff.appendExceptFirst(", ");
+                        buff.append('?');
+                    }
+                    prep = connTarget.prepareStatement(buff.append(')').toString());
+                }
+                int rowCount = 0;
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    for (int i = 1; i <= columnCount; i++) {
+                        prep.setObject(i, rs.getObject(i + 1));
+                    }
+                    prep.addBatch();
+                    rowCount++;
+                }
+                rs.close();
+                if (rowCount == 0) {
+                    break;
+                }
+                prep.executeBatch();
+                if (rowCount < COPY_BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            JdbcUtils.closeSilently(prep);
+            JdbcUtils.closeSilently(prepSource);
+        }
+    }
+
 }
@@ -501,7 +501,8 @@ public class Recover extends Tool implements DataHandler {
                 return;
             }
             boolean last = (type & Page.FLAG_LAST) != 0;
-            type &= ~Page.FLAG_LAST;
+            boolean prefixed = (type & Page.FLAG_PREFIX) != 0;
+            type &= ~(Page.FLAG_LAST | Page.FLAG_PREFIX);
             if (!PageStore.checksumTest(s.getBytes(), (int) page, pageSize)) {
                 writeDataError(writer, "checksum mismatch type: " + type, s.getBytes());
             }
@@ -542,8 +543,9 @@ public class Recover extends Tool implements DataHandler {
                 int parentPageId = s.readInt();
                 setStorage(s.readVarInt());
                 int entries = s.readShortInt();
+                String prefix = prefixed ? s.readString() : null;
                 writer.println("-- page " + page + ": b-tree leaf " + (last ? "(last) " : "") + "parent: " + parentPageId +
-                        " index: " + storageId + " entries: " + entries);
+                        " index: " + storageId + " entries: " + entries + (prefixed ? " prefix: " + prefix : ""));
                 if (trace) {
                     dumpPageBtreeLeaf(writer, s, entries, !last);
                 }
@@ -556,7 +558,7 @@ public class Recover extends Tool implements DataHandler {
                 setStorage(s.readVarInt());
                 writer.println("-- page " + page + ": b-tree node " + (last ? "(last) " : "") +  "parent: " + parentPageId +
                         " index: " + storageId);
-                dumpPageBtreeNode(writer, s, page, !last);
+                dumpPageBtreeNode(writer, s, page, !last, prefixed);
                 break;
             // type 6
             case Page.TYPE_FREE_LIST:
@@ -618,7 +620,7 @@ public class Recover extends Tool implements DataHandler {
                 String typeName = "";
                 int type = data[0];
                 boolean last = (type & Page.FLAG_LAST) != 0;
-                type &= ~Page.FLAG_LAST;
+                type &= ~(Page.FLAG_LAST | Page.FLAG_PREFIX);
                 switch (type) {
                 case Page.TYPE_EMPTY:
                     typeName = "empty";
@@ -897,9 +899,10 @@ public class Recover extends Tool implements DataHandler {
         }
     }
 
-    private void dumpPageBtreeNode(PrintWriter writer, Data s, long pageId, boolean positionOnly) {
+    private void dumpPageBtreeNode(PrintWriter writer, Data s, long pageId, boolean positionOnly, boolean prefixed) {
         int rowCount = s.readInt();
         int entryCount = s.readShortInt();
+        String prefix = prefixed ? s.readString() : null;
         int[] children = new int[entryCount + 1];
         int[] offsets = new int[entryCount];
         children[entryCount] = s.readInt();
@@ -916,7 +919,7 @@ public class Recover extends Tool implements DataHandler {
         if (!trace) {
             return;
         }
-        writer.println("--   empty: " + empty);
+        writer.println("--   empty: " + empty + (prefixed ? " prefix: " + prefix : ""));
         for (int i = 0; i < entryCount; i++) {
             int off = offsets[i];
             s.setPos(off);
@@ -82,6 +82,10 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
      * <td>The port (default: 9092)</td></tr>
      * <tr><td>[-tcpSSL]</td>
      * <td>Use encrypted (SSL) connections</td></tr>
+     * <tr><td>[-tcpNio]</td>
+     * <td>Multiplex idle connections on a selector</td></tr>
+     * <tr><td>[-tcpNioThreads &lt;count&gt;]</td>
+     * <td>The number of worker threads (default: 64)</td></tr>
      * <tr><td>[-tcpPassword &lt;pwd&gt;]</td>
      * <td>The password for shutting down a TCP server</td></tr>
      * <tr><td>[-tcpShutdown "&lt;url&gt;"]</td>
@@ -148,6 +152,10 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
                     // no parameters
                 } else if ("-tcpSSL".equals(arg)) {
                     // no parameters
+                } else if ("-tcpNio".equals(arg)) {
+                    // no parameters
+                } else if ("-tcpNioThreads".equals(arg)) {
+                    i++;
                 } else if ("-tcpPort".equals(arg)) {
                     i++;
                 } else if ("-tcpPassword".equals(arg)) {
@@ -247,6 +255,10 @@ public class Server extends Tool implements Runnable, ShutdownHandler {
                     // no parameters
                 } else if ("-tcpSSL".equals(arg)) {
                     // no parameters
+                } else if ("-tcpNio".equals(arg)) {
+                    // no parameters
+                } else if ("-tcpNioThreads".equals(arg)) {
+                    i++;
                 } else if ("-tcpPort".equals(arg)) {
                     i++;
                 } else if ("-tcpPassword".equals(arg)) {
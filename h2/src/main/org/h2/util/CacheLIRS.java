@@ -0,0 +1,686 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import org.h2.constant.SysProperties;
+import org.h2.engine.Constants;
+import org.h2.message.DbException;
+
+/**
+ * A scan resistant cache that uses the LIRS replacement algorithm invented by
+ * Xiaodong Zhang and Song Jiang as described in
+ * http://www.cse.ohio-state.edu/~zhang/lirs-sigmetrics-02.html with a few
+ * smaller changes: An additional queue for non-resident entries is used, to
+ * prevent unbound memory usage. The maximum size of this queue is at most the
+ * size of the rest of the stack. About 3% of the mapped entries are cold.
+ * <p>
+ * Internally, the cache is split into a number of segments, and each segment
+ * is an individual LIRS cache that is synchronized on its own. Because of
+ * that, this cache is multi-threading safe, and lookups from different threads
+ * usually don't block each other. Operations that may evict changed objects
+ * (put, update, setMaxMemory) call back into the cache writer, so that the
+ * caller must already hold the lock of the cache writer in this case.
+ */
+public class CacheLIRS implements Cache {
+
+    static final String TYPE_NAME = "LIRS";
+
+    /**
+     * The number of segments (must be a power of 2).
+     */
+    private static final int SEGMENT_COUNT = 16;
+
+    /**
+     * The average memory used by one entry, in words. It is used to calculate
+     * the length of the map arrays. Non-resident entries use the map as well.
+     */
+    private static final int AVERAGE_MEMORY = Constants.DEFAULT_PAGE_SIZE / 8;
+
+    private final Segment[] segments;
+
+    /**
+     * The maximum memory, in words (4 bytes each).
+     */
+    private long maxMemory;
+
+    CacheLIRS(CacheWriter writer, int maxMemoryKb) {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(writer);
+        }
+        setMaxMemory(maxMemoryKb);
+        clear();
+    }
+
+    public void clear() {
+        for (Segment s : segments) {
+            s.clear();
+        }
+    }
+
+    public CacheObject find(int pos) {
+        int hash = getHash(pos);
+        return getSegment(hash).find(pos, hash);
+    }
+
+    public CacheObject get(int pos) {
+        int hash = getHash(pos);
+        return getSegment(hash).get(pos, hash);
+    }
+
+    public void put(CacheObject rec) {
+        int pos = rec.getPos();
+        int hash = getHash(pos);
+        getSegment(hash).put(pos, hash, rec);
+    }
+
+    public CacheObject update(int pos, CacheObject rec) {
+        int hash = getHash(pos);
+        return getSegment(hash).update(pos, hash, rec);
+    }
+
+    public boolean remove(int pos) {
+        int hash = getHash(pos);
+        return getSegment(hash).remove(pos, hash) != null;
+    }
+
+    public ArrayList<CacheObject> getAllChanged() {
+        ArrayList<CacheObject> list = New.arrayList();
+        for (Segment s : segments) {
+            s.addChanged(list);
+        }
+        return list;
+    }
+
+    public void setMaxMemory(int maxKb) {
+        maxMemory = Math.max(SEGMENT_COUNT, maxKb * 1024L / 4);
+        for (Segment s : segments) {
+            s.setMaxMemory(maxMemory / SEGMENT_COUNT);
+        }
+    }
+
+    public int getMaxMemory() {
+        return (int) (maxMemory * 4L / 1024);
+    }
+
+    public int getMemory() {
+        long x = 0;
+        for (Segment s : segments) {
+            x += s.getUsedMemory();
+        }
+        return (int) (x * 4L / 1024);
+    }
+
+    private Segment getSegment(int hash) {
+        return segments[(hash >>> 28) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * Get the hash code for the given key. The hash code is
+     * further enhanced to spread the values more evenly.
+     *
+     * @param key the key
+     * @return the hash code
+     */
+    static int getHash(int key) {
+        int hash = key;
+        // a supplemental secondary hash function
+        // to protect against hash codes that don't differ much
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = (hash >>> 16) ^ hash;
+        return hash;
+    }
+
+    /**
+     * A cache segment.
+     */
+    static class Segment {
+
+        private final CacheWriter writer;
+
+        /**
+         * The number of (hot, cold, and non-resident) entries in the map.
+         */
+        private int mapSize;
+
+        /**
+         * The size of the LIRS queue for resident cold entries.
+         */
+        private int queueSize;
+
+        /**
+         * The size of the LIRS queue for non-resident cold entries.
+         */
+        private int queue2Size;
+
+        /**
+         * The map array. The size is always a power of 2.
+         */
+        private Entry[] entries;
+
+        /**
+         * The bit mask that is applied to the key hash code to get the index
+         * in the map array. The mask is the length of the array minus one.
+         */
+        private int mask;
+
+        /**
+         * The currently used memory, in words.
+         */
+        private long usedMemory;
+
+        /**
+         * The maximum memory this segment should use, in words.
+         */
+        private long maxMemory;
+
+        /**
+         * The LIRS stack size.
+         */
+        private int stackSize;
+
+        /**
+         * The stack of recently referenced elements. This includes all hot
+         * entries, the recently referenced cold entries, and all non-resident
+         * cold entries.
+         */
+        private Entry stack;
+
+        /**
+         * The queue of resident cold entries.
+         */
+        private Entry queue;
+
+        /**
+         * The queue of non-resident cold entries.
+         */
+        private Entry queue2;
+
+        /**
+         * Whether changed entries are currently written back. Writing an
+         * entry may add entries to the cache, which must not evict other
+         * entries.
+         */
+        private boolean evicting;
+
+        Segment(CacheWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Remove all entries, and resize the map array according to the
+         * maximum memory.
+         */
+        synchronized void clear() {
+            // assume a fill factor of at most 75%
+            long maxLen = (long) (maxMemory / AVERAGE_MEMORY / 0.75);
+            // the size needs to be a power of 2
+            long l = 8;
+            while (l < maxLen) {
+                l += l;
+            }
+            int len = (int) Math.min(1L << 30, l);
+            mask = len - 1;
+            stack = new Entry();
+            stack.stackPrev = stack.stackNext = stack;
+            queue = new Entry();
+            queue.queuePrev = queue.queueNext = queue;
+            queue2 = new Entry();
+            queue2.queuePrev = queue2.queueNext = queue2;
+            // first set to null - avoiding out of memory
+            entries = null;
+            entries = new Entry[len];
+            mapSize = 0;
+            usedMemory = 0;
+            stackSize = queueSize = queue2Size = 0;
+        }
+
+        /**
+         * Get the value for the given key if the entry is resident, without
+         * changing the internal state.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the value, or null if there is no resident entry
+         */
+        synchronized CacheObject find(int key, int hash) {
+            Entry e = findEntry(key, hash);
+            return e == null ? null : e.value;
+        }
+
+        /**
+         * Get the value for the given key if the entry is resident, and mark
+         * the entry as recently used.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the value, or null if there is no resident entry
+         */
+        synchronized CacheObject get(int key, int hash) {
+            Entry e = findEntry(key, hash);
+            if (e == null || e.value == null) {
+                // not found, or a non-resident entry
+                return null;
+            }
+            access(e);
+            return e.value;
+        }
+
+        /**
+         * Add an object to the cache. The object must not be resident yet.
+         * Objects that were recently removed from the cache (non-resident
+         * entries) are hot after adding them, all other objects are cold if
+         * the cache is full.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @param value the object
+         */
+        synchronized void put(int key, int hash, CacheObject value) {
+            Entry e = findEntry(key, hash);
+            boolean nonResident = false;
+            if (e != null) {
+                if (SysProperties.CHECK && e.value != null) {
+                    DbException.throwInternalError("try to add a record twice at pos " + key);
+                }
+                nonResident = true;
+                remove(key, hash);
+            }
+            e = new Entry();
+            e.key = key;
+            e.value = value;
+            e.memory = value.getMemory();
+            int index = hash & mask;
+            e.mapNext = entries[index];
+            entries[index] = e;
+            mapSize++;
+            usedMemory += e.memory;
+            if (usedMemory > maxMemory && stackSize > 0) {
+                // the cache is full: new entries are cold
+                addToQueue(queue, e);
+            }
+            // added entries are always added to the stack
+            addToStack(e);
+            if (nonResident) {
+                access(e);
+            }
+            if (usedMemory > maxMemory) {
+                evict();
+            }
+        }
+
+        /**
+         * Update an object in the cache, or add it if it is not resident.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @param value the object
+         * @return the old object, or null if it was not resident
+         */
+        synchronized CacheObject update(int key, int hash, CacheObject value) {
+            Entry e = findEntry(key, hash);
+            if (e == null || e.value == null) {
+                put(key, hash, value);
+                return null;
+            }
+            if (SysProperties.CHECK && e.value != value) {
+                DbException.throwInternalError("old!=record pos:" + key + " old:" + e.value + " new:" + value);
+            }
+            access(e);
+            return e.value;
+        }
+
+        /**
+         * Remove an entry. Both resident and non-resident entries can be
+         * removed.
+         *
+         * @param key the key
+         * @param hash the hash
+         * @return the old value, or null if there was no resident entry
+         */
+        synchronized CacheObject remove(int key, int hash) {
+            int index = hash & mask;
+            Entry e = entries[index];
+            if (e == null) {
+                return null;
+            }
+            if (e.key == key) {
+                entries[index] = e.mapNext;
+            } else {
+                Entry last;
+                do {
+                    last = e;
+                    e = e.mapNext;
+                    if (e == null) {
+                        return null;
+                    }
+                } while (e.key != key);
+                last.mapNext = e.mapNext;
+            }
+            CacheObject old = e.value;
+            mapSize--;
+            usedMemory -= e.memory;
+            if (e.stackNext != null) {
+                removeFromStack(e);
+            }
+            if (e.isHot()) {
+                // when removing a hot entry, the newest cold entry gets hot,
+                // so the number of hot entries does not change
+                Entry cold = queue.queueNext;
+                if (cold != queue) {
+                    removeFromQueue(cold);
+                    if (cold.stackNext == null) {
+                        addToStackBottom(cold);
+                    }
+                }
+            } else {
+                removeFromQueue(e);
+            }
+            pruneStack();
+            return old;
+        }
+
+        /**
+         * Add all resident changed objects to the list.
+         *
+         * @param list the target list
+         */
+        synchronized void addChanged(ArrayList<CacheObject> list) {
+            for (Entry e : entries) {
+                for (; e != null; e = e.mapNext) {
+                    if (e.value != null && e.value.isChanged()) {
+                        list.add(e.value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Set the maximum memory, and remove entries if required.
+         *
+         * @param maxMemory the maximum memory in words
+         */
+        synchronized void setMaxMemory(long maxMemory) {
+            this.maxMemory = maxMemory;
+            if (entries != null && usedMemory > maxMemory) {
+                evict();
+            }
+        }
+
+        synchronized long getUsedMemory() {
+            return usedMemory;
+        }
+
+        /**
+         * Move an entry to the top of the stack. Resident cold entries that
+         * are still in the stack become hot.
+         *
+         * @param e the entry
+         */
+        private void access(Entry e) {
+            if (e.isHot()) {
+                if (e != stack.stackNext) {
+                    // move a hot entry to the top of the stack
+                    // unless it is already there
+                    boolean wasEnd = e == stack.stackPrev;
+                    removeFromStack(e);
+                    if (wasEnd) {
+                        // if moving the last entry, the last entry
+                        // could not be cold, which is not allowed
+                        pruneStack();
+                    }
+                    addToStack(e);
+                }
+            } else {
+                removeFromQueue(e);
+                if (e.stackNext != null) {
+                    // resident cold entries become hot
+                    // if they are on the stack
+                    removeFromStack(e);
+                    // which means a hot entry needs to become cold
+                    convertOldestHotToCold();
+                } else {
+                    // cold entries that are not on the stack
+                    // move to the front of the queue
+                    addToQueue(queue, e);
+                }
+                // in any case, the cold entry is moved to the top of the stack
+                addToStack(e);
+            }
+        }
+
+        /**
+         * Remove the oldest resident cold entries until the memory limit is
+         * reached. Changed entries are written back first. Entries that can
+         * not be removed (for example pinned entries) are skipped.
+         */
+        private void evict() {
+            if (evicting) {
+                return;
+            }
+            // ensure there are not too many hot entries: if there are less
+            // than 1/32 (3.125%) resident cold entries, a hot entry needs to
+            // become cold
+            while ((queueSize << 5) < mapSize - queue2Size && stackSize > 0) {
+                convertOldestHotToCold();
+            }
+            // the newest cold entry must stay, so if the hot entries alone
+            // use all the memory, the oldest hot entry needs to become cold
+            while (queueSize <= 1 && usedMemory > maxMemory && stackSize > 0) {
+                convertOldestHotToCold();
+            }
+            ArrayList<Entry> candidates = New.arrayList();
+            ArrayList<CacheObject> changed = New.arrayList();
+            long mem = usedMemory;
+            int checked = 0;
+            for (Entry e = queue.queuePrev; e != queue; e = e.queuePrev) {
+                // if changed entries need to be written,
+                // remove a bit more to avoid writing too often
+                long target = changed.size() == 0 ? maxMemory : maxMemory / 4 * 3;
+                if (mem <= target || checked++ >= queueSize - 1) {
+                    // but at least one cold entry (the newest) must stay
+                    break;
+                }
+                CacheObject rec = e.value;
+                if (!rec.canRemove()) {
+                    continue;
+                }
+                candidates.add(e);
+                mem -= e.memory;
+                if (rec.isChanged()) {
+                    changed.add(rec);
+                }
+            }
+            if (candidates.size() == 0) {
+                if (mem > maxMemory && queueSize > 1) {
+                    writer.getTrace().info("cannot remove records, cache size too small? records:" +
+                            mapSize + " memory:" + usedMemory);
+                }
+                return;
+            }
+            if (changed.size() > 0) {
+                evicting = true;
+                try {
+                    writer.flushLog();
+                    Collections.sort(changed);
+                    for (CacheObject rec : changed) {
+                        writer.writeBack(rec);
+                    }
+                } finally {
+                    evicting = false;
+                }
+            }
+            for (Entry e : candidates) {
+                // writing back could have changed the state of the entry
+                if (e.value == null || e.isHot() || findEntry(e.key, getHash(e.key)) != e) {
+                    continue;
+                }
+                if (e.stackNext == null) {
+                    // a non-resident entry that is not on the stack is useless
+                    remove(e.key, getHash(e.key));
+                    continue;
+                }
+                // the entry becomes non-resident
+                usedMemory -= e.memory;
+                removeFromQueue(e);
+                e.value = null;
+                e.memory = 0;
+                addToQueue(queue2, e);
+                // the number of non-resident entries needs to be limited
+                while (queue2Size + queue2Size > stackSize) {
+                    Entry last = queue2.queuePrev;
+                    remove(last.key, getHash(last.key));
+                }
+            }
+        }
+
+        private void convertOldestHotToCold() {
+            // the last entry of the stack is known to be hot
+            Entry last = stack.stackPrev;
+            // remove from stack - which is done anyway in the stack pruning,
+            // but we can do it here as well
+            removeFromStack(last);
+            // adding an entry to the queue will make it cold
+            addToQueue(queue, last);
+            pruneStack();
+        }
+
+        /**
+         * Ensure the last entry of the stack is hot.
+         */
+        private void pruneStack() {
+            while (true) {
+                Entry last = stack.stackPrev;
+                if (last == stack || last.isHot()) {
+                    break;
+                }
+                // the cold entry is still in the queue
+                removeFromStack(last);
+            }
+        }
+
+        private Entry findEntry(int key, int hash) {
+            Entry e = entries[hash & mask];
+            while (e != null && e.key != key) {
+                e = e.mapNext;
+            }
+            return e;
+        }
+
+        private void addToStack(Entry e) {
+            e.stackPrev = stack;
+            e.stackNext = stack.stackNext;
+            e.stackNext.stackPrev = e;
+            stack.stackNext = e;
+            stackSize++;
+        }
+
+        private void addToStackBottom(Entry e) {
+            e.stackNext = stack;
+            e.stackPrev = stack.stackPrev;
+            e.stackPrev.stackNext = e;
+            stack.stackPrev = e;
+            stackSize++;
+        }
+
+        private void removeFromStack(Entry e) {
+            e.stackPrev.stackNext = e.stackNext;
+            e.stackNext.stackPrev = e.stackPrev;
+            e.stackPrev = e.stackNext = null;
+            stackSize--;
+        }
+
+        private void addToQueue(Entry q, Entry e) {
+            e.queuePrev = q;
+            e.queueNext = q.queueNext;
+            e.queueNext.queuePrev = e;
+            q.queueNext = e;
+            if (e.value != null) {
+                queueSize++;
+            } else {
+                queue2Size++;
+            }
+        }
+
+        private void removeFromQueue(Entry e) {
+            e.queuePrev.queueNext = e.queueNext;
+            e.queueNext.queuePrev = e.queuePrev;
+            e.queuePrev = e.queueNext = null;
+            if (e.value != null) {
+                queueSize--;
+            } else {
+                queue2Size--;
+            }
+        }
+
+    }
+
+    /**
+     * A cache entry. Each entry is either hot (low inter-reference recency;
+     * LIR), cold (high inter-reference recency; HIR), or non-resident-cold. Hot
+     * entries are in the stack only. Cold entries are in the queue, and may be
+     * in the stack. Non-resident-cold entries have their value set to null and
+     * are in the stack and in the non-resident queue.
+     */
+    static class Entry {
+
+        /**
+         * The key (the position of the cache object).
+         */
+        int key;
+
+        /**
+         * The value. Set to null for non-resident-cold entries.
+         */
+        CacheObject value;
+
+        /**
+         * The memory used when the entry was added, in words.
+         */
+        int memory;
+
+        /**
+         * The next entry in the stack.
+         */
+        Entry stackNext;
+
+        /**
+         * The previous entry in the stack.
+         */
+        Entry stackPrev;
+
+        /**
+         * The next entry in the queue (either the resident queue or the
+         * non-resident queue).
+         */
+        Entry queueNext;
+
+        /**
+         * The previous entry in the queue.
+         */
+        Entry queuePrev;
+
+        /**
+         * The next entry in the map
+         */
+        Entry mapNext;
+
+        /**
+         * Whether this entry is hot. Cold entries are in one of the two queues.
+         *
+         * @return whether the entry is hot
+         */
+        boolean isHot() {
+            return queueNext == null;
+        }
+
+    }
+
+}
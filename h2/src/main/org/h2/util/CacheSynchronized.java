@@ -0,0 +1,130 @@
+/*
+ * Copyright 2004-2011 H2 Group. Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 1.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.util;
+
+import java.util.ArrayList;
+
+/**
+ * A cache that is split into a number of segments by the hash code of the
+ * key. Each segment is a cache of the given type that is synchronized on its
+ * own, so that lookups from different threads usually don't block each other,
+ * and they don't need the lock of the cache writer. Operations that may evict
+ * changed objects (put, update, setMaxMemory) call back into the cache writer,
+ * so the caller must already hold the lock of the cache writer in this case.
+ */
+public class CacheSynchronized implements Cache {
+
+    /**
+     * The number of segments (must be a power of 2).
+     */
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Cache[] segments;
+    private int maxMemoryKb;
+
+    /**
+     * Create a new segmented cache.
+     *
+     * @param writer the cache writer
+     * @param cacheType the cache type of each segment
+     * @param maxMemoryKb the maximum memory of all segments, in KB
+     */
+    public CacheSynchronized(CacheWriter writer, String cacheType, int maxMemoryKb) {
+        segments = new Cache[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = CacheLRU.getCache(writer, cacheType, getSegmentMemory(maxMemoryKb, i));
+        }
+        this.maxMemoryKb = maxMemoryKb;
+    }
+
+    private static int getSegmentMemory(int maxMemoryKb, int i) {
+        return maxMemoryKb / SEGMENT_COUNT + (i < maxMemoryKb % SEGMENT_COUNT ? 1 : 0);
+    }
+
+    private Cache getSegment(int pos) {
+        // use the high bits, as the segments use the low bits
+        return segments[(pos * 0x9e3779b9) >>> 28];
+    }
+
+    public void clear() {
+        for (Cache s : segments) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    public CacheObject find(int pos) {
+        Cache s = getSegment(pos);
+        synchronized (s) {
+            return s.find(pos);
+        }
+    }
+
+    public CacheObject get(int pos) {
+        Cache s = getSegment(pos);
+        synchronized (s) {
+            return s.get(pos);
+        }
+    }
+
+    public ArrayList<CacheObject> getAllChanged() {
+        ArrayList<CacheObject> list = New.arrayList();
+        for (Cache s : segments) {
+            synchronized (s) {
+                list.addAll(s.getAllChanged());
+            }
+        }
+        return list;
+    }
+
+    public int getMaxMemory() {
+        return maxMemoryKb;
+    }
+
+    public int getMemory() {
+        int x = 0;
+        for (Cache s : segments) {
+            synchronized (s) {
+                x += s.getMemory();
+            }
+        }
+        return x;
+    }
+
+    public void put(CacheObject r) {
+        Cache s = getSegment(r.getPos());
+        synchronized (s) {
+            s.put(r);
+        }
+    }
+
+    public boolean remove(int pos) {
+        Cache s = getSegment(pos);
+        synchronized (s) {
+            return s.remove(pos);
+        }
+    }
+
+    public void setMaxMemory(int size) {
+        maxMemoryKb = size;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            Cache s = segments[i];
+            synchronized (s) {
+                s.setMaxMemory(getSegmentMemory(size, i));
+            }
+        }
+    }
+
+    public CacheObject update(int pos, CacheObject record) {
+        Cache s = getSegment(pos);
+        synchronized (s) {
+            return s.update(pos, record);
+        }
+    }
+
+}
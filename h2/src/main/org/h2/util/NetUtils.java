@@ -14,6 +14,7 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
 import org.h2.message.DbException;
@@ -150,10 +151,27 @@ public class NetUtils {
      */
     public static ServerSocket createServerSocket(int port, boolean ssl) {
         try {
-            return createServerSocketTry(port, ssl);
+            return createServerSocketTry(port, ssl, false);
         } catch (Exception e) {
             // try again
-            return createServerSocketTry(port, ssl);
+            return createServerSocketTry(port, ssl, false);
+        }
+    }
+
+    /**
+     * Create a server socket that is backed by a channel, so that the accepted
+     * sockets can be used with a selector. The system property h2.bindAddress
+     * is used if set. SSL is not supported.
+     *
+     * @param port the port to listen on
+     * @return the server socket
+     */
+    public static ServerSocket createServerSocketChannel(int port) {
+        try {
+            return createServerSocketTry(port, false, true);
+        } catch (Exception e) {
+            // try again
+            return createServerSocketTry(port, false, true);
         }
     }
 
@@ -176,12 +194,22 @@ public class NetUtils {
         return cachedBindAddress;
     }
 
-    private static ServerSocket createServerSocketTry(int port, boolean ssl) {
+    private static ServerSocket createServerSocketTry(int port, boolean ssl, boolean channel) {
         try {
             InetAddress bindAddress = getBindAddress();
             if (ssl) {
                 return CipherFactory.createServerSocket(port, bindAddress);
             }
+            if (channel) {
+                ServerSocket socket = ServerSocketChannel.open().socket();
+                try {
+                    socket.bind(new InetSocketAddress(bindAddress, port));
+                } catch (IOException e) {
+                    closeSilently(socket);
+                    throw e;
+                }
+                return socket;
+            }
             if (bindAddress == null) {
                 return new ServerSocket(port);
             }
@@ -8,6 +8,8 @@ package org.h2.value;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -21,7 +23,9 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
+import org.h2.compress.CompressLZF;
 import org.h2.constant.ErrorCode;
+import org.h2.constant.SysProperties;
 import org.h2.engine.Constants;
 import org.h2.engine.SessionInterface;
 import org.h2.message.DbException;
@@ -54,6 +58,10 @@ public class Transfer {
     private boolean ssl;
     private int version;
     private byte[] lobMacSalt;
+    private DataOutputStream blockOut;
+    private ByteArrayOutputStream blockBuffer;
+    private DataInputStream blockIn;
+    private CompressLZF compress;
 
     /**
      * Create a new transfer object for the specified session.
@@ -91,6 +99,88 @@ public class Transfer {
         out.flush();
     }
 
+    /**
+     * Start writing a block. The data is kept in memory until the block is
+     * ended, and is then sent (compressed if it is large enough). Blocks are
+     * only used if the protocol version is 14 or newer; otherwise the data is
+     * written directly.
+     */
+    public void startWriteBlock() {
+        if (version < Constants.TCP_PROTOCOL_VERSION_14) {
+            return;
+        }
+        blockOut = out;
+        blockBuffer = new ByteArrayOutputStream();
+        out = new DataOutputStream(blockBuffer);
+    }
+
+    /**
+     * End the current block and write it.
+     */
+    public void endWriteBlock() throws IOException {
+        if (blockOut == null) {
+            return;
+        }
+        out = blockOut;
+        blockOut = null;
+        byte[] data = blockBuffer.toByteArray();
+        blockBuffer = null;
+        int len = data.length;
+        int threshold = SysProperties.SERVER_COMPRESS_THRESHOLD;
+        if (threshold > 0 && len >= threshold) {
+            if (compress == null) {
+                compress = new CompressLZF();
+            }
+            byte[] buff = Utils.newBytes(len * 2);
+            int compressedLen = compress.compress(data, len, buff, 0);
+            if (compressedLen > 0 && compressedLen < len) {
+                out.writeInt(len);
+                out.writeInt(compressedLen);
+                out.write(buff, 0, compressedLen);
+                return;
+            }
+        }
+        out.writeInt(len);
+        out.writeInt(0);
+        out.write(data, 0, len);
+    }
+
+    /**
+     * Read a block that was written using startWriteBlock and endWriteBlock.
+     * Until the block is ended, the data is read from the block.
+     */
+    public void startReadBlock() throws IOException {
+        if (version < Constants.TCP_PROTOCOL_VERSION_14) {
+            return;
+        }
+        int len = in.readInt();
+        int compressedLen = in.readInt();
+        byte[] data = Utils.newBytes(len);
+        if (compressedLen == 0) {
+            in.readFully(data);
+        } else {
+            byte[] buff = Utils.newBytes(compressedLen);
+            in.readFully(buff);
+            if (compress == null) {
+                compress = new CompressLZF();
+            }
+            compress.expand(buff, 0, compressedLen, data, 0, len);
+        }
+        blockIn = in;
+        in = new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * End reading the current block. Data of the block that was not read is
+     * skipped.
+     */
+    public void endReadBlock() {
+        if (blockIn != null) {
+            in = blockIn;
+            blockIn = null;
+        }
+    }
+
     /**
      * Write a boolean.
      *
@@ -684,6 +774,16 @@ public class Transfer {
         return socket;
     }
 
+    /**
+     * Check whether data was already received, so that reading will not
+     * block.
+     *
+     * @return true if data is available
+     */
+    public boolean isReadAvailable() throws IOException {
+        return in.available() > 0;
+    }
+
     /**
      * Set the session.
      *
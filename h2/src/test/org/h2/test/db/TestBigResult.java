@@ -13,6 +13,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 
+import org.h2.constant.ErrorCode;
 import org.h2.store.FileLister;
 import org.h2.test.TestBase;
 
@@ -39,6 +40,8 @@ public class TestBigResult extends TestBase {
         testCloseConnectionDelete();
         testOrderGroup();
         testLimitBufferedResult();
+        testSortBufferedResult();
+        testLargeGroupBy();
         deleteDb("bigResult");
     }
 
@@ -95,6 +98,103 @@ public class TestBigResult extends TestBase {
         }
     }
 
+    private void testSortBufferedResult() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult;LARGE_RESULT_SORT_THREADS=4");
+        Statement stat = conn.createStatement();
+        int len = getSize(5000, 50000);
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, A INT, B VARCHAR, C CLOB)");
+        stat.execute("INSERT INTO TEST SELECT X, MOD(X * 7919, 101), " +
+                "'Name ' || MOD(X * 31, 17), CASE WHEN X < 100 THEN 'Clob ' || X END " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        stat.execute("SET MAX_MEMORY_ROWS " + (len / 20));
+        // sorted in background threads
+        assertSorted(stat, "SELECT A, B, ID FROM TEST ORDER BY A, B DESC", len);
+        // values with an order that depends on the database are sorted
+        // in the calling thread
+        assertSorted(stat, "SELECT A, B, ID, C FROM TEST ORDER BY A, B DESC", len);
+        conn.close();
+    }
+
+    private void testLargeGroupBy() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        int len = getSize(5000, 50000);
+        int groups = len / 3;
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, G INT, H INT, V INT)");
+        stat.execute("INSERT INTO TEST SELECT X, MOD(X, " + groups + "), MOD(X, " + groups + ") * 2, X " +
+                "FROM SYSTEM_RANGE(1, " + len + ")");
+        stat.execute("SET MAX_MEMORY_ROWS " + (groups / 10));
+        String sql = "SELECT G, H, COUNT(*), COUNT(V), SUM(V), MIN(V), MAX(V), " +
+                "AVG(V), VAR_POP(V), BOOL_AND(V > 1) FROM TEST GROUP BY G";
+        // the groups are buffered to disk
+        ResultSet rs = stat.executeQuery(sql);
+        int count = 0;
+        while (rs.next()) {
+            int g = rs.getInt(1);
+            assertEquals(g * 2, rs.getInt(2));
+            long n = 0, sum = 0, min = Long.MAX_VALUE, max = 0;
+            for (long v = g == 0 ? groups : g; v <= len; v += groups) {
+                n++;
+                sum += v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            double avg = (double) sum / n;
+            double var = 0;
+            for (long v = g == 0 ? groups : g; v <= len; v += groups) {
+                var += (v - avg) * (v - avg);
+            }
+            assertEquals(n, rs.getLong(3));
+            assertEquals(n, rs.getLong(4));
+            assertEquals(sum, rs.getLong(5));
+            assertEquals(min, rs.getLong(6));
+            assertEquals(max, rs.getLong(7));
+            assertEquals(sum / n, rs.getLong(8));
+            assertTrue(Math.abs(var / n - rs.getDouble(9)) < 0.001 * var / n + 0.001);
+            assertEquals(min > 1, rs.getBoolean(10));
+            count++;
+        }
+        assertEquals(groups, count);
+        // most rows belong to a few groups
+        rs = stat.executeQuery("SELECT COUNT(*), SUM(C), SUM(S) FROM (SELECT CASEWHEN(MOD(ID, 4) = 0, G, MOD(G, 10)) K, " +
+                "COUNT(*) C, SUM(V) S FROM TEST GROUP BY K)");
+        rs.next();
+        assertEquals(len, rs.getLong(2));
+        assertEquals((long) len * (len + 1) / 2, rs.getLong(3));
+        // distinct aggregates are calculated in memory
+        rs = stat.executeQuery("SELECT COUNT(*), SUM(C) FROM (SELECT G, COUNT(DISTINCT V) C FROM TEST GROUP BY G)");
+        rs.next();
+        assertEquals(groups, rs.getInt(1));
+        assertEquals(len, rs.getInt(2));
+        // a column that is not grouped must have the same value in all rows
+        assertThrows(ErrorCode.MUST_GROUP_BY_COLUMN_1, stat).
+                executeQuery("SELECT G, V FROM TEST GROUP BY G");
+        conn.close();
+    }
+
+    private void assertSorted(Statement stat, String sql, int len) throws SQLException {
+        ResultSet rs = stat.executeQuery(sql);
+        int count = 0, lastA = -1;
+        String lastB = null;
+        long sum = 0;
+        while (rs.next()) {
+            int a = rs.getInt(1);
+            String b = rs.getString(2);
+            assertTrue(a >= lastA);
+            if (a == lastA) {
+                assertTrue(b.compareTo(lastB) <= 0);
+            }
+            lastA = a;
+            lastB = b;
+            sum += rs.getInt(3);
+            count++;
+        }
+        assertEquals(len, count);
+        assertEquals((long) len * (len + 1) / 2, sum);
+    }
+
     private void testLimitBufferedResult() throws SQLException {
         deleteDb("bigResult");
         Connection conn = getConnection("bigResult");
@@ -12,6 +12,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.h2.constant.ErrorCode;
 import org.h2.store.fs.FileUtils;
@@ -20,12 +22,15 @@ import org.h2.tools.CreateCluster;
 import org.h2.tools.DeleteDbFiles;
 import org.h2.tools.Server;
 import org.h2.util.JdbcUtils;
+import org.h2.util.Task;
 
 /**
  * Test for the cluster feature.
  */
 public class TestCluster extends TestBase {
 
+    private static int nextValue;
+
     /**
      * Run just this test.
      *
@@ -40,7 +45,9 @@ public class TestCluster extends TestBase {
         testRecover();
         testRollback();
         testCase();
+        testDifferentResults();
         testCreateClusterAtRuntime();
+        testCreateClusterOnline();
         testStartStopCluster();
     }
 
@@ -236,6 +243,89 @@ public class TestCluster extends TestBase {
         n1.stop();
         deleteFiles();
     }
+    /**
+     * This method is called from the database. Each call returns a different
+     * value, so that the cluster nodes return different results.
+     *
+     * @return the next value
+     */
+    public static synchronized int nextValue() {
+        return ++nextValue;
+    }
+
+    private void testDifferentResults() throws SQLException {
+        if (config.memory || config.networked || config.cipher != null) {
+            return;
+        }
+        int port1 = 9191, port2 = 9192;
+        String serverList = "localhost:" + port1 + ",localhost:" + port2;
+        deleteFiles();
+        org.h2.Driver.load();
+        String user = getUser(), password = getPassword();
+        String url1 = "jdbc:h2:tcp://localhost:" + port1 + "/test";
+        String url2 = "jdbc:h2:tcp://localhost:" + port2 + "/test";
+        String urlCluster = "jdbc:h2:tcp://" + serverList + "/test";
+        Server n1 = org.h2.tools.Server.createTcpServer("-tcpPort", "" + port1, "-baseDir", getBaseDir() + "/node1").start();
+        Server n2 = org.h2.tools.Server.createTcpServer("-tcpPort", "" + port2 , "-baseDir", getBaseDir() + "/node2").start();
+        CreateCluster.main("-urlSource", url1, "-urlTarget", url2, "-user", user, "-password", password, "-serverList",
+                serverList);
+
+        Connection conn = DriverManager.getConnection(urlCluster, user, password);
+        Statement stat = conn.createStatement();
+        stat.execute("create alias next_value for \"" + getClass().getName() + ".nextValue\"");
+        stat.execute("create table test(id int primary key)");
+        // both nodes return the same update count
+        assertEquals(10, stat.executeUpdate("insert into test select x from system_range(1, 10)"));
+        assertEquals(5, stat.executeUpdate("delete from test where id > 5"));
+        try {
+            // each node inserts a different number of rows
+            stat.executeUpdate("insert into test select x from system_range(100, 100 + next_value())");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.CLUSTER_ERROR_RESULTS_DIFFER_1, e.getErrorCode());
+        }
+        // batch updates are sent to all nodes, and the update counts compared
+        PreparedStatement prep = conn.prepareStatement("insert into test select x from system_range(?, ?)");
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, 100 + i * 10);
+            prep.setInt(2, 100 + i * 10 + i);
+            prep.addBatch();
+        }
+        int[] counts = prep.executeBatch();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, counts[i]);
+        }
+        assertEquals(6, stat.executeUpdate("delete from test where id >= 100"));
+        prep = conn.prepareStatement("insert into test select x from system_range(?, ? + next_value())");
+        for (int i = 0; i < 3; i++) {
+            prep.setInt(1, 100 + i * 10);
+            prep.setInt(2, 100 + i * 10);
+            prep.addBatch();
+        }
+        try {
+            prep.executeBatch();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.CLUSTER_ERROR_RESULTS_DIFFER_1, e.getErrorCode());
+        }
+        // in auto-commit mode, the statement was rolled back on both nodes
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(5, rs.getInt(1));
+        conn.close();
+
+        for (String url : new String[] { url1, url2 }) {
+            conn = DriverManager.getConnection(url + ";CLUSTER=''", user, password);
+            rs = conn.createStatement().executeQuery("select count(*) from test");
+            rs.next();
+            assertEquals(5, rs.getInt(1));
+            conn.close();
+        }
+        n1.stop();
+        n2.stop();
+        deleteFiles();
+    }
+
     private void testCreateClusterAtRuntime() throws SQLException {
         if (config.memory || config.networked || config.cipher != null) {
             return;
@@ -319,6 +409,107 @@ public class TestCluster extends TestBase {
         deleteFiles();
     }
 
+    private void testCreateClusterOnline() throws Exception {
+        if (config.memory || config.networked || config.cipher != null) {
+            return;
+        }
+        int port1 = 9191, port2 = 9192;
+        String serverList = "localhost:" + port1 + ",localhost:" + port2;
+        deleteFiles();
+
+        org.h2.Driver.load();
+        String user = getUser(), password = getPassword();
+        String url1 = "jdbc:h2:tcp://localhost:" + port1 + "/test";
+        String url2 = "jdbc:h2:tcp://localhost:" + port2 + "/test";
+        Server n1 = org.h2.tools.Server.createTcpServer("-tcpPort", "" + port1, "-baseDir", getBaseDir() + "/node1").start();
+        Server n2 = org.h2.tools.Server.createTcpServer("-tcpPort", "" + port2 , "-baseDir", getBaseDir() + "/node2").start();
+        Connection conn = DriverManager.getConnection(url1, user, password);
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar) as " +
+                "select x, space(100) from system_range(1, 10000)");
+        stat.execute("create table log(id identity, data int)");
+        stat.execute("create table parent(id int primary key)");
+        stat.execute("create table child(id int primary key, parent_id int " +
+                "references parent(id) on delete cascade)");
+        stat.execute("insert into parent values(1)");
+        stat.execute("insert into child values(1, 1)");
+        conn.close();
+
+        // keep changing the source database while it is copied
+        final Connection connWrite = DriverManager.getConnection(url1, user, password);
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicInteger lockTimeouts = new AtomicInteger();
+        Task task = new Task() {
+            public void call() throws Exception {
+                PreparedStatement prepLog = connWrite.prepareStatement("insert into log(data) values(?)");
+                PreparedStatement prepTest = connWrite.prepareStatement("update test set name = ? where id = ?");
+                Random random = new Random(1);
+                boolean lockTimeout = false;
+                while (!stop) {
+                    try {
+                        prepLog.setInt(1, writes.get());
+                        prepLog.execute();
+                        prepTest.setString(1, "Hello" + writes.get());
+                        prepTest.setInt(2, random.nextInt(10000) + 1);
+                        prepTest.execute();
+                        writes.incrementAndGet();
+                        if (lockTimeout) {
+                            lockTimeouts.incrementAndGet();
+                            lockTimeout = false;
+                        }
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() != ErrorCode.LOCK_TIMEOUT_1) {
+                            // the connection was closed
+                            break;
+                        }
+                        // a statement that overlaps with the exclusive mode
+                        // may time out, but then the connection is closed
+                        lockTimeout = true;
+                    }
+                }
+            }
+        };
+        task.execute();
+        while (writes.get() < 10) {
+            Thread.sleep(10);
+        }
+        int writesBefore = writes.get();
+        CreateCluster.main("-urlSource", url1, "-urlTarget", url2, "-user", user, "-password", password, "-serverList",
+                serverList);
+        task.get();
+        JdbcUtils.closeSilently(connWrite);
+        // the source database was changed while it was copied
+        assertTrue("writes: " + (writes.get() - writesBefore), writes.get() - writesBefore > 100);
+        // the writer never timed out while the database was copied
+        assertEquals(0, lockTimeouts.get());
+
+        // both databases contain the same data
+        String urlCluster = "jdbc:h2:tcp://" + serverList + "/test";
+        conn = DriverManager.getConnection(urlCluster, user, password);
+        conn.createStatement().execute("insert into log(data) values(-1)");
+        conn.close();
+        String sql = "select (select count(*) || ',' || max(id) from log) || ',' || " +
+                "(select count(*) || ',' || sum(length(name)) || ',' || sum(id * length(name)) from test) || ',' || " +
+                "(select count(*) from child)";
+        Connection conn1 = DriverManager.getConnection(url1 + ";CLUSTER=''", user, password);
+        Connection conn2 = DriverManager.getConnection(url2 + ";CLUSTER=''", user, password);
+        ResultSet rs1 = conn1.createStatement().executeQuery(sql);
+        ResultSet rs2 = conn2.createStatement().executeQuery(sql);
+        rs1.next();
+        rs2.next();
+        assertEquals(rs1.getString(1), rs2.getString(1));
+        ResultSet rs = conn2.createStatement().executeQuery(
+                "select value from information_schema.settings where name = 'LOG'");
+        rs.next();
+        assertEquals("2", rs.getString(1));
+        conn1.close();
+        conn2.close();
+
+        n1.stop();
+        n2.stop();
+        deleteFiles();
+    }
+
     private void testStartStopCluster() throws SQLException {
         if (config.memory || config.networked || config.cipher != null) {
             return;
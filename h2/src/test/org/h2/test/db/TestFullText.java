@@ -17,6 +17,7 @@ import java.util.Collection;
 import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.UUID;
+import org.h2.constant.ErrorCode;
 import org.h2.fulltext.FullText;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
@@ -45,6 +46,8 @@ public class TestFullText extends TestBase {
         testUuidPrimaryKey(false);
         testAutoAnalyze();
         testNativeFeatures();
+        testPostingLists();
+        testRanking();
         testTransaction(false);
         testCreateDrop();
         testStreamLob();
@@ -129,7 +132,7 @@ public class TestFullText extends TestBase {
         assertEquals("QUERY", rs.getMetaData().getColumnLabel(1));
         assertEquals("SCORE", rs.getMetaData().getColumnLabel(2));
         assertEquals("\"PUBLIC\".\"TEST\" WHERE \"ID\"=1", rs.getString(1));
-        assertEquals("1.0", rs.getString(2));
+        assertTrue(rs.getDouble(2) > 0);
         rs = stat.executeQuery("SELECT * FROM FT_SEARCH_DATA('One', 0, 0)");
         assertFalse(rs.next());
         rs = stat.executeQuery("SELECT * FROM FT_SEARCH_DATA('One_Word', 0, 0)");
@@ -164,6 +167,89 @@ public class TestFullText extends TestBase {
         close(connList);
     }
 
+    private void testPostingLists() throws SQLException {
+        deleteDb("fullTextNative");
+        Connection conn = getConnection("fullTextNative");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE ALIAS IF NOT EXISTS FT_INIT FOR \"org.h2.fulltext.FullText.init\"");
+        stat.execute("CALL FT_INIT()");
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        stat.execute("CALL FT_CREATE_INDEX('PUBLIC', 'TEST', NULL)");
+        stat.execute("INSERT INTO TEST SELECT X, " +
+                "CASEWHEN(MOD(X, 2) = 0, 'even ', 'odd ') || " +
+                "CASEWHEN(MOD(X, 3) = 0, 'three', 'other') FROM SYSTEM_RANGE(1, 1000)");
+        ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even three', 0, 0)");
+        rs.next();
+        assertEquals(166, rs.getInt(1));
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('three even', 10, 0)");
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        // the cached posting lists must be updated
+        stat.execute("UPDATE TEST SET NAME = 'odd other' WHERE ID = 6");
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even three', 0, 0)");
+        rs.next();
+        assertEquals(165, rs.getInt(1));
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even unknown', 0, 0)");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        // the changes of a statement that fails are not written
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("INSERT INTO TEST SELECT X, 'even three' FROM SYSTEM_RANGE(995, 1005)");
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even three', 0, 0)");
+        rs.next();
+        assertEquals(165, rs.getInt(1));
+        conn.setAutoCommit(false);
+        stat.execute("DELETE FROM TEST WHERE ID < 100");
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even three', 0, 0)");
+        rs.next();
+        assertEquals(150, rs.getInt(1));
+        conn.rollback();
+        conn.setAutoCommit(true);
+        rs = stat.executeQuery("SELECT COUNT(*) FROM FT_SEARCH('even three', 0, 0)");
+        rs.next();
+        assertEquals(165, rs.getInt(1));
+        conn.close();
+    }
+
+    private void testRanking() throws SQLException {
+        deleteDb("fullTextNative");
+        Connection conn = getConnection("fullTextNative");
+        Statement stat = conn.createStatement();
+        stat.execute("CREATE ALIAS IF NOT EXISTS FT_INIT FOR \"org.h2.fulltext.FullText.init\"");
+        stat.execute("CALL FT_INIT()");
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+        stat.execute("CALL FT_CREATE_INDEX('PUBLIC', 'TEST', 'NAME')");
+        stat.execute("INSERT INTO TEST VALUES(1, 'red car'), (2, 'red red red car'), " +
+                "(3, 'blue car'), (4, 'red red bike'), (5, 'green car')");
+        // rows that contain the word more often come first
+        ResultSet rs = stat.executeQuery("SELECT * FROM FT_SEARCH_DATA('red', 0, 0)");
+        assertTrue(rs.next());
+        assertEquals("2", ((Object[]) rs.getObject("KEYS"))[0].toString());
+        double first = rs.getDouble("SCORE");
+        assertTrue(rs.next());
+        assertEquals("4", ((Object[]) rs.getObject("KEYS"))[0].toString());
+        assertTrue(rs.getDouble("SCORE") < first);
+        assertTrue(rs.next());
+        assertEquals("1", ((Object[]) rs.getObject("KEYS"))[0].toString());
+        assertFalse(rs.next());
+        rs = stat.executeQuery("SELECT * FROM FT_SEARCH_DATA('red car', 1, 0)");
+        assertTrue(rs.next());
+        assertEquals("2", ((Object[]) rs.getObject("KEYS"))[0].toString());
+        assertFalse(rs.next());
+        rs = stat.executeQuery("SELECT * FROM FT_SEARCH_DATA('red car', 1, 1)");
+        assertTrue(rs.next());
+        assertEquals("1", ((Object[]) rs.getObject("KEYS"))[0].toString());
+        assertFalse(rs.next());
+        // the rare word 'bike' weighs more than the common word 'car'
+        rs = stat.executeQuery("SELECT SCORE FROM FT_SEARCH('bike', 0, 0)");
+        rs.next();
+        double bike = rs.getDouble(1);
+        rs = stat.executeQuery("SELECT SCORE FROM FT_SEARCH('car', 0, 0) WHERE QUERY LIKE '%=3'");
+        rs.next();
+        assertTrue(bike > rs.getDouble(1));
+        conn.close();
+    }
+
     private void testUuidPrimaryKey(boolean lucene) throws SQLException {
         deleteDb("fullText");
         Connection conn = getConnection("fullText");
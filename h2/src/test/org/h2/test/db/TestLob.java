@@ -9,6 +9,7 @@ package org.h2.test.db;
 import java.io.ByteArrayInputStream;
 import java.io.CharArrayReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
@@ -58,6 +59,7 @@ public class TestLob extends TestBase {
         testReadManyLobs();
         testLobSkip();
         testLobSkipPastEnd();
+        testLobReadAhead();
         testCreateIndexOnLob();
         testBlobInputStreamSeek(true);
         testBlobInputStreamSeek(false);
@@ -142,6 +144,63 @@ public class TestLob extends TestBase {
         conn.close();
     }
 
+    private void testLobReadAhead() throws Exception {
+        deleteDb("lob");
+        Connection conn;
+        conn = getConnection("lob");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int, data blob)");
+        byte[] data = new byte[1000000];
+        Random random = new Random(1);
+        for (int i = 0; i < data.length; i += 100) {
+            // partially compressible
+            data[i] = (byte) random.nextInt();
+        }
+        PreparedStatement prep = conn.prepareStatement("insert into test values(1, ?)");
+        prep.setBytes(1, data);
+        prep.execute();
+        ResultSet rs = stat.executeQuery("select data from test");
+        rs.next();
+        InputStream in = rs.getBinaryStream(1);
+        byte[] d2 = new byte[data.length];
+        int pos = 0;
+        while (true) {
+            int l = in.read(d2, pos, Math.min(7777, d2.length - pos));
+            if (l <= 0) {
+                break;
+            }
+            pos += l;
+        }
+        assertEquals(data.length, pos);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], d2[i]);
+        }
+        // skip while blocks are read ahead
+        in = rs.getBinaryStream(1);
+        assertEquals(data[0], (byte) in.read());
+        for (int i = 1; i + 150001 < data.length; i += 150001) {
+            IOUtils.skipFully(in, 150000);
+            assertEquals(data[i + 150000], (byte) in.read());
+        }
+        in.close();
+        if (!config.memory) {
+            // a missing block in the middle is detected
+            conn.createStatement().execute("delete from information_schema.lob_map where seq = 5");
+            in = rs.getBinaryStream(1);
+            try {
+                while (in.read(d2) >= 0) {
+                    // ignore
+                }
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().indexOf("Missing lob entry") >= 0);
+            }
+            in.close();
+        }
+        stat.execute("drop table test");
+        conn.close();
+    }
+
     private void testLobSkipPastEnd() throws Exception {
         if (config.memory) {
             return;
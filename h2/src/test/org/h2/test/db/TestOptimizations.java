@@ -58,6 +58,8 @@ public class TestOptimizations extends TestBase {
         }
         testOptimizeInJoinSelect();
         testOptimizeInJoin();
+        testHashJoin();
+        testColumnStatistics();
         testMultiColumnRangeQuery();
         testDistinctOptimization();
         testQueryCacheTimestamp();
@@ -430,6 +432,142 @@ public class TestOptimizations extends TestBase {
         conn.close();
     }
 
+    private void testHashJoin() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table a(x int, v int)");
+        stat.execute("create table b(id int, name varchar)");
+        stat.execute("insert into a select x, mod(x, 300) from system_range(1, 1000)");
+        stat.execute("insert into b select mod(x, 500), 'Hello ' || x from system_range(1, 1000)");
+        stat.execute("insert into a values(1001, null)");
+        stat.execute("insert into b values(null, 'Null')");
+        String sql = "select count(*), sum(a.x) from a inner join b on a.v = b.id";
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf(".hashJoin: ") >= 0);
+        PreparedStatement prep = conn.prepareStatement(sql);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2000, rs.getInt(1));
+        assertEquals(1001000, rs.getInt(2));
+        // the hash table is built again if the data was changed
+        stat.execute("delete from b where id >= 100");
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(798, rs.getInt(1));
+        assertHashJoinResult(stat, "a.v = b.id", "a.v = cast(b.id as bigint)");
+        assertHashJoinResult(stat, "a.v = b.id and b.name = 'Hello ' || a.x",
+                "a.v = cast(b.id as bigint) and b.name = cast('Hello ' || a.x as clob)");
+        // a nested loop join is used if the hash table doesn't fit in memory
+        stat.execute("set max_memory_rows 500");
+        prep = conn.prepareStatement(sql);
+        stat.execute("insert into b select mod(x, 500), 'Hello ' || x from system_range(1, 800)");
+        rs = stat.executeQuery("select count(*), sum(a.x) from a inner join b on a.v = cast(b.id as bigint)");
+        rs.next();
+        String expected = rs.getString(1) + " " + rs.getString(2);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(expected, rs.getString(1) + " " + rs.getString(2));
+        rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf(".hashJoin") < 0);
+        stat.execute("set max_memory_rows 10000");
+        // an index is used if there is one
+        stat.execute("create index idx_a_v on a(v)");
+        stat.execute("create index idx_b_id on b(id)");
+        rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf(".hashJoin") < 0);
+        conn.close();
+    }
+
+    private void testColumnStatistics() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;ANALYZE_AUTO=0");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b varchar)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        // a is 1 in 90% of the rows, b is 'x' in 1% of the rows
+        stat.execute("insert into test select x, case when x < 9000 then 1 else x end, " +
+                "case when x < 100 then 'x' else 'y' end from system_range(1, 10000)");
+        stat.execute("analyze");
+        ResultSet rs = stat.executeQuery("select * from information_schema.column_statistics " +
+                "where table_name = 'TEST' and column_name = 'A'");
+        assertTrue(rs.next());
+        assertEquals(10000, rs.getInt("SAMPLE_ROWS"));
+        assertEquals(0, rs.getInt("NULL_COUNT"));
+        assertEquals(1002, rs.getInt("DISTINCT_COUNT"));
+        assertEquals("1, 8999", rs.getString("MOST_COMMON_VALUES"));
+        assertTrue(rs.getString("HISTOGRAM_BOUNDS").startsWith("9000, "));
+        assertFalse(rs.next());
+        assertPlan(stat, "select * from test where a = 1 and b = 'x'", "IDX_B");
+        assertPlan(stat, "select * from test where a = 9500 and b = 'y'", "IDX_A");
+        assertPlan(stat, "select * from test where id > 9990 and a = 1", "PRIMARY_KEY");
+        assertPlan(stat, "select * from test where id < 9990 and a = 9999", "IDX_A");
+        assertPlan(stat, "select * from test where a in(9100, 9200) and b = 'x'", "IDX_A");
+        if (!config.memory) {
+            // the statistics are persisted
+            conn.close();
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            assertPlan(stat, "select * from test where a = 1 and b = 'x'", "IDX_B");
+        }
+        // the statistics are not included in scripts
+        rs = stat.executeQuery("script nodata");
+        while (rs.next()) {
+            assertTrue(rs.getString(1), rs.getString(1).indexOf("STATISTICS") < 0);
+        }
+        // the sample is taken from all rows, not only the first rows
+        stat.execute("analyze sample_size 100");
+        rs = stat.executeQuery("select sample_rows, distinct_count from information_schema.column_statistics " +
+                "where table_name = 'TEST' and column_name = 'A'");
+        assertTrue(rs.next());
+        assertEquals(100, rs.getInt(1));
+        assertTrue(rs.getInt(2) > 1);
+        conn.close();
+        if (!config.memory) {
+            // the sample size is limited even if all rows are analyzed
+            conn = getConnection("optimizations;ANALYZE_SAMPLE=1000");
+            stat = conn.createStatement();
+            stat.execute("analyze sample_size 0");
+            rs = stat.executeQuery("select sample_rows from information_schema.column_statistics " +
+                    "where table_name = 'TEST' and column_name = 'A'");
+            assertTrue(rs.next());
+            assertEquals(1000, rs.getInt(1));
+            conn.close();
+        }
+    }
+
+    private void assertPlan(Statement stat, String sql, String index) throws SQLException {
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf("/* PUBLIC." + index) >= 0);
+    }
+
+    private void assertHashJoinResult(Statement stat, String hashJoin, String nestedLoop) throws SQLException {
+        String sql = "select count(*), sum(a.x), sum(length(b.name)) from a inner join b on ";
+        ResultSet rs = stat.executeQuery("explain " + sql + hashJoin);
+        rs.next();
+        String plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf(".hashJoin: ") >= 0);
+        rs = stat.executeQuery("explain " + sql + nestedLoop);
+        rs.next();
+        plan = rs.getString(1);
+        assertTrue(plan, plan.indexOf(".hashJoin") < 0);
+        rs = stat.executeQuery(sql + nestedLoop);
+        rs.next();
+        String expected = rs.getString(1) + " " + rs.getString(2) + " " + rs.getString(3);
+        rs = stat.executeQuery(sql + hashJoin);
+        rs.next();
+        assertEquals(expected, rs.getString(1) + " " + rs.getString(2) + " " + rs.getString(3));
+    }
+
     private void testMinMaxNullOptimization() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
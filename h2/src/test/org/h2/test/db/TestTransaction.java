@@ -16,8 +16,11 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Random;
 import org.h2.constant.ErrorCode;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
 import org.h2.test.TestBase;
 import org.h2.util.New;
+import org.h2.util.Task;
 
 /**
  * Transactional tests, including transaction isolation tests, and tests related
@@ -38,6 +41,7 @@ public class TestTransaction extends TestBase {
         testCommitOnAutoCommitChange();
         testConcurrentSelectForUpdate();
         testLogMode();
+        testGroupCommit();
         testRollback();
         testRollback2();
         testForUpdate();
@@ -85,6 +89,75 @@ public class TestTransaction extends TestBase {
         conn.close();
     }
 
+    private void testGroupCommit() throws SQLException {
+        testGroupCommit("");
+        if (!config.mvcc) {
+            testGroupCommit(";MULTI_THREADED=TRUE");
+        }
+    }
+
+    private void testGroupCommit(String options) throws SQLException {
+        if (config.memory) {
+            return;
+        }
+        deleteDb("transaction");
+        final String url = "transaction;GROUP_COMMIT=TRUE;GROUP_COMMIT_DELAY=10" + options;
+        Connection conn = getConnection(url);
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        long syncCount = getCommitSyncCount(conn);
+        Task[] tasks = new Task[4];
+        for (int i = 0; i < tasks.length; i++) {
+            final int x = i;
+            tasks[i] = new Task() {
+                public void call() throws SQLException {
+                    Connection c = getConnection(url);
+                    PreparedStatement prep = c.prepareStatement("insert into test values(?, ?)");
+                    for (int j = 0; j < 100; j++) {
+                        prep.setInt(1, x * 100 + j);
+                        prep.setString(2, "Hello");
+                        prep.execute();
+                        if (j % 10 == 0) {
+                            c.setAutoCommit(false);
+                            prep.setInt(1, 1000 + x * 100 + j);
+                            prep.execute();
+                            c.commit();
+                            c.setAutoCommit(true);
+                        }
+                    }
+                    c.close();
+                }
+            };
+            tasks[i].execute();
+        }
+        for (Task t : tasks) {
+            t.get();
+        }
+        if (!config.networked) {
+            // 440 commits, but each sync is shared by multiple commits
+            syncCount = getCommitSyncCount(conn) - syncCount;
+            assertTrue("syncs: " + syncCount, syncCount > 0 && syncCount <= 220);
+        }
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(440, rs.getInt(1));
+        conn.close();
+        conn = getConnection(url);
+        stat = conn.createStatement();
+        rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(440, rs.getInt(1));
+        conn.close();
+    }
+
+    private long getCommitSyncCount(Connection conn) {
+        if (config.networked) {
+            return 0;
+        }
+        Session session = (Session) ((JdbcConnection) conn).getSession();
+        return session.getDatabase().getPageStore().getCommitSyncCount();
+    }
+
     private void testLogMode() throws SQLException {
         if (config.memory) {
             return;
@@ -17,6 +17,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.h2.constant.ErrorCode;
 import org.h2.test.TestBase;
 
 /**
@@ -54,6 +55,8 @@ public class TestBatchUpdates extends TestBase {
 
     public void test() throws SQLException {
         testRootCause();
+        testUpdateCounts();
+        testInsertBatch();
         testExecuteCall();
         testException();
         testCoffee();
@@ -102,6 +105,161 @@ public class TestBatchUpdates extends TestBase {
         conn.close();
     }
 
+    private void testUpdateCounts() throws SQLException {
+        deleteDb("batchUpdates");
+        conn = getConnection("batchUpdates");
+        stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        prep = conn.prepareStatement("insert into test values(?, ?)");
+        for (int i = 0; i < 1000; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "Hello " + i);
+            prep.addBatch();
+        }
+        int[] updateCounts = prep.executeBatch();
+        assertEquals(1000, updateCounts.length);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, updateCounts[i]);
+        }
+        prep = conn.prepareStatement("update test set name = ? where id = ?");
+        prep.setString(1, "World");
+        prep.setInt(2, 1);
+        prep.addBatch();
+        prep.setString(1, "World");
+        prep.setInt(2, -1);
+        prep.addBatch();
+        prep.setString(1, "World");
+        prep.setString(2, "x");
+        prep.addBatch();
+        prep.setString(1, null);
+        prep.setInt(2, 2);
+        prep.addBatch();
+        try {
+            prep.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            updateCounts = e.getUpdateCounts();
+            assertEquals(4, updateCounts.length);
+            assertEquals(1, updateCounts[0]);
+            assertEquals(0, updateCounts[1]);
+            assertEquals(Statement.EXECUTE_FAILED, updateCounts[2]);
+            assertEquals(1, updateCounts[3]);
+            SQLException e2 = e.getNextException();
+            assertEquals(ErrorCode.DATA_CONVERSION_ERROR_1, e2.getErrorCode());
+            assertTrue(e2.getNextException() == null);
+        }
+        ResultSet rs = stat.executeQuery("select count(*), count(name) from test where id < 3");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        assertEquals(2, rs.getInt(2));
+        conn.close();
+    }
+
+    private void testInsertBatch() throws SQLException {
+        deleteDb("batchUpdates");
+        conn = getConnection("batchUpdates");
+        stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("create index idx_name on test(name)");
+        prep = conn.prepareStatement("insert into test values(?, ?)");
+        for (int i = 0; i < 100; i++) {
+            prep.setInt(1, i % 50 == 10 ? 5 : i);
+            prep.setString(2, "Hello " + (100 - i));
+            prep.addBatch();
+        }
+        try {
+            prep.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            int[] updateCounts = e.getUpdateCounts();
+            assertEquals(100, updateCounts.length);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i % 50 == 10 ? Statement.EXECUTE_FAILED : 1, updateCounts[i]);
+            }
+            SQLException e2 = e.getNextException();
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e2.getErrorCode());
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e2.getNextException().getErrorCode());
+        }
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(98, rs.getInt(1));
+        rs = stat.executeQuery("select id from test where name = 'Hello 1'");
+        rs.next();
+        assertEquals(99, rs.getInt(1));
+
+        // multi-row insert: either all or no rows are added
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("insert into test values(200, 'a'), (201, 'b'), (200, 'c')");
+        stat.execute("insert into test values(201, 'b'), (200, 'a'), (202, 'c')");
+        rs = stat.executeQuery("select count(*) from test where id >= 200");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        // the rows are added in order
+        stat.execute("insert into test values(300, 'x'), ((select max(id) + 1 from test), 'y')");
+        rs = stat.executeQuery("select id from test where name = 'y'");
+        rs.next();
+        assertEquals(301, rs.getInt(1));
+        stat.execute("create table test2(id int primary key, name varchar) as " +
+                "select x, 'Hello ' || x from system_range(1, 5000)");
+        stat.execute("insert into test2 select id + 5000, name from test2");
+        rs = stat.executeQuery("select count(*), count(distinct name) from test2 where name like 'Hello %'");
+        rs.next();
+        assertEquals(10000, rs.getInt(1));
+        assertEquals(5000, rs.getInt(2));
+        stat.execute("drop table test2");
+
+        // when inserting the rows one by one after the batch failed,
+        // the values that were generated by the sequence are reused
+        stat.execute("create table test3(id identity, name varchar unique)");
+        prep = conn.prepareStatement("insert into test3(name) values(?)");
+        for (int i = 0; i < 10; i++) {
+            prep.setString(1, i == 5 ? "Hello 0" : "Hello " + i);
+            prep.addBatch();
+        }
+        try {
+            prep.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getNextException().getErrorCode());
+        }
+        rs = stat.executeQuery("select count(*), min(id), max(id) from test3");
+        rs.next();
+        assertEquals(9, rs.getInt(1));
+        assertEquals(1, rs.getInt(2));
+        assertEquals(10, rs.getInt(3));
+        rs = stat.executeQuery("select id from test3 where name = 'Hello 9'");
+        rs.next();
+        assertEquals(10, rs.getInt(1));
+        stat.execute("drop table test3");
+
+        // the rows before the failing row are inserted at once again,
+        // the remaining rows one by one
+        stat.execute("create table test4(id identity, v int unique)");
+        prep = conn.prepareStatement("insert into test4(v) values(?)");
+        for (int i = 0; i < 10; i++) {
+            prep.setString(1, i == 3 ? "x" : i == 7 ? "1" : "" + i);
+            prep.addBatch();
+        }
+        try {
+            prep.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            int[] counts = e.getUpdateCounts();
+            assertEquals(10, counts.length);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i == 3 || i == 7 ? Statement.EXECUTE_FAILED : 1, counts[i]);
+            }
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getNextException().getErrorCode());
+            assertEquals(ErrorCode.DATA_CONVERSION_ERROR_1, e.getNextException().getNextException().getErrorCode());
+        }
+        rs = stat.executeQuery("select count(*), max(id) from test4");
+        rs.next();
+        assertEquals(8, rs.getInt(1));
+        assertEquals(9, rs.getInt(2));
+        stat.execute("drop table test4");
+        conn.close();
+    }
+
     private void testExecuteCall() throws SQLException {
         deleteDb("batchUpdates");
         conn = getConnection("batchUpdates");
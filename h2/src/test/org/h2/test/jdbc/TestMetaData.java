@@ -9,6 +9,7 @@ package org.h2.test.jdbc;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -41,6 +42,7 @@ public class TestMetaData extends TestBase {
         deleteDb("metaData");
 
         testTempTable();
+        testQueryStatistics();
 
         conn = getConnection("metaData");
 
@@ -102,6 +104,8 @@ public class TestMetaData extends TestBase {
         rs.next();
         assertEquals("COLUMN_PRIVILEGES", rs.getString("TABLE_NAME"));
         rs.next();
+        assertEquals("COLUMN_STATISTICS", rs.getString("TABLE_NAME"));
+        rs.next();
         assertEquals("CONSTANTS", rs.getString("TABLE_NAME"));
         rs.next();
         assertEquals("CONSTRAINTS", rs.getString("TABLE_NAME"));
@@ -122,6 +126,8 @@ public class TestMetaData extends TestBase {
         rs.next();
         assertEquals("LOCKS", rs.getString("TABLE_NAME"));
         rs.next();
+        assertEquals("QUERY_STATISTICS", rs.getString("TABLE_NAME"));
+        rs.next();
         assertEquals("RIGHTS", rs.getString("TABLE_NAME"));
         rs.next();
         assertEquals("ROLES", rs.getString("TABLE_NAME"));
@@ -411,6 +417,40 @@ public class TestMetaData extends TestBase {
         conn.close();
     }
 
+    private void testQueryStatistics() throws SQLException {
+        conn = getConnection("metaData");
+        stat = conn.createStatement();
+        stat.execute("CREATE TABLE TEST_STAT(ID INT PRIMARY KEY, NAME VARCHAR(255))");
+        for (int i = 0; i < 10; i++) {
+            stat.execute("INSERT INTO TEST_STAT VALUES(" + i + ", 'Hello " + i + "')");
+        }
+        PreparedStatement prep = conn.prepareStatement("SELECT * FROM TEST_STAT WHERE ID < ?");
+        for (int i = 0; i < 5; i++) {
+            prep.setInt(1, i);
+            ResultSet rs = prep.executeQuery();
+            while (rs.next()) {
+                // ignore
+            }
+        }
+        ResultSet rs = stat.executeQuery("SELECT * FROM INFORMATION_SCHEMA.QUERY_STATISTICS "
+                + "WHERE SQL_STATEMENT LIKE '% TEST_STAT %' ORDER BY SQL_STATEMENT");
+        assertTrue(rs.next());
+        assertEquals("INSERT INTO TEST_STAT VALUES(?, ?)", rs.getString("SQL_STATEMENT"));
+        assertEquals(10, rs.getInt("EXECUTION_COUNT"));
+        assertEquals(10, rs.getLong("CUMULATIVE_ROW_COUNT"));
+        assertTrue(rs.getDouble("MIN_EXECUTION_TIME") <= rs.getDouble("MEDIAN_EXECUTION_TIME"));
+        assertTrue(rs.getDouble("MEDIAN_EXECUTION_TIME") <= rs.getDouble("P99_EXECUTION_TIME"));
+        assertTrue(rs.getDouble("P99_EXECUTION_TIME") <= rs.getDouble("MAX_EXECUTION_TIME"));
+        assertTrue(rs.next());
+        assertEquals("SELECT * FROM TEST_STAT WHERE ID < ?", rs.getString("SQL_STATEMENT"));
+        assertEquals(5, rs.getInt("EXECUTION_COUNT"));
+        assertEquals(10, rs.getLong("CUMULATIVE_ROW_COUNT"));
+        assertTrue(rs.getLong("CUMULATIVE_ROWS_READ") >= 10);
+        assertFalse(rs.next());
+        stat.execute("DROP TABLE TEST_STAT");
+        conn.close();
+    }
+
     private void testStatic() throws SQLException {
         Driver dr = org.h2.Driver.load();
 
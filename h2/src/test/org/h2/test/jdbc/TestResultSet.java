@@ -69,6 +69,7 @@ public class TestResultSet extends TestBase {
         testColumnLength();
         testArray();
         testLimitMaxRows();
+        testLazyQueryExecution();
 
         trace("max rows=" + stat.getMaxRows());
         stat.setMaxRows(6);
@@ -90,6 +91,89 @@ public class TestResultSet extends TestBase {
 
     }
 
+    private void testLazyQueryExecution() throws SQLException {
+        Connection conn = getConnection("resultSet;LAZY_QUERY_EXECUTION=TRUE");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test select x, 'Hello' || x from system_range(1, 1000)");
+        ResultSet rs = stat.executeQuery("select * from test");
+        assertTrue(rs.isBeforeFirst());
+        assertTrue(rs.next());
+        assertTrue(rs.isFirst());
+        assertFalse(rs.isLast());
+        for (int i = 1; i < 1000; i++) {
+            assertEquals(i, rs.getRow());
+            assertEquals(i, rs.getInt(1));
+            assertTrue(rs.next());
+        }
+        assertTrue(rs.isLast());
+        assertEquals("Hello1000", rs.getString(2));
+        assertFalse(rs.next());
+        assertTrue(rs.isAfterLast());
+        assertThrows(ErrorCode.RESULT_SET_NOT_SCROLLABLE, rs).beforeFirst();
+
+        rs = stat.executeQuery("select id from test where id > 10 order by id limit 3 offset 2");
+        for (int i = 13; i <= 15; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+
+        PreparedStatement prep = conn.prepareStatement("select id from test where id > ?");
+        prep.setInt(1, 990);
+        rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(991, rs.getInt(1));
+        prep.setInt(1, 995);
+        // a lazy result set is closed when the parameters change
+        assertTrue(rs.isClosed());
+        rs = prep.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(996, rs.getInt(1));
+
+        Statement stat2 = conn.createStatement();
+        rs = stat.executeQuery("select id from test");
+        assertTrue(rs.next());
+        // the same statement may be used while the first result is open
+        ResultSet rs2 = stat2.executeQuery("select id from test");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rs2.next());
+        }
+        assertFalse(rs2.next());
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        stat2.execute("update test set name = 'Hi' where id = 500");
+        // the rows that were already sent to the client can still be read
+        try {
+            while (rs.next()) {
+                assertTrue(rs.getInt(1) < 500);
+            }
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.CONCURRENT_UPDATE_1, e.getErrorCode());
+        }
+        rs.close();
+
+        Statement scroll = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        rs = scroll.executeQuery("select id from test");
+        assertTrue(rs.next());
+        stat2.execute("update test set name = 'Hello' where id = 500");
+        assertTrue(rs.last());
+        assertEquals(1000, rs.getRow());
+
+        rs = stat.executeQuery("select sql from information_schema.session_state " +
+                "where key = 'LAZY_QUERY_EXECUTION'");
+        assertTrue(rs.next());
+        assertEquals("SET LAZY_QUERY_EXECUTION TRUE", rs.getString(1));
+        stat.execute("set lazy_query_execution false");
+        rs = stat.executeQuery("select count(*) from information_schema.session_state " +
+                "where key = 'LAZY_QUERY_EXECUTION'");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
     private void testAmbiguousColumnNames() throws SQLException {
         stat.execute("create table test(id int)");
         stat.execute("insert into test values(1)");
@@ -36,9 +36,47 @@ public class TestMvcc3 extends TestBase {
         testSequence();
         testDisableAutoCommit();
         testRollback();
+        testMinMaxWithoutDelta();
         deleteDb("mvcc3");
     }
 
+    private void testMinMaxWithoutDelta() throws SQLException {
+        if (!config.mvcc) {
+            return;
+        }
+        deleteDb("mvcc3");
+        Connection c1 = getConnection("mvcc3");
+        Statement s1 = c1.createStatement();
+        Connection c2 = getConnection("mvcc3");
+        Statement s2 = c2.createStatement();
+        s1.execute("create table test(id int primary key, name varchar)");
+        s1.execute("create index idx_name on test(name)");
+        s1.execute("insert into test values(1, null), (2, 'b'), (3, 'c')");
+        // no uncommitted changes: the base index is used directly
+        ResultSet rs = s2.executeQuery("select min(name), max(name) from test");
+        rs.next();
+        assertEquals("b", rs.getString(1));
+        assertEquals("c", rs.getString(2));
+        c1.setAutoCommit(false);
+        s1.execute("insert into test values(4, 'a'), (5, 'd')");
+        rs = s2.executeQuery("select min(name), max(name) from test");
+        rs.next();
+        assertEquals("b", rs.getString(1));
+        assertEquals("c", rs.getString(2));
+        rs = s1.executeQuery("select min(name), max(name) from test");
+        rs.next();
+        assertEquals("a", rs.getString(1));
+        assertEquals("d", rs.getString(2));
+        c1.commit();
+        rs = s2.executeQuery("select count(*), min(name), max(name) from test where name > 'a'");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        assertEquals("b", rs.getString(2));
+        assertEquals("d", rs.getString(3));
+        c1.close();
+        c2.close();
+    }
+
     private void testConcurrentUpdate() throws SQLException {
         if (!config.mvcc) {
             return;
@@ -539,11 +539,12 @@ public class TestOuterJoins extends TestBase {
                 "on b.pk = b_base.pk and b_base.deleted = 0) on 1=1");
         assertTrue(rs.next());
         sql = cleanRemarks(rs.getString(1));
-        assertEquals("SELECT A.PK, A_BASE.PK, B.PK, B_BASE.PK FROM PUBLIC.BASE A_BASE " +
+        assertEquals("SELECT A.PK, A_BASE.PK, B.PK, B_BASE.PK FROM PUBLIC.A " +
+                "INNER JOIN PUBLIC.BASE A_BASE ON 1=1 " +
                 "LEFT OUTER JOIN ( PUBLIC.B " +
                 "INNER JOIN PUBLIC.BASE B_BASE " +
                 "ON (B_BASE.DELETED = 0) AND (B.PK = B_BASE.PK) ) " +
-                "ON TRUE INNER JOIN PUBLIC.A ON 1=1 WHERE A.PK = A_BASE.PK", sql);
+                "ON TRUE WHERE A.PK = A_BASE.PK", sql);
         rs = stat.executeQuery("select a.pk, a_base.pk, b.pk, b_base.pk from a " +
                 "inner join base a_base on a.pk = a_base.pk " +
                 "left outer join (b inner join base b_base " +
@@ -47,6 +47,7 @@ public class TestCache extends TestBase implements CacheWriter {
         testTQ();
         testMemoryUsage();
         testCache();
+        testCacheLIRS();
         testCacheDb(false);
         testCacheDb(true);
     }
@@ -76,11 +77,13 @@ public class TestCache extends TestBase implements CacheWriter {
             prep.execute();
         }
         conn.close();
-        testTQ("LRU", false);
-        testTQ("TQ", true);
+        testTQ("LRU", false, 0);
+        testTQ("TQ", true, 1);
+        // LIRS: pages are hot once they were used twice
+        testTQ("LIRS", true, 2);
     }
 
-    private void testTQ(String cacheType, boolean scanResistant) throws Exception {
+    private void testTQ(String cacheType, boolean scanResistant, int warmUp) throws Exception {
         Connection conn = getConnection("cache;CACHE_TYPE=" + cacheType + ";CACHE_SIZE=4096");
         Statement stat = conn.createStatement();
         PreparedStatement prep;
@@ -95,8 +98,8 @@ public class TestCache extends TestBase implements CacheWriter {
                 }
             }
             int rcData = getReadCount(stat) - rc;
-            if (scanResistant && k > 0) {
-                // TQ is expected to keep the data rows in the cache
+            if (scanResistant && k >= warmUp) {
+                // TQ and LIRS are expected to keep the data rows in the cache
                 // even if the LOB is read once in a while
                 assertEquals(0, rcData);
             } else {
@@ -186,6 +189,43 @@ public class TestCache extends TestBase implements CacheWriter {
         assertEquals("flush 0 flush 1 flush 2 flush 3 ", out);
     }
 
+    private void testCacheLIRS() {
+        out = "";
+        // 1024 KB are 256 objects of 4 KB
+        Cache c = CacheLRU.getCache(this, "LIRS", 1024);
+        for (int i = 0; i < 64; i++) {
+            c.put(new Obj(i));
+        }
+        assertEquals("", out);
+        assertEquals(64, c.getAllChanged().size());
+        // fill the cache
+        for (int i = 500; i < 800; i++) {
+            c.put(new Obj(i));
+        }
+        // entries that are used again become hot
+        for (int i = 0; i < 64; i++) {
+            if (c.get(i) == null) {
+                c.put(new Obj(i));
+            }
+            assertTrue(c.get(i) != null);
+        }
+        // a scan does not remove the frequently used entries
+        for (int i = 1000; i < 2000; i++) {
+            c.put(new Obj(i));
+        }
+        // changed objects are written back before they are removed
+        assertTrue(out.startsWith("flush "));
+        assertTrue(c.getMemory() <= c.getMaxMemory());
+        for (int i = 0; i < 64; i++) {
+            assertTrue(c.find(i) != null);
+        }
+        assertTrue(c.remove(0));
+        assertFalse(c.remove(0));
+        assertTrue(c.find(0) == null);
+        c.clear();
+        assertEquals(0, c.getMemory());
+    }
+
     /**
      * A simple cache object
      */
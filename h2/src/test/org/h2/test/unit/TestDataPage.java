@@ -12,6 +12,8 @@ import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import org.h2.result.LazyRow;
+import org.h2.result.Row;
 import org.h2.store.Data;
 import org.h2.store.DataHandler;
 import org.h2.store.FileStore;
@@ -67,6 +69,7 @@ public class TestDataPage extends TestBase implements DataHandler {
             return;
         }
         testValues();
+        testLazyRow();
         testAll();
     }
 
@@ -221,8 +224,48 @@ public class TestDataPage extends TestBase implements DataHandler {
         assertEquals(v.getType(), v2.getType());
         assertEquals(0, v.compareTo(v2, compareMode));
         assertEquals(123, data.readInt());
+        data.reset();
+        data.skipValue();
+        assertEquals(123, data.readInt());
     }
 
+    private void testLazyRow() {
+        Value[] values = {
+                ValueInt.get(10), ValueNull.INSTANCE, ValueString.get("H\u1111llo \u00e4"),
+                ValueDecimal.get(new BigDecimal("1234567890123456789.5")), ValueDouble.get(2.5),
+                ValueBytes.getNoCopy(new byte[50]), ValueUuid.getNewRandom(),
+                ValueTimestamp.get(new Timestamp(System.currentTimeMillis())),
+                ValueArray.get(new Value[] {ValueBoolean.get(true), ValueInt.get(10)}),
+                ValueLong.get(Long.MIN_VALUE)
+        };
+        Data data = Data.create(null, 1024);
+        for (Value v : values) {
+            data.writeValue(v);
+        }
+        byte[] bytes = new byte[data.length()];
+        System.arraycopy(data.getBytes(), 0, bytes, 0, bytes.length);
+        // read the values in reverse order, and in the order of the columns
+        LazyRow row = new LazyRow(null, bytes, values.length);
+        assertEquals(bytes.length, row.getByteCount(data));
+        for (int i = values.length - 1; i >= 0; i--) {
+            assertEquals(0, values[i].compareTo(row.getValue(i), compareMode));
+        }
+        row = new LazyRow(null, bytes, values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(0, values[i].compareTo(row.getValue(i), compareMode));
+            assertTrue(row.getValue(i) == row.getValue(i));
+        }
+        row = new LazyRow(null, bytes, values.length);
+        Row copy = row.getCopy();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(0, values[i].compareTo(copy.getValue(i), compareMode));
+        }
+        row = new LazyRow(null, bytes, values.length);
+        row.setValue(1, ValueInt.get(1));
+        assertEquals(bytes.length + data.getValueLen(ValueInt.get(1)) -
+                data.getValueLen(ValueNull.INSTANCE), row.getByteCount(data));
+        assertEquals(0, values[2].compareTo(row.getValue(2), compareMode));
+    }
 
     private void testAll() {
         Data page = Data.create(this, 128);
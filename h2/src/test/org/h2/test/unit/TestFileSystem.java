@@ -78,6 +78,7 @@ public class TestFileSystem extends TestBase {
             testFileSystem("crypt:aes:x:" + getBaseDir() + "/fs");
             testFileSystem("nio:" + getBaseDir() + "/fs");
             testFileSystem("nioMapped:" + getBaseDir() + "/fs");
+            testLargeMappedFile("nioMapped:" + getBaseDir() + "/fs");
             if (!config.splitFileSystem) {
                 testFileSystem("split:" + getBaseDir() + "/fs");
                 testFileSystem("split:nioMapped:" + getBaseDir() + "/fs");
@@ -271,6 +272,49 @@ public class TestFileSystem extends TestBase {
         testRandomAccess(fsBase);
     }
 
+    private void testLargeMappedFile(String fsBase) throws IOException {
+        if (!"64".equals(System.getProperty("sun.arch.data.model"))) {
+            // mapping more than 2 GB requires a 64 bit JVM
+            return;
+        }
+        String fileName = fsBase + "/testLarge";
+        FileUtils.createDirectories(fsBase);
+        FileChannel c = FileUtils.open(fileName, "rw");
+        try {
+            // the file is sparse; the data crosses the segment boundary at 3 GB
+            long pos = (3L << 30) - 10;
+            byte[] data = new byte[20];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i + 1);
+            }
+            assertEquals(20, c.write(ByteBuffer.wrap(data), pos));
+            assertEquals(pos + 20, c.size());
+            c.position(pos + 30);
+            c.write(ByteBuffer.wrap(data));
+            assertEquals(pos + 50, c.size());
+            ByteBuffer buff = ByteBuffer.allocate(30);
+            assertEquals(30, c.read(buff, pos));
+            for (int i = 0; i < 30; i++) {
+                assertEquals(i < 20 ? i + 1 : 0, buff.get(i));
+            }
+            buff = ByteBuffer.allocateDirect(30);
+            c.position(pos + 20);
+            assertEquals(30, c.read(buff));
+            assertEquals(pos + 50, c.position());
+            assertEquals(20, buff.get(29));
+            buff.clear();
+            assertEquals(-1, c.read(buff));
+            assertEquals(1, c.read(ByteBuffer.allocate(1), 1000));
+            c.truncate(1000);
+            assertEquals(1000, c.size());
+            assertEquals(1000, c.position());
+            assertEquals(-1, c.read(ByteBuffer.allocate(1), 1000));
+        } finally {
+            c.close();
+            FileUtils.delete(fileName);
+        }
+    }
+
     private void testSetReadOnly(String fsBase) {
         String fileName = fsBase + "/testFile";
         if (FileUtils.exists(fileName)) {
@@ -483,7 +527,7 @@ public class TestFileSystem extends TestBase {
             for (int i = 0; i < size; i++) {
                 trace("op " + i);
                 int pos = random.nextInt(10000);
-                switch(random.nextInt(7)) {
+                switch(random.nextInt(9)) {
                 case 0: {
                     pos = (int) Math.min(pos, ra.length());
                     trace("seek " + pos);
@@ -551,6 +595,38 @@ public class TestFileSystem extends TestBase {
                     assertEquals(ra.length(), f.size());
                     break;
                 }
+                case 7: {
+                    pos = (int) Math.min(pos, ra.length());
+                    int len = random.nextInt(1000);
+                    len = (int) Math.min(len, ra.length() - pos);
+                    byte[] b1 = new byte[len];
+                    byte[] b2 = new byte[len];
+                    trace("readFully " + pos + " " + len);
+                    long p = ra.getFilePointer();
+                    ra.seek(pos);
+                    ra.readFully(b1, 0, len);
+                    ra.seek(p);
+                    FileUtils.readFully(f, ByteBuffer.wrap(b2, 0, len), pos);
+                    buff.append("readFully " + pos + " " + len + "\n");
+                    assertEquals(b1, b2);
+                    assertEquals(p, f.position());
+                    break;
+                }
+                case 8: {
+                    pos = (int) Math.min(pos, ra.length());
+                    byte[] buffer = new byte[random.nextInt(1000)];
+                    random.nextBytes(buffer);
+                    trace("writeFully " + pos + " " + buffer.length);
+                    long p = ra.getFilePointer();
+                    ra.seek(pos);
+                    ra.write(buffer, 0, buffer.length);
+                    ra.seek(p);
+                    FileUtils.writeFully(f, ByteBuffer.wrap(buffer), pos);
+                    buff.append("writeFully " + pos + " " + buffer.length + "\n");
+                    assertEquals(p, f.position());
+                    assertEquals(ra.length(), f.size());
+                    break;
+                }
                 default:
                 }
             }
@@ -84,7 +84,10 @@ public class TestJmx extends TestBase {
         assertTrue(result.indexOf("session id") >= 0);
         assertTrue(result.indexOf("write lock") >= 0);
 
-        assertEquals(2, info.getOperations().length);
+        result = mbeanServer.invoke(name, "listQueryStatistics", null, null).toString();
+        assertTrue(result.indexOf("insert into test values(?)") >= 0);
+
+        assertEquals(3, info.getOperations().length);
         assertTrue(info.getDescription().indexOf("database") >= 0);
         attrMap = New.hashMap();
         for (MBeanAttributeInfo a : info.getAttributes()) {
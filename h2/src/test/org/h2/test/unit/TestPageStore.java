@@ -8,6 +8,8 @@ package org.h2.test.unit;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -15,14 +17,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import org.h2.api.DatabaseEventListener;
 import org.h2.constant.ErrorCode;
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
 import org.h2.result.Row;
+import org.h2.store.FileStore;
 import org.h2.store.Page;
+import org.h2.store.PageStore;
+import org.h2.store.fs.FilePathRec;
 import org.h2.store.fs.FileUtils;
+import org.h2.store.fs.Recorder;
 import org.h2.test.TestBase;
 import org.h2.util.IOUtils;
 import org.h2.util.New;
@@ -46,6 +57,7 @@ public class TestPageStore extends TestBase implements DatabaseEventListener {
     }
 
     public void test() throws Exception {
+        testPrefixCompression();
         testLogLimitFalsePositive();
         testLogLimit();
         testRecoverLobInDatabase();
@@ -54,6 +66,9 @@ public class TestPageStore extends TestBase implements DatabaseEventListener {
         testInsertReverse();
         testInsertDelete();
         testCheckpoint();
+        testWriteBackChanged();
+        testWriteBatch();
+        testCheckpointInWriterThread();
         testDropRecreate();
         testDropAll();
         testCloseTempTable();
@@ -78,6 +93,171 @@ public class TestPageStore extends TestBase implements DatabaseEventListener {
         deleteDb("pageStore");
     }
 
+    private void testPrefixCompression() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        long prefixed = getIndexSize("'http://www.h2database.com/html/' || x || '.html'", false);
+        long other = getIndexSize("x || '.html/lmth/moc.esabatad2h.www//:ptth'", false);
+        assertTrue("prefixed: " + prefixed + " other: " + other, prefixed * 2 < other);
+        if (config.cipher == null) {
+            // databases created with an older version keep the old format
+            long old = getIndexSize("'http://www.h2database.com/html/' || x || '.html'", true);
+            assertTrue("prefixed: " + prefixed + " old: " + old, prefixed * 2 < old);
+        }
+
+        deleteDb("pageStore");
+        Connection conn = getConnection("pageStore");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, " +
+                "name varchar, name2 varchar_ignorecase, name3 char(10))");
+        stat.execute("create index idx_name on test(name)");
+        stat.execute("create index idx_name2 on test(name2)");
+        stat.execute("create unique index idx_name3 on test(name3)");
+        String[] prefixes = { "", "a", "ab", "abc/", "abc/def/", "abc/def/ghi/", "b" };
+        Random random = new Random(1);
+        String[] names = new String[1000];
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(names.length);
+            if (names[id] != null) {
+                stat.execute("delete from test where id = " + id);
+                names[id] = null;
+            } else {
+                String name = null;
+                if (random.nextInt(10) > 0) {
+                    name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(1000);
+                }
+                PreparedStatement prep = conn.prepareStatement("insert into test values(?, ?, ?, ?)");
+                prep.setInt(1, id);
+                prep.setString(2, name);
+                prep.setString(3, name == null ? null : name.toUpperCase());
+                prep.setString(4, "c" + id);
+                prep.execute();
+                names[id] = name == null ? "" : name;
+            }
+            if (i % 1000 == 999) {
+                conn.close();
+                conn = getConnection("pageStore");
+                stat = conn.createStatement();
+            }
+        }
+        ArrayList<String> list = New.arrayList();
+        for (String n : names) {
+            if (n != null && n.length() > 0) {
+                list.add(n);
+            }
+        }
+        Collections.sort(list);
+        ResultSet rs = stat.executeQuery("select name from test where name >= '' order by name");
+        for (String n : list) {
+            assertTrue(rs.next());
+            assertEquals(n, rs.getString(1));
+        }
+        assertFalse(rs.next());
+        PreparedStatement prep = conn.prepareStatement("select count(*) from test where name = ?");
+        PreparedStatement prep2 = conn.prepareStatement("select count(*) from test where name2 = ?");
+        for (String n : list) {
+            int count = Collections.frequency(list, n);
+            prep.setString(1, n);
+            rs = prep.executeQuery();
+            rs.next();
+            assertEquals(count, rs.getInt(1));
+            prep2.setString(1, n.toLowerCase());
+            rs = prep2.executeQuery();
+            rs.next();
+            assertEquals(count, rs.getInt(1));
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null) {
+                assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                        execute("insert into test values(-1, null, null, 'c" + i + "')");
+            }
+        }
+        // shorten the prefix of pages that were already written
+        stat.execute("create table test2(id int primary key, name varchar, name2 char(40))");
+        stat.execute("create index idx_test2_name on test2(name, id)");
+        stat.execute("create index idx_test2_name2 on test2(name2)");
+        list.clear();
+        for (int i = 0; i < 2000; i++) {
+            String name = "abc/d\u00e9f/ghi/jkl/" + i + "/xxxxxxxxxxxxxx".substring(i % 15);
+            stat.execute("insert into test2 values(" + i + ", '" + name + "', '" + name + "')");
+            list.add(name);
+        }
+        String[] shorter = { "abc/d\u00e9f/ghi/", "abc/d\u00e9f/", "abc/d", "ab", "" };
+        for (int i = 0; i < 1000; i++) {
+            if (i % 100 == 0) {
+                conn.close();
+                conn = getConnection("pageStore");
+                stat = conn.createStatement();
+            }
+            int x = random.nextInt(2000);
+            String name = shorter[random.nextInt(shorter.length)] + x + (i % 2 == 0 ? null : "\u1234");
+            if (random.nextInt(20) == 0) {
+                name = null;
+            }
+            prep = conn.prepareStatement("insert into test2 values(?, ?, ?)");
+            prep.setInt(1, 2000 + i);
+            prep.setString(2, name);
+            prep.setString(3, name);
+            prep.execute();
+            if (name != null) {
+                list.add(name);
+            }
+        }
+        Collections.sort(list);
+        rs = stat.executeQuery("select name, name2 from test2 where name >= '' order by name, id");
+        for (String n : list) {
+            assertTrue(rs.next());
+            assertEquals(n, rs.getString(1));
+            assertEquals(n, rs.getString(2).trim());
+        }
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from test2 where name2 >= ''");
+        rs.next();
+        assertEquals(list.size(), rs.getInt(1));
+        conn.close();
+    }
+
+    private long getIndexSize(String expression, boolean oldFormat) throws Exception {
+        deleteDb("pageStore");
+        String fileName = getBaseDir() + "/pageStore" + Constants.SUFFIX_PAGE_FILE;
+        Connection conn = getConnection("pageStore");
+        conn.close();
+        if (oldFormat) {
+            // set the write and read version of the file to 3
+            FileChannel f = FileUtils.open(fileName, "rw");
+            f.write(ByteBuffer.wrap(new byte[] { 3, 3 }), FileStore.HEADER_LENGTH + 4);
+            f.close();
+        }
+        conn = getConnection("pageStore");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar) as " +
+                "select x, " + expression + " from system_range(1, 10000)");
+        stat.execute("shutdown compact");
+        long size = FileUtils.size(fileName);
+        conn = getConnection("pageStore");
+        stat = conn.createStatement();
+        stat.execute("create index idx_name on test(name)");
+        stat.execute("shutdown compact");
+        size = FileUtils.size(fileName) - size;
+        conn = getConnection("pageStore");
+        stat = conn.createStatement();
+        ResultSet rs = stat.executeQuery("select count(*) from test " +
+                "where name = (select " + expression + " from system_range(5000, 5000))");
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        conn.close();
+        if (oldFormat) {
+            FileChannel f = FileUtils.open(fileName, "r");
+            ByteBuffer buff = ByteBuffer.allocate(2);
+            f.read(buff, FileStore.HEADER_LENGTH + 4);
+            f.close();
+            assertEquals(3, buff.get(0));
+            assertEquals(3, buff.get(1));
+        }
+        return size;
+    }
+
     private void testLogLimit() throws Exception {
         deleteDb("pageStore");
         Connection conn, conn2;
@@ -275,6 +455,106 @@ public class TestPageStore extends TestBase implements DatabaseEventListener {
         conn.close();
     }
 
+    private void testWriteBackChanged() throws SQLException {
+        if (config.memory || config.networked) {
+            return;
+        }
+        deleteDb("pageStore");
+        Connection conn;
+        conn = getConnection("pageStore;PAGE_STORE_MAX_CHANGED_PERCENT=0");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("create index idx_name on test(name)");
+        stat.execute("insert into test select x, space(x / 10) from system_range(1, 2000)");
+        Database db = ((Session) ((JdbcConnection) conn).getSession()).getDatabase();
+        while (db.writeBackChanged()) {
+            // write back all changed pages
+        }
+        assertEquals(0, db.getPageStore().getCache().getAllChanged().size());
+        stat.execute("shutdown immediately");
+        conn = getConnection("pageStore");
+        stat = conn.createStatement();
+        stat.execute("set cache_size 0");
+        ResultSet rs = stat.executeQuery("select count(*), sum(length(name)) from test");
+        rs.next();
+        assertEquals(2000, rs.getInt(1));
+        assertEquals(199200, rs.getInt(2));
+        conn.close();
+    }
+
+    private void testWriteBatch() throws SQLException {
+        if (config.memory || config.networked || config.reopen || config.cipher != null) {
+            return;
+        }
+        deleteDb("pageStore");
+        org.h2.Driver.load();
+        FilePathRec.register();
+        final int[] maxWrite = new int[1];
+        FilePathRec.setRecorder(new Recorder() {
+            public void log(int op, String fileName, byte[] data, long x) {
+                if (op == Recorder.WRITE && fileName.endsWith(Constants.SUFFIX_PAGE_FILE)) {
+                    maxWrite[0] = Math.max(maxWrite[0], data.length);
+                }
+            }
+        });
+        try {
+            Connection conn = DriverManager.getConnection("jdbc:h2:rec:" + getBaseDir() + "/pageStore",
+                    getUser(), getPassword());
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, name varchar)");
+            stat.execute("insert into test select x, space(100) from system_range(1, 2000)");
+            stat.execute("checkpoint");
+            ResultSet rs = stat.executeQuery("select value from information_schema.settings " +
+                    "where name = 'info.PAGE_SIZE'");
+            rs.next();
+            int pageSize = rs.getInt(1);
+            // adjacent pages are written in one operation
+            assertTrue("max write: " + maxWrite[0], maxWrite[0] >= 4 * pageSize);
+            conn.close();
+        } finally {
+            FilePathRec.setRecorder(null);
+        }
+    }
+
+    private void testCheckpointInWriterThread() throws Exception {
+        if (config.memory || config.networked) {
+            return;
+        }
+        deleteDb("pageStore");
+        Connection conn = getConnection("pageStore");
+        Statement stat = conn.createStatement();
+        Database db = ((Session) ((JdbcConnection) conn).getSession()).getDatabase();
+        PageStore store = db.getPageStore();
+        stat.execute("set max_log_size 1");
+        stat.execute("set write_delay 10");
+        stat.execute("create table test(id identity, name varchar)");
+        stat.execute("create table test2(id identity, name varchar)");
+        // the log grows to more than half of the maximum size,
+        // the writer thread then does a checkpoint
+        stat.execute("insert into test(name) select space(1000) from system_range(1, 700)");
+        for (int i = 0; i < 100 && store.isCheckpointRecommended(); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(store.isCheckpointRecommended());
+
+        // an open transaction prevents that the log is truncated,
+        // the writer thread must not checkpoint over and over again
+        Connection conn2 = getConnection("pageStore");
+        conn2.setAutoCommit(false);
+        conn2.createStatement().execute("insert into test2(name) values('open')");
+        stat.execute("insert into test(name) select space(1000) from system_range(1, 700)");
+        for (int i = 0; i < 100 && store.isCheckpointRecommended(); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(store.isCheckpointRecommended());
+        Thread.sleep(100);
+        long writeCount = store.getWriteCount();
+        Thread.sleep(500);
+        assertEquals(writeCount, store.getWriteCount());
+        conn2.close();
+        conn.close();
+    }
+
     private void testDropRecreate() throws SQLException {
         if (config.memory) {
             return;
@@ -37,6 +37,9 @@ import java.util.ArrayList;
 import java.util.Random;
 import org.h2.constant.ErrorCode;
 import org.h2.constant.SysProperties;
+import org.h2.engine.SessionRemote;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.server.TcpServer;
 import org.h2.store.FileLister;
 import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
@@ -81,6 +84,9 @@ public class TestTools extends TestBase {
         org.h2.Driver.load();
         testSimpleResultSet();
         testTcpServerWithoutPort();
+        testTcpServerNio();
+        testTcpServerCompressed();
+        testTcpServerPrefetch();
         testConsole();
         testJdbcDriverUtils();
         testWrongServer();
@@ -120,6 +126,220 @@ public class TestTools extends TestBase {
         s1.stop();
     }
 
+    private void testTcpServerNio() throws Exception {
+        deleteDb("utils");
+        Server server = Server.createTcpServer(
+                "-baseDir", getBaseDir(),
+                "-tcpPort", "9192",
+                "-tcpNio", "-tcpNioThreads", "2").start();
+        TcpServer tcp = (TcpServer) server.getService();
+        String url = "jdbc:h2:tcp://localhost:9192/utils";
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar) " +
+                "as select x - 1, 'Hello' from system_range(1, 1000)");
+        // idle connections don't use a thread
+        Connection[] idle = new Connection[20];
+        for (int i = 0; i < idle.length; i++) {
+            idle[i] = DriverManager.getConnection(url, "sa", "");
+        }
+        assertIdle(tcp, idle.length + 1);
+        assertTrue(getThreadCount(":9192) worker") <= 2);
+        assertEquals(0, getThreadCount(":9192) thread"));
+        for (Connection c : idle) {
+            ResultSet rs = c.createStatement().executeQuery("select count(*) from test");
+            rs.next();
+            assertEquals(1000, rs.getInt(1));
+        }
+        assertIdle(tcp, idle.length + 1);
+        assertTrue(getThreadCount(":9192) worker") <= 2);
+        // fetched in multiple requests
+        stat.setFetchSize(10);
+        ResultSet rs = stat.executeQuery("select * from test order by id");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        // statements that wait for a lock don't block the other connections
+        conn.setAutoCommit(false);
+        stat.execute("update test set name = 'Hi' where id = 0");
+        Task[] blocked = new Task[2];
+        for (int i = 0; i < blocked.length; i++) {
+            final Statement s = idle[i].createStatement();
+            s.execute("set lock_timeout 10000");
+            blocked[i] = new Task() {
+                public void call() throws SQLException {
+                    s.execute("update test set name = 'World' where id = 1");
+                }
+            };
+            blocked[i].execute();
+        }
+        for (int i = 0; i < 100 && tcp.getActiveConnectionCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        long time = System.currentTimeMillis();
+        conn.commit();
+        for (Task t : blocked) {
+            t.get();
+        }
+        assertTrue(System.currentTimeMillis() - time < 5000);
+        // the pool doesn't grow beyond four times the configured size
+        for (Connection c : idle) {
+            c.createStatement().execute("set lock_timeout 5000");
+        }
+        stat.execute("update test set name = 'Hi' where id = 0");
+        blocked = new Task[idle.length];
+        for (int i = 0; i < blocked.length; i++) {
+            final Statement s = idle[i].createStatement();
+            blocked[i] = new Task() {
+                public void call() throws SQLException {
+                    s.execute("update test set name = 'World' where id = 1");
+                }
+            };
+            blocked[i].execute();
+        }
+        for (int i = 0; i < 400 && tcp.getActiveConnectionCount() < 8; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(500);
+        assertEquals(8, tcp.getActiveConnectionCount());
+        assertTrue(tcp.getQueuedConnectionCount() > 0);
+        assertTrue(getThreadCount(":9192) worker") <= 8);
+        conn.commit();
+        for (Task t : blocked) {
+            Exception e = t.getException();
+            if (e != null) {
+                assertEquals(ErrorCode.LOCK_TIMEOUT_1, ((SQLException) e).getErrorCode());
+            }
+        }
+        for (Connection c : idle) {
+            c.close();
+        }
+        assertIdle(tcp, 1);
+        conn.close();
+        server.stop();
+        deleteDb("utils");
+    }
+
+    private void assertIdle(TcpServer tcp, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && (tcp.getIdleConnectionCount() != count ||
+                tcp.getActiveConnectionCount() != 0 || tcp.getQueuedConnectionCount() != 0); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, tcp.getIdleConnectionCount());
+        assertEquals(0, tcp.getActiveConnectionCount());
+        assertEquals(0, tcp.getQueuedConnectionCount());
+    }
+
+    private static int getThreadCount(String nameSuffix) {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().endsWith(nameSuffix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void testTcpServerCompressed() throws Exception {
+        deleteDb("utils");
+        Server server = Server.createTcpServer(
+                "-baseDir", getBaseDir(),
+                "-tcpPort", "9192").start();
+        Connection conn = DriverManager.getConnection("jdbc:h2:tcp://localhost:9192/utils", "sa", "");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar) " +
+                "as select x, space(100) || x from system_range(1, 1000)");
+        stat.setFetchSize(100);
+        ResultSet rs = stat.executeQuery("select * from test order by id");
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(String.valueOf(i), rs.getString(2).trim());
+        }
+        assertFalse(rs.next());
+        PreparedStatement prep = conn.prepareStatement("select * from test");
+        ResultSetMetaData meta = prep.getMetaData();
+        assertEquals(2, meta.getColumnCount());
+        assertEquals("ID", meta.getColumnName(1));
+        assertEquals("NAME", meta.getColumnName(2));
+        stat.execute("create table lob(data blob)");
+        prep = conn.prepareStatement("insert into lob values(?)");
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / 1000);
+        }
+        prep.setBytes(1, data);
+        prep.execute();
+        rs = stat.executeQuery("select data from lob");
+        assertTrue(rs.next());
+        InputStream in = rs.getBinaryStream(1);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], (byte) in.read());
+        }
+        assertEquals(-1, in.read());
+        conn.close();
+        server.stop();
+        deleteDb("utils");
+    }
+
+    private void testTcpServerPrefetch() throws Exception {
+        deleteDb("utils");
+        Server server = Server.createTcpServer(
+                "-baseDir", getBaseDir(),
+                "-tcpPort", "9192").start();
+        Connection conn = DriverManager.getConnection("jdbc:h2:tcp://localhost:9192/utils", "sa", "");
+        SessionRemote session = (SessionRemote) ((JdbcConnection) conn).getSession();
+        Statement stat = conn.createStatement();
+        stat.setFetchSize(10);
+        ResultSet rs = stat.executeQuery("select x from system_range(1, 10000)");
+        for (int i = 1; i <= 10000; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        assertFalse(rs.next());
+        long count = session.getPrefetchCount();
+        if (SysProperties.SERVER_RESULT_SET_PREFETCH) {
+            assertTrue(count > 0);
+            // the fetch size grows, so there are far fewer than 1000 requests
+            assertTrue(count < 100);
+        }
+        assertEquals(0, session.getPrefetchWastedCount());
+        rs = stat.executeQuery("select x from system_range(1, 10000)");
+        for (int i = 1; i <= 50; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        rs.close();
+        if (SysProperties.SERVER_RESULT_SET_PREFETCH) {
+            assertEquals(1, session.getPrefetchWastedCount());
+        }
+        assertEquals(1, stat.executeQuery("select 1").getMetaData().getColumnCount());
+        // re-execute while the reply of the next rows is pending
+        for (int j = 0; j < 3; j++) {
+            rs = stat.executeQuery("select x from system_range(1, 100)");
+            for (int i = 1; i <= 11; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+            }
+        }
+        // use the connection for another statement in between
+        rs = stat.executeQuery("select x from system_range(1, 100)");
+        Statement stat2 = conn.createStatement();
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            ResultSet rs2 = stat2.executeQuery("select " + i);
+            rs2.next();
+            assertEquals(i, rs2.getInt(1));
+        }
+        assertFalse(rs.next());
+        conn.close();
+        server.stop();
+        deleteDb("utils");
+    }
+
     private void testConsole() throws Exception {
         String old = System.getProperty(SysProperties.H2_BROWSER);
         Console c = new Console();
@@ -72,6 +72,37 @@ public class Build extends BuildBase {
         exec("java", args.plus("-db", "8", "-out", "ps.html"));
     }
 
+    /**
+     * Compile and run the JMH benchmarks (src/jmh). The results are written to
+     * the file jmh-<version>.json, so that they can be compared with the
+     * results of other versions. To run only some of the benchmarks, set the
+     * system property "bench" to a regular expression (for example
+     * -Dbench=Embedded).
+     */
+    public void benchmarkJmh() {
+        downloadUsingMaven("ext/jmh-core-1.21.jar", "org/openjdk/jmh", "jmh-core", "1.21",
+                "442447101f63074c61063858033fbfde8a076873");
+        downloadUsingMaven("ext/jmh-generator-annprocess-1.21.jar", "org/openjdk/jmh", "jmh-generator-annprocess", "1.21",
+                "7aac374614a8a76cad16b91f1a4419d31a7dcda3");
+        downloadUsingMaven("ext/jopt-simple-4.6.jar", "net/sf/jopt-simple", "jopt-simple", "4.6",
+                "306816fb57cf94f108a43c95731b08934dcae15c");
+        downloadUsingMaven("ext/commons-math3-3.2.jar", "org/apache/commons", "commons-math3", "3.2",
+                "ec2544ab27e110d2d431bdad7d538ed509b21e62");
+        compile();
+
+        String cp = "temp/jmh" + File.pathSeparator + "temp" +
+        File.pathSeparator + "ext/jmh-core-1.21.jar" +
+        File.pathSeparator + "ext/jmh-generator-annprocess-1.21.jar" +
+        File.pathSeparator + "ext/jopt-simple-4.6.jar" +
+        File.pathSeparator + "ext/commons-math3-3.2.jar";
+        mkdir("temp/jmh");
+        // the annotation processor generates the benchmark classes
+        javac(args("-d", "temp/jmh", "-sourcepath", "src/jmh", "-classpath", cp), files("src/jmh"));
+        String bench = System.getProperty("bench", ".*");
+        exec("java", args("-cp", cp, "org.openjdk.jmh.Main",
+                "-rf", "json", "-rff", "jmh-" + getVersion() + ".json", bench));
+    }
+
     /**
      * Clean all jar files, classes, and generated documentation.
      */